@@ -0,0 +1,84 @@
+package io.prometheus.benchmark;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.hotspot.BufferPoolsExports;
+import io.prometheus.client.hotspot.ClassLoadingExports;
+import io.prometheus.client.hotspot.GarbageCollectorExports;
+import io.prometheus.client.hotspot.MemoryPoolsExports;
+import io.prometheus.client.hotspot.StandardExports;
+import io.prometheus.client.hotspot.ThreadExports;
+import io.prometheus.client.hotspot.VersionInfoExports;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Registers the default Hotspot collectors with a registry that auto-describes, as the default
+ * registry does, compared to collecting them, which is what registering used to cost.
+ */
+@State(Scope.Thread)
+public class RegistrationBenchmark {
+
+  List<Collector> collectors;
+
+  @Setup
+  public void setup() {
+    // The collectors listening to GC notifications are left out, as they can't be unregistered.
+    collectors = Arrays.<Collector>asList(
+        new StandardExports(),
+        new MemoryPoolsExports(),
+        new BufferPoolsExports(),
+        new GarbageCollectorExports(),
+        new ThreadExports(),
+        new ClassLoadingExports(),
+        new VersionInfoExports());
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.AverageTime})
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public CollectorRegistry registerBenchmark() {
+    CollectorRegistry registry = new CollectorRegistry(true);
+    for (Collector collector : collectors) {
+      registry.register(collector);
+    }
+    return registry;
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.AverageTime})
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int collectBenchmark() {
+    int families = 0;
+    for (Collector collector : collectors) {
+      families += collector.collect().size();
+    }
+    return families;
+  }
+
+  public static void main(String[] args) throws RunnerException {
+
+    Options opt = new OptionsBuilder()
+      .include(RegistrationBenchmark.class.getSimpleName())
+      .warmupIterations(5)
+      .measurementIterations(4)
+      .threads(1)
+      .forks(1)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,79 @@
+package io.prometheus.benchmark;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Reads single samples from a registry holding about 10k series.
+ */
+@State(Scope.Benchmark)
+public class SampleValueBenchmark {
+
+  CollectorRegistry registry;
+  String[] counterLabelNames = new String[]{"path"};
+  String[] counterLabelValues = new String[]{"/path/5000"};
+  String[] bucketLabelNames = new String[]{"path", "le"};
+  String[] bucketLabelValues = new String[]{"/path/500", "0.5"};
+
+  @Setup
+  public void setup() {
+    registry = new CollectorRegistry();
+    Counter counter = Counter.build()
+      .name("requests_total")
+      .help("Total requests.")
+      .labelNames("path")
+      .register(registry);
+    Histogram histogram = Histogram.build()
+      .name("request_latency_seconds")
+      .help("Request latency.")
+      .labelNames("path")
+      .register(registry);
+    for (int i = 0; i < 10000; i++) {
+      counter.labels("/path/" + i).inc(i);
+    }
+    for (int i = 0; i < 1000; i++) {
+      histogram.labels("/path/" + i).observe(i / 1000.0);
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.AverageTime})
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public Double counterSampleValueBenchmark() {
+    return registry.getSampleValue("requests_total", counterLabelNames, counterLabelValues);
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.AverageTime})
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public Double histogramBucketSampleValueBenchmark() {
+    return registry.getSampleValue("request_latency_seconds_bucket", bucketLabelNames, bucketLabelValues);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+
+    Options opt = new OptionsBuilder()
+      .include(SampleValueBenchmark.class.getSimpleName())
+      .warmupIterations(5)
+      .measurementIterations(4)
+      .threads(4)
+      .forks(1)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
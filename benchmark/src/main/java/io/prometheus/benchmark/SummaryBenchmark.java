@@ -28,6 +28,7 @@ public class SummaryBenchmark {
   io.prometheus.client.Summary prometheusSimpleSummaryNoLabels;
   io.prometheus.client.Histogram prometheusSimpleHistogram;
   io.prometheus.client.Histogram.Child prometheusSimpleHistogramChild;
+  io.prometheus.client.Histogram.Child prometheusSimpleHistogramConsistentChild;
   io.prometheus.client.Histogram prometheusSimpleHistogramNoLabels;
 
   @Setup
@@ -55,6 +56,12 @@ public class SummaryBenchmark {
       .labelNames("some", "group").create();
     prometheusSimpleHistogramChild = prometheusSimpleHistogram.labels("test", "group");
 
+    prometheusSimpleHistogramConsistentChild = io.prometheus.client.Histogram.build()
+      .name("name")
+      .help("some description..")
+      .consistentSnapshots()
+      .labelNames("some", "group").create().labels("test", "group");
+
     prometheusSimpleHistogramNoLabels = io.prometheus.client.Histogram.build()
       .name("name")
       .help("some description..")
@@ -113,6 +120,13 @@ public class SummaryBenchmark {
     prometheusSimpleHistogramChild.observe(1);
   }
 
+  @Benchmark
+  @BenchmarkMode({Mode.AverageTime})
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public void prometheusSimpleHistogramConsistentChildBenchmark() {
+    prometheusSimpleHistogramConsistentChild.observe(1);
+  }
+
   @Benchmark
   @BenchmarkMode({Mode.AverageTime})
   @OutputTimeUnit(TimeUnit.NANOSECONDS)
@@ -0,0 +1,106 @@
+package io.prometheus.benchmark;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.exporter.common.TextFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the Writer and the byte-oriented OutputStream variants of the text format,
+ * on a registry of 10k series.
+ */
+@State(Scope.Thread)
+public class TextFormatBenchmark {
+
+  CollectorRegistry registry;
+  ByteArrayOutputStream out;
+
+  @Setup
+  public void setup() {
+    registry = new CollectorRegistry();
+    Counter counter = Counter.build()
+      .name("requests_total")
+      .help("Total requests.")
+      .labelNames("method", "path", "status")
+      .register(registry);
+    Gauge gauge = Gauge.build()
+      .name("queue_size")
+      .help("Size of the queue.")
+      .labelNames("queue")
+      .register(registry);
+    Histogram histogram = Histogram.build()
+      .name("request_latency_seconds")
+      .help("Request latency.")
+      .labelNames("path")
+      .register(registry);
+    for (int i = 0; i < 2000; i++) {
+      counter.labels(i % 2 == 0 ? "GET" : "POST", "/path/" + i, "200").inc(i);
+      gauge.labels("queue-" + i).set(i * 1.5);
+    }
+    for (int i = 0; i < 400; i++) {
+      histogram.labels("/path/" + i).observe(i / 1000.0);
+    }
+    out = new ByteArrayOutputStream(1 << 20);
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.AverageTime})
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int writerBenchmark() throws IOException {
+    out.reset();
+    Writer writer = new OutputStreamWriter(out, "UTF-8");
+    TextFormat.write004(writer, registry.metricFamilySamples());
+    writer.flush();
+    return out.size();
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.AverageTime})
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int outputStreamBenchmark() throws IOException {
+    out.reset();
+    TextFormat.write004(out, registry.metricFamilySamples());
+    return out.size();
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.AverageTime})
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int outputStreamVisitorBenchmark() throws IOException {
+    out.reset();
+    TextFormat.write004(out, registry, Collections.<String>emptySet());
+    return out.size();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+
+    Options opt = new OptionsBuilder()
+      .include(TextFormatBenchmark.class.getSimpleName())
+      .warmupIterations(5)
+      .measurementIterations(4)
+      .threads(1)
+      .forks(1)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,114 @@
+package io.prometheus.benchmark;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.exporter.common.TextFormat;
+import io.prometheus.client.exporter.common.TextFormatParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Parses a payload of about 100k samples, pushing them to a visitor or materializing them.
+ */
+@State(Scope.Thread)
+public class TextFormatParserBenchmark {
+
+  byte[] payload;
+  TextFormatParser parser;
+
+  @Setup
+  public void setup() throws IOException {
+    CollectorRegistry registry = new CollectorRegistry();
+    Counter counter = Counter.build()
+      .name("requests_total")
+      .help("Total requests.")
+      .labelNames("method", "path", "status")
+      .register(registry);
+    Histogram histogram = Histogram.build()
+      .name("request_latency_seconds")
+      .help("Request latency.")
+      .labelNames("path")
+      .register(registry);
+    for (int i = 0; i < 40000; i++) {
+      counter.labels(i % 2 == 0 ? "GET" : "POST", "/path/" + i, "200").inc(i);
+    }
+    for (int i = 0; i < 4000; i++) {
+      histogram.labels("/path/" + i).observe(i / 1000.0);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TextFormat.write004(out, registry.metricFamilySamples());
+    payload = out.toByteArray();
+    parser = new TextFormatParser();
+  }
+
+  static class SummingVisitor extends Collector.SampleVisitor {
+    double sum;
+
+    @Override
+    public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+      return true;
+    }
+
+    @Override
+    public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      sum += value;
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.AverageTime})
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public double visitorStreamBenchmark() throws IOException {
+    SummingVisitor visitor = new SummingVisitor();
+    parser.parse(new ByteArrayInputStream(payload), visitor);
+    return visitor.sum;
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.AverageTime})
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public double visitorByteBufferBenchmark() throws IOException {
+    SummingVisitor visitor = new SummingVisitor();
+    parser.parse(ByteBuffer.wrap(payload), visitor);
+    return visitor.sum;
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.AverageTime})
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public int materializeBenchmark() throws IOException {
+    return parser.parse(new ByteArrayInputStream(payload)).size();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+
+    Options opt = new OptionsBuilder()
+      .include(TextFormatParserBenchmark.class.getSimpleName())
+      .warmupIterations(5)
+      .measurementIterations(4)
+      .threads(1)
+      .forks(1)
+      .build();
+
+    new Runner(opt).run();
+  }
+}
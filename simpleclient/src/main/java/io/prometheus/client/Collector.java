@@ -1,9 +1,10 @@
 
 package io.prometheus.client;
 
-import java.util.List;
-import java.util.ListIterator;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 /**
@@ -20,6 +21,71 @@ public abstract class Collector {
    * Return all of the metrics of this Collector.
    */
   public abstract List<MetricFamilySamples> collect();
+
+  /**
+   * Push all of the metrics of this Collector into the given visitor.
+   * <p>
+   * Unlike {@link #collect()} this does not require materializing every sample, and
+   * collectors that produce many samples should override it to push their values directly.
+   * The default implementation feeds the result of {@link #collect()} to the visitor.
+   */
+  public void collect(SampleVisitor visitor) {
+    for (MetricFamilySamples metricFamilySamples : collect()) {
+      visitor.visit(metricFamilySamples);
+    }
+  }
+
+  /**
+   * Return the metrics of this Collector that have samples with any of the given names,
+   * keeping only those samples. An empty set includes everything.
+   * <p>
+   * Families without any included samples are left out. Collectors that can cheaply skip
+   * producing unwanted samples should override this.
+   * The default implementation filters the result of {@link #collect()}.
+   */
+  public List<MetricFamilySamples> collect(Set<String> includedNames) {
+    List<MetricFamilySamples> mfs = collect();
+    if (includedNames.isEmpty()) {
+      return mfs;
+    }
+    List<MetricFamilySamples> result = new ArrayList<MetricFamilySamples>(mfs.size());
+    for (MetricFamilySamples family : mfs) {
+      MetricFamilySamples filtered = filter(family, includedNames);
+      if (filtered != null) {
+        result.add(filtered);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The family with only the included samples, or null if it has none.
+   * The family itself is returned when all of its samples are included.
+   */
+  static MetricFamilySamples filter(MetricFamilySamples family, Set<String> includedNames) {
+    List<MetricFamilySamples.Sample> samples = family.samples;
+    int size = samples.size();
+    int i = 0;
+    while (i < size && includedNames.contains(samples.get(i).name)) {
+      i++;
+    }
+    if (i == size) {
+      return size == 0 ? null : family;
+    }
+    List<MetricFamilySamples.Sample> included = new ArrayList<MetricFamilySamples.Sample>(size - 1);
+    included.addAll(samples.subList(0, i));
+    for (i++; i < size; i++) {
+      MetricFamilySamples.Sample sample = samples.get(i);
+      if (includedNames.contains(sample.name)) {
+        included.add(sample);
+      }
+    }
+    if (included.isEmpty()) {
+      return null;
+    }
+    return new MetricFamilySamples(family.name, family.type, family.help, family.escapedHelp, included);
+  }
+
   public enum Type {
     COUNTER,
     GAUGE,
@@ -92,7 +158,7 @@ public abstract class Collector {
       public final String name;
       public final List<String> labelNames;
       public final List<String> labelValues;  // Must have same length as labelNames.
-      public final List<String> escapedLabelValues;
+      public final List<String> escapedLabelValues;  // Escaped lazily, see Collector#escapedLabelValues.
       public double value;
       public final Long timestampMs;  // It's an epoch format with milliseconds value included (this field is subject to change).
 
@@ -100,7 +166,7 @@ public abstract class Collector {
         this.name = name;
         this.labelNames = labelNames;
         this.labelValues = labelValues;
-        this.escapedLabelValues =  fillEscapedLabelValues(this.labelValues);       
+        this.escapedLabelValues = escapedLabelValues(labelValues);
         this.value = value;
         this.timestampMs = timestampMs;
       }
@@ -164,6 +230,96 @@ public abstract class Collector {
     return (T)this;
   }
 
+  /**
+   * Receives metrics pushed by {@link Collector#collect(SampleVisitor)}.
+   * <p>
+   * Each metric family is announced with {@link #visitFamily}, followed by its samples.
+   * The lists passed in are owned by the collector and must not be retained or modified.
+   */
+  public static abstract class SampleVisitor {
+    /**
+     * Start a new metric family.
+     *
+     * @return whether the samples of this family are wanted. If false the
+     *         collector may skip reading them.
+     */
+    public abstract boolean visitFamily(String name, Type type, String help, String escapedHelp);
+
+    /**
+     * Start a child of the current metric family, before any of its samples.
+     * <p>
+     * Collectors with labelled children, such as the {@link SimpleCollector}s, call this with the
+     * label names of the family and the label values of the child.
+     *
+     * @return whether the samples of this child may be wanted. If false the
+     *         collector may skip reading them. The default is true.
+     */
+    public boolean visitChild(List<String> labelNames, List<String> labelValues) {
+      return true;
+    }
+
+    /**
+     * A sample of the current metric family.
+     * <p>
+     * If {@code extraLabelName} is not null, it and {@code extraLabelValue} form an additional label
+     * that follows {@code labelNames}, as used for the <code>le</code> label of histograms and the
+     * <code>quantile</code> label of summaries. This saves collectors copying the label lists.
+     */
+    public abstract void visitSample(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value, Long timestampMs);
+
+    /**
+     * A sample of the current metric family, along with the identity of its series.
+     * <p>
+     * The identity is the UTF-8 encoding of the sample name and labels as they appear in the text format,
+     * without the closing brace: <code>name{l1="v1",l2="v2"</code>, or just <code>name</code> if the sample has no labels.
+     * It doesn't change between scrapes, so collectors cache it and text writers can copy it as is.
+     * <p>
+     * The default implementation ignores the identity and calls {@link #visitSample}.
+     */
+    public void visitSeries(byte[] identity, String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value) {
+      visitSample(name, labelNames, labelValues, extraLabelName, extraLabelValue, value, null);
+    }
+
+    /**
+     * Visit an already materialized metric family.
+     */
+    public void visit(MetricFamilySamples metricFamilySamples) {
+      if (visitFamily(metricFamilySamples.name, metricFamilySamples.type, metricFamilySamples.help, metricFamilySamples.escapedHelp)) {
+        for (MetricFamilySamples.Sample sample : metricFamilySamples.samples) {
+          visitSample(sample.name, sample.labelNames, sample.labelValues, null, null, sample.value, sample.timestampMs);
+        }
+      }
+    }
+  }
+
+  /**
+   * Materializes the visited families, as returned by {@link #collect()}.
+   */
+  static class MaterializingVisitor extends SampleVisitor {
+    final List<MetricFamilySamples> families = new ArrayList<MetricFamilySamples>();
+
+    @Override
+    public boolean visitFamily(String name, Type type, String help, String escapedHelp) {
+      families.add(new MetricFamilySamples(name, type, help, escapedHelp, new ArrayList<MetricFamilySamples.Sample>()));
+      return true;
+    }
+
+    @Override
+    public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      if (extraLabelName != null) {
+        labelNames = new ArrayList<String>(labelNames);
+        labelNames.add(extraLabelName);
+        labelValues = new ArrayList<String>(labelValues);
+        labelValues.add(extraLabelValue);
+      }
+      families.get(families.size() - 1).samples.add(
+          new MetricFamilySamples.Sample(name, labelNames, labelValues, value, timestampMs));
+    }
+  }
+
   public interface Describable {
     /**
      *  Provide a list of metric families this Collector is expected to return.
@@ -223,71 +379,90 @@ public abstract class Collector {
    * Escape strings
    */
   protected static String getEscapeHelpString(String helpText) {
-	  
-	  if (helpText != null)
-	  {
-		  if (helpText.length() == 0) {
-			  return "";
-		  }			  
-		  
-		  StringBuffer sb = new StringBuffer(helpText.length()+10);
-		    for (int i = 0; i < helpText.length(); i++) {
-		      char c = helpText.charAt(i);
-		      switch (c) {
-		        case '\\':
-		          sb.append("\\\\");
-		          break;
-		        case '\n':
-		          sb.append("\\n");
-		          break;
-		        default:
-		          sb.append(c);
-		      }
-		    }
-		    return sb.toString();
-	  }
-	  return null;
-		  
+    if (helpText == null) {
+      return null;
+    }
+    int i = 0;
+    while (i < helpText.length() && helpText.charAt(i) != '\\' && helpText.charAt(i) != '\n') {
+      i++;
+    }
+    if (i == helpText.length()) {
+      return helpText;
+    }
+    StringBuilder sb = new StringBuilder(helpText.length() + 10);
+    sb.append(helpText, 0, i);
+    for (; i < helpText.length(); i++) {
+      char c = helpText.charAt(i);
+      switch (c) {
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        default:
+          sb.append(c);
+      }
+    }
+    return sb.toString();
   }
-  
-  private static List<String> fillEscapedLabelValues(List<String>labelValues)
-  {
-	  List<String> escapedLabelVals = new ArrayList<String>(labelValues.size());
-	  
-	  ListIterator<String> iter = labelValues.listIterator();
-	  while (iter.hasNext()) 	  {
-		  String s = iter.next();
-		  if (s == null || s.length() == 0)		  {
-			  escapedLabelVals.add("");
-		  }
-		  else {
-			   escapedLabelVals.add(getEscapedLabelValue(s));
-		  }
-	  }
-	  	  
-	  return escapedLabelVals;
+
+  /**
+   * Return the given label values escaped for the text exposition format.
+   * <p>
+   * Values are escaped when first accessed, so consumers that never look at the escaped values
+   * don't pay for them. The escaped values of {@link SimpleCollector} children are cached on the child.
+   */
+  public static List<String> escapedLabelValues(List<String> labelValues) {
+    if (labelValues instanceof LabelValues) {
+      return ((LabelValues) labelValues).escaped();
+    }
+    if (labelValues.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return new LabelValues.Escaped(labelValues);
+  }
+
+  /**
+   * Escape a label value for the text exposition format.
+   * <p>
+   * Values that don't contain characters needing escaping are returned as is.
+   */
+  public static String escapeLabelValue(String s) {
+    if (s == null) {
+      return "";
+    }
+    int i = 0;
+    while (i < s.length() && !needsEscaping(s.charAt(i))) {
+      i++;
+    }
+    if (i == s.length()) {
+      return s;
+    }
+    StringBuilder sb = new StringBuilder(s.length() + 10);
+    sb.append(s, 0, i);
+    for (; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\"':
+          sb.append("\\\"");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        default:
+          sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static boolean needsEscaping(char c) {
+    return c == '\\' || c == '\"' || c == '\n';
   }
-  
-  private static String getEscapedLabelValue( String s)   {
-	    StringBuffer sb = new StringBuffer(s.length());
-	    for (int i = 0; i < s.length(); i++) {
-	      char c = s.charAt(i);
-	      switch (c) {
-	        case '\\':
-	          sb.append("\\\\");
-	          break;
-	        case '\"':
-	          sb.append("\\\"");
-	          break;
-	        case '\n':
-	          sb.append("\\n");
-	          break;
-	        default:
-	          sb.append(c);
-	      }
-	    }
-	    return sb.toString();
-	  }
 
 
   /**
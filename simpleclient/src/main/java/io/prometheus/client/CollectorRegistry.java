@@ -92,6 +92,25 @@ public class CollectorRegistry {
     }
   }
 
+  /**
+   * A snapshot of the collectors providing any of the given names, or all collectors if none are given.
+   */
+  private Set<Collector> includedCollectors(Set<String> includedNames) {
+    if (includedNames.isEmpty()) {
+      return collectors();
+    }
+    HashSet<Collector> collectors = new HashSet<Collector>();
+    synchronized (namesCollectorsLock) {
+      for (String name : includedNames) {
+        Collector collector = namesToCollectors.get(name);
+        if (collector != null) {
+          collectors.add(collector);
+        }
+      }
+    }
+    return collectors;
+  }
+
   private List<String> collectorNames(Collector m) {
     List<Collector.MetricFamilySamples> mfs;
     if (m instanceof Collector.Describable) {
@@ -141,36 +160,211 @@ public class CollectorRegistry {
     return new MetricFamilySamplesEnumeration(includedNames);
   }
 
+  /**
+   * Push the metrics of all registered collectors into the given visitor.
+   * <p>
+   * This is the allocation-light alternative to {@link #metricFamilySamples()}.
+   */
+  public void collect(Collector.SampleVisitor visitor) {
+    collect(visitor, Collections.<String>emptySet());
+  }
+
+  /**
+   * Push the metrics matching the specified names into the given visitor.
+   * <p>
+   * As with {@link #filteredMetricFamilySamples}, names are matched against the time series name.
+   * Families without any matching samples are not visited.
+   */
+  public void collect(Collector.SampleVisitor visitor, Set<String> includedNames) {
+    Collector.SampleVisitor target = includedNames.isEmpty() ? visitor : new NameFilteringVisitor(visitor, includedNames);
+    for (Collector collector : includedCollectors(includedNames)) {
+      collector.collect(target);
+    }
+  }
+
+  /**
+   * Push the metrics selected by any of the given selectors into the given visitor.
+   * <p>
+   * Selectors are pushed down, so collectors can skip the families and children that can't match.
+   * Families without any selected samples are not visited. No selectors select everything.
+   */
+  public void collect(Collector.SampleVisitor visitor, List<SeriesSelector> selectors) {
+    if (selectors.isEmpty()) {
+      collect(visitor);
+      return;
+    }
+    Set<String> names = new HashSet<String>();
+    for (SeriesSelector selector : selectors) {
+      if (selector.getName() == null) {
+        names.clear();
+        break;
+      }
+      names.add(selector.getName());
+    }
+    Collector.SampleVisitor target = new SelectorFilteringVisitor(visitor, selectors);
+    for (Collector collector : includedCollectors(names)) {
+      collector.collect(target);
+    }
+  }
+
+  /**
+   * Enumeration of metrics selected by any of the given selectors.
+   * <p>
+   * The selected samples are collected up front, see {@link #collect(Collector.SampleVisitor, List)}.
+   */
+  public Enumeration<Collector.MetricFamilySamples> filteredMetricFamilySamples(List<SeriesSelector> selectors) {
+    Collector.MaterializingVisitor visitor = new Collector.MaterializingVisitor();
+    collect(visitor, selectors);
+    return Collections.enumeration(visitor.families);
+  }
+
+  /**
+   * Collect all metrics once, into an immutable snapshot that can be exposed any number of times.
+   */
+  public RegistrySnapshot snapshot() {
+    return RegistrySnapshot.of(this);
+  }
+
+  /**
+   * Passes on the included samples, announcing a family only once it has such a sample.
+   */
+  static abstract class FilteringVisitor extends Collector.SampleVisitor {
+    private final Collector.SampleVisitor delegate;
+    private String name;
+    private Collector.Type type;
+    private String help;
+    private String escapedHelp;
+    private boolean familyPending;
+    private boolean familyWanted;
+
+    FilteringVisitor(Collector.SampleVisitor delegate) {
+      this.delegate = delegate;
+    }
+
+    /**
+     * Whether any sample of the family may be included.
+     */
+    abstract boolean includesFamily(String name, Collector.Type type);
+
+    abstract boolean includes(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue);
+
+    @Override
+    public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+      this.name = name;
+      this.type = type;
+      this.help = help;
+      this.escapedHelp = escapedHelp;
+      this.familyPending = true;
+      this.familyWanted = true;
+      return includesFamily(name, type);
+    }
+
+    @Override
+    public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      if (wanted(name, labelNames, labelValues, extraLabelName, extraLabelValue)) {
+        delegate.visitSample(name, labelNames, labelValues, extraLabelName, extraLabelValue, value, timestampMs);
+      }
+    }
+
+    @Override
+    public void visitSeries(byte[] identity, String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value) {
+      if (wanted(name, labelNames, labelValues, extraLabelName, extraLabelValue)) {
+        delegate.visitSeries(identity, name, labelNames, labelValues, extraLabelName, extraLabelValue, value);
+      }
+    }
+
+    private boolean wanted(String sampleName, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue) {
+      if (!includes(sampleName, labelNames, labelValues, extraLabelName, extraLabelValue)) {
+        return false;
+      }
+      if (familyPending) {
+        familyPending = false;
+        familyWanted = delegate.visitFamily(name, type, help, escapedHelp);
+      }
+      return familyWanted;
+    }
+  }
+
+  static class NameFilteringVisitor extends FilteringVisitor {
+    private final Set<String> includedNames;
+
+    NameFilteringVisitor(Collector.SampleVisitor delegate, Set<String> includedNames) {
+      super(delegate);
+      this.includedNames = includedNames;
+    }
+
+    @Override
+    boolean includesFamily(String name, Collector.Type type) {
+      return true;
+    }
+
+    @Override
+    boolean includes(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue) {
+      return includedNames.contains(name);
+    }
+  }
+
+  static class SelectorFilteringVisitor extends FilteringVisitor {
+    private final List<SeriesSelector> selectors;
+    // The selectors that may match the current family.
+    private final List<SeriesSelector> familySelectors = new ArrayList<SeriesSelector>();
+
+    SelectorFilteringVisitor(Collector.SampleVisitor delegate, List<SeriesSelector> selectors) {
+      super(delegate);
+      this.selectors = selectors;
+    }
+
+    @Override
+    boolean includesFamily(String name, Collector.Type type) {
+      familySelectors.clear();
+      for (SeriesSelector selector : selectors) {
+        if (selector.matchesFamily(name, type)) {
+          familySelectors.add(selector);
+        }
+      }
+      return !familySelectors.isEmpty();
+    }
+
+    @Override
+    public boolean visitChild(List<String> labelNames, List<String> labelValues) {
+      for (SeriesSelector selector : familySelectors) {
+        if (selector.matchesChild(labelNames, labelValues)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    boolean includes(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue) {
+      for (SeriesSelector selector : familySelectors) {
+        if (selector.matches(name, labelNames, labelValues, extraLabelName, extraLabelValue)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
   class MetricFamilySamplesEnumeration implements Enumeration<Collector.MetricFamilySamples> {
 
     private final Iterator<Collector> collectorIter;
     private Iterator<Collector.MetricFamilySamples> metricFamilySamples;
     private Collector.MetricFamilySamples next;
-    private Set<String> includedNames;
+    private final Set<String> includedNames;
 
     MetricFamilySamplesEnumeration(Set<String> includedNames) {
       this.includedNames = includedNames;
-      collectorIter = includedCollectorIterator(includedNames);
+      collectorIter = includedCollectors(includedNames).iterator();
       findNextElement();
     }
 
-    private Iterator<Collector> includedCollectorIterator(Set<String> includedNames) {
-      if (includedNames.isEmpty()) {
-        return collectors().iterator();
-      } else {
-        HashSet<Collector> collectors = new HashSet<Collector>();
-        synchronized (namesCollectorsLock) {
-          for (Map.Entry<String, Collector> entry : namesToCollectors.entrySet()) {
-            if (includedNames.contains(entry.getKey())) {
-              collectors.add(entry.getValue());
-            }
-          }
-        }
-
-        return collectors.iterator();
-      }
-    }
-
     MetricFamilySamplesEnumeration() {
       this(Collections.<String>emptySet());
     }
@@ -178,40 +372,18 @@ public class CollectorRegistry {
     private void findNextElement() {
       next = null;
 
-      while (metricFamilySamples != null && metricFamilySamples.hasNext()) {
-        next = filter(metricFamilySamples.next());
-        if (next != null) {
-          return;
-        }
-      }
-
-      if (next == null) {
-        while (collectorIter.hasNext()) {
-          metricFamilySamples = collectorIter.next().collect().iterator();
-          while (metricFamilySamples.hasNext()) {
-            next = filter(metricFamilySamples.next());
-            if (next != null) {
-              return;
-            }
-          }
-        }
+      if (metricFamilySamples != null && metricFamilySamples.hasNext()) {
+        next = metricFamilySamples.next();
+        return;
       }
-    }
 
-    private Collector.MetricFamilySamples filter(Collector.MetricFamilySamples next) {
-      if (includedNames.isEmpty()) {
-        return next;
-      } else {
-        Iterator<Collector.MetricFamilySamples.Sample> it = next.samples.iterator();
-        while (it.hasNext()) {
-            if (!includedNames.contains(it.next().name)) {
-                it.remove();
-            }
-        }
-        if (next.samples.size() == 0) {
-          return null;
+      // Collectors leave out families without included samples, so there is nothing left to filter.
+      while (collectorIter.hasNext()) {
+        metricFamilySamples = collectorIter.next().collect(includedNames).iterator();
+        if (metricFamilySamples.hasNext()) {
+          next = metricFamilySamples.next();
+          return;
         }
-        return next;
       }
     }
 
@@ -231,8 +403,8 @@ public class CollectorRegistry {
 
   /**
    * Returns the given value, or null if it doesn't exist.
-   * <p>
-   * This is inefficient, and intended only for use in unittests.
+   *
+   * @see #getSampleValue(String, String[], String[])
    */
   public Double getSampleValue(String name) {
     return getSampleValue(name, new String[]{}, new String[]{});
@@ -241,10 +413,29 @@ public class CollectorRegistry {
   /**
    * Returns the given value, or null if it doesn't exist.
    * <p>
-   * This is inefficient, and intended only for use in unittests.
+   * The collector providing the name is looked up directly, and the standard metrics read just the
+   * requested child, so this doesn't collect the registry. Only collectors that are not
+   * {@link Collector.Describable} and were registered without auto-describe require a full collect.
    */
   public Double getSampleValue(String name, String[] labelNames, String[] labelValues) {
-    for (Collector.MetricFamilySamples metricFamilySamples : Collections.list(metricFamilySamples())) {
+    Collector collector;
+    synchronized (namesCollectorsLock) {
+      collector = namesToCollectors.get(name);
+    }
+    if (collector instanceof SimpleCollector) {
+      return ((SimpleCollector<?>) collector).getSampleValue(name, labelNames, labelValues);
+    }
+    if (collector != null) {
+      return sampleValue(collector.collect(Collections.singleton(name)), name, labelNames, labelValues);
+    }
+    return sampleValue(Collections.list(metricFamilySamples()), name, labelNames, labelValues);
+  }
+
+  /**
+   * Find the value of the given sample by scanning the given metrics.
+   */
+  static Double sampleValue(List<Collector.MetricFamilySamples> mfs, String name, String[] labelNames, String[] labelValues) {
+    for (Collector.MetricFamilySamples metricFamilySamples : mfs) {
       for (Collector.MetricFamilySamples.Sample sample : metricFamilySamples.samples) {
         if (sample.name.equals(name)
                 && Arrays.equals(sample.labelNames.toArray(), labelNames)
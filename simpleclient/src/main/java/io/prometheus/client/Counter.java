@@ -163,6 +163,24 @@ public class Counter extends SimpleCollector<Counter.Child> implements Collector
     return familySamplesList(Type.COUNTER, samples);
   }
 
+  @Override
+  Double getSampleValue(String name, String[] labelNames, String[] labelValues) {
+    Child child = name.equals(fullname) ? existingChild(labelNames, labelValues, null) : null;
+    return child == null ? null : child.get();
+  }
+
+  @Override
+  public void collect(SampleVisitor visitor) {
+    if (visitor.visitFamily(fullname, Type.COUNTER, help, escapedHelp)) {
+      for(Map.Entry<List<String>, Child> c: children.entrySet()) {
+        if (!visitor.visitChild(labelNames, c.getKey())) {
+          continue;
+        }
+        visitor.visitSeries(identities(c.getKey())[0], fullname, labelNames, c.getKey(), null, null, c.getValue().get());
+      }
+    }
+  }
+
   @Override
   public List<MetricFamilySamples> describe() {
     return Collections.<MetricFamilySamples>singletonList(new CounterMetricFamily(fullname, help, escapedHelp, labelNames));
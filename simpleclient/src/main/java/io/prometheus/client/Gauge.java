@@ -319,6 +319,24 @@ public class Gauge extends SimpleCollector<Gauge.Child> implements Collector.Des
     return familySamplesList(Type.GAUGE, samples);
   }
 
+  @Override
+  Double getSampleValue(String name, String[] labelNames, String[] labelValues) {
+    Child child = name.equals(fullname) ? existingChild(labelNames, labelValues, null) : null;
+    return child == null ? null : child.get();
+  }
+
+  @Override
+  public void collect(SampleVisitor visitor) {
+    if (visitor.visitFamily(fullname, Type.GAUGE, help, escapedHelp)) {
+      for(Map.Entry<List<String>, Child> c: children.entrySet()) {
+        if (!visitor.visitChild(labelNames, c.getKey())) {
+          continue;
+        }
+        visitor.visitSeries(identities(c.getKey())[0], fullname, labelNames, c.getKey(), null, null, c.getValue().get());
+      }
+    }
+  }
+
   @Override
   public List<MetricFamilySamples> describe() {
     return Collections.<MetricFamilySamples>singletonList(new GaugeMetricFamily(fullname, help, escapedHelp, labelNames));
@@ -1,10 +1,10 @@
 package io.prometheus.client;
 
 import java.io.Closeable;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 /**
@@ -62,15 +62,29 @@ import java.util.concurrent.Callable;
  */
 public class Histogram extends SimpleCollector<Histogram.Child> implements Collector.Describable {
   private final double[] buckets;
+  private final String[] bucketLabels;
+  private final String bucketName;
+  private final String countName;
+  private final String sumName;
+  private final boolean consistentSnapshots;
 
   Histogram(Builder b) {
     super(b);
     buckets = b.buckets;
+    consistentSnapshots = b.consistentSnapshots;
+    bucketLabels = new String[buckets.length];
+    for (int i = 0; i < buckets.length; ++i) {
+      bucketLabels[i] = doubleToGoString(buckets[i]);
+    }
+    bucketName = fullname + "_bucket";
+    countName = fullname + "_count";
+    sumName = fullname + "_sum";
     initializeNoLabelsChild();
   }
 
   public static class Builder extends SimpleCollector.Builder<Builder, Histogram> {
     private double[] buckets = new double[]{.005, .01, .025, .05, .075, .1, .25, .5, .75, 1, 2.5, 5, 7.5, 10};
+    private boolean consistentSnapshots = false;
 
     @Override
     public Histogram create() {
@@ -129,6 +143,17 @@ public class Histogram extends SimpleCollector<Histogram.Child> implements Colle
       return this;
     }
 
+    /**
+     * Make every read of a child a consistent point-in-time snapshot of its buckets and sum.
+     * <p>
+     * By default these are read one after another, so under concurrent observations the sum
+     * may include an observation the buckets don't. Observations stay wait-free, but scrapes
+     * of a child are serialized and wait for the observations in flight.
+     */
+    public Builder consistentSnapshots() {
+      consistentSnapshots = true;
+      return this;
+    }
   }
 
   /**
@@ -150,7 +175,7 @@ public class Histogram extends SimpleCollector<Histogram.Child> implements Colle
 
   @Override
   protected Child newChild() {
-    return new Child(buckets);
+    return new Child(buckets, consistentSnapshots);
   }
 
   /**
@@ -238,22 +263,43 @@ public class Histogram extends SimpleCollector<Histogram.Child> implements Colle
       }
     }
 
-    private Child(double[] buckets) {
+    private Child(double[] buckets, boolean consistentSnapshots) {
       upperBounds = buckets;
-      cumulativeCounts = new DoubleAdder[buckets.length];
-      for (int i = 0; i < buckets.length; ++i) {
-        cumulativeCounts[i] = new DoubleAdder();
+      if (consistentSnapshots) {
+        snapshotBuffer = new SnapshotBuffer(buckets.length);
+        cumulativeCounts = null;
+        sum = null;
+      } else {
+        snapshotBuffer = null;
+        cumulativeCounts = new DoubleAdder[buckets.length];
+        for (int i = 0; i < buckets.length; ++i) {
+          cumulativeCounts[i] = new DoubleAdder();
+        }
+        sum = new DoubleAdder();
       }
     }
     private final double[] upperBounds;
+    // Either the snapshot buffer, or the counts and sum.
+    private final SnapshotBuffer snapshotBuffer;
     private final DoubleAdder[] cumulativeCounts;
-    private final DoubleAdder sum = new DoubleAdder();
+    private final DoubleAdder sum;
 
 
     /**
      * Observe the given amount.
      */
     public void observe(double amt) {
+      if (snapshotBuffer != null) {
+        int bucket = -1;
+        for (int i = 0; i < upperBounds.length; ++i) {
+          if (amt <= upperBounds[i]) {
+            bucket = i;
+            break;
+          }
+        }
+        snapshotBuffer.observe(bucket, amt);
+        return;
+      }
       for (int i = 0; i < upperBounds.length; ++i) {
         // The last bucket is +Inf, so we always increment.
         if (amt <= upperBounds[i]) {
@@ -277,13 +323,28 @@ public class Histogram extends SimpleCollector<Histogram.Child> implements Colle
      * <em>Warning:</em> The definition of {@link Value} is subject to change.
      */
     public Value get() {
-      double[] buckets = new double[cumulativeCounts.length];
-      double acc = 0;
-      for (int i = 0; i < cumulativeCounts.length; ++i) {
-        acc += cumulativeCounts[i].sum();
-        buckets[i] = acc;
+      double[] buckets = new double[upperBounds.length];
+      double sum = snapshot(buckets);
+      return new Value(sum, buckets);
+    }
+
+    /**
+     * Read the cumulative bucket counts into the given array, and return the sum.
+     */
+    double snapshot(double[] buckets) {
+      double sum;
+      if (snapshotBuffer != null) {
+        sum = snapshotBuffer.snapshot(buckets);
+      } else {
+        for (int i = 0; i < cumulativeCounts.length; ++i) {
+          buckets[i] = cumulativeCounts[i].sum();
+        }
+        sum = this.sum.sum();
       }
-      return new Value(sum.sum(), buckets);
+      for (int i = 1; i < buckets.length; ++i) {
+        buckets[i] += buckets[i - 1];
+      }
+      return sum;
     }
   }
 
@@ -325,21 +386,89 @@ public class Histogram extends SimpleCollector<Histogram.Child> implements Colle
 
   @Override
   public List<MetricFamilySamples> collect() {
-    List<MetricFamilySamples.Sample> samples = new ArrayList<MetricFamilySamples.Sample>();
+    return collect(Collections.<String>emptySet());
+  }
+
+  @Override
+  public List<MetricFamilySamples> collect(Set<String> includedNames) {
+    boolean all = includedNames.isEmpty();
+    boolean wantBuckets = all || includedNames.contains(bucketName);
+    boolean wantCount = all || includedNames.contains(countName);
+    boolean wantSum = all || includedNames.contains(sumName);
+    if (!wantBuckets && !wantCount && !wantSum) {
+      return Collections.emptyList();
+    }
+    MaterializingVisitor visitor = new MaterializingVisitor();
+    collect(visitor, wantBuckets, wantCount, wantSum);
+    return visitor.families;
+  }
+
+  @Override
+  Double getSampleValue(String name, String[] labelNames, String[] labelValues) {
+    boolean bucket = name.equals(bucketName);
+    if (!bucket && !name.equals(countName) && !name.equals(sumName)) {
+      return null;
+    }
+    Child child = existingChild(labelNames, labelValues, bucket ? "le" : null);
+    if (child == null) {
+      return null;
+    }
+    double[] cumulative = new double[buckets.length];
+    double sum = child.snapshot(cumulative);
+    if (bucket) {
+      String le = labelValues[labelValues.length - 1];
+      for (int i = 0; i < bucketLabels.length; ++i) {
+        if (bucketLabels[i].equals(le)) {
+          return cumulative[i];
+        }
+      }
+      return null;
+    }
+    return name.equals(countName) ? cumulative[buckets.length - 1] : sum;
+  }
+
+  @Override
+  public void collect(SampleVisitor visitor) {
+    collect(visitor, true, true, true);
+  }
+
+  /**
+   * Push the wanted samples into the given visitor. All the ways to collect go through here.
+   */
+  private void collect(SampleVisitor visitor, boolean wantBuckets, boolean wantCount, boolean wantSum) {
+    if (!visitor.visitFamily(fullname, Type.HISTOGRAM, help, escapedHelp)) {
+      return;
+    }
+    double[] cumulative = new double[buckets.length];
     for(Map.Entry<List<String>, Child> c: children.entrySet()) {
-      Child.Value v = c.getValue().get();
-      List<String> labelNamesWithLe = new ArrayList<String>(labelNames);
-      labelNamesWithLe.add("le");
-      for (int i = 0; i < v.buckets.length; ++i) {
-        List<String> labelValuesWithLe = new ArrayList<String>(c.getKey());
-        labelValuesWithLe.add(doubleToGoString(buckets[i]));
-        samples.add(new MetricFamilySamples.Sample(fullname + "_bucket", labelNamesWithLe, labelValuesWithLe, v.buckets[i]));
+      if (!visitor.visitChild(labelNames, c.getKey())) {
+        continue;
+      }
+      double sum = c.getValue().snapshot(cumulative);
+      byte[][] identities = identities(c.getKey());
+      if (wantBuckets) {
+        for (int i = 0; i < cumulative.length; ++i) {
+          visitor.visitSeries(identities[i], bucketName, labelNames, c.getKey(), "le", bucketLabels[i], cumulative[i]);
+        }
+      }
+      if (wantCount) {
+        visitor.visitSeries(identities[buckets.length], countName, labelNames, c.getKey(), null, null, cumulative[buckets.length - 1]);
+      }
+      if (wantSum) {
+        visitor.visitSeries(identities[buckets.length + 1], sumName, labelNames, c.getKey(), null, null, sum);
       }
-      samples.add(new MetricFamilySamples.Sample(fullname + "_count", labelNames, c.getKey(), v.buckets[buckets.length-1]));
-      samples.add(new MetricFamilySamples.Sample(fullname + "_sum", labelNames, c.getKey(), v.sum));
     }
+  }
 
-    return familySamplesList(Type.HISTOGRAM, samples);
+  @Override
+  byte[][] seriesIdentities(List<String> labelValues) {
+    byte[][] identities = new byte[buckets.length + 2][];
+    for (int i = 0; i < buckets.length; ++i) {
+      identities[i] = identity(bucketName, labelValues, "le", bucketLabels[i]);
+    }
+    identities[buckets.length] = identity(countName, labelValues, null, null);
+    identities[buckets.length + 1] = identity(sumName, labelValues, null, null);
+    return identities;
   }
 
   @Override
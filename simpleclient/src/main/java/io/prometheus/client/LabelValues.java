@@ -0,0 +1,83 @@
+package io.prometheus.client;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The label values of a {@link SimpleCollector} child, used as its key.
+ * <p>
+ * The label values of a child never change, so forms derived from them are cached here
+ * and shared by every scrape for as long as the child exists.
+ */
+final class LabelValues extends AbstractList<String> implements RandomAccess {
+  private final String[] values;
+  private final int hash;
+  private Escaped escaped;
+  byte[][] identities;  // See SimpleCollector#identities.
+
+  LabelValues(String[] values) {
+    this.values = values;
+    int h = 1;
+    for (String value : values) {
+      h = 31 * h + (value == null ? 0 : value.hashCode());
+    }
+    this.hash = h;
+  }
+
+  @Override
+  public String get(int index) {
+    return values[index];
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  /**
+   * The escaped label values, escaped on first use.
+   */
+  List<String> escaped() {
+    // Racy initialization is fine, at worst a value is escaped twice.
+    Escaped e = escaped;
+    if (e == null) {
+      e = new Escaped(this);
+      escaped = e;
+    }
+    return e;
+  }
+
+  /**
+   * A view of label values, escaping each value on first access.
+   */
+  static final class Escaped extends AbstractList<String> implements RandomAccess {
+    private final List<String> values;
+    private final String[] cache;
+
+    Escaped(List<String> values) {
+      this.values = values;
+      this.cache = new String[values.size()];
+    }
+
+    @Override
+    public String get(int index) {
+      String e = cache[index];
+      if (e == null) {
+        e = Collector.escapeLabelValue(values.get(index));
+        cache[index] = e;
+      }
+      return e;
+    }
+
+    @Override
+    public int size() {
+      return cache.length;
+    }
+  }
+}
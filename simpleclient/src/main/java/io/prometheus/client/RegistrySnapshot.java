@@ -0,0 +1,302 @@
+package io.prometheus.client;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable point-in-time copy of all the samples of a {@link CollectorRegistry}.
+ * <p>
+ * Collecting is paid for once when the snapshot is taken, after which it can be exposed any
+ * number of times, by any number of exporters. Samples are kept in flat arrays rather than as
+ * {@link Collector.MetricFamilySamples}, and the cached series identities of the standard metrics
+ * are kept, so replaying a snapshot into the text format is as cheap as collecting.
+ * <p>
+ * See {@link SnapshotRegistry} to share snapshots between exporters.
+ */
+public final class RegistrySnapshot {
+  private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+  private final long timestampMs;
+
+  private final String[] familyNames;
+  private final Collector.Type[] familyTypes;
+  private final String[] familyHelps;
+  private final String[] familyEscapedHelps;
+  // The index of the first sample of the next family.
+  private final int[] familyEnds;
+
+  private final String[] sampleNames;
+  private final double[] values;
+  private final long[] timestampsMs;
+  private final byte[][] identities;
+  // The index of the first label of the next sample.
+  private final int[] labelEnds;
+
+  private final String[] labelNames;
+  private final String[] labelValues;
+
+  private RegistrySnapshot(Builder b) {
+    timestampMs = b.timestampMs;
+    familyNames = Arrays.copyOf(b.familyNames, b.families);
+    familyTypes = Arrays.copyOf(b.familyTypes, b.families);
+    familyHelps = Arrays.copyOf(b.familyHelps, b.families);
+    familyEscapedHelps = Arrays.copyOf(b.familyEscapedHelps, b.families);
+    familyEnds = Arrays.copyOf(b.familyEnds, b.families);
+    sampleNames = Arrays.copyOf(b.sampleNames, b.samples);
+    values = Arrays.copyOf(b.values, b.samples);
+    timestampsMs = Arrays.copyOf(b.timestampsMs, b.samples);
+    identities = Arrays.copyOf(b.identities, b.samples);
+    labelEnds = Arrays.copyOf(b.labelEnds, b.samples);
+    labelNames = Arrays.copyOf(b.labelNames, b.labels);
+    labelValues = Arrays.copyOf(b.labelValues, b.labels);
+  }
+
+  /**
+   * Take a snapshot of the given registry.
+   */
+  static RegistrySnapshot of(CollectorRegistry registry) {
+    Builder b = new Builder(System.currentTimeMillis());
+    registry.collect(b);
+    b.endFamily();
+    return new RegistrySnapshot(b);
+  }
+
+  /**
+   * The time the snapshot was taken at, in milliseconds since the epoch.
+   */
+  public long getTimestampMs() {
+    return timestampMs;
+  }
+
+  /**
+   * The number of samples in the snapshot.
+   */
+  public int size() {
+    return sampleNames.length;
+  }
+
+  /**
+   * Push the samples of the snapshot into the given visitor.
+   * <p>
+   * Labels are passed in {@code labelNames} and {@code labelValues}, never as an extra label.
+   */
+  public void collect(Collector.SampleVisitor visitor) {
+    LabelView names = new LabelView(labelNames);
+    LabelView values = new LabelView(labelValues);
+    int sample = 0;
+    for (int f = 0; f < familyNames.length; f++) {
+      if (!visitor.visitFamily(familyNames[f], familyTypes[f], familyHelps[f], familyEscapedHelps[f])) {
+        sample = familyEnds[f];
+        continue;
+      }
+      for (; sample < familyEnds[f]; sample++) {
+        int start = sample == 0 ? 0 : labelEnds[sample - 1];
+        names.set(start, labelEnds[sample]);
+        values.set(start, labelEnds[sample]);
+        long timestamp = timestampsMs[sample];
+        if (identities[sample] != null && timestamp == NO_TIMESTAMP) {
+          visitor.visitSeries(identities[sample], sampleNames[sample], names, values, null, null, this.values[sample]);
+        } else {
+          visitor.visitSample(sampleNames[sample], names, values, null, null, this.values[sample],
+              timestamp == NO_TIMESTAMP ? null : timestamp);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the value of the given sample, or null if the snapshot doesn't have it.
+   * <p>
+   * The samples are scanned in place, without building any {@link Collector.MetricFamilySamples}.
+   */
+  public Double getSampleValue(String name, String[] labelNames, String[] labelValues) {
+    for (int sample = 0; sample < sampleNames.length; sample++) {
+      if (!sampleNames[sample].equals(name)) {
+        continue;
+      }
+      int start = sample == 0 ? 0 : labelEnds[sample - 1];
+      if (labelEnds[sample] - start != labelNames.length || labelNames.length != labelValues.length) {
+        continue;
+      }
+      boolean matches = true;
+      for (int i = 0; i < labelNames.length && matches; i++) {
+        matches = this.labelNames[start + i].equals(labelNames[i]) && this.labelValues[start + i].equals(labelValues[i]);
+      }
+      if (matches) {
+        return values[sample];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Enumeration of the metrics in the snapshot.
+   * <p>
+   * Each call builds new {@link Collector.MetricFamilySamples}, family by family.
+   */
+  public Enumeration<Collector.MetricFamilySamples> metricFamilySamples() {
+    return new Enumeration<Collector.MetricFamilySamples>() {
+      int family = 0;
+
+      public boolean hasMoreElements() {
+        return family < familyNames.length;
+      }
+
+      public Collector.MetricFamilySamples nextElement() {
+        if (family >= familyNames.length) {
+          throw new NoSuchElementException();
+        }
+        return familySamples(family++);
+      }
+    };
+  }
+
+  private Collector.MetricFamilySamples familySamples(int f) {
+    int start = f == 0 ? 0 : familyEnds[f - 1];
+    List<Collector.MetricFamilySamples.Sample> samples = new ArrayList<Collector.MetricFamilySamples.Sample>(familyEnds[f] - start);
+    for (int sample = start; sample < familyEnds[f]; sample++) {
+      int labelStart = sample == 0 ? 0 : labelEnds[sample - 1];
+      List<String> names = Arrays.asList(Arrays.copyOfRange(labelNames, labelStart, labelEnds[sample]));
+      List<String> values = Arrays.asList(Arrays.copyOfRange(labelValues, labelStart, labelEnds[sample]));
+      long timestamp = timestampsMs[sample];
+      samples.add(new Collector.MetricFamilySamples.Sample(sampleNames[sample], names, values, this.values[sample],
+          timestamp == NO_TIMESTAMP ? null : timestamp));
+    }
+    return new Collector.MetricFamilySamples(familyNames[f], familyTypes[f], familyHelps[f], familyEscapedHelps[f], samples);
+  }
+
+  /**
+   * A reusable read-only view of a range of a label array.
+   */
+  private static class LabelView extends AbstractList<String> {
+    private final String[] array;
+    private int start;
+    private int size;
+
+    LabelView(String[] array) {
+      this.array = array;
+    }
+
+    void set(int start, int end) {
+      this.start = start;
+      this.size = end - start;
+    }
+
+    @Override
+    public String get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+      return array[start + index];
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  /**
+   * Copies visited samples into growing arrays.
+   */
+  private static class Builder extends Collector.SampleVisitor {
+    final long timestampMs;
+
+    int families;
+    String[] familyNames = new String[16];
+    Collector.Type[] familyTypes = new Collector.Type[16];
+    String[] familyHelps = new String[16];
+    String[] familyEscapedHelps = new String[16];
+    int[] familyEnds = new int[16];
+
+    int samples;
+    String[] sampleNames = new String[256];
+    double[] values = new double[256];
+    long[] timestampsMs = new long[256];
+    byte[][] identities = new byte[256][];
+    int[] labelEnds = new int[256];
+
+    int labels;
+    String[] labelNames = new String[1024];
+    String[] labelValues = new String[1024];
+
+    Builder(long timestampMs) {
+      this.timestampMs = timestampMs;
+    }
+
+    @Override
+    public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+      endFamily();
+      if (families == familyNames.length) {
+        int capacity = families * 2;
+        familyNames = Arrays.copyOf(familyNames, capacity);
+        familyTypes = Arrays.copyOf(familyTypes, capacity);
+        familyHelps = Arrays.copyOf(familyHelps, capacity);
+        familyEscapedHelps = Arrays.copyOf(familyEscapedHelps, capacity);
+        familyEnds = Arrays.copyOf(familyEnds, capacity);
+      }
+      familyNames[families] = name;
+      familyTypes[families] = type;
+      familyHelps[families] = help;
+      familyEscapedHelps[families] = escapedHelp;
+      // Marks the family as open, see endFamily.
+      familyEnds[families] = -1;
+      families++;
+      return true;
+    }
+
+    void endFamily() {
+      if (families > 0 && familyEnds[families - 1] == -1) {
+        familyEnds[families - 1] = samples;
+      }
+    }
+
+    @Override
+    public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      add(null, name, labelNames, labelValues, extraLabelName, extraLabelValue, value,
+          timestampMs == null ? NO_TIMESTAMP : timestampMs);
+    }
+
+    @Override
+    public void visitSeries(byte[] identity, String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value) {
+      add(identity, name, labelNames, labelValues, extraLabelName, extraLabelValue, value, NO_TIMESTAMP);
+    }
+
+    private void add(byte[] identity, String name, List<String> names, List<String> values,
+        String extraLabelName, String extraLabelValue, double value, long timestampMs) {
+      if (samples == sampleNames.length) {
+        int capacity = samples * 2;
+        sampleNames = Arrays.copyOf(sampleNames, capacity);
+        this.values = Arrays.copyOf(this.values, capacity);
+        timestampsMs = Arrays.copyOf(timestampsMs, capacity);
+        identities = Arrays.copyOf(identities, capacity);
+        labelEnds = Arrays.copyOf(labelEnds, capacity);
+      }
+      int count = names.size() + (extraLabelName != null ? 1 : 0);
+      if (labels + count > labelNames.length) {
+        int capacity = Math.max(labelNames.length * 2, labels + count);
+        labelNames = Arrays.copyOf(labelNames, capacity);
+        labelValues = Arrays.copyOf(labelValues, capacity);
+      }
+      for (int i = 0; i < names.size(); i++) {
+        labelNames[labels] = names.get(i);
+        labelValues[labels++] = values.get(i);
+      }
+      if (extraLabelName != null) {
+        labelNames[labels] = extraLabelName;
+        labelValues[labels++] = extraLabelValue;
+      }
+      sampleNames[samples] = name;
+      this.values[samples] = value;
+      timestampsMs[samples] = timestampMs;
+      identities[samples] = identity;
+      labelEnds[samples++] = labels;
+    }
+  }
+}
@@ -0,0 +1,322 @@
+package io.prometheus.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Selects time series by name and labels, such as <code>http_requests_total{tenant="a",path=~"/api/.*"}</code>.
+ * <p>
+ * The syntax is that of Prometheus series selectors, with the <code>=</code>, <code>!=</code>,
+ * <code>=~</code> and <code>!~</code> matchers. Regular expressions are fully anchored, and a label
+ * a series doesn't have matches as the empty string.
+ * As with {@link CollectorRegistry#filteredMetricFamilySamples(java.util.Set)}, the name is matched
+ * against the time series name, so <code>h_count</code> selects only the counts of histogram <code>h</code>.
+ * <p>
+ * Selectors are pushed down to collectors, see {@link Collector.SampleVisitor#visitChild}.
+ * <p>
+ * Regular expressions are matched with {@link Pattern}, which backtracks: a crafted expression such as
+ * <code>(a+)+$</code> can take exponential time on some label values. Selectors are limited to
+ * {@value #MAX_MATCHERS} matchers and regular expressions to {@value #MAX_PATTERN_LENGTH} characters,
+ * which bounds the expressions but not their cost, so exporters should only accept <code>=~</code> and
+ * <code>!~</code> matchers from trusted scrapers.
+ */
+public final class SeriesSelector {
+  /**
+   * The maximum number of label matchers of a selector.
+   */
+  public static final int MAX_MATCHERS = 32;
+  /**
+   * The maximum length of the regular expression of a matcher.
+   */
+  public static final int MAX_PATTERN_LENGTH = 1024;
+
+  private static final String NAME_LABEL = "__name__";
+
+  private final String name;
+  private final String[] labelNames;
+  private final String[] operators;
+  private final String[] values;
+  private final Pattern[] patterns;
+  private final String text;
+
+  private SeriesSelector(String name, List<String> labelNames, List<String> operators, List<String> values) {
+    if (labelNames.size() > MAX_MATCHERS) {
+      throw new IllegalArgumentException("Series selectors have at most " + MAX_MATCHERS + " matchers, got " + labelNames.size());
+    }
+    this.name = name;
+    this.labelNames = labelNames.toArray(new String[0]);
+    this.operators = operators.toArray(new String[0]);
+    this.values = values.toArray(new String[0]);
+    this.patterns = new Pattern[this.values.length];
+    for (int i = 0; i < patterns.length; i++) {
+      if (this.operators[i].endsWith("~")) {
+        if (this.values[i].length() > MAX_PATTERN_LENGTH) {
+          throw new IllegalArgumentException("Regular expression for label " + this.labelNames[i]
+              + " is longer than " + MAX_PATTERN_LENGTH + " characters");
+        }
+        try {
+          patterns[i] = Pattern.compile(this.values[i]);
+        } catch (PatternSyntaxException e) {
+          throw new IllegalArgumentException("Invalid regular expression for label " + this.labelNames[i] + ": " + e.getMessage());
+        }
+      }
+    }
+    this.text = render();
+  }
+
+  /**
+   * Parse a series selector.
+   *
+   * @throws IllegalArgumentException if the selector is invalid
+   */
+  public static SeriesSelector parse(String selector) {
+    return new Parser(selector).parse();
+  }
+
+  /**
+   * A selector of just the given time series name, as given to <code>name[]</code>.
+   */
+  public static SeriesSelector forName(String name) {
+    List<String> none = Collections.emptyList();
+    return new SeriesSelector(name, none, none, none);
+  }
+
+  /**
+   * The selected time series name, or null if any name is selected.
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Whether any series of the given family could be selected.
+   */
+  boolean matchesFamily(String familyName, Collector.Type type) {
+    if (name == null) {
+      return true;
+    }
+    if (name.equals(familyName)) {
+      return true;
+    }
+    switch (type) {
+      case HISTOGRAM:
+        if (name.equals(familyName + "_bucket")) {
+          return true;
+        }
+        // Fall through.
+      case SUMMARY:
+        return name.equals(familyName + "_count") || name.equals(familyName + "_sum");
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Whether any series of a child with the given labels could be selected.
+   * <p>
+   * Only the matchers on the given labels are checked, as the series may add a
+   * <code>le</code> or <code>quantile</code> label.
+   */
+  boolean matchesChild(List<String> labelNames, List<String> labelValues) {
+    for (int i = 0; i < this.labelNames.length; i++) {
+      int idx = labelNames.indexOf(this.labelNames[i]);
+      if (idx != -1 && !matches(i, labelValues.get(idx))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether the given series is selected.
+   */
+  boolean matches(String seriesName, List<String> labelNames, List<String> labelValues,
+      String extraLabelName, String extraLabelValue) {
+    if (name != null && !name.equals(seriesName)) {
+      return false;
+    }
+    for (int i = 0; i < this.labelNames.length; i++) {
+      String label = this.labelNames[i];
+      String value;
+      if (label.equals(NAME_LABEL)) {
+        value = seriesName;
+      } else if (label.equals(extraLabelName)) {
+        value = extraLabelValue;
+      } else {
+        int idx = labelNames.indexOf(label);
+        value = idx == -1 ? "" : labelValues.get(idx);
+      }
+      if (!matches(i, value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean matches(int i, String value) {
+    String op = operators[i];
+    if (op.equals("=")) {
+      return values[i].equals(value);
+    } else if (op.equals("!=")) {
+      return !values[i].equals(value);
+    } else if (op.equals("=~")) {
+      return patterns[i].matcher(value).matches();
+    } else {
+      return !patterns[i].matcher(value).matches();
+    }
+  }
+
+  private String render() {
+    StringBuilder sb = new StringBuilder();
+    if (name != null) {
+      sb.append(name);
+    }
+    if (labelNames.length > 0) {
+      sb.append('{');
+      for (int i = 0; i < labelNames.length; i++) {
+        if (i > 0) {
+          sb.append(',');
+        }
+        sb.append(labelNames[i]).append(operators[i]).append('"')
+            .append(Collector.escapeLabelValue(values[i])).append('"');
+      }
+      sb.append('}');
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof SeriesSelector && ((SeriesSelector) o).text.equals(text);
+  }
+
+  @Override
+  public int hashCode() {
+    return text.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  private static class Parser {
+    private final String s;
+    private int pos;
+
+    Parser(String s) {
+      this.s = s;
+    }
+
+    SeriesSelector parse() {
+      skipWhitespace();
+      String name = null;
+      if (pos < s.length() && s.charAt(pos) != '{') {
+        name = identifier(true);
+      }
+      List<String> labelNames = new ArrayList<String>();
+      List<String> operators = new ArrayList<String>();
+      List<String> values = new ArrayList<String>();
+      skipWhitespace();
+      if (pos < s.length() && s.charAt(pos) == '{') {
+        pos++;
+        skipWhitespace();
+        while (peek() != '}') {
+          labelNames.add(identifier(false));
+          skipWhitespace();
+          operators.add(operator());
+          skipWhitespace();
+          values.add(string());
+          skipWhitespace();
+          if (peek() == ',') {
+            pos++;
+            skipWhitespace();
+          } else if (peek() != '}') {
+            throw error("Expected ',' or '}'");
+          }
+        }
+        pos++;
+        skipWhitespace();
+      }
+      if (pos != s.length()) {
+        throw error("Unexpected character");
+      }
+      if (name == null && labelNames.isEmpty()) {
+        throw error("Expected a name or label matchers");
+      }
+      return new SeriesSelector(name, labelNames, operators, values);
+    }
+
+    private char peek() {
+      if (pos >= s.length()) {
+        throw error("Unexpected end");
+      }
+      return s.charAt(pos);
+    }
+
+    private void skipWhitespace() {
+      while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+        pos++;
+      }
+    }
+
+    private String identifier(boolean metricName) {
+      int start = pos;
+      while (pos < s.length()) {
+        char c = s.charAt(pos);
+        boolean valid = c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+            || (pos > start && c >= '0' && c <= '9') || (metricName && c == ':');
+        if (!valid) {
+          break;
+        }
+        pos++;
+      }
+      if (pos == start) {
+        throw error(metricName ? "Expected a metric name" : "Expected a label name");
+      }
+      return s.substring(start, pos);
+    }
+
+    private String operator() {
+      if (s.startsWith("=~", pos) || s.startsWith("!=", pos) || s.startsWith("!~", pos)) {
+        pos += 2;
+        return s.substring(pos - 2, pos);
+      }
+      if (s.startsWith("=", pos)) {
+        pos++;
+        return "=";
+      }
+      throw error("Expected one of =, !=, =~ or !~");
+    }
+
+    private String string() {
+      char quote = peek();
+      if (quote != '"' && quote != '\'') {
+        throw error("Expected a quoted label value");
+      }
+      pos++;
+      StringBuilder sb = new StringBuilder();
+      while (true) {
+        char c = peek();
+        pos++;
+        if (c == quote) {
+          return sb.toString();
+        }
+        if (c == '\\') {
+          char escaped = peek();
+          pos++;
+          sb.append(escaped == 'n' ? '\n' : escaped);
+        } else {
+          sb.append(c);
+        }
+      }
+    }
+
+    private IllegalArgumentException error(String message) {
+      return new IllegalArgumentException(message + " at position " + pos + " of series selector: " + s);
+    }
+  }
+}
@@ -1,9 +1,11 @@
 package io.prometheus.client;
 
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -69,14 +71,18 @@ public abstract class SimpleCollector<Child> extends Collector {
         throw new IllegalArgumentException("Label cannot be null.");
       }
     }
-    List<String> key = Arrays.asList(labelValues);
-    Child c = children.get(key);
+    Child c = children.get(Arrays.asList(labelValues));
     if (c != null) {
       return c;
     }
     Child c2 = newChild();
+    LabelValues key = new LabelValues(labelValues.clone());
     Child tmp = children.putIfAbsent(key, c2);
-    return tmp == null ? c2 : tmp;
+    if (tmp != null) {
+      return tmp;
+    }
+    identities(key);
+    return c2;
   }
 
   /**
@@ -136,7 +142,7 @@ public abstract class SimpleCollector<Child> extends Collector {
     if (labelValues.length != labelNames.size()) {
       throw new IllegalArgumentException("Incorrect number of labels.");
     }
-    children.put(Arrays.asList(labelValues), child);
+    children.put(new LabelValues(labelValues.clone()), child);
     return (T)this;
   }
 
@@ -145,6 +151,94 @@ public abstract class SimpleCollector<Child> extends Collector {
    */
   protected abstract Child newChild();
 
+  /**
+   * Return the identities of the series of the child with the given label values, in the order they are visited.
+   * <p>
+   * They are computed when the child is created and cached alongside it.
+   * See {@link Collector.SampleVisitor#visitSeries}.
+   */
+  byte[][] identities(List<String> labelValues) {
+    if (!(labelValues instanceof LabelValues)) {
+      return seriesIdentities(labelValues);
+    }
+    LabelValues key = (LabelValues) labelValues;
+    // Racy initialization is fine, at worst the identities are computed twice.
+    byte[][] identities = key.identities;
+    if (identities == null) {
+      identities = seriesIdentities(key);
+      key.identities = identities;
+    }
+    return identities;
+  }
+
+  /**
+   * Compute the identities of the series of a child. Collectors with more than one series per child override this.
+   */
+  byte[][] seriesIdentities(List<String> labelValues) {
+    return new byte[][]{identity(fullname, labelValues, null, null)};
+  }
+
+  /**
+   * The UTF-8 encoded <code>name{l1="v1",l2="v2"</code> of a series.
+   */
+  byte[] identity(String name, List<String> labelValues, String extraLabelName, String extraLabelValue) {
+    StringBuilder sb = new StringBuilder(name);
+    if (labelNames.size() > 0 || extraLabelName != null) {
+      sb.append('{');
+      for (int i = 0; i < labelNames.size(); ++i) {
+        if (i > 0) {
+          sb.append(',');
+        }
+        sb.append(labelNames.get(i)).append("=\"").append(escapeLabelValue(labelValues.get(i))).append('"');
+      }
+      if (extraLabelName != null) {
+        if (labelNames.size() > 0) {
+          sb.append(',');
+        }
+        sb.append(extraLabelName).append("=\"").append(escapeLabelValue(extraLabelValue)).append('"');
+      }
+    }
+    try {
+      return sb.toString().getBytes("UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);  // Unreachable.
+    }
+  }
+
+  /**
+   * Return the value of the given sample, or null if it doesn't exist.
+   * <p>
+   * The standard metrics override this to read only the requested child.
+   * See {@link CollectorRegistry#getSampleValue(String, String[], String[])}.
+   */
+  Double getSampleValue(String name, String[] labelNames, String[] labelValues) {
+    return CollectorRegistry.sampleValue(collect(Collections.singleton(name)), name, labelNames, labelValues);
+  }
+
+  /**
+   * Return the existing child a sample with the given labels belongs to, or null.
+   * <p>
+   * If {@code extraLabelName} is not null, the sample must have it as its last label,
+   * as with the <code>le</code> label of histograms.
+   */
+  Child existingChild(String[] labelNames, String[] labelValues, String extraLabelName) {
+    int size = this.labelNames.size();
+    int extra = extraLabelName == null ? 0 : 1;
+    if (labelNames.length != size + extra || labelValues.length != size + extra) {
+      return null;
+    }
+    for (int i = 0; i < size; ++i) {
+      if (!labelNames[i].equals(this.labelNames.get(i))) {
+        return null;
+      }
+    }
+    if (extra == 1 && !labelNames[size].equals(extraLabelName)) {
+      return null;
+    }
+    List<String> key = Arrays.asList(labelValues);
+    return children.get(extra == 1 ? key.subList(0, size) : key);
+  }
+
   protected List<MetricFamilySamples> familySamplesList(Collector.Type type, List<MetricFamilySamples.Sample> samples) {
     MetricFamilySamples mfs = new MetricFamilySamples(fullname, type, help, escapedHelp, samples);
     List<MetricFamilySamples> mfsList = new ArrayList<MetricFamilySamples>(1);
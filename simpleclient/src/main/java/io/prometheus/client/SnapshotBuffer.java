@@ -0,0 +1,76 @@
+package io.prometheus.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bucketed observation counts and their sum, which can be read as a consistent point-in-time snapshot.
+ * <p>
+ * There are two buffers. Observations go to the hot one, chosen by the top bit of a counter that is
+ * incremented as each observation starts. A reader flips that bit, which leaves the other buffer cold
+ * as of that instant, waits for the observations already started on it to complete, reads it, and
+ * folds it into the new hot buffer. Writers never wait or retry; readers are serialized and wait only
+ * for the writes that were in flight when they flipped the buffers.
+ * <p>
+ * This is the scheme used by the Go client's histograms.
+ */
+final class SnapshotBuffer {
+  private static final long HOT_BIT = Long.MIN_VALUE;
+
+  private static class Buffer {
+    final DoubleAdder[] counts;
+    final DoubleAdder sum = new DoubleAdder();
+    // Completed observations, including those folded in from the other buffer.
+    final AtomicLong completed = new AtomicLong();
+
+    Buffer(int buckets) {
+      counts = new DoubleAdder[buckets];
+      for (int i = 0; i < buckets; ++i) {
+        counts[i] = new DoubleAdder();
+      }
+    }
+  }
+
+  // The top bit selects the hot buffer, the others count the observations started.
+  private final AtomicLong startedAndHotIndex = new AtomicLong();
+  private final Buffer[] buffers;
+
+  SnapshotBuffer(int buckets) {
+    buffers = new Buffer[]{new Buffer(buckets), new Buffer(buckets)};
+  }
+
+  /**
+   * Observe the given amount in the given bucket, or only in the sum if the bucket is negative.
+   */
+  void observe(int bucket, double amt) {
+    long n = startedAndHotIndex.getAndIncrement();
+    Buffer hot = buffers[(int) (n >>> 63)];
+    if (bucket >= 0) {
+      hot.counts[bucket].add(1);
+    }
+    hot.sum.add(amt);
+    hot.completed.incrementAndGet();
+  }
+
+  /**
+   * Read the count of each bucket into the given array, and return the sum.
+   */
+  synchronized double snapshot(double[] counts) {
+    // Adding the top bit flips it.
+    long n = startedAndHotIndex.getAndAdd(HOT_BIT);
+    long started = n & ~HOT_BIT;
+    Buffer cold = buffers[(int) (n >>> 63)];
+    Buffer hot = buffers[(int) (n >>> 63) ^ 1];
+    while (cold.completed.get() != started) {
+      Thread.yield();
+    }
+    for (int i = 0; i < counts.length; ++i) {
+      counts[i] = cold.counts[i].sumThenReset();
+      hot.counts[i].add(counts[i]);
+    }
+    double sum = cold.sum.sumThenReset();
+    hot.sum.add(sum);
+    cold.completed.set(0);
+    hot.completed.addAndGet(started);
+    return sum;
+  }
+}
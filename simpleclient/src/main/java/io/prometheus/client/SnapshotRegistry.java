@@ -0,0 +1,164 @@
+package io.prometheus.client;
+
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A registry exposing snapshots of another registry, taken at most once per interval.
+ * <p>
+ * Pass it to every exporter in place of the registry it wraps, and the collectors are evaluated
+ * once per interval no matter how many exporters read it, or how often:
+ * <pre>
+ * {@code
+ *   SnapshotRegistry snapshots = new SnapshotRegistry(CollectorRegistry.defaultRegistry, 60, TimeUnit.SECONDS);
+ *   new HTTPServer(new InetSocketAddress(1234), snapshots);
+ *   new Graphite("localhost", 2003).start(snapshots, 60);
+ *   new PushGateway("localhost:9091").pushAdd(snapshots, "my_job");
+ * }
+ * </pre>
+ * The first read after the interval has passed takes a new snapshot, concurrent reads wait for it.
+ * <p>
+ * <b>Registering, unregistering and clearing act on the wrapped registry</b>, so that code handed this
+ * registry can still register its collectors. Their metrics appear from the next snapshot on.
+ */
+public class SnapshotRegistry extends CollectorRegistry {
+  private final CollectorRegistry registry;
+  private final long maxAgeNanos;
+  private final Object refreshLock = new Object();
+  private volatile RegistrySnapshot snapshot;
+  private volatile long snapshotNanos;
+
+  /**
+   * Construct a SnapshotRegistry for the given registry, reusing each snapshot for up to the given time.
+   */
+  public SnapshotRegistry(CollectorRegistry registry, long maxAge, TimeUnit unit) {
+    if (maxAge < 0) {
+      throw new IllegalArgumentException("maxAge cannot be " + maxAge);
+    }
+    this.registry = registry;
+    this.maxAgeNanos = unit.toNanos(maxAge);
+  }
+
+  /**
+   * Return the current snapshot, taking a new one if it is older than the interval.
+   */
+  @Override
+  public RegistrySnapshot snapshot() {
+    RegistrySnapshot current = snapshot;
+    if (current != null && !expired()) {
+      return current;
+    }
+    synchronized (refreshLock) {
+      if (snapshot == null || expired()) {
+        refresh();
+      }
+      return snapshot;
+    }
+  }
+
+  private boolean expired() {
+    return SimpleTimer.defaultTimeProvider.nanoTime() - snapshotNanos >= maxAgeNanos;
+  }
+
+  /**
+   * Take a new snapshot now, regardless of the age of the current one.
+   */
+  public RegistrySnapshot refresh() {
+    synchronized (refreshLock) {
+      long start = SimpleTimer.defaultTimeProvider.nanoTime();
+      RegistrySnapshot current = registry.snapshot();
+      snapshotNanos = start;
+      snapshot = current;
+      return current;
+    }
+  }
+
+  @Override
+  public Enumeration<Collector.MetricFamilySamples> metricFamilySamples() {
+    return snapshot().metricFamilySamples();
+  }
+
+  @Override
+  public Enumeration<Collector.MetricFamilySamples> filteredMetricFamilySamples(final Set<String> includedNames) {
+    final Enumeration<Collector.MetricFamilySamples> mfs = metricFamilySamples();
+    if (includedNames.isEmpty()) {
+      return mfs;
+    }
+    return new Enumeration<Collector.MetricFamilySamples>() {
+      Collector.MetricFamilySamples next = findNext();
+
+      private Collector.MetricFamilySamples findNext() {
+        while (mfs.hasMoreElements()) {
+          Collector.MetricFamilySamples filtered = Collector.filter(mfs.nextElement(), includedNames);
+          if (filtered != null) {
+            return filtered;
+          }
+        }
+        return null;
+      }
+
+      public boolean hasMoreElements() {
+        return next != null;
+      }
+
+      public Collector.MetricFamilySamples nextElement() {
+        Collector.MetricFamilySamples current = next;
+        if (current == null) {
+          throw new NoSuchElementException();
+        }
+        next = findNext();
+        return current;
+      }
+    };
+  }
+
+  @Override
+  public void collect(Collector.SampleVisitor visitor) {
+    snapshot().collect(visitor);
+  }
+
+  @Override
+  public void collect(Collector.SampleVisitor visitor, Set<String> includedNames) {
+    snapshot().collect(includedNames.isEmpty() ? visitor : new NameFilteringVisitor(visitor, includedNames));
+  }
+
+  @Override
+  public void collect(Collector.SampleVisitor visitor, List<SeriesSelector> selectors) {
+    snapshot().collect(selectors.isEmpty() ? visitor : new SelectorFilteringVisitor(visitor, selectors));
+  }
+
+  /**
+   * Returns the value of the given sample in the current snapshot, or null if it doesn't exist.
+   */
+  @Override
+  public Double getSampleValue(String name, String[] labelNames, String[] labelValues) {
+    return snapshot().getSampleValue(name, labelNames, labelValues);
+  }
+
+  /**
+   * Register the collector with the wrapped registry.
+   */
+  @Override
+  public void register(Collector m) {
+    registry.register(m);
+  }
+
+  /**
+   * Unregister the collector from the wrapped registry.
+   */
+  @Override
+  public void unregister(Collector m) {
+    registry.unregister(m);
+  }
+
+  /**
+   * Unregister all collectors from the wrapped registry.
+   */
+  @Override
+  public void clear() {
+    registry.clear();
+  }
+}
@@ -7,8 +7,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
+import java.util.SortedSet;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
@@ -83,12 +86,32 @@ public class Summary extends SimpleCollector<Summary.Child> implements Counter.D
   final List<Quantile> quantiles; // Can be empty, but can never be null.
   final long maxAgeSeconds;
   final int ageBuckets;
+  private final boolean consistentSnapshots;
+  private final double[] sortedQuantiles;
+  private final String[] quantileLabels;
+  private final String countName;
+  private final String sumName;
 
   Summary(Builder b) {
     super(b);
     quantiles = Collections.unmodifiableList(new ArrayList<Quantile>(b.quantiles));
     this.maxAgeSeconds = b.maxAgeSeconds;
     this.ageBuckets = b.ageBuckets;
+    this.consistentSnapshots = b.consistentSnapshots;
+    // Exposed in ascending order without duplicates, as in Child.Value.
+    SortedSet<Double> distinct = new TreeSet<Double>();
+    for (Quantile q : quantiles) {
+      distinct.add(q.quantile);
+    }
+    sortedQuantiles = new double[distinct.size()];
+    quantileLabels = new String[distinct.size()];
+    int i = 0;
+    for (Double q : distinct) {
+      sortedQuantiles[i] = q;
+      quantileLabels[i++] = doubleToGoString(q);
+    }
+    countName = fullname + "_count";
+    sumName = fullname + "_sum";
     initializeNoLabelsChild();
   }
 
@@ -97,6 +120,7 @@ public class Summary extends SimpleCollector<Summary.Child> implements Counter.D
     private final List<Quantile> quantiles = new ArrayList<Quantile>();
     private long maxAgeSeconds = TimeUnit.MINUTES.toSeconds(10);
     private int ageBuckets = 5;
+    private boolean consistentSnapshots = false;
 
     public Builder quantile(double quantile, double error) {
       if (quantile < 0.0 || quantile > 1.0) {
@@ -125,6 +149,19 @@ public class Summary extends SimpleCollector<Summary.Child> implements Counter.D
       return this;
     }
 
+    /**
+     * Make every read of a child a consistent point-in-time snapshot of its count and sum.
+     * <p>
+     * By default these are read one after another, so under concurrent observations the sum
+     * may include an observation the count doesn't. Observations stay wait-free, but scrapes
+     * of a child are serialized and wait for the observations in flight. Quantiles are not
+     * part of the snapshot.
+     */
+    public Builder consistentSnapshots() {
+      consistentSnapshots = true;
+      return this;
+    }
+
     @Override
     public Summary create() {
       for (String label : labelNames) {
@@ -156,7 +193,7 @@ public class Summary extends SimpleCollector<Summary.Child> implements Counter.D
 
   @Override
   protected Child newChild() {
-    return new Child(quantiles, maxAgeSeconds, ageBuckets);
+    return new Child(quantiles, maxAgeSeconds, ageBuckets, consistentSnapshots);
   }
 
 
@@ -255,16 +292,25 @@ public class Summary extends SimpleCollector<Summary.Child> implements Counter.D
       }
     }
 
-    // Having these separate leaves us open to races,
-    // however Prometheus as whole has other races
-    // that mean adding atomicity here wouldn't be useful.
-    // This should be reevaluated in the future.
-    private final DoubleAdder count = new DoubleAdder();
-    private final DoubleAdder sum = new DoubleAdder();
+    // Having these separate leaves us open to races, unless consistent
+    // snapshots were asked for, in which case the snapshot buffer is used.
+    // The quantiles are never part of the snapshot.
+    private final DoubleAdder count;
+    private final DoubleAdder sum;
+    private final SnapshotBuffer snapshotBuffer;
     private final List<Quantile> quantiles;
     private final TimeWindowQuantiles quantileValues;
 
-    private Child(List<Quantile> quantiles, long maxAgeSeconds, int ageBuckets) {
+    private Child(List<Quantile> quantiles, long maxAgeSeconds, int ageBuckets, boolean consistentSnapshots) {
+      if (consistentSnapshots) {
+        snapshotBuffer = new SnapshotBuffer(1);
+        count = null;
+        sum = null;
+      } else {
+        snapshotBuffer = null;
+        count = new DoubleAdder();
+        sum = new DoubleAdder();
+      }
       this.quantiles = quantiles;
       if (quantiles.size() > 0) {
         quantileValues = new TimeWindowQuantiles(quantiles.toArray(new Quantile[]{}), maxAgeSeconds, ageBuckets);
@@ -277,8 +323,12 @@ public class Summary extends SimpleCollector<Summary.Child> implements Counter.D
      * Observe the given amount.
      */
     public void observe(double amt) {
-      count.add(1);
-      sum.add(amt);
+      if (snapshotBuffer != null) {
+        snapshotBuffer.observe(0, amt);
+      } else {
+        count.add(1);
+        sum.add(amt);
+      }
       if (quantileValues != null) {
         quantileValues.insert(amt);
       }
@@ -297,7 +347,20 @@ public class Summary extends SimpleCollector<Summary.Child> implements Counter.D
      * <em>Warning:</em> The definition of {@link Value} is subject to change.
      */
     public Value get() {
-      return new Value(count.sum(), sum.sum(), quantiles, quantileValues);
+      double[] count = new double[1];
+      double sum = snapshot(count);
+      return new Value(count[0], sum, quantiles, quantileValues);
+    }
+
+    /**
+     * Read the count into the given array, and return the sum.
+     */
+    double snapshot(double[] count) {
+      if (snapshotBuffer != null) {
+        return snapshotBuffer.snapshot(count);
+      }
+      count[0] = this.count.sum();
+      return sum.sum();
     }
   }
 
@@ -348,21 +411,94 @@ public class Summary extends SimpleCollector<Summary.Child> implements Counter.D
 
   @Override
   public List<MetricFamilySamples> collect() {
-    List<MetricFamilySamples.Sample> samples = new ArrayList<MetricFamilySamples.Sample>();
+    return collect(Collections.<String>emptySet());
+  }
+
+  @Override
+  public List<MetricFamilySamples> collect(Set<String> includedNames) {
+    boolean all = includedNames.isEmpty();
+    boolean wantQuantiles = all || includedNames.contains(fullname);
+    boolean wantCount = all || includedNames.contains(countName);
+    boolean wantSum = all || includedNames.contains(sumName);
+    if (!wantQuantiles && !wantCount && !wantSum) {
+      return Collections.emptyList();
+    }
+    MaterializingVisitor visitor = new MaterializingVisitor();
+    collect(visitor, wantQuantiles, wantCount, wantSum);
+    return visitor.families;
+  }
+
+  @Override
+  Double getSampleValue(String name, String[] labelNames, String[] labelValues) {
+    boolean quantile = name.equals(fullname);
+    if (!quantile && !name.equals(countName) && !name.equals(sumName)) {
+      return null;
+    }
+    Child child = existingChild(labelNames, labelValues, quantile ? "quantile" : null);
+    if (child == null) {
+      return null;
+    }
+    if (quantile) {
+      String q = labelValues[labelValues.length - 1];
+      for (int i = 0; i < quantileLabels.length; ++i) {
+        if (quantileLabels[i].equals(q)) {
+          return child.quantileValues.get(sortedQuantiles[i]);
+        }
+      }
+      return null;
+    }
+    double[] count = new double[1];
+    double sum = child.snapshot(count);
+    return name.equals(countName) ? count[0] : sum;
+  }
+
+  @Override
+  public void collect(SampleVisitor visitor) {
+    collect(visitor, true, true, true);
+  }
+
+  /**
+   * Push the wanted samples into the given visitor. All the ways to collect go through here.
+   */
+  private void collect(SampleVisitor visitor, boolean wantQuantiles, boolean wantCount, boolean wantSum) {
+    if (!visitor.visitFamily(fullname, Type.SUMMARY, help, escapedHelp)) {
+      return;
+    }
+    double[] count = new double[1];
     for(Map.Entry<List<String>, Child> c: children.entrySet()) {
-      Child.Value v = c.getValue().get();
-      List<String> labelNamesWithQuantile = new ArrayList<String>(labelNames);
-      labelNamesWithQuantile.add("quantile");
-      for(Map.Entry<Double, Double> q : v.quantiles.entrySet()) {
-        List<String> labelValuesWithQuantile = new ArrayList<String>(c.getKey());
-        labelValuesWithQuantile.add(doubleToGoString(q.getKey()));
-        samples.add(new MetricFamilySamples.Sample(fullname, labelNamesWithQuantile, labelValuesWithQuantile, q.getValue()));
+      if (!visitor.visitChild(labelNames, c.getKey())) {
+        continue;
+      }
+      Child child = c.getValue();
+      byte[][] identities = identities(c.getKey());
+      // Computing quantiles is the expensive part, only do it when they are asked for.
+      if (wantQuantiles) {
+        for (int i = 0; i < quantileLabels.length; ++i) {
+          visitor.visitSeries(identities[i], fullname, labelNames, c.getKey(), "quantile", quantileLabels[i],
+              child.quantileValues.get(sortedQuantiles[i]));
+        }
+      }
+      if (wantCount || wantSum) {
+        double sum = child.snapshot(count);
+        if (wantCount) {
+          visitor.visitSeries(identities[quantileLabels.length], countName, labelNames, c.getKey(), null, null, count[0]);
+        }
+        if (wantSum) {
+          visitor.visitSeries(identities[quantileLabels.length + 1], sumName, labelNames, c.getKey(), null, null, sum);
+        }
       }
-      samples.add(new MetricFamilySamples.Sample(fullname + "_count", labelNames, c.getKey(), v.count));
-      samples.add(new MetricFamilySamples.Sample(fullname + "_sum", labelNames, c.getKey(), v.sum));
     }
+  }
 
-    return familySamplesList(Type.SUMMARY, samples);
+  @Override
+  byte[][] seriesIdentities(List<String> labelValues) {
+    byte[][] identities = new byte[quantileLabels.length + 2][];
+    for (int i = 0; i < quantileLabels.length; ++i) {
+      identities[i] = identity(fullname, labelValues, "quantile", quantileLabels[i]);
+    }
+    identities[quantileLabels.length] = identity(countName, labelValues, null, null);
+    identities[quantileLabels.length + 1] = identity(sumName, labelValues, null, null);
+    return identities;
   }
 
   @Override
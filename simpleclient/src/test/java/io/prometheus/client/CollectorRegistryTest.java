@@ -11,6 +11,7 @@ import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
 
 public class CollectorRegistryTest {
@@ -96,6 +97,199 @@ public class CollectorRegistryTest {
     assertEquals(new HashSet<String>(Arrays.asList("s_sum", "c", "part_filter_a", "part_filter_c")), series);
   }
 
+  @Test
+  public void testMetricFamilySamples_filterNamesLeavesCollectorSamplesAlone() {
+    final List<Collector.MetricFamilySamples.Sample> samples = Collections.unmodifiableList(Arrays.asList(
+        new Collector.MetricFamilySamples.Sample("s", Arrays.asList("quantile"), Arrays.asList("0.5"), 1),
+        new Collector.MetricFamilySamples.Sample("s_count", Collections.<String>emptyList(), Collections.<String>emptyList(), 2),
+        new Collector.MetricFamilySamples.Sample("s_sum", Collections.<String>emptyList(), Collections.<String>emptyList(), 3)));
+    new SummaryCollector(samples).register(registry);
+
+    List<Collector.MetricFamilySamples> mfs = Collections.list(registry.filteredMetricFamilySamples(
+        new HashSet<String>(Arrays.asList("s", "s_sum"))));
+    assertEquals(1, mfs.size());
+    assertEquals(Arrays.asList(samples.get(0), samples.get(2)), mfs.get(0).samples);
+    assertEquals(3, samples.size());
+  }
+
+  @Test
+  public void testMetricFamilySamples_filterNamesSkipsUnwantedSeries() {
+    Histogram h = Histogram.build().name("h").help("h").labelNames("l").register(registry);
+    h.labels("a").observe(1);
+    h.labels("b").observe(2);
+    Summary s = Summary.build().name("s").help("h").quantile(0.5, 0.05).register(registry);
+    s.observe(3);
+
+    List<Collector.MetricFamilySamples> mfs = Collections.list(registry.filteredMetricFamilySamples(
+        new HashSet<String>(Arrays.asList("h_count", "s_sum"))));
+    assertEquals(2, mfs.size());
+    for (Collector.MetricFamilySamples metricFamilySamples : mfs) {
+      if (metricFamilySamples.name.equals("h")) {
+        assertEquals(2, metricFamilySamples.samples.size());
+        for (Collector.MetricFamilySamples.Sample sample : metricFamilySamples.samples) {
+          assertEquals("h_count", sample.name);
+          assertEquals(1.0, sample.value, .001);
+        }
+      } else {
+        assertEquals(Arrays.asList(new Collector.MetricFamilySamples.Sample("s_sum",
+            Collections.<String>emptyList(), Collections.<String>emptyList(), 3)), metricFamilySamples.samples);
+      }
+    }
+  }
+
+  /**
+   * Rebuilds MetricFamilySamples from visited samples, for comparison with collect().
+   */
+  static class MaterializingVisitor extends Collector.SampleVisitor {
+    final List<Collector.MetricFamilySamples> mfs = new ArrayList<Collector.MetricFamilySamples>();
+    List<Collector.MetricFamilySamples.Sample> samples;
+
+    @Override
+    public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+      samples = new ArrayList<Collector.MetricFamilySamples.Sample>();
+      mfs.add(new Collector.MetricFamilySamples(name, type, help, samples));
+      return true;
+    }
+
+    @Override
+    public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      labelNames = new ArrayList<String>(labelNames);
+      labelValues = new ArrayList<String>(labelValues);
+      if (extraLabelName != null) {
+        labelNames.add(extraLabelName);
+        labelValues.add(extraLabelValue);
+      }
+      samples.add(new Collector.MetricFamilySamples.Sample(name, labelNames, labelValues, value, timestampMs));
+    }
+  }
+
+  @Test
+  public void testCollectVisitorMatchesMetricFamilySamples() {
+    Gauge.build().name("g").help("h").labelNames("l").register(registry).labels("a").set(1);
+    Counter.build().name("c").help("h").register(registry).inc(2);
+    Summary.build().name("s").help("h").quantile(0.9, 0.01).quantile(0.5, 0.05).labelNames("l")
+        .register(registry).labels("b").observe(3);
+    Histogram.build().name("hi").help("h").labelNames("l").buckets(1, 2)
+        .register(registry).labels("c").observe(1.5);
+    new MyCollector().register(registry);
+
+    MaterializingVisitor visitor = new MaterializingVisitor();
+    registry.collect(visitor);
+    assertEquals(new HashSet<Collector.MetricFamilySamples>(Collections.list(registry.metricFamilySamples())),
+        new HashSet<Collector.MetricFamilySamples>(visitor.mfs));
+  }
+
+  @Test
+  public void testCollectVisitor_filterNames() {
+    Gauge.build().name("g").help("h").register(registry);
+    Counter.build().name("c").help("h").register(registry);
+    Summary.build().name("s").help("h").register(registry);
+    PartiallyFilterCollector pfr = new PartiallyFilterCollector().register(registry);
+
+    MaterializingVisitor visitor = new MaterializingVisitor();
+    registry.collect(visitor, new HashSet<String>(Arrays.asList("", "s_sum", "c", "part_filter_a")));
+    HashSet<String> metrics = new HashSet<String>();
+    HashSet<String> series = new HashSet<String>();
+    for (Collector.MetricFamilySamples metricFamilySamples : visitor.mfs) {
+      metrics.add(metricFamilySamples.name);
+      for (Collector.MetricFamilySamples.Sample sample : metricFamilySamples.samples) {
+        series.add(sample.name);
+      }
+    }
+    assertEquals(new HashSet<String>(Arrays.asList("s", "c", "part_filter_a")), metrics);
+    assertEquals(new HashSet<String>(Arrays.asList("s_sum", "c", "part_filter_a")), series);
+  }
+
+  @Test
+  public void testCollectVisitor_selectorsSkipChildren() {
+    Gauge g = Gauge.build().name("g").help("h").labelNames("tenant").register(registry);
+    final int[] reads = new int[1];
+    for (String tenant : new String[]{"a", "b", "c"}) {
+      g.setChild(new Gauge.Child() {
+        @Override
+        public double get() {
+          reads[0]++;
+          return 1;
+        }
+      }, tenant);
+    }
+    Histogram h = Histogram.build().name("h").help("h").labelNames("tenant").buckets(1).register(registry);
+    h.labels("a").observe(0.5);
+    h.labels("b").observe(0.5);
+    Counter.build().name("c").help("h").register(registry);
+
+    MaterializingVisitor visitor = new MaterializingVisitor();
+    registry.collect(visitor, Arrays.asList(SeriesSelector.parse("g{tenant=\"a\"}"),
+        SeriesSelector.parse("h_bucket{tenant=~\"a|b\",le=\"+Inf\"}")));
+    assertEquals(1, reads[0]);
+    HashSet<String> series = new HashSet<String>();
+    for (Collector.MetricFamilySamples metricFamilySamples : visitor.mfs) {
+      for (Collector.MetricFamilySamples.Sample sample : metricFamilySamples.samples) {
+        series.add(sample.name + sample.labelValues);
+      }
+    }
+    assertEquals(new HashSet<String>(Arrays.asList("g[a]", "h_bucket[a, +Inf]", "h_bucket[b, +Inf]")), series);
+
+    List<Collector.MetricFamilySamples> mfs = Collections.list(registry.filteredMetricFamilySamples(
+        Arrays.asList(SeriesSelector.parse("{tenant=\"b\"}"))));
+    assertEquals(2, reads[0]);
+    int samples = 0;
+    for (Collector.MetricFamilySamples metricFamilySamples : mfs) {
+      for (Collector.MetricFamilySamples.Sample sample : metricFamilySamples.samples) {
+        assertEquals("b", sample.labelValues.get(0));
+        samples++;
+      }
+    }
+    // One gauge, and two buckets, count and sum of the histogram.
+    assertEquals(5, samples);
+  }
+
+  @Test
+  public void testGetSampleValueReadsChildDirectly() {
+    Counter c = Counter.build().name("c").help("h").labelNames("l").register(registry);
+    Histogram h = Histogram.build().name("h").help("h").labelNames("l").buckets(1).register(registry);
+    Summary s = Summary.build().name("s").help("h").labelNames("l").quantile(0.5, 0.01).register(registry);
+    c.labels("a").inc(2);
+    h.labels("a").observe(0.5);
+    h.labels("a").observe(3);
+    s.labels("a").observe(7);
+    String[] l = new String[]{"l"};
+    String[] a = new String[]{"a"};
+
+    assertEquals(2.0, registry.getSampleValue("c", l, a), .001);
+    assertEquals(1.0, registry.getSampleValue("h_bucket", new String[]{"l", "le"}, new String[]{"a", "1.0"}), .001);
+    assertEquals(2.0, registry.getSampleValue("h_bucket", new String[]{"l", "le"}, new String[]{"a", "+Inf"}), .001);
+    assertEquals(2.0, registry.getSampleValue("h_count", l, a), .001);
+    assertEquals(3.5, registry.getSampleValue("h_sum", l, a), .001);
+    assertEquals(7.0, registry.getSampleValue("s", new String[]{"l", "quantile"}, new String[]{"a", "0.5"}), .001);
+    assertEquals(1.0, registry.getSampleValue("s_count", l, a), .001);
+    assertEquals(7.0, registry.getSampleValue("s_sum", l, a), .001);
+
+    // Lookups don't create children.
+    assertNull(registry.getSampleValue("c", l, new String[]{"b"}));
+    assertEquals(1, c.children.size());
+    assertNull(registry.getSampleValue("c", new String[]{"x"}, a));
+    assertNull(registry.getSampleValue("c", new String[]{}, new String[]{}));
+    assertNull(registry.getSampleValue("h_bucket", new String[]{"l", "le"}, new String[]{"a", "2.0"}));
+    assertNull(registry.getSampleValue("h_bucket", l, a));
+    assertNull(registry.getSampleValue("s", new String[]{"l", "quantile"}, new String[]{"a", "0.9"}));
+    assertNull(registry.getSampleValue("missing", l, a));
+  }
+
+  @Test
+  public void testGetSampleValueFromCustomCollectors() {
+    // Not described, so only found by collecting everything.
+    new MyCollector().register(registry);
+    // Described, so found through the name index.
+    List<String> none = Collections.emptyList();
+    registry.register(new SummaryCollector(Arrays.asList(
+        new Collector.MetricFamilySamples.Sample("s_count", none, none, 2))));
+    assertEquals(42.0, registry.getSampleValue("g"), .001);
+    assertEquals(2.0, registry.getSampleValue("s_count"), .001);
+    assertNull(registry.getSampleValue("s_sum"));
+  }
+
   @Test
   public void testEmptyRegistryHasNoMoreElements() {
     assertFalse(registry.metricFamilySamples().hasMoreElements());
@@ -179,6 +373,24 @@ public class CollectorRegistryTest {
     }
   }
 
+  private static class SummaryCollector extends Collector implements Collector.Describable {
+    private final List<MetricFamilySamples.Sample> samples;
+
+    SummaryCollector(List<MetricFamilySamples.Sample> samples) {
+      this.samples = samples;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+      return Collections.singletonList(new MetricFamilySamples("s", Type.SUMMARY, "help", samples));
+    }
+
+    @Override
+    public List<MetricFamilySamples> describe() {
+      return collect();
+    }
+  }
+
   private static class PartiallyFilterCollector extends Collector implements Collector.Describable {
     public int collectCallCount = 0;
 
@@ -2,6 +2,9 @@ package io.prometheus.client;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class CollectorTest {
@@ -11,4 +14,24 @@ public class CollectorTest {
       assertEquals("foo_bar0", Collector.sanitizeMetricName("foo.bar0"));
       assertEquals(":baz::", Collector.sanitizeMetricName(":baz::"));
   }
+
+  @Test
+  public void escapeLabelValue() {
+    String plain = "ąćčęntěd plain";
+    assertSame(plain, Collector.escapeLabelValue(plain));
+    assertEquals("a\\nb\\\\c\\\"d", Collector.escapeLabelValue("a\nb\\c\"d"));
+    assertEquals("", Collector.escapeLabelValue(null));
+  }
+
+  @Test
+  public void escapedLabelValuesAreCachedOnChild() {
+    CollectorRegistry registry = new CollectorRegistry();
+    Gauge g = Gauge.build().name("g").help("h").labelNames("l").register(registry);
+    g.labels("a\"b").inc();
+    List<String> first = g.collect().get(0).samples.get(0).escapedLabelValues;
+    List<String> second = g.collect().get(0).samples.get(0).escapedLabelValues;
+    assertEquals(Arrays.asList("a\\\"b"), first);
+    assertSame(first, second);
+    assertSame(first.get(0), second.get(0));
+  }
 }
@@ -7,6 +7,7 @@ import static org.junit.Assert.assertTrue;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
 import org.junit.After;
@@ -201,6 +202,20 @@ public class HistogramTest {
     assertEquals(mfsFixture, mfs.get(0));
   }
 
+  @Test
+  public void testCollectIncludedNames() {
+    labels.labels("a").observe(2);
+    List<Collector.MetricFamilySamples> mfs = labels.collect(Collections.singleton("labels_count"));
+
+    List<Collector.MetricFamilySamples.Sample> samples = Collections.singletonList(
+        new Collector.MetricFamilySamples.Sample("labels_count", Collections.singletonList("l"), Collections.singletonList("a"), 1.0));
+    Collector.MetricFamilySamples mfsFixture = new Collector.MetricFamilySamples("labels", Collector.Type.HISTOGRAM, "help", samples);
+
+    assertEquals(1, mfs.size());
+    assertEquals(mfsFixture, mfs.get(0));
+    assertEquals(0, labels.collect(Collections.singleton("labels")).size());
+  }
+
   @Test
   public void testChildAndValuePublicApi() throws Exception {
     assertTrue(Modifier.isPublic(Histogram.Child.class.getModifiers()));
@@ -214,4 +229,42 @@ public class HistogramTest {
     assertTrue(Modifier.isPublic(Histogram.Child.Value.class.getField("buckets").getModifiers()));
   }
 
+  @Test
+  public void testConsistentSnapshots() throws InterruptedException {
+    final Histogram h = Histogram.build().name("consistent").help("help").buckets(1, 2)
+        .consistentSnapshots().register(registry);
+    final int threads = 4;
+    final int observations = 50000;
+    List<Thread> writers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      Thread writer = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < observations; i++) {
+            h.observe(i % 2 == 0 ? 1 : 3);
+          }
+        }
+      };
+      writer.start();
+      writers.add(writer);
+    }
+    boolean running = true;
+    while (running) {
+      running = false;
+      for (Thread writer : writers) {
+        running |= writer.isAlive();
+      }
+      Histogram.Child.Value v = h.labels().get();
+      // Every observation of 1 is in the first bucket, every observation of 3 only in the +Inf one.
+      assertEquals(v.buckets[0] + 3 * (v.buckets[2] - v.buckets[0]), v.sum, 0);
+      assertEquals(v.buckets[0], v.buckets[1], 0);
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    assertEquals(threads * observations, registry.getSampleValue("consistent_count"), 0);
+    assertEquals(threads * observations * 2, registry.getSampleValue("consistent_sum"), 0);
+    assertEquals(threads * observations / 2, registry.getSampleValue("consistent_bucket",
+        new String[]{"le"}, new String[]{"1.0"}), 0);
+  }
 }
@@ -0,0 +1,99 @@
+package io.prometheus.client;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RegistrySnapshotTest {
+
+  CollectorRegistry registry;
+
+  @Before
+  public void setUp() {
+    registry = new CollectorRegistry();
+    Counter c = Counter.build().name("c").help("help").labelNames("l").register(registry);
+    c.labels("a").inc();
+    c.labels("b").inc(2);
+    Gauge.build().name("g").help("help").register(registry).set(3);
+    Histogram.build().name("h").help("help").buckets(1).register(registry).observe(0.5);
+    Summary.build().name("s").help("help").labelNames("l").quantile(0.5, 0.05).register(registry).labels("x").observe(4);
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        return Collections.singletonList(new MetricFamilySamples("t", Type.UNTYPED, "help", Arrays.asList(
+            new MetricFamilySamples.Sample("t", Arrays.asList("k"), Arrays.asList("v"), 5, 1234L))));
+      }
+    }.register(registry);
+  }
+
+  @Test
+  public void testMetricFamilySamplesMatchRegistry() {
+    RegistrySnapshot snapshot = registry.snapshot();
+    assertEquals(Collections.list(registry.metricFamilySamples()).toString(),
+        Collections.list(snapshot.metricFamilySamples()).toString());
+    // 2 counter, 1 gauge, 2 buckets and count and sum, 1 quantile and count and sum, 1 custom.
+    assertEquals(11, snapshot.size());
+  }
+
+  @Test
+  public void testSnapshotIsPointInTime() {
+    RegistrySnapshot snapshot = registry.snapshot();
+    Gauge.build().name("later").help("help").register(registry);
+    registry.collect(new Collector.SampleVisitor() {
+      @Override
+      public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+        return true;
+      }
+
+      @Override
+      public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+          String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      }
+    });
+    for (Collector.MetricFamilySamples mfs : Collections.list(snapshot.metricFamilySamples())) {
+      assertFalse(mfs.name.equals("later"));
+    }
+  }
+
+  @Test
+  public void testCollectReplaysIdentitiesAndTimestamps() {
+    final List<String> seen = new ArrayList<String>();
+    registry.snapshot().collect(new Collector.SampleVisitor() {
+      @Override
+      public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+        return !name.equals("s");
+      }
+
+      @Override
+      public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+          String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+        seen.add(name + labelNames + labelValues + timestampMs);
+      }
+
+      @Override
+      public void visitSeries(byte[] identity, String name, List<String> labelNames, List<String> labelValues,
+          String extraLabelName, String extraLabelValue, double value) {
+        assertEquals(null, extraLabelName);
+        try {
+          String id = new String(identity, "UTF-8");
+          seen.add(id);
+          assertTrue(id, id.startsWith(name));
+        } catch (java.io.UnsupportedEncodingException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    assertTrue(seen.toString(), seen.contains("t[k][v]1234"));
+    assertTrue(seen.toString(), seen.contains("h_bucket{le=\"1.0\""));
+    assertTrue(seen.toString(), seen.contains("c{l=\"b\""));
+    assertEquals(8, seen.size());
+  }
+}
@@ -0,0 +1,106 @@
+package io.prometheus.client;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SeriesSelectorTest {
+  private static final List<String> LABELS = Arrays.asList("tenant", "path");
+
+  private boolean matches(String selector, String name, String tenant, String path) {
+    return SeriesSelector.parse(selector).matches(name, LABELS, Arrays.asList(tenant, path), null, null);
+  }
+
+  @Test
+  public void testParse() {
+    assertEquals("a", SeriesSelector.parse("a").toString());
+    assertEquals("a", SeriesSelector.parse(" a {} ").toString());
+    assertEquals("a:b{x=\"1\",y!=\"2\",z=~\"3\",w!~\"4\"}",
+        SeriesSelector.parse("a:b{ x = \"1\", y!='2',z=~\"3\" ,w!~\"4\",}").toString());
+    assertEquals("{x=\"a\\\"b\\\\c\\nd\"}", SeriesSelector.parse("{x=\"a\\\"b\\\\c\\nd\"}").toString());
+    assertNull(SeriesSelector.parse("{x=\"1\"}").getName());
+    assertEquals(SeriesSelector.parse("a{x='1'}"), SeriesSelector.parse("a{x=\"1\"}"));
+    assertEquals(SeriesSelector.forName("a"), SeriesSelector.parse("a"));
+  }
+
+  @Test
+  public void testParseErrors() {
+    String[] invalid = {"", "{}", "1a", "a{", "a{x}", "a{x=1}", "a{x=\"1\"", "a{x==\"1\"}", "a{x=\"1\" y=\"2\"}",
+        "a b", "a{x=~\"(\"}", "a{1=\"1\"}"};
+    for (String selector : invalid) {
+      try {
+        SeriesSelector.parse(selector);
+        fail("Expected IllegalArgumentException for " + selector);
+      } catch (IllegalArgumentException e) {
+      }
+    }
+  }
+
+  @Test
+  public void testLimits() {
+    StringBuilder pattern = new StringBuilder();
+    for (int i = 0; i < SeriesSelector.MAX_PATTERN_LENGTH; i++) {
+      pattern.append('a');
+    }
+    SeriesSelector.parse("{x=~\"" + pattern + "\"}");
+    // Plain values are not limited.
+    SeriesSelector.parse("{x=\"" + pattern + "a\"}");
+    StringBuilder matchers = new StringBuilder("{");
+    for (int i = 0; i < SeriesSelector.MAX_MATCHERS; i++) {
+      matchers.append("x").append(i).append("=\"1\",");
+    }
+    SeriesSelector.parse(matchers + "}");
+
+    String[] invalid = {"{x=~\"" + pattern + "a\"}", "{x!~\"" + pattern + "a\"}", matchers + "y=\"1\"}"};
+    for (String selector : invalid) {
+      try {
+        SeriesSelector.parse(selector);
+        fail("Expected IllegalArgumentException");
+      } catch (IllegalArgumentException e) {
+      }
+    }
+  }
+
+  @Test
+  public void testMatches() {
+    assertTrue(matches("requests", "requests", "a", "/"));
+    assertFalse(matches("requests", "other", "a", "/"));
+    assertTrue(matches("{tenant=\"a\"}", "requests", "a", "/"));
+    assertFalse(matches("{tenant=\"a\"}", "requests", "b", "/"));
+    assertTrue(matches("requests{tenant!=\"b\",path=~\"/api/.*\"}", "requests", "a", "/api/x"));
+    assertFalse(matches("requests{path=~\"/api\"}", "requests", "a", "/api/x"));
+    assertFalse(matches("requests{path!~\"/api/.*\"}", "requests", "a", "/api/x"));
+    assertTrue(matches("{__name__=~\"req.*\"}", "requests", "a", "/"));
+    // Absent labels match the empty string.
+    assertTrue(matches("{missing=\"\"}", "requests", "a", "/"));
+    assertFalse(matches("{missing=\"x\"}", "requests", "a", "/"));
+
+    SeriesSelector le = SeriesSelector.parse("h_bucket{le=\"1.0\"}");
+    List<String> none = Collections.emptyList();
+    assertTrue(le.matches("h_bucket", none, none, "le", "1.0"));
+    assertFalse(le.matches("h_bucket", none, none, "le", "+Inf"));
+  }
+
+  @Test
+  public void testMatchesFamilyAndChild() {
+    SeriesSelector count = SeriesSelector.parse("h_count{tenant=\"a\",le=\"1.0\"}");
+    assertTrue(count.matchesFamily("h", Collector.Type.HISTOGRAM));
+    assertTrue(count.matchesFamily("h", Collector.Type.SUMMARY));
+    assertFalse(count.matchesFamily("h", Collector.Type.GAUGE));
+    assertTrue(SeriesSelector.parse("h_bucket").matchesFamily("h", Collector.Type.HISTOGRAM));
+    assertFalse(SeriesSelector.parse("h_bucket").matchesFamily("h", Collector.Type.SUMMARY));
+    assertTrue(SeriesSelector.parse("{tenant=\"a\"}").matchesFamily("h", Collector.Type.GAUGE));
+
+    // Matchers on labels the child doesn't have are left to the samples.
+    assertTrue(count.matchesChild(LABELS, Arrays.asList("a", "/")));
+    assertFalse(count.matchesChild(LABELS, Arrays.asList("b", "/")));
+  }
+}
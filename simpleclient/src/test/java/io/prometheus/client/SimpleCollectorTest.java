@@ -3,6 +3,12 @@ package io.prometheus.client;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 
 import org.junit.Test;
 import org.junit.Before;
@@ -145,4 +151,69 @@ public class SimpleCollectorTest {
   public void testCreateReturnsGauge() {
     Gauge g = Gauge.build().name("labels").help("help").labelNames("l").create();
   }
+
+  private static String identity(byte[] identity) throws Exception {
+    return new String(identity, "UTF-8");
+  }
+
+  @Test
+  public void testSeriesIdentitiesAreCachedOnChild() throws Exception {
+    metric.labels("ą\"b").set(1);
+    List<String> key = metric.children.keySet().iterator().next();
+    byte[][] identities = metric.identities(key);
+    assertEquals(1, identities.length);
+    assertEquals("labels{l=\"ą\\\"b\"", identity(identities[0]));
+    assertSame(identities, metric.identities(key));
+
+    List<String> noLabelsKey = noLabels.children.keySet().iterator().next();
+    assertEquals("nolabels", identity(noLabels.identities(noLabelsKey)[0]));
+  }
+
+  @Test
+  public void testHistogramSeriesIdentities() throws Exception {
+    Histogram h = Histogram.build().name("h").help("help").labelNames("l").buckets(1, 2).create();
+    h.labels("a");
+    byte[][] identities = h.identities(h.children.keySet().iterator().next());
+    assertEquals(5, identities.length);
+    assertEquals("h_bucket{l=\"a\",le=\"1.0\"", identity(identities[0]));
+    assertEquals("h_bucket{l=\"a\",le=\"+Inf\"", identity(identities[2]));
+    assertEquals("h_count{l=\"a\"", identity(identities[3]));
+    assertEquals("h_sum{l=\"a\"", identity(identities[4]));
+
+    Summary s = Summary.build().name("s").help("help").quantile(0.5, 0.01).create();
+    identities = s.identities(s.children.keySet().iterator().next());
+    assertEquals(3, identities.length);
+    assertEquals("s{quantile=\"0.5\"", identity(identities[0]));
+    assertEquals("s_count", identity(identities[1]));
+    assertEquals("s_sum", identity(identities[2]));
+  }
+
+  @Test
+  public void testVisitSeriesPassesIdentities() throws Exception {
+    metric.labels("a").set(2);
+    final List<String> visited = new ArrayList<String>();
+    registry.collect(new Collector.SampleVisitor() {
+      @Override
+      public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+        return true;
+      }
+
+      @Override
+      public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+          String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+        throw new AssertionError("Standard metrics should visit series");
+      }
+
+      @Override
+      public void visitSeries(byte[] identity, String name, List<String> labelNames, List<String> labelValues,
+          String extraLabelName, String extraLabelValue, double value) {
+        try {
+          visited.add(identity(identity) + " " + value);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, new HashSet<String>(Arrays.asList("labels")));
+    assertEquals(Arrays.asList("labels{l=\"a\" 2.0"), visited);
+  }
 }
@@ -0,0 +1,122 @@
+package io.prometheus.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SnapshotRegistryTest {
+
+  CollectorRegistry registry;
+  SnapshotRegistry snapshots;
+  CountingCollector collector;
+  long nanos;
+
+  static class CountingCollector extends Collector {
+    int collectCallCount = 0;
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+      collectCallCount++;
+      return Arrays.<MetricFamilySamples>asList(
+          new GaugeMetricFamily("a", "help", collectCallCount),
+          new GaugeMetricFamily("b", "help", 1));
+    }
+  }
+
+  @Before
+  public void setUp() {
+    SimpleTimer.defaultTimeProvider = new SimpleTimer.TimeProvider() {
+      @Override
+      long nanoTime() {
+        return nanos;
+      }
+    };
+    registry = new CollectorRegistry();
+    collector = new CountingCollector().register(registry);
+    snapshots = new SnapshotRegistry(registry, 10, TimeUnit.SECONDS);
+  }
+
+  @After
+  public void tearDown() {
+    SimpleTimer.defaultTimeProvider = new SimpleTimer.TimeProvider();
+  }
+
+  @Test
+  public void testCollectsOncePerInterval() {
+    assertEquals(1.0, snapshots.getSampleValue("a"), .001);
+    Collections.list(snapshots.metricFamilySamples());
+    Collections.list(snapshots.filteredMetricFamilySamples(Collections.singleton("b")));
+    snapshots.collect(new Collector.SampleVisitor() {
+      @Override
+      public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+        return true;
+      }
+
+      @Override
+      public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+          String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      }
+    });
+    assertEquals(1, collector.collectCallCount);
+
+    nanos += TimeUnit.SECONDS.toNanos(9);
+    assertEquals(1.0, snapshots.getSampleValue("a"), .001);
+    nanos += TimeUnit.SECONDS.toNanos(1);
+    assertEquals(2.0, snapshots.getSampleValue("a"), .001);
+    assertEquals(2, collector.collectCallCount);
+
+    RegistrySnapshot refreshed = snapshots.refresh();
+    assertEquals(3, collector.collectCallCount);
+    assertSame(refreshed, snapshots.snapshot());
+  }
+
+  @Test
+  public void testFiltering() {
+    List<Collector.MetricFamilySamples> mfs = Collections.list(
+        snapshots.filteredMetricFamilySamples(new HashSet<String>(Arrays.asList("b", "other"))));
+    assertEquals(1, mfs.size());
+    assertEquals("b", mfs.get(0).name);
+
+    mfs = Collections.list(snapshots.filteredMetricFamilySamples(Arrays.asList(SeriesSelector.parse("a"))));
+    assertEquals(1, mfs.size());
+    assertEquals("a", mfs.get(0).name);
+    assertEquals(1, collector.collectCallCount);
+  }
+
+  @Test
+  public void testGetSampleValueReadsSnapshot() {
+    Gauge g = Gauge.build().name("g").help("help").labelNames("l").register(registry);
+    g.labels("x").set(2);
+    assertEquals(2.0, snapshots.getSampleValue("g", new String[]{"l"}, new String[]{"x"}), .001);
+    assertNull(snapshots.getSampleValue("g", new String[]{"l"}, new String[]{"y"}));
+    assertNull(snapshots.getSampleValue("g"));
+    g.labels("x").set(3);
+    assertEquals(2.0, snapshots.getSampleValue("g", new String[]{"l"}, new String[]{"x"}), .001);
+    assertEquals(1, collector.collectCallCount);
+  }
+
+  @Test
+  public void testRegisterActsOnWrappedRegistry() {
+    snapshots.snapshot();
+    Gauge g = Gauge.build().name("g").help("help").register(snapshots);
+    assertEquals(0.0, registry.getSampleValue("g"), .001);
+    assertNull(snapshots.getSampleValue("g"));
+    snapshots.refresh();
+    assertEquals(0.0, snapshots.getSampleValue("g"), .001);
+
+    snapshots.unregister(g);
+    assertNull(registry.getSampleValue("g"));
+    snapshots.clear();
+    assertNull(registry.getSampleValue("a"));
+  }
+}
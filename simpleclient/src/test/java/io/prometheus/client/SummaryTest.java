@@ -7,6 +7,8 @@ import org.junit.Test;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.Callable;
 
@@ -213,6 +215,23 @@ public class SummaryTest {
     assertEquals(mfsFixture, mfs.get(0));
   }
 
+  @Test
+  public void testCollectIncludedNames() {
+    labelsAndQuantiles.labels("a").observe(2);
+    List<Collector.MetricFamilySamples> mfs = labelsAndQuantiles.collect(new HashSet<String>(asList("labels_and_quantiles", "labels_and_quantiles_sum")));
+
+    ArrayList<Collector.MetricFamilySamples.Sample> samples = new ArrayList<Collector.MetricFamilySamples.Sample>();
+    samples.add(new Collector.MetricFamilySamples.Sample("labels_and_quantiles", asList("l", "quantile"), asList("a", "0.5"), 2.0));
+    samples.add(new Collector.MetricFamilySamples.Sample("labels_and_quantiles", asList("l", "quantile"), asList("a", "0.9"), 2.0));
+    samples.add(new Collector.MetricFamilySamples.Sample("labels_and_quantiles", asList("l", "quantile"), asList("a", "0.99"), 2.0));
+    samples.add(new Collector.MetricFamilySamples.Sample("labels_and_quantiles_sum", asList("l"), asList("a"), 2.0));
+    Collector.MetricFamilySamples mfsFixture = new Collector.MetricFamilySamples("labels_and_quantiles", Collector.Type.SUMMARY, "help", samples);
+
+    assertEquals(1, mfs.size());
+    assertEquals(mfsFixture, mfs.get(0));
+    assertEquals(0, labelsAndQuantiles.collect(Collections.singleton("labels_and_quantiles_created")).size());
+  }
+
   @Test
   public void testChildAndValuePublicApi() throws Exception {
     assertTrue(Modifier.isPublic(Summary.Child.class.getModifiers()));
@@ -226,4 +245,40 @@ public class SummaryTest {
     assertTrue(Modifier.isPublic(Summary.Child.Value.class.getField("sum").getModifiers()));
     assertTrue(Modifier.isPublic(Summary.Child.Value.class.getField("quantiles").getModifiers()));
   }
+
+  @Test
+  public void testConsistentSnapshots() throws InterruptedException {
+    final Summary s = Summary.build().name("consistent").help("help").quantile(0.5, 0.05)
+        .consistentSnapshots().register(registry);
+    final int threads = 4;
+    final int observations = 50000;
+    List<Thread> writers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      Thread writer = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < observations; i++) {
+            s.observe(2);
+          }
+        }
+      };
+      writer.start();
+      writers.add(writer);
+    }
+    boolean running = true;
+    while (running) {
+      running = false;
+      for (Thread writer : writers) {
+        running |= writer.isAlive();
+      }
+      Summary.Child.Value v = s.get();
+      assertEquals(2 * v.count, v.sum, 0);
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    assertEquals(threads * observations, registry.getSampleValue("consistent_count"), 0);
+    assertEquals(threads * observations * 2, registry.getSampleValue("consistent_sum"), 0);
+    assertEquals(2, registry.getSampleValue("consistent", new String[]{"quantile"}, new String[]{"0.5"}), 0);
+  }
 }
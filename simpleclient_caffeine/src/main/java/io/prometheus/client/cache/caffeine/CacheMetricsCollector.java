@@ -11,6 +11,7 @@ import io.prometheus.client.SummaryMetricFamily;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -49,7 +50,7 @@ import java.util.concurrent.ConcurrentMap;
  * </pre>
  *
  */
-public class CacheMetricsCollector extends Collector {
+public class CacheMetricsCollector extends Collector implements Collector.Describable {
     protected final ConcurrentMap<String, Cache> children = new ConcurrentHashMap<String, Cache>();
 
     /**
@@ -98,6 +99,18 @@ public class CacheMetricsCollector extends Collector {
 
     @Override
     public List<MetricFamilySamples> collect() {
+        return metricFamilies(children);
+    }
+
+    /**
+     * Describes the metrics without reading the statistics of the caches.
+     */
+    @Override
+    public List<MetricFamilySamples> describe() {
+        return metricFamilies(Collections.<String, Cache>emptyMap());
+    }
+
+    private static List<MetricFamilySamples> metricFamilies(Map<String, Cache> caches) {
         List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
         List<String> labelNames = Arrays.asList("cache");
 
@@ -137,7 +150,7 @@ public class CacheMetricsCollector extends Collector {
                 "Cache load duration: both success and failures", labelNames);
         mfs.add(cacheLoadSummary);
 
-        for(Map.Entry<String, Cache> c: children.entrySet()) {
+        for(Map.Entry<String, Cache> c: caches.entrySet()) {
             List<String> cacheName = Arrays.asList(c.getKey());
             CacheStats stats = c.getValue().stats();
 
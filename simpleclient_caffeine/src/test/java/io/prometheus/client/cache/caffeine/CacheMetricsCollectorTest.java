@@ -14,6 +14,8 @@ import java.util.concurrent.Executor;
 import static org.assertj.core.api.Java6Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class CacheMetricsCollectorTest {
@@ -49,6 +51,17 @@ public class CacheMetricsCollectorTest {
     }
 
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void registerDoesNotReadCacheStats() throws Exception {
+        Cache<String, String> cache = mock(Cache.class);
+        CacheMetricsCollector collector = new CacheMetricsCollector();
+        collector.addCache("users", cache);
+        collector.register(new CollectorRegistry(true));
+
+        verify(cache, never()).stats();
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void loadingCacheExposesMetricsForLoadsAndExceptions() throws Exception {
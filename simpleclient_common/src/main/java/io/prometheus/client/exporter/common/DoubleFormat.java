@@ -0,0 +1,314 @@
+package io.prometheus.client.exporter.common;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+
+/**
+ * Allocation-free formatting of sample values into a byte buffer.
+ * <p>
+ * The output is the shortest decimal that uniquely distinguishes the double, as specified by
+ * {@link Double#toString} since Java 19, in the layout of {@link io.prometheus.client.Collector#doubleToGoString}.
+ * <p>
+ * <b>On JDKs before 19 the output differs from {@code doubleToGoString}</b> for some values, for which
+ * {@link Double#toString} prints more digits than needed: {@code 1.0E23} rather than
+ * {@code 9.999999999999999E22}, or {@code 2.82879384806159E17} rather than {@code 2.82879384806159008E17}.
+ * Both parse back to the same double. All text exposition writers format sample values here,
+ * so their output does not depend on the JDK.
+ * <p>
+ * Whole numbers, such as counters and bucket counts, take a fast path. Other values are converted
+ * with the Schubfach algorithm, see Raffaello Giulietti, "The Schubfach way to render doubles".
+ */
+final class DoubleFormat {
+  /**
+   * Enough room for any double, such as {@code -2.2250738585072014E-308}.
+   */
+  static final int MAX_LENGTH = 24;
+
+  /**
+   * Enough room for any long.
+   */
+  static final int MAX_LONG_LENGTH = 20;
+
+  private static final int P = 53;
+  private static final int Q_MIN = -1074;
+  private static final long C_MIN = 1L << (P - 1);
+  private static final long C_TINY = 3;
+  private static final int K_MIN = -324;
+  private static final int K_MAX = 292;
+  private static final long MASK_63 = (1L << 63) - 1;
+  private static final long T_MASK = (1L << (P - 1)) - 1;
+
+  private static final byte[] INF = {'+', 'I', 'n', 'f'};
+  private static final byte[] NAN = {'N', 'a', 'N'};
+
+  private static final long[] POW10 = new long[19];
+  static {
+    POW10[0] = 1;
+    for (int i = 1; i < POW10.length; i++) {
+      POW10[i] = POW10[i - 1] * 10;
+    }
+  }
+
+  private DoubleFormat() {
+  }
+
+  /**
+   * Write the given double at the given position, returning the position after it.
+   * <p>
+   * There must be at least {@link #MAX_LENGTH} bytes available.
+   */
+  static int write(double d, byte[] buf, int pos) {
+    if (d != d) {
+      System.arraycopy(NAN, 0, buf, pos, NAN.length);
+      return pos + NAN.length;
+    }
+    long bits = Double.doubleToRawLongBits(d);
+    if (bits < 0) {
+      buf[pos++] = '-';
+    }
+    double a = Math.abs(d);
+    if (a < 1e7) {
+      long l = (long) a;
+      if (l == a) {
+        pos = writeLong(l, buf, pos);
+        buf[pos++] = '.';
+        buf[pos++] = '0';
+        return pos;
+      }
+    } else if (a == Double.POSITIVE_INFINITY) {
+      if (bits < 0) {
+        buf[pos++] = 'I';
+        buf[pos++] = 'n';
+        buf[pos++] = 'f';
+        return pos;
+      }
+      System.arraycopy(INF, 0, buf, pos, INF.length);
+      return pos + INF.length;
+    }
+    long t = bits & T_MASK;
+    int bq = (int) (bits >>> (P - 1)) & 0x7ff;
+    if (bq != 0) {
+      int mq = -Q_MIN + 1 - bq;
+      long c = C_MIN | t;
+      if (0 < mq && mq < P) {
+        long f = c >> mq;
+        if (f << mq == c) {
+          return toChars(f, 0, buf, pos);
+        }
+      }
+      return toDecimal(-mq, c, 0, buf, pos);
+    }
+    // Subnormal, zero was handled by the fast path.
+    return t < C_TINY
+        ? toDecimal(Q_MIN, 10 * t, -1, buf, pos)
+        : toDecimal(Q_MIN, t, 0, buf, pos);
+  }
+
+  /**
+   * Write the given double to the given writer, through the given scratch buffers of at least
+   * {@link #MAX_LENGTH} bytes and chars.
+   */
+  static void write(double d, Writer writer, byte[] bytes, char[] chars) throws IOException {
+    int end = write(d, bytes, 0);
+    for (int i = 0; i < end; i++) {
+      chars[i] = (char) bytes[i];
+    }
+    writer.write(chars, 0, end);
+  }
+
+  /**
+   * Write the given non-negative long at the given position, returning the position after it.
+   */
+  static int writeLong(long l, byte[] buf, int pos) {
+    int n = digits(l);
+    writeDigits(l, n, buf, pos);
+    return pos + n;
+  }
+
+  /**
+   * Find the shortest decimal in the rounding interval of c * 2^q, and write it.
+   */
+  private static int toDecimal(int q, long c, int dk, byte[] buf, int pos) {
+    int out = (int) c & 1;
+    long cb = c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if (c != C_MIN || q == Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      // The interval is asymmetric at powers of two.
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 2;
+    long g1 = Table.G[(k - K_MIN) << 1];
+    long g0 = Table.G[(k - K_MIN) << 1 | 1];
+    long vb = rop(g1, g0, cb << h);
+    long vbl = rop(g1, g0, cbl << h);
+    long vbr = rop(g1, g0, cbr << h);
+
+    long s = vb >> 2;
+    if (s >= 100) {
+      // Try the candidates with one digit less first.
+      long sp10 = 10 * (s / 10);
+      long tp10 = sp10 + 10;
+      boolean upin = vbl + out <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        return toChars(upin ? sp10 : tp10, k, buf, pos);
+      }
+    }
+    long t = s + 1;
+    boolean uin = vbl + out <= s << 2;
+    boolean win = (t << 2) + out <= vbr;
+    if (uin != win) {
+      return toChars(uin ? s : t, k + dk, buf, pos);
+    }
+    // Both are in the interval, pick the closest one, the even one on ties.
+    long cmp = vb - (s + t << 1);
+    return toChars(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk, buf, pos);
+  }
+
+  /**
+   * Round to odd of g * cp, where g = g1 2^63 + g0, scaled down by 2^127.
+   */
+  private static long rop(long g1, long g0, long cp) {
+    long x1 = multiplyHigh(g0, cp);
+    long y0 = g1 * cp;
+    long y1 = multiplyHigh(g1, cp);
+    long z = (y0 >>> 1) + x1;
+    long vbp = y1 + (z >>> 63);
+    return vbp | (z & MASK_63) + MASK_63 >>> 63;
+  }
+
+  /**
+   * The high 64 bits of the 128 bit product, as Math.multiplyHigh of Java 9.
+   */
+  private static long multiplyHigh(long x, long y) {
+    long x1 = x >> 32;
+    long x2 = x & 0xFFFFFFFFL;
+    long y1 = y >> 32;
+    long y2 = y & 0xFFFFFFFFL;
+    long z2 = x2 * y2;
+    long t = x1 * y2 + (z2 >>> 32);
+    long z1 = t & 0xFFFFFFFFL;
+    long z0 = t >> 32;
+    z1 += x2 * y1;
+    return x1 * y1 + z0 + (z1 >> 32);
+  }
+
+  // floor(q log10(2))
+  private static int flog10pow2(int q) {
+    return (int) (q * 661971961083L >> 41);
+  }
+
+  // floor(log10(3/4 2^q))
+  private static int flog10threeQuartersPow2(int q) {
+    return (int) (q * 661971961083L - 274743187321L >> 41);
+  }
+
+  // floor(e log2(10))
+  private static int flog2pow10(int e) {
+    return (int) (e * 913124641741L >> 38);
+  }
+
+  /**
+   * Write f * 10^e laid out as {@link Double#toString} does.
+   */
+  private static int toChars(long f, int e, byte[] buf, int pos) {
+    while (f % 10 == 0) {
+      f /= 10;
+      e++;
+    }
+    int n = digits(f);
+    // The exponent in scientific notation.
+    int x = e + n - 1;
+    if (x >= 0 && x < 7) {
+      int integerDigits = x + 1;
+      writeDigits(f, n, buf, pos);
+      if (n <= integerDigits) {
+        pos += n;
+        for (int i = n; i < integerDigits; i++) {
+          buf[pos++] = '0';
+        }
+        buf[pos++] = '.';
+        buf[pos++] = '0';
+        return pos;
+      }
+      System.arraycopy(buf, pos + integerDigits, buf, pos + integerDigits + 1, n - integerDigits);
+      buf[pos + integerDigits] = '.';
+      return pos + n + 1;
+    }
+    if (x < 0 && x >= -3) {
+      buf[pos++] = '0';
+      buf[pos++] = '.';
+      for (int i = -1; i > x; i--) {
+        buf[pos++] = '0';
+      }
+      writeDigits(f, n, buf, pos);
+      return pos + n;
+    }
+    writeDigits(f, n, buf, pos + 1);
+    buf[pos] = buf[pos + 1];
+    buf[pos + 1] = '.';
+    pos += n + 1;
+    if (n == 1) {
+      buf[pos++] = '0';
+    }
+    buf[pos++] = 'E';
+    if (x < 0) {
+      buf[pos++] = '-';
+      x = -x;
+    }
+    return writeLong(x, buf, pos);
+  }
+
+  private static int digits(long l) {
+    int n = 1;
+    while (n < POW10.length && l >= POW10[n]) {
+      n++;
+    }
+    return n;
+  }
+
+  private static void writeDigits(long l, int n, byte[] buf, int pos) {
+    for (int i = pos + n - 1; i >= pos; i--) {
+      buf[i] = (byte) ('0' + l % 10);
+      l /= 10;
+    }
+  }
+
+  /**
+   * The 126 bit approximations g1 2^63 + g0 of 10^-k, for k in [K_MIN, K_MAX].
+   * <p>
+   * With 10^-k = b 2^r, for 2^125 &lt;= b &lt; 2^126, these are floor(b) + 1.
+   * Computed on first use rather than spelled out, as they are about 10kB of constants.
+   */
+  private static final class Table {
+    static final long[] G = new long[(K_MAX - K_MIN + 1) << 1];
+    static {
+      BigInteger ten = BigInteger.TEN;
+      for (int k = K_MIN; k <= K_MAX; k++) {
+        int r = flog2pow10(-k) - 125;
+        BigInteger num = BigInteger.ONE;
+        BigInteger den = BigInteger.ONE;
+        if (k < 0) {
+          num = ten.pow(-k);
+        } else {
+          den = ten.pow(k);
+        }
+        if (r < 0) {
+          num = num.shiftLeft(-r);
+        } else {
+          den = den.shiftLeft(r);
+        }
+        BigInteger g = num.divide(den).add(BigInteger.ONE);
+        G[(k - K_MIN) << 1] = g.shiftRight(63).longValue();
+        G[(k - K_MIN) << 1 | 1] = g.longValue() & MASK_63;
+      }
+    }
+  }
+}
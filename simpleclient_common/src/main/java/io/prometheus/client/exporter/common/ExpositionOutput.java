@@ -0,0 +1,211 @@
+package io.prometheus.client.exporter.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A buffered UTF-8 output for the exposition formats.
+ * <p>
+ * Strings are encoded straight into an internal buffer, with a fast path for ASCII,
+ * and pre-encoded bytes are copied in bulk. The buffer is drained to the underlying
+ * stream when full and on {@link #flush}.
+ */
+final class ExpositionOutput {
+  private final OutputStream out;
+  private final byte[] buf;
+  private int pos;
+
+  ExpositionOutput(OutputStream out) {
+    this(out, 8192);
+  }
+
+  ExpositionOutput(OutputStream out, int size) {
+    this.out = out;
+    this.buf = new byte[size];
+  }
+
+  void write(byte b) throws IOException {
+    if (pos == buf.length) {
+      drain();
+    }
+    buf[pos++] = b;
+  }
+
+  void write(char c) throws IOException {
+    // Only used for ASCII punctuation.
+    write((byte) c);
+  }
+
+  void write(byte[] b) throws IOException {
+    write(b, 0, b.length);
+  }
+
+  void write(byte[] b, int off, int len) throws IOException {
+    if (len > buf.length - pos) {
+      drain();
+      if (len > buf.length) {
+        out.write(b, off, len);
+        return;
+      }
+    }
+    System.arraycopy(b, off, buf, pos, len);
+    pos += len;
+  }
+
+  /**
+   * Write the UTF-8 encoding of the given string.
+   */
+  void write(String s) throws IOException {
+    int len = s.length();
+    int i = 0;
+    while (i < len) {
+      if (pos == buf.length) {
+        drain();
+      }
+      // ASCII fast path, bounded by the space left in the buffer.
+      int end = Math.min(len, i + buf.length - pos);
+      char c;
+      while (i < end && (c = s.charAt(i)) < 0x80) {
+        buf[pos++] = (byte) c;
+        i++;
+      }
+      if (i < end) {
+        i = writeNonAscii(s, i);
+      }
+    }
+  }
+
+  /**
+   * Encode the non-ASCII character at the given index, returning the index of the next character.
+   */
+  private int writeNonAscii(String s, int i) throws IOException {
+    if (buf.length - pos < 4) {
+      drain();
+    }
+    char c = s.charAt(i);
+    if (c < 0x800) {
+      buf[pos++] = (byte) (0xc0 | (c >> 6));
+      buf[pos++] = (byte) (0x80 | (c & 0x3f));
+    } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+      int cp = Character.toCodePoint(c, s.charAt(i + 1));
+      buf[pos++] = (byte) (0xf0 | (cp >> 18));
+      buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+      buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+      buf[pos++] = (byte) (0x80 | (cp & 0x3f));
+      return i + 2;
+    } else if (Character.isSurrogate(c)) {
+      // Unpaired surrogate, replaced as by String.getBytes.
+      buf[pos++] = '?';
+    } else {
+      buf[pos++] = (byte) (0xe0 | (c >> 12));
+      buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+      buf[pos++] = (byte) (0x80 | (c & 0x3f));
+    }
+    return i + 1;
+  }
+
+  /**
+   * Write the decimal representation of the given long.
+   */
+  void write(long v) throws IOException {
+    if (v < 0) {
+      if (v == Long.MIN_VALUE) {
+        write(Long.toString(v));
+        return;
+      }
+      write('-');
+      v = -v;
+    }
+    if (buf.length - pos < DoubleFormat.MAX_LONG_LENGTH) {
+      drain();
+    }
+    pos = DoubleFormat.writeLong(v, buf, pos);
+  }
+
+  /**
+   * Write the given double as {@link DoubleFormat} does.
+   */
+  void writeDouble(double d) throws IOException {
+    if (buf.length - pos < DoubleFormat.MAX_LENGTH) {
+      drain();
+    }
+    pos = DoubleFormat.write(d, buf, pos);
+  }
+
+  /**
+   * Write the given value as a protobuf varint.
+   */
+  void writeVarint(long v) throws IOException {
+    if (buf.length - pos < 10) {
+      drain();
+    }
+    while ((v & ~0x7fL) != 0) {
+      buf[pos++] = (byte) ((v & 0x7f) | 0x80);
+      v >>>= 7;
+    }
+    buf[pos++] = (byte) v;
+  }
+
+  /**
+   * Write the given double as a little-endian protobuf fixed64.
+   */
+  void writeFixed64(double d) throws IOException {
+    if (buf.length - pos < 8) {
+      drain();
+    }
+    long v = Double.doubleToLongBits(d);
+    for (int i = 0; i < 8; i++) {
+      buf[pos++] = (byte) v;
+      v >>>= 8;
+    }
+  }
+
+  /**
+   * The number of bytes {@link #writeVarint} writes for the given value.
+   */
+  static int varintLength(long v) {
+    int n = 1;
+    while ((v & ~0x7fL) != 0) {
+      v >>>= 7;
+      n++;
+    }
+    return n;
+  }
+
+  /**
+   * The number of bytes {@link #write(String)} writes for the given string.
+   */
+  static int utf8Length(String s) {
+    int len = s.length();
+    int n = len;
+    for (int i = 0; i < len; i++) {
+      char c = s.charAt(i);
+      if (c >= 0x80) {
+        if (c < 0x800) {
+          n += 1;
+        } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+          // Four bytes for the pair.
+          n += 2;
+          i++;
+        } else if (!Character.isSurrogate(c)) {
+          n += 2;
+        }
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Write the buffered bytes to the underlying stream, without flushing it.
+   */
+  void flush() throws IOException {
+    drain();
+  }
+
+  private void drain() throws IOException {
+    if (pos > 0) {
+      out.write(buf, 0, pos);
+      pos = 0;
+    }
+  }
+}
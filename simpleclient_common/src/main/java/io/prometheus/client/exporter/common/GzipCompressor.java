@@ -0,0 +1,138 @@
+package io.prometheus.client.exporter.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Gzip compression at a given level, reusing a bounded pool of {@link Deflater}s.
+ * <p>
+ * Each {@link java.util.zip.GZIPOutputStream} allocates a Deflater, whose native memory is only
+ * freed when it is ended or finalized. Compressing every scrape that way churns native memory,
+ * so Deflaters are reset and reused instead. The gzip header is the same for every payload,
+ * and is written from a constant.
+ * <p>
+ * Example usage:
+ * <pre>
+ * {@code
+ *   GzipCompressor fast = new GzipCompressor(Deflater.BEST_SPEED);
+ *   byte[] gzipped = fast.compress(bytes);
+ * }
+ * </pre>
+ */
+public class GzipCompressor {
+  /**
+   * Compresses at the default level, shared by the exporters unless configured otherwise.
+   */
+  public static final GzipCompressor DEFAULT = new GzipCompressor(Deflater.DEFAULT_COMPRESSION);
+
+  private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+  private final int level;
+  private final BlockingQueue<Deflater> deflaters;
+
+  /**
+   * Construct a GzipCompressor keeping up to one Deflater per available processor.
+   *
+   * @param level a compression level from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION},
+   *              or {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  public GzipCompressor(int level) {
+    this(level, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Construct a GzipCompressor keeping up to the given number of Deflaters.
+   */
+  public GzipCompressor(int level, int maxPooled) {
+    if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level: " + level);
+    }
+    if (maxPooled < 1) {
+      throw new IllegalArgumentException("maxPooled must be at least 1");
+    }
+    this.level = level;
+    this.deflaters = new ArrayBlockingQueue<Deflater>(maxPooled);
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Return the gzip compression of the given bytes.
+   */
+  public byte[] compress(byte[] bytes) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+    OutputStream gzip = outputStream(out);
+    gzip.write(bytes);
+    gzip.close();
+    return out.toByteArray();
+  }
+
+  /**
+   * Return a stream writing the gzip compression of what is written to it to the given stream.
+   * <p>
+   * The Deflater is returned to the pool when the stream is finished or closed, after which
+   * it must not be written to.
+   */
+  public DeflaterOutputStream outputStream(OutputStream out) throws IOException {
+    return new GzipOutputStream(out, acquire());
+  }
+
+  private Deflater acquire() {
+    Deflater deflater = deflaters.poll();
+    // No zlib wrapper, gzip has its own header and trailer.
+    return deflater != null ? deflater : new Deflater(level, true);
+  }
+
+  private void release(Deflater deflater) {
+    deflater.reset();
+    if (!deflaters.offer(deflater)) {
+      deflater.end();
+    }
+  }
+
+  private class GzipOutputStream extends DeflaterOutputStream {
+    private final CRC32 crc = new CRC32();
+    private boolean finished;
+
+    GzipOutputStream(OutputStream out, Deflater deflater) throws IOException {
+      super(out, deflater, 1 << 13);
+      out.write(HEADER);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      super.write(b, off, len);
+      crc.update(b, off, len);
+    }
+
+    @Override
+    public void finish() throws IOException {
+      if (finished) {
+        return;
+      }
+      finished = true;
+      try {
+        super.finish();
+        writeInt((int) crc.getValue());
+        writeInt((int) def.getBytesRead());
+      } finally {
+        release(def);
+      }
+    }
+
+    private void writeInt(int i) throws IOException {
+      out.write(i & 0xff);
+      out.write((i >> 8) & 0xff);
+      out.write((i >> 16) & 0xff);
+      out.write((i >> 24) & 0xff);
+    }
+  }
+}
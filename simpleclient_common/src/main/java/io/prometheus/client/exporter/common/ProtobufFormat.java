@@ -0,0 +1,483 @@
+package io.prometheus.client.exporter.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.SeriesSelector;
+
+/**
+ * The length-delimited protocol buffer exposition format.
+ * <p>
+ * Each family is written as a varint length followed by an {@code io.prometheus.client.MetricFamily}
+ * message, see metrics.proto in the Prometheus client_model repository. The messages are encoded
+ * by hand straight into the output buffer: message lengths are computed up front, so nothing
+ * is serialized twice and no generated code is needed. Optional fields which are null are left out.
+ */
+public class ProtobufFormat {
+  /**
+   * Content-type for the length-delimited protocol buffer format.
+   */
+  public final static String CONTENT_TYPE = "application/vnd.google.protobuf; proto=io.prometheus.client.MetricFamily; encoding=delimited";
+
+  // Wire types.
+  private static final int VARINT = 0;
+  private static final int FIXED64 = 1;
+  private static final int LENGTH_DELIMITED = 2;
+
+  // MetricFamily fields.
+  private static final int FAMILY_NAME = 1;
+  private static final int FAMILY_HELP = 2;
+  private static final int FAMILY_TYPE = 3;
+  private static final int FAMILY_METRIC = 4;
+
+  // Metric fields.
+  private static final int METRIC_LABEL = 1;
+  private static final int METRIC_GAUGE = 2;
+  private static final int METRIC_COUNTER = 3;
+  private static final int METRIC_SUMMARY = 4;
+  private static final int METRIC_UNTYPED = 5;
+  private static final int METRIC_TIMESTAMP_MS = 6;
+  private static final int METRIC_HISTOGRAM = 7;
+
+  // Summary and Histogram fields, the nested Quantile and Bucket are field 3 of both.
+  private static final int SAMPLE_COUNT = 1;
+  private static final int SAMPLE_SUM = 2;
+  private static final int QUANTILE_OR_BUCKET = 3;
+
+  // A Gauge, Counter or Untyped holding a double, and a Quantile.
+  private static final int VALUE_LENGTH = 9;
+  private static final int QUANTILE_LENGTH = 18;
+
+  /**
+   * Write out the protocol buffer format of the given MetricFamilySamples.
+   * The stream is neither flushed nor closed.
+   */
+  public static void write(OutputStream out, Enumeration<Collector.MetricFamilySamples> mfs) throws IOException {
+    ExpositionOutput output = new ExpositionOutput(out);
+    FamilyVisitor visitor = new FamilyVisitor(output);
+    try {
+      while (mfs.hasMoreElements()) {
+        visitor.visit(mfs.nextElement());
+      }
+    } catch (TextFormat.VisitorIOException e) {
+      throw e.ioException;
+    }
+    visitor.finish();
+    output.flush();
+  }
+
+  /**
+   * Write out the protocol buffer format of the metrics of the given registry matching the given names.
+   * <p>
+   * Collectors push their samples, see {@link CollectorRegistry#collect(Collector.SampleVisitor, Set)}.
+   * As the length of a family precedes it, a single family at a time is held.
+   * The stream is neither flushed nor closed.
+   */
+  public static void write(OutputStream out, CollectorRegistry registry, Set<String> includedNames) throws IOException {
+    ExpositionOutput output = new ExpositionOutput(out);
+    FamilyVisitor visitor = new FamilyVisitor(output);
+    try {
+      registry.collect(visitor, includedNames);
+    } catch (TextFormat.VisitorIOException e) {
+      throw e.ioException;
+    }
+    visitor.finish();
+    output.flush();
+  }
+
+  /**
+   * Write out the protocol buffer format of the metrics of the given registry selected by any of the given selectors.
+   * The stream is neither flushed nor closed.
+   */
+  public static void write(OutputStream out, CollectorRegistry registry, List<SeriesSelector> selectors) throws IOException {
+    ExpositionOutput output = new ExpositionOutput(out);
+    FamilyVisitor visitor = new FamilyVisitor(output);
+    try {
+      registry.collect(visitor, selectors);
+    } catch (TextFormat.VisitorIOException e) {
+      throw e.ioException;
+    }
+    visitor.finish();
+    output.flush();
+  }
+
+  private static int metricType(Collector.Type type) {
+    switch (type) {
+      case COUNTER:
+        return 0;
+      case GAUGE:
+        return 1;
+      case SUMMARY:
+        return 2;
+      case HISTOGRAM:
+        return 4;
+      default:
+        return 3;
+    }
+  }
+
+  private static final String QUANTILE_LABEL = "quantile";
+  private static final String LE_LABEL = "le";
+
+  /**
+   * One Metric message: a sample of a counter, gauge or untyped metric, or the samples of
+   * one summary or histogram labelset.
+   */
+  private static final class Metric {
+    List<String> labelNames;
+    List<String> labelValues;
+    String extraLabelName;
+    String extraLabelValue;
+    Long timestampMs;
+    double value;
+    boolean hasCount;
+    long count;
+    boolean hasSum;
+    double sum;
+    // The quantiles or buckets, without the +Inf bucket which is implied by the count as in the Go client.
+    int size;
+    double[] bounds = new double[8];
+    double[] values = new double[8];
+    int length;
+
+    void reset(List<String> labelNames, List<String> labelValues, String extraLabelName, String extraLabelValue,
+        Long timestampMs) {
+      // Copied, as visitors may not retain the lists they are passed.
+      this.labelNames = new ArrayList<String>(labelNames);
+      this.labelValues = new ArrayList<String>(labelValues);
+      this.extraLabelName = extraLabelName;
+      this.extraLabelValue = extraLabelValue;
+      this.timestampMs = timestampMs;
+      hasCount = false;
+      hasSum = false;
+      size = 0;
+    }
+
+    boolean hasLabels(List<String> labelNames, List<String> labelValues) {
+      return (labelValues == this.labelValues || labelValues.equals(this.labelValues))
+          && (labelNames == this.labelNames || labelNames.equals(this.labelNames));
+    }
+
+    void add(double bound, double value) {
+      if (size == bounds.length) {
+        bounds = Arrays.copyOf(bounds, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+      bounds[size] = bound;
+      values[size] = value;
+      size++;
+    }
+  }
+
+  /**
+   * Gathers the Metrics of the current family, and writes the family once the next one starts.
+   * <p>
+   * Summary and histogram samples are grouped into one Metric per labelset. Collectors announcing
+   * their children with {@link Collector.SampleVisitor#visitChild} deliver each labelset at once.
+   * Otherwise, as for materialized {@link Collector.MetricFamilySamples}, the samples of a labelset
+   * may be interleaved with others, and are grouped through an index.
+   */
+  private static final class FamilyVisitor extends Collector.SampleVisitor {
+    private final ExpositionOutput output;
+    // Reused between families.
+    private final List<Metric> metrics = new ArrayList<Metric>();
+    private int size;
+    private String name;
+    private Collector.Type type;
+    private String help;
+    private boolean summary;
+    private String specialLabel;
+    private boolean children;
+    private Metric current;
+    private Map<List<List<String>>, Metric> index;
+
+    FamilyVisitor(ExpositionOutput output) {
+      this.output = output;
+    }
+
+    @Override
+    public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+      try {
+        finish();
+      } catch (IOException e) {
+        throw new TextFormat.VisitorIOException(e);
+      }
+      this.name = name;
+      this.type = type;
+      this.help = help;
+      summary = type == Collector.Type.SUMMARY;
+      specialLabel = summary ? QUANTILE_LABEL : type == Collector.Type.HISTOGRAM ? LE_LABEL : null;
+      children = false;
+      current = null;
+      index = null;
+      return true;
+    }
+
+    @Override
+    public boolean visitChild(List<String> labelNames, List<String> labelValues) {
+      children = true;
+      current = null;
+      return true;
+    }
+
+    @Override
+    public void visitSample(String sampleName, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      if (specialLabel == null) {
+        next(labelNames, labelValues, extraLabelName, extraLabelValue, timestampMs).value = value;
+        return;
+      }
+      if (extraLabelName == null) {
+        int i = labelNames.indexOf(specialLabel);
+        if (i >= 0) {
+          // A materialized sample, carrying the quantile or le label among the others.
+          extraLabelName = specialLabel;
+          extraLabelValue = labelValues.get(i);
+          labelNames = without(labelNames, i);
+          labelValues = without(labelValues, i);
+        }
+      }
+      Metric metric = series(labelNames, labelValues, timestampMs);
+      if (summary ? sampleName.equals(name) : isSuffixed(sampleName, name, "_bucket")) {
+        double bound = specialLabel.equals(extraLabelName) ? parseBound(extraLabelValue) : Double.NaN;
+        if (summary || bound != Double.POSITIVE_INFINITY) {
+          metric.add(bound, value);
+        }
+      } else if (isSuffixed(sampleName, name, "_count")) {
+        metric.hasCount = true;
+        metric.count = (long) value;
+      } else if (isSuffixed(sampleName, name, "_sum")) {
+        metric.hasSum = true;
+        metric.sum = value;
+      }
+    }
+
+    private Metric series(List<String> labelNames, List<String> labelValues, Long timestampMs) {
+      if (current != null && current.hasLabels(labelNames, labelValues)) {
+        return current;
+      }
+      if (children) {
+        current = next(labelNames, labelValues, null, null, timestampMs);
+        return current;
+      }
+      if (index == null) {
+        index = new HashMap<List<List<String>>, Metric>();
+      }
+      current = index.get(Arrays.asList(labelNames, labelValues));
+      if (current == null) {
+        current = next(labelNames, labelValues, null, null, timestampMs);
+        // Keyed by the copies the Metric keeps.
+        index.put(Arrays.asList(current.labelNames, current.labelValues), current);
+      }
+      return current;
+    }
+
+    private Metric next(List<String> labelNames, List<String> labelValues, String extraLabelName,
+        String extraLabelValue, Long timestampMs) {
+      if (size == metrics.size()) {
+        metrics.add(new Metric());
+      }
+      Metric metric = metrics.get(size++);
+      metric.reset(labelNames, labelValues, extraLabelName, extraLabelValue, timestampMs);
+      return metric;
+    }
+
+    /**
+     * Write the current family, if any.
+     */
+    void finish() throws IOException {
+      if (name == null) {
+        return;
+      }
+      int length = stringFieldLength(FAMILY_NAME, name)
+          + stringFieldLength(FAMILY_HELP, help)
+          + 1 + ExpositionOutput.varintLength(metricType(type));
+      for (int i = 0; i < size; i++) {
+        Metric metric = metrics.get(i);
+        metric.length = metricLength(metric);
+        length += delimitedLength(metric.length);
+      }
+
+      output.writeVarint(length);
+      writeString(output, FAMILY_NAME, name);
+      writeString(output, FAMILY_HELP, help);
+      writeTag(output, FAMILY_TYPE, VARINT);
+      output.writeVarint(metricType(type));
+      for (int i = 0; i < size; i++) {
+        Metric metric = metrics.get(i);
+        writeTag(output, FAMILY_METRIC, LENGTH_DELIMITED);
+        output.writeVarint(metric.length);
+        writeMetric(metric);
+      }
+      name = null;
+      size = 0;
+    }
+
+    private int metricLength(Metric metric) {
+      int length = labelsLength(metric) + timestampLength(metric.timestampMs);
+      return length + delimitedLength(specialLabel == null ? VALUE_LENGTH : valuesLength(metric));
+    }
+
+    // The Summary or Histogram message.
+    private int valuesLength(Metric metric) {
+      int length = 0;
+      if (metric.hasCount) {
+        length += 1 + ExpositionOutput.varintLength(metric.count);
+      }
+      if (metric.hasSum) {
+        length += 1 + 8;
+      }
+      for (int i = 0; i < metric.size; i++) {
+        length += delimitedLength(valueLength(metric, i));
+      }
+      return length;
+    }
+
+    // The Quantile or Bucket message.
+    private int valueLength(Metric metric, int i) {
+      if (summary) {
+        return QUANTILE_LENGTH;
+      }
+      return 1 + ExpositionOutput.varintLength((long) metric.values[i]) + 1 + 8;
+    }
+
+    private void writeMetric(Metric metric) throws IOException {
+      writeLabels(output, metric);
+      if (specialLabel == null) {
+        int field = type == Collector.Type.COUNTER ? METRIC_COUNTER
+            : type == Collector.Type.GAUGE ? METRIC_GAUGE
+            : METRIC_UNTYPED;
+        writeTag(output, field, LENGTH_DELIMITED);
+        output.writeVarint(VALUE_LENGTH);
+        writeDouble(output, 1, metric.value);
+      } else {
+        writeTag(output, summary ? METRIC_SUMMARY : METRIC_HISTOGRAM, LENGTH_DELIMITED);
+        output.writeVarint(valuesLength(metric));
+        if (metric.hasCount) {
+          writeTag(output, SAMPLE_COUNT, VARINT);
+          output.writeVarint(metric.count);
+        }
+        if (metric.hasSum) {
+          writeDouble(output, SAMPLE_SUM, metric.sum);
+        }
+        for (int i = 0; i < metric.size; i++) {
+          writeTag(output, QUANTILE_OR_BUCKET, LENGTH_DELIMITED);
+          output.writeVarint(valueLength(metric, i));
+          if (summary) {
+            // Quantile: quantile = 1, value = 2.
+            writeDouble(output, 1, metric.bounds[i]);
+            writeDouble(output, 2, metric.values[i]);
+          } else {
+            // Bucket: cumulative_count = 1, upper_bound = 2.
+            writeTag(output, 1, VARINT);
+            output.writeVarint((long) metric.values[i]);
+            writeDouble(output, 2, metric.bounds[i]);
+          }
+        }
+      }
+      writeTimestamp(output, metric.timestampMs);
+    }
+  }
+
+  private static boolean isSuffixed(String s, String prefix, String suffix) {
+    return s.length() == prefix.length() + suffix.length() && s.startsWith(prefix) && s.endsWith(suffix);
+  }
+
+  private static List<String> without(List<String> list, int i) {
+    List<String> result = new ArrayList<String>(list);
+    result.remove(i);
+    return result;
+  }
+
+  private static double parseBound(String value) {
+    if (value.equals("+Inf")) {
+      return Double.POSITIVE_INFINITY;
+    }
+    if (value.equals("-Inf")) {
+      return Double.NEGATIVE_INFINITY;
+    }
+    return Double.parseDouble(value);
+  }
+
+  // Labels and timestamps, common to all Metrics.
+
+  private static int labelsLength(Metric metric) {
+    int length = 0;
+    for (int i = 0; i < metric.labelNames.size(); i++) {
+      length += labelLength(metric.labelNames.get(i), metric.labelValues.get(i));
+    }
+    if (metric.extraLabelName != null) {
+      length += labelLength(metric.extraLabelName, metric.extraLabelValue);
+    }
+    return length;
+  }
+
+  private static int labelLength(String name, String value) {
+    return delimitedLength(stringFieldLength(1, name) + stringFieldLength(2, value));
+  }
+
+  private static void writeLabels(ExpositionOutput output, Metric metric) throws IOException {
+    for (int i = 0; i < metric.labelNames.size(); i++) {
+      writeLabel(output, metric.labelNames.get(i), metric.labelValues.get(i));
+    }
+    if (metric.extraLabelName != null) {
+      writeLabel(output, metric.extraLabelName, metric.extraLabelValue);
+    }
+  }
+
+  private static void writeLabel(ExpositionOutput output, String name, String value) throws IOException {
+    writeTag(output, METRIC_LABEL, LENGTH_DELIMITED);
+    output.writeVarint(stringFieldLength(1, name) + stringFieldLength(2, value));
+    writeString(output, 1, name);
+    writeString(output, 2, value);
+  }
+
+  private static int timestampLength(Long timestampMs) {
+    return timestampMs == null ? 0 : 1 + ExpositionOutput.varintLength(timestampMs);
+  }
+
+  private static void writeTimestamp(ExpositionOutput output, Long timestampMs) throws IOException {
+    if (timestampMs != null) {
+      writeTag(output, METRIC_TIMESTAMP_MS, VARINT);
+      output.writeVarint(timestampMs);
+    }
+  }
+
+  // Primitives. All field numbers used here are below 16, so tags are one byte.
+
+  private static int delimitedLength(int length) {
+    return 1 + ExpositionOutput.varintLength(length) + length;
+  }
+
+  // Optional fields, such as the help, are left out when null.
+  private static int stringFieldLength(int field, String s) {
+    return s == null ? 0 : delimitedLength(ExpositionOutput.utf8Length(s));
+  }
+
+  private static void writeTag(ExpositionOutput output, int field, int wireType) throws IOException {
+    output.write((byte) (field << 3 | wireType));
+  }
+
+  private static void writeString(ExpositionOutput output, int field, String s) throws IOException {
+    if (s == null) {
+      return;
+    }
+    writeTag(output, field, LENGTH_DELIMITED);
+    output.writeVarint(ExpositionOutput.utf8Length(s));
+    output.write(s);
+  }
+
+  private static void writeDouble(ExpositionOutput output, int field, double d) throws IOException {
+    writeTag(output, field, FIXED64);
+    output.writeFixed64(d);
+  }
+}
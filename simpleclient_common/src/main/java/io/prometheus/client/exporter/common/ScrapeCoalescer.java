@@ -0,0 +1,300 @@
+package io.prometheus.client.exporter.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.SeriesSelector;
+
+/**
+ * Coalesces concurrent scrapes of a registry into a single rendering.
+ * <p>
+ * A scrape that arrives while a rendering for the same request is in flight waits for it
+ * and is handed the same {@link Payload}, instead of collecting and serializing the registry
+ * again. This bounds the CPU spent on scrapes regardless of how many scrapers there are.
+ * Scrapes arriving after the rendering completed trigger a fresh one, so no stale data is served,
+ * unless a freshness window is given: payloads are then reused for scrapes arriving within the window
+ * after they were rendered, which bounds the cost of high frequency scrapes by many scrapers.
+ * <p>
+ * Example usage:
+ * <pre>
+ * {@code
+ *   ScrapeCoalescer coalescer = new ScrapeCoalescer(registry);
+ *   ScrapeCoalescer.Payload payload = coalescer.scrape(includedNames);
+ *   out.write(acceptsGzip ? payload.gzipped() : payload.bytes());
+ * }
+ * </pre>
+ */
+public class ScrapeCoalescer {
+
+  /**
+   * Renders the body of a scrape.
+   */
+  public interface Renderer {
+    byte[] render() throws IOException;
+  }
+
+  /**
+   * A rendered scrape, shared by all requests that were coalesced into it.
+   * <p>
+   * The returned arrays must not be modified.
+   */
+  public static class Payload {
+    private final byte[] bytes;
+    private final GzipCompressor compressor;
+    private byte[] gzipped;
+    private ByteBuffer buffer;
+    private ByteBuffer gzippedBuffer;
+
+    public Payload(byte[] bytes) {
+      this(bytes, GzipCompressor.DEFAULT);
+    }
+
+    /**
+     * A payload compressed with the given compressor when gzipped.
+     */
+    public Payload(byte[] bytes, GzipCompressor compressor) {
+      this.bytes = bytes;
+      this.compressor = compressor;
+    }
+
+    /**
+     * The uncompressed body.
+     */
+    public byte[] bytes() {
+      return bytes;
+    }
+
+    /**
+     * The gzip-compressed body, compressed at most once per payload.
+     */
+    public synchronized byte[] gzipped() throws IOException {
+      if (gzipped == null) {
+        gzipped = compressor.compress(bytes);
+      }
+      return gzipped;
+    }
+
+    /**
+     * A read-only view of the uncompressed body, held in a direct buffer allocated at most once per payload.
+     * <p>
+     * Direct buffers are written to channels without being copied, which pays off when a payload
+     * is served many times. Each call returns a new view, positioned at the start of the body.
+     */
+    public synchronized ByteBuffer buffer() {
+      if (buffer == null) {
+        buffer = direct(bytes);
+      }
+      return buffer.duplicate();
+    }
+
+    /**
+     * A read-only view of the gzip-compressed body, held in a direct buffer allocated at most once per payload.
+     */
+    public synchronized ByteBuffer gzippedBuffer() throws IOException {
+      if (gzippedBuffer == null) {
+        gzippedBuffer = direct(gzipped());
+      }
+      return gzippedBuffer.duplicate();
+    }
+
+    private static ByteBuffer direct(byte[] bytes) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+      buffer.put(bytes);
+      buffer.flip();
+      return buffer.asReadOnlyBuffer();
+    }
+  }
+
+  /**
+   * A payload and when its rendering started.
+   */
+  private static class Rendered {
+    final Payload payload;
+    final long nanos;
+
+    Rendered(Payload payload, long nanos) {
+      this.payload = payload;
+      this.nanos = nanos;
+    }
+  }
+
+  // Bounds the payloads kept for the freshness window, as keys depend on the query of each scrape.
+  static final int MAX_FRESH_PAYLOADS = 32;
+
+  private final CollectorRegistry registry;
+  private final GzipCompressor compressor;
+  private final long freshnessNanos;
+  private final ConcurrentMap<Object, FutureTask<Payload>> inFlight = new ConcurrentHashMap<Object, FutureTask<Payload>>();
+  private final ConcurrentMap<Object, Rendered> fresh = new ConcurrentHashMap<Object, Rendered>();
+
+  /**
+   * Construct a ScrapeCoalescer for the default registry.
+   */
+  public ScrapeCoalescer() {
+    this(CollectorRegistry.defaultRegistry);
+  }
+
+  /**
+   * Construct a ScrapeCoalescer for the given registry.
+   */
+  public ScrapeCoalescer(CollectorRegistry registry) {
+    this(registry, GzipCompressor.DEFAULT);
+  }
+
+  /**
+   * Construct a ScrapeCoalescer for the given registry, gzipping payloads with the given compressor.
+   */
+  public ScrapeCoalescer(CollectorRegistry registry, GzipCompressor compressor) {
+    this(registry, compressor, 0, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Construct a ScrapeCoalescer for the given registry, reusing each payload for scrapes arriving
+   * up to the given time after its rendering started.
+   */
+  public ScrapeCoalescer(CollectorRegistry registry, GzipCompressor compressor, long freshness, TimeUnit unit) {
+    if (freshness < 0) {
+      throw new IllegalArgumentException("freshness cannot be " + freshness);
+    }
+    this.registry = registry;
+    this.compressor = compressor;
+    this.freshnessNanos = unit.toNanos(freshness);
+  }
+
+  /**
+   * Return the text format 0.0.4 rendering of the metrics matching the given names,
+   * sharing it with any concurrent scrape of the same names.
+   */
+  public Payload scrape(Set<String> includedNames) throws IOException {
+    return scrape(TextFormat.CONTENT_TYPE_004, includedNames);
+  }
+
+  /**
+   * Return the rendering in the given content type of the metrics matching the given names,
+   * sharing it with any concurrent scrape of the same content type and names.
+   *
+   * @param contentType a content type returned by {@link TextFormat#chooseContentType}
+   */
+  public Payload scrape(String contentType, Set<String> includedNames) throws IOException {
+    return scrape(contentType, includedNames, Collections.<SeriesSelector>emptyList());
+  }
+
+  /**
+   * Return the rendering in the given content type of the metrics matching the given names or selectors,
+   * sharing it with any concurrent scrape of the same content type, names and selectors.
+   *
+   * @param contentType a content type returned by {@link TextFormat#chooseContentType}
+   * @see TextFormat#writeFormat(String, java.io.OutputStream, CollectorRegistry, Set, List)
+   */
+  public Payload scrape(final String contentType, final Set<String> includedNames,
+      final List<SeriesSelector> selectors) throws IOException {
+    return scrape(key(contentType, includedNames, selectors), new Renderer() {
+      @Override
+      public byte[] render() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 16);
+        TextFormat.writeFormat(contentType, out, registry, includedNames, selectors);
+        return out.toByteArray();
+      }
+    });
+  }
+
+  /**
+   * The key of a scrape of the given content type and names, for use with {@link #scrape(Object, Renderer)}.
+   */
+  public static Object key(String contentType, Set<String> includedNames) {
+    return key(contentType, includedNames, Collections.<SeriesSelector>emptyList());
+  }
+
+  /**
+   * The key of a scrape of the given content type, names and selectors, for use with {@link #scrape(Object, Renderer)}.
+   */
+  public static Object key(String contentType, Set<String> includedNames, List<SeriesSelector> selectors) {
+    return Arrays.asList(contentType, includedNames, selectors);
+  }
+
+  /**
+   * Return the payload for the given key, sharing it with any concurrent scrape of the same key,
+   * or with earlier scrapes within the freshness window.
+   * <p>
+   * Keys are compared using {@link Object#equals}, and must identify everything
+   * that affects the rendered output.
+   */
+  public Payload scrape(Object key, final Renderer renderer) throws IOException {
+    if (freshnessNanos > 0) {
+      Rendered rendered = fresh.get(key);
+      if (rendered != null && System.nanoTime() - rendered.nanos < freshnessNanos) {
+        return rendered.payload;
+      }
+    }
+    final long start = System.nanoTime();
+    FutureTask<Payload> task = new FutureTask<Payload>(new Callable<Payload>() {
+      @Override
+      public Payload call() throws Exception {
+        return new Payload(renderer.render(), compressor);
+      }
+    });
+    FutureTask<Payload> existing = inFlight.putIfAbsent(key, task);
+    if (existing != null) {
+      return await(existing);
+    }
+    try {
+      task.run();
+      if (freshnessNanos > 0) {
+        keepFresh(key, await(task), start);
+      }
+    } finally {
+      inFlight.remove(key, task);
+    }
+    return await(task);
+  }
+
+  private void keepFresh(Object key, Payload payload, long start) {
+    if (fresh.size() >= MAX_FRESH_PAYLOADS && !fresh.containsKey(key)) {
+      long now = System.nanoTime();
+      for (Map.Entry<Object, Rendered> entry : fresh.entrySet()) {
+        if (now - entry.getValue().nanos >= freshnessNanos) {
+          fresh.remove(entry.getKey(), entry.getValue());
+        }
+      }
+      if (fresh.size() >= MAX_FRESH_PAYLOADS) {
+        return;
+      }
+    }
+    fresh.put(key, new Rendered(payload, start));
+  }
+
+  private static Payload await(FutureTask<Payload> task) throws IOException {
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for scrape");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
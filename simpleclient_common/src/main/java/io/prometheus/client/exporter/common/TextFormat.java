@@ -1,10 +1,18 @@
 package io.prometheus.client.exporter.common;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.SeriesSelector;
 
 public class TextFormat {
   /**
@@ -12,12 +20,134 @@ public class TextFormat {
    */
   public final static String CONTENT_TYPE_004 = "text/plain; version=0.0.4; charset=utf-8";
 
+  /**
+   * Content-type for OpenMetrics text version 1.0.0.
+   */
+  public final static String CONTENT_TYPE_OPENMETRICS_100 = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+  /**
+   * Return the content type to serve for the given Accept header.
+   * <p>
+   * Media ranges are weighed by their q parameter, the first of equally weighted ones wins.
+   * Defaults to {@link #CONTENT_TYPE_004}, also when no supported format is acceptable.
+   * The result can be passed to {@link #writeFormat}.
+   */
+  public static String chooseContentType(String acceptHeader) {
+    String best = CONTENT_TYPE_004;
+    if (acceptHeader == null) {
+      return best;
+    }
+    double bestQ = 0;
+    for (String range : acceptHeader.split(",")) {
+      String[] parts = range.split(";");
+      String mediaType = parts[0].trim().toLowerCase();
+      double q = 1;
+      String proto = null;
+      String encoding = null;
+      for (int i = 1; i < parts.length; i++) {
+        int eq = parts[i].indexOf('=');
+        if (eq == -1) {
+          continue;
+        }
+        String key = parts[i].substring(0, eq).trim().toLowerCase();
+        String value = parts[i].substring(eq + 1).trim();
+        if (key.equals("q")) {
+          try {
+            q = Double.parseDouble(value);
+          } catch (NumberFormatException e) {
+            q = 0;
+          }
+        } else if (key.equals("proto")) {
+          proto = value;
+        } else if (key.equals("encoding")) {
+          encoding = value;
+        }
+      }
+      String contentType = null;
+      if (mediaType.equals("application/vnd.google.protobuf")) {
+        if ("io.prometheus.client.MetricFamily".equals(proto) && "delimited".equals(encoding)) {
+          contentType = ProtobufFormat.CONTENT_TYPE;
+        }
+      } else if (mediaType.equals("application/openmetrics-text")) {
+        contentType = CONTENT_TYPE_OPENMETRICS_100;
+      } else if (mediaType.equals("text/plain") || mediaType.equals("text/*") || mediaType.equals("*/*")) {
+        contentType = CONTENT_TYPE_004;
+      }
+      if (contentType != null && q > bestQ) {
+        best = contentType;
+        bestQ = q;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Write out the metrics of the given registry matching the given names,
+   * in the format of a content type returned by {@link #chooseContentType}.
+   * The stream is neither flushed nor closed.
+   */
+  public static void writeFormat(String contentType, OutputStream out, CollectorRegistry registry, Set<String> includedNames) throws IOException {
+    if (CONTENT_TYPE_004.equals(contentType)) {
+      write004(out, registry, includedNames);
+    } else if (CONTENT_TYPE_OPENMETRICS_100.equals(contentType)) {
+      writeOpenMetrics100(out, registry, includedNames);
+    } else if (ProtobufFormat.CONTENT_TYPE.equals(contentType)) {
+      ProtobufFormat.write(out, registry, includedNames);
+    } else {
+      throw new IllegalArgumentException("Unknown content type: " + contentType);
+    }
+  }
+
+  /**
+   * Write out the metrics of the given registry matching the given names or selectors,
+   * in the format of a content type returned by {@link #chooseContentType}.
+   * <p>
+   * A name selects the same as a selector of just that name. Without selectors this is
+   * {@link #writeFormat(String, OutputStream, CollectorRegistry, Set)}.
+   * The stream is neither flushed nor closed.
+   */
+  public static void writeFormat(String contentType, OutputStream out, CollectorRegistry registry,
+      Set<String> includedNames, List<SeriesSelector> selectors) throws IOException {
+    if (selectors.isEmpty()) {
+      writeFormat(contentType, out, registry, includedNames);
+      return;
+    }
+    List<SeriesSelector> all = new ArrayList<SeriesSelector>(selectors);
+    for (String name : includedNames) {
+      all.add(SeriesSelector.forName(name));
+    }
+    if (ProtobufFormat.CONTENT_TYPE.equals(contentType)) {
+      ProtobufFormat.write(out, registry, all);
+      return;
+    }
+    boolean openMetrics = CONTENT_TYPE_OPENMETRICS_100.equals(contentType);
+    if (!openMetrics && !CONTENT_TYPE_004.equals(contentType)) {
+      throw new IllegalArgumentException("Unknown content type: " + contentType);
+    }
+    ExpositionOutput output = new ExpositionOutput(out);
+    try {
+      registry.collect(openMetrics ? new OpenMetricsOutputVisitor(output) : new Text004OutputVisitor(output), all);
+    } catch (VisitorIOException e) {
+      throw e.ioException;
+    }
+    if (openMetrics) {
+      output.write("# EOF\n");
+    }
+    output.flush();
+  }
+
   /**
    * Write out the text version 0.0.4 of the given MetricFamilySamples.
+   * <p>
+   * Sample values are the shortest decimals that parse back to them, on all JDKs. Before Java 19
+   * this can differ from {@link Collector#doubleToGoString}, which prints {@code 1.0E23} as
+   * {@code 9.999999999999999E22} there. All variants of write004 print the same values.
    */
   public static void write004(Writer writer, Enumeration<Collector.MetricFamilySamples> mfs) throws IOException {
     /* See http://prometheus.io/docs/instrumenting/exposition_formats/
      * for the output format specification. */
+    byte[] bytes = new byte[DoubleFormat.MAX_LENGTH];
+    char[] chars = new char[DoubleFormat.MAX_LENGTH];
     while(mfs.hasMoreElements()) {
       Collector.MetricFamilySamples metricFamilySamples = mfs.nextElement();
       writer.write("# HELP ");
@@ -58,7 +188,7 @@ public class TextFormat {
           writer.write('}');
         }
         writer.write(' ');
-        writer.write(Collector.doubleToGoString(sample.value));
+        DoubleFormat.write(sample.value, writer, bytes, chars);
         if (sample.timestampMs != null){
           writer.write(' ');
           writer.write(sample.timestampMs.toString());
@@ -68,6 +198,428 @@ public class TextFormat {
     }
   }
 
+  /**
+   * Write out the text version 0.0.4 of the metrics of the given registry matching the given names.
+   * <p>
+   * Collectors push their samples straight into the writer, see {@link CollectorRegistry#collect(Collector.SampleVisitor, Set)},
+   * so no intermediate {@link Collector.MetricFamilySamples} are built for the standard metrics.
+   */
+  public static void write004(Writer writer, CollectorRegistry registry, Set<String> includedNames) throws IOException {
+    try {
+      registry.collect(new Text004Visitor(writer), includedNames);
+    } catch (VisitorIOException e) {
+      throw e.ioException;
+    }
+  }
+
+  /**
+   * Write out the UTF-8 encoded text version 0.0.4 of the given MetricFamilySamples.
+   * <p>
+   * This encodes directly into an internal buffer, and is considerably cheaper than
+   * {@link #write004(Writer, Enumeration)} wrapped around an {@link java.io.OutputStreamWriter}.
+   * The stream is neither flushed nor closed.
+   */
+  public static void write004(OutputStream out, Enumeration<Collector.MetricFamilySamples> mfs) throws IOException {
+    ExpositionOutput output = new ExpositionOutput(out);
+    while(mfs.hasMoreElements()) {
+      Collector.MetricFamilySamples metricFamilySamples = mfs.nextElement();
+      writeFamily(output, metricFamilySamples.name, metricFamilySamples.type, metricFamilySamples.help, metricFamilySamples.escapedHelp);
+      for (Collector.MetricFamilySamples.Sample sample: metricFamilySamples.samples) {
+        writeSample(output, sample.name, sample.labelNames, sample.escapedLabelValues, null, null, sample.value, sample.timestampMs);
+      }
+    }
+    output.flush();
+  }
+
+  /**
+   * Write out the UTF-8 encoded text version 0.0.4 of the metrics of the given registry matching the given names.
+   * <p>
+   * This is the fastest way to expose a registry: collectors push their samples, and the
+   * pre-rendered series of the standard metrics are copied as is.
+   * The stream is neither flushed nor closed.
+   */
+  public static void write004(OutputStream out, CollectorRegistry registry, Set<String> includedNames) throws IOException {
+    ExpositionOutput output = new ExpositionOutput(out);
+    try {
+      registry.collect(new Text004OutputVisitor(output), includedNames);
+    } catch (VisitorIOException e) {
+      throw e.ioException;
+    }
+    output.flush();
+  }
+
+  /**
+   * Write out the UTF-8 encoded OpenMetrics text version 1.0.0 of the given MetricFamilySamples.
+   * The stream is neither flushed nor closed.
+   */
+  public static void writeOpenMetrics100(OutputStream out, Enumeration<Collector.MetricFamilySamples> mfs) throws IOException {
+    ExpositionOutput output = new ExpositionOutput(out);
+    OpenMetricsOutputVisitor visitor = new OpenMetricsOutputVisitor(output);
+    try {
+      while (mfs.hasMoreElements()) {
+        visitor.visit(mfs.nextElement());
+      }
+    } catch (VisitorIOException e) {
+      throw e.ioException;
+    }
+    output.write("# EOF\n");
+    output.flush();
+  }
+
+  /**
+   * Write out the UTF-8 encoded OpenMetrics text version 1.0.0 of the metrics of the given registry
+   * matching the given names.
+   * The stream is neither flushed nor closed.
+   */
+  public static void writeOpenMetrics100(OutputStream out, CollectorRegistry registry, Set<String> includedNames) throws IOException {
+    ExpositionOutput output = new ExpositionOutput(out);
+    try {
+      registry.collect(new OpenMetricsOutputVisitor(output), includedNames);
+    } catch (VisitorIOException e) {
+      throw e.ioException;
+    }
+    output.write("# EOF\n");
+    output.flush();
+  }
+
+  private static void writeFamily(ExpositionOutput output, String name, Collector.Type type, String help, String escapedHelp) throws IOException {
+    output.write("# HELP ");
+    output.write(name);
+    output.write(' ');
+    if (escapedHelp == null) {
+      writeEscapedHelp(output, help);
+    } else {
+      output.write(escapedHelp);
+    }
+    output.write('\n');
+    output.write("# TYPE ");
+    output.write(name);
+    output.write(' ');
+    output.write(typeString(type));
+    output.write('\n');
+  }
+
+  private static void writeEscapedHelp(ExpositionOutput output, String s) throws IOException {
+    int start = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\\' || c == '\n') {
+        output.write(s.substring(start, i));
+        output.write(c == '\\' ? "\\\\" : "\\n");
+        start = i + 1;
+      }
+    }
+    output.write(start == 0 ? s : s.substring(start));
+  }
+
+  private static void writeSample(ExpositionOutput output, String name, List<String> labelNames, List<String> escapedLabelValues,
+      String extraLabelName, String extraLabelValue, double value, Long timestampMs) throws IOException {
+    writeSeries(output, name, labelNames, escapedLabelValues, extraLabelName, extraLabelValue, true);
+    output.write(' ');
+    output.writeDouble(value);
+    if (timestampMs != null){
+      output.write(' ');
+      output.write(timestampMs.longValue());
+    }
+    output.write('\n');
+  }
+
+  // The name and labels of a sample. The 0.0.4 format ends each label with a comma,
+  // while OpenMetrics only allows commas between labels.
+  private static void writeSeries(ExpositionOutput output, String name, List<String> labelNames, List<String> escapedLabelValues,
+      String extraLabelName, String extraLabelValue, boolean trailingComma) throws IOException {
+    output.write(name);
+    if (labelNames.size() > 0 || extraLabelName != null) {
+      output.write('{');
+      for (int i = 0; i < labelNames.size(); ++i) {
+        if (i > 0) {
+          output.write(',');
+        }
+        output.write(labelNames.get(i));
+        output.write('=');
+        output.write('"');
+        output.write(escapedLabelValues.get(i));
+        output.write('"');
+      }
+      if (extraLabelName != null) {
+        if (labelNames.size() > 0) {
+          output.write(',');
+        }
+        output.write(extraLabelName);
+        output.write('=');
+        output.write('"');
+        output.write(Collector.escapeLabelValue(extraLabelValue));
+        output.write('"');
+      }
+      if (trailingComma) {
+        output.write(',');
+      }
+      output.write('}');
+    }
+  }
+
+  private static class Text004OutputVisitor extends Collector.SampleVisitor {
+    private final ExpositionOutput output;
+
+    Text004OutputVisitor(ExpositionOutput output) {
+      this.output = output;
+    }
+
+    @Override
+    public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+      try {
+        writeFamily(output, name, type, help, escapedHelp);
+      } catch (IOException e) {
+        throw new VisitorIOException(e);
+      }
+      return true;
+    }
+
+    @Override
+    public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      try {
+        writeSample(output, name, labelNames, Collector.escapedLabelValues(labelValues),
+            extraLabelName, extraLabelValue, value, timestampMs);
+      } catch (IOException e) {
+        throw new VisitorIOException(e);
+      }
+    }
+
+    @Override
+    public void visitSeries(byte[] identity, String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value) {
+      try {
+        output.write(identity);
+        if (labelNames.size() > 0 || extraLabelName != null) {
+          output.write(',');
+          output.write('}');
+        }
+        output.write(' ');
+        output.writeDouble(value);
+        output.write('\n');
+      } catch (IOException e) {
+        throw new VisitorIOException(e);
+      }
+    }
+  }
+
+  private static class OpenMetricsOutputVisitor extends Collector.SampleVisitor {
+    private final ExpositionOutput output;
+    // Counter samples named as the family get the _total suffix.
+    private String counterName;
+    private String counterTotalName;
+
+    OpenMetricsOutputVisitor(ExpositionOutput output) {
+      this.output = output;
+    }
+
+    @Override
+    public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+      counterName = null;
+      if (type == Collector.Type.COUNTER) {
+        counterName = name.endsWith("_total") ? name.substring(0, name.length() - 6) : name;
+        counterTotalName = counterName + "_total";
+      }
+      try {
+        output.write(OpenMetricsHeader.get(name, type, help));
+      } catch (IOException e) {
+        throw new VisitorIOException(e);
+      }
+      return true;
+    }
+
+    @Override
+    public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      if (counterName != null && name.equals(counterName)) {
+        name = counterTotalName;
+      }
+      try {
+        writeSeries(output, name, labelNames, Collector.escapedLabelValues(labelValues),
+            extraLabelName, extraLabelValue, false);
+        output.write(' ');
+        output.writeDouble(value);
+        if (timestampMs != null) {
+          // In seconds, with millisecond precision.
+          long ms = timestampMs.longValue();
+          long seconds = ms / 1000;
+          int millis = (int) (ms % 1000);
+          if (millis < 0) {
+            seconds -= 1;
+            millis += 1000;
+          }
+          output.write(' ');
+          output.write(seconds);
+          output.write('.');
+          output.write((char) ('0' + millis / 100));
+          output.write((char) ('0' + millis / 10 % 10));
+          output.write((char) ('0' + millis % 10));
+        }
+        output.write('\n');
+      } catch (IOException e) {
+        throw new VisitorIOException(e);
+      }
+    }
+
+    @Override
+    public void visitSeries(byte[] identity, String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value) {
+      if (counterName != null && name.equals(counterName)) {
+        // The pre-rendered identity lacks the suffix.
+        visitSample(name, labelNames, labelValues, extraLabelName, extraLabelValue, value, null);
+        return;
+      }
+      try {
+        output.write(identity);
+        if (labelNames.size() > 0 || extraLabelName != null) {
+          output.write('}');
+        }
+        output.write(' ');
+        output.writeDouble(value);
+        output.write('\n');
+      } catch (IOException e) {
+        throw new VisitorIOException(e);
+      }
+    }
+  }
+
+  /**
+   * The UTF-8 encoded TYPE and HELP lines of an OpenMetrics family, cached across scrapes.
+   */
+  private static class OpenMetricsHeader {
+    // Bounds the cache for collectors generating family names.
+    private static final int MAX_CACHED = 10000;
+    private static final ConcurrentMap<String, OpenMetricsHeader> cache = new ConcurrentHashMap<String, OpenMetricsHeader>();
+
+    final Collector.Type type;
+    final String help;
+    final byte[] bytes;
+
+    OpenMetricsHeader(String name, Collector.Type type, String help) throws IOException {
+      this.type = type;
+      this.help = help;
+      if (type == Collector.Type.COUNTER && name.endsWith("_total")) {
+        name = name.substring(0, name.length() - 6);
+      }
+      StringBuilder sb = new StringBuilder(32 + 2 * name.length() + help.length());
+      sb.append("# TYPE ").append(name).append(' ').append(openMetricsTypeString(type)).append('\n');
+      sb.append("# HELP ").append(name).append(' ');
+      for (int i = 0; i < help.length(); i++) {
+        char c = help.charAt(i);
+        switch (c) {
+          case '\\':
+            sb.append("\\\\");
+            break;
+          case '\"':
+            sb.append("\\\"");
+            break;
+          case '\n':
+            sb.append("\\n");
+            break;
+          default:
+            sb.append(c);
+        }
+      }
+      sb.append('\n');
+      this.bytes = sb.toString().getBytes("UTF-8");
+    }
+
+    static byte[] get(String name, Collector.Type type, String help) throws IOException {
+      if (help == null) {
+        help = "";
+      }
+      OpenMetricsHeader header = cache.get(name);
+      if (header == null || header.type != type || !header.help.equals(help)) {
+        header = new OpenMetricsHeader(name, type, help);
+        if (cache.size() < MAX_CACHED) {
+          cache.put(name, header);
+        }
+      }
+      return header.bytes;
+    }
+  }
+
+  /**
+   * Carries an IOException out of a {@link Collector.SampleVisitor}, whose methods can't throw it.
+   */
+  static class VisitorIOException extends RuntimeException {
+    final IOException ioException;
+
+    VisitorIOException(IOException ioException) {
+      super(ioException);
+      this.ioException = ioException;
+    }
+  }
+
+  private static class Text004Visitor extends Collector.SampleVisitor {
+    private final Writer writer;
+    private final byte[] bytes = new byte[DoubleFormat.MAX_LENGTH];
+    private final char[] chars = new char[DoubleFormat.MAX_LENGTH];
+
+    Text004Visitor(Writer writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+      try {
+        writer.write("# HELP ");
+        writer.write(name);
+        writer.write(' ');
+        if (escapedHelp == null) {
+          writeEscapedHelp(writer, help);
+        } else {
+          writer.write(escapedHelp);
+        }
+        writer.write('\n');
+
+        writer.write("# TYPE ");
+        writer.write(name);
+        writer.write(' ');
+        writer.write(typeString(type));
+        writer.write('\n');
+      } catch (IOException e) {
+        throw new VisitorIOException(e);
+      }
+      return true;
+    }
+
+    @Override
+    public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      try {
+        writer.write(name);
+        if (labelNames.size() > 0 || extraLabelName != null) {
+          writer.write('{');
+          List<String> escapedLabelValues = Collector.escapedLabelValues(labelValues);
+          for (int i = 0; i < labelNames.size(); ++i) {
+            writer.write(labelNames.get(i));
+            writer.write("=\"");
+            writer.write(escapedLabelValues.get(i));
+            writer.write("\",");
+          }
+          if (extraLabelName != null) {
+            writer.write(extraLabelName);
+            writer.write("=\"");
+            writeEscapedLabelValue(writer, extraLabelValue);
+            writer.write("\",");
+          }
+          writer.write('}');
+        }
+        writer.write(' ');
+        DoubleFormat.write(value, writer, bytes, chars);
+        if (timestampMs != null){
+          writer.write(' ');
+          writer.write(timestampMs.toString());
+        }
+        writer.write('\n');
+      } catch (IOException e) {
+        throw new VisitorIOException(e);
+      }
+    }
+  }
+
   protected static void writeEscapedHelp(Writer writer, String s) throws IOException {
 	  System.out.println("in write escape");
     for (int i = 0; i < s.length(); i++) {
@@ -107,6 +659,10 @@ public class TextFormat {
   
 
 
+  private static String openMetricsTypeString(Collector.Type t) {
+    return t == Collector.Type.UNTYPED ? "unknown" : typeString(t);
+  }
+
   private static String typeString(Collector.Type t) {
     switch (t) {
       case GAUGE:
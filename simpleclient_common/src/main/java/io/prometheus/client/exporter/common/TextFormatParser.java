@@ -0,0 +1,550 @@
+package io.prometheus.client.exporter.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import io.prometheus.client.Collector;
+
+/**
+ * A streaming parser for the text format version 0.0.4.
+ * <p>
+ * Input is tokenized straight from bytes. Metric names, label names and label values are looked up
+ * in a small cache keyed by their bytes, so repeated tokens, which is most of them, don't create
+ * new strings, and common numbers are parsed without going through a string.
+ * <p>
+ * Results are pushed to a {@link Collector.SampleVisitor}: families are announced with
+ * {@link Collector.SampleVisitor#visitFamily} and samples follow with
+ * {@link Collector.SampleVisitor#visitSample}. The label lists passed to the visitor are reused
+ * for the next sample, so visitors must copy them to keep them.
+ * <p>
+ * Example usage:
+ * <pre>
+ * {@code
+ *   List<Collector.MetricFamilySamples> mfs = new TextFormatParser().parse(inputStream);
+ * }
+ * </pre>
+ * A parser is not thread-safe, but can be reused to benefit from its cache.
+ */
+public class TextFormatParser {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final double[] POW10 = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private final StringCache strings = new StringCache(4096);
+  private byte[] buf = new byte[8192];
+  private byte[] scratch = new byte[256];
+  private final ArrayList<String> labelNames = new ArrayList<String>();
+  private final ArrayList<String> labelValues = new ArrayList<String>();
+  private final List<String> labelNamesView = Collections.unmodifiableList(labelNames);
+  private final List<String> labelValuesView = Collections.unmodifiableList(labelValues);
+
+  // Parsing state.
+  private Collector.SampleVisitor visitor;
+  private int lineNumber;
+  private String familyName;
+  private Collector.Type familyType;
+  private String familyHelp;
+  private boolean familyAnnounced;
+  private boolean familyWanted;
+
+  /**
+   * Parse the given stream into MetricFamilySamples. The stream is not closed.
+   */
+  public List<Collector.MetricFamilySamples> parse(InputStream in) throws IOException {
+    MaterializingVisitor materializer = new MaterializingVisitor();
+    parse(in, materializer);
+    return materializer.result;
+  }
+
+  /**
+   * Parse the given stream, pushing the families and samples to the given visitor.
+   * The stream is not closed.
+   */
+  public void parse(InputStream in, Collector.SampleVisitor visitor) throws IOException {
+    start(visitor);
+    int length = 0;
+    int n;
+    while ((n = in.read(buf, length, buf.length - length)) != -1) {
+      length += n;
+      int consumed = parseLines(buf, 0, length);
+      length -= consumed;
+      if (consumed > 0) {
+        System.arraycopy(buf, consumed, buf, 0, length);
+      } else if (length == buf.length) {
+        // A line longer than the buffer.
+        buf = Arrays.copyOf(buf, buf.length * 2);
+      }
+    }
+    finish(buf, 0, length);
+  }
+
+  /**
+   * Parse the remaining bytes of the given buffer, pushing the families and samples to the given visitor.
+   * The buffer's position is advanced to its limit.
+   */
+  public void parse(ByteBuffer in, Collector.SampleVisitor visitor) throws IOException {
+    if (in.hasArray()) {
+      start(visitor);
+      int offset = in.arrayOffset();
+      int consumed = parseLines(in.array(), offset + in.position(), offset + in.limit());
+      finish(in.array(), consumed, offset + in.limit());
+      in.position(in.limit());
+      return;
+    }
+    start(visitor);
+    int length = 0;
+    while (in.hasRemaining()) {
+      int n = Math.min(in.remaining(), buf.length - length);
+      in.get(buf, length, n);
+      length += n;
+      int consumed = parseLines(buf, 0, length);
+      length -= consumed;
+      if (consumed > 0) {
+        System.arraycopy(buf, consumed, buf, 0, length);
+      } else if (length == buf.length) {
+        buf = Arrays.copyOf(buf, buf.length * 2);
+      }
+    }
+    finish(buf, 0, length);
+  }
+
+  private void start(Collector.SampleVisitor visitor) {
+    this.visitor = visitor;
+    lineNumber = 0;
+    familyName = null;
+  }
+
+  // Parse the last line, which lacks a newline, and announce a pending family.
+  private void finish(byte[] b, int start, int end) throws IOException {
+    if (start < end) {
+      lineNumber++;
+      parseLine(b, start, end);
+    }
+    announceFamily();
+    visitor = null;
+  }
+
+  /**
+   * Parse the complete lines in the given range, returning the index after the last newline.
+   */
+  private int parseLines(byte[] b, int start, int end) throws IOException {
+    int lineStart = start;
+    for (int i = start; i < end; i++) {
+      if (b[i] == '\n') {
+        lineNumber++;
+        parseLine(b, lineStart, i);
+        lineStart = i + 1;
+      }
+    }
+    return lineStart;
+  }
+
+  private void parseLine(byte[] b, int start, int end) throws IOException {
+    if (end > start && b[end - 1] == '\r') {
+      end--;
+    }
+    int i = skipSpace(b, start, end);
+    if (i == end) {
+      return;
+    }
+    if (b[i] == '#') {
+      parseComment(b, i + 1, end);
+    } else {
+      parseSample(b, i, end);
+    }
+  }
+
+  private void parseComment(byte[] b, int start, int end) throws IOException {
+    int i = skipSpace(b, start, end);
+    int keywordEnd = token(b, i, end);
+    boolean help = isKeyword(b, i, keywordEnd, "HELP");
+    if (!help && !isKeyword(b, i, keywordEnd, "TYPE")) {
+      // Any other comment is ignored.
+      return;
+    }
+    i = skipSpace(b, keywordEnd, end);
+    int nameEnd = token(b, i, end);
+    if (nameEnd == i) {
+      // As by the Prometheus parser, this is just a comment.
+      return;
+    }
+    String name = strings.get(b, i, nameEnd);
+    i = skipSpace(b, nameEnd, end);
+
+    if (!name.equals(familyName) || familyAnnounced) {
+      announceFamily();
+      familyName = name;
+      familyType = Collector.Type.UNTYPED;
+      familyHelp = null;
+      familyAnnounced = false;
+    }
+    if (help) {
+      familyHelp = unescapeHelp(b, i, end);
+    } else {
+      familyType = parseType(b, i, token(b, i, end));
+    }
+  }
+
+  private Collector.Type parseType(byte[] b, int start, int end) throws IOException {
+    if (isKeyword(b, start, end, "counter")) {
+      return Collector.Type.COUNTER;
+    } else if (isKeyword(b, start, end, "gauge")) {
+      return Collector.Type.GAUGE;
+    } else if (isKeyword(b, start, end, "summary")) {
+      return Collector.Type.SUMMARY;
+    } else if (isKeyword(b, start, end, "histogram")) {
+      return Collector.Type.HISTOGRAM;
+    } else if (isKeyword(b, start, end, "untyped")) {
+      return Collector.Type.UNTYPED;
+    }
+    throw error("Unknown type " + new String(b, start, end - start, UTF_8));
+  }
+
+  private void parseSample(byte[] b, int start, int end) throws IOException {
+    int i = start;
+    while (i < end && b[i] != '{' && b[i] != ' ' && b[i] != '\t') {
+      i++;
+    }
+    if (i == start) {
+      throw error("Missing metric name");
+    }
+    String name = strings.get(b, start, i);
+    if (familyName == null || !belongsToFamily(name)) {
+      announceFamily();
+      familyName = name;
+      familyType = Collector.Type.UNTYPED;
+      familyHelp = null;
+      familyAnnounced = false;
+    }
+    announceFamily();
+
+    labelNames.clear();
+    labelValues.clear();
+    i = skipSpace(b, i, end);
+    if (i < end && b[i] == '{') {
+      i = parseLabels(b, i + 1, end);
+    }
+
+    i = skipSpace(b, i, end);
+    int valueEnd = token(b, i, end);
+    if (valueEnd == i) {
+      throw error("Missing value");
+    }
+    double value = parseDouble(b, i, valueEnd);
+    i = skipSpace(b, valueEnd, end);
+    Long timestampMs = null;
+    if (i < end) {
+      int timestampEnd = token(b, i, end);
+      timestampMs = parseLong(b, i, timestampEnd);
+      if (skipSpace(b, timestampEnd, end) != end) {
+        throw error("Unexpected content after timestamp");
+      }
+    }
+    if (familyWanted) {
+      visitor.visitSample(name, labelNamesView, labelValuesView, null, null, value, timestampMs);
+    }
+  }
+
+  /**
+   * Parse the labels after the opening brace, returning the index after the closing brace.
+   */
+  private int parseLabels(byte[] b, int start, int end) throws IOException {
+    int i = skipSpace(b, start, end);
+    while (i < end && b[i] != '}') {
+      int nameStart = i;
+      while (i < end && b[i] != '=' && b[i] != ' ' && b[i] != '\t') {
+        i++;
+      }
+      if (i == nameStart) {
+        throw error("Missing label name");
+      }
+      String name = strings.get(b, nameStart, i);
+      i = skipSpace(b, i, end);
+      if (i == end || b[i] != '=') {
+        throw error("Expected '=' after label name " + name);
+      }
+      i = skipSpace(b, i + 1, end);
+      if (i == end || b[i] != '"') {
+        throw error("Expected '\"' to start the value of label " + name);
+      }
+      i = parseLabelValue(b, i + 1, end);
+      labelNames.add(name);
+      i = skipSpace(b, i, end);
+      if (i < end && b[i] == ',') {
+        i = skipSpace(b, i + 1, end);
+      } else if (i == end || b[i] != '}') {
+        throw error("Expected ',' or '}' after the value of label " + name);
+      }
+    }
+    if (i == end) {
+      throw error("Missing '}'");
+    }
+    return i + 1;
+  }
+
+  /**
+   * Parse a label value after its opening quote, returning the index after the closing quote.
+   */
+  private int parseLabelValue(byte[] b, int start, int end) throws IOException {
+    int i = start;
+    while (i < end && b[i] != '"' && b[i] != '\\') {
+      i++;
+    }
+    if (i < end && b[i] == '"') {
+      // Nothing to unescape, which is the common case.
+      labelValues.add(strings.get(b, start, i));
+      return i + 1;
+    }
+    int n = 0;
+    for (i = start; i < end && b[i] != '"'; i++) {
+      byte c = b[i];
+      if (c == '\\' && i + 1 < end) {
+        i++;
+        c = b[i] == 'n' ? (byte) '\n' : b[i];
+      }
+      if (n == scratch.length) {
+        scratch = Arrays.copyOf(scratch, n * 2);
+      }
+      scratch[n++] = c;
+    }
+    if (i == end) {
+      throw error("Missing '\"' to end a label value");
+    }
+    labelValues.add(strings.get(scratch, 0, n));
+    return i + 1;
+  }
+
+  private String unescapeHelp(byte[] b, int start, int end) {
+    int n = 0;
+    for (int i = start; i < end; i++) {
+      byte c = b[i];
+      if (c == '\\' && i + 1 < end && (b[i + 1] == '\\' || b[i + 1] == 'n')) {
+        i++;
+        c = b[i] == 'n' ? (byte) '\n' : (byte) '\\';
+      }
+      if (n == scratch.length) {
+        scratch = Arrays.copyOf(scratch, n * 2);
+      }
+      scratch[n++] = c;
+    }
+    return new String(scratch, 0, n, UTF_8);
+  }
+
+  private boolean belongsToFamily(String name) {
+    if (name.equals(familyName)) {
+      return true;
+    }
+    if (familyType != Collector.Type.SUMMARY && familyType != Collector.Type.HISTOGRAM) {
+      return false;
+    }
+    if (name.length() <= familyName.length() || !name.startsWith(familyName)) {
+      return false;
+    }
+    int suffix = familyName.length();
+    return name.regionMatches(suffix, "_count", 0, 6) && name.length() == suffix + 6
+        || name.regionMatches(suffix, "_sum", 0, 4) && name.length() == suffix + 4
+        || familyType == Collector.Type.HISTOGRAM
+          && name.regionMatches(suffix, "_bucket", 0, 7) && name.length() == suffix + 7;
+  }
+
+  private void announceFamily() {
+    if (familyName != null && !familyAnnounced) {
+      familyAnnounced = true;
+      familyWanted = visitor.visitFamily(familyName, familyType, familyHelp == null ? "" : familyHelp, null);
+    }
+  }
+
+  /**
+   * Parse a Go float, exactly. Plain decimals with up to 15 digits and small exponents are computed
+   * directly, others go through {@link Double#parseDouble}.
+   */
+  private double parseDouble(byte[] b, int start, int end) throws IOException {
+    int i = start;
+    boolean negative = false;
+    if (b[i] == '-' || b[i] == '+') {
+      negative = b[i] == '-';
+      i++;
+    }
+    if (end - i == 3 && isKeyword(b, i, end, "Inf")) {
+      return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+    }
+    if (end - i == 3 && isKeyword(b, i, end, "NaN")) {
+      return Double.NaN;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean any = false;
+    for (; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+      any = true;
+      if (mantissa != 0 || b[i] != '0') {
+        mantissa = mantissa * 10 + (b[i] - '0');
+        digits++;
+      }
+    }
+    if (i < end && b[i] == '.') {
+      for (i++; i < end && b[i] >= '0' && b[i] <= '9'; i++) {
+        any = true;
+        if (mantissa != 0 || b[i] != '0') {
+          mantissa = mantissa * 10 + (b[i] - '0');
+          digits++;
+        }
+        exponent--;
+      }
+    }
+    if (any && i < end && (b[i] == 'e' || b[i] == 'E')) {
+      int j = i + 1;
+      boolean negativeExponent = false;
+      if (j < end && (b[j] == '-' || b[j] == '+')) {
+        negativeExponent = b[j] == '-';
+        j++;
+      }
+      int e = 0;
+      int exponentStart = j;
+      for (; j < end && b[j] >= '0' && b[j] <= '9' && e < 10000; j++) {
+        e = e * 10 + (b[j] - '0');
+      }
+      if (j > exponentStart) {
+        exponent += negativeExponent ? -e : e;
+        i = j;
+      }
+    }
+    if (any && i == end && digits <= 15) {
+      double d = mantissa;
+      if (exponent == 0 || mantissa == 0) {
+        return negative ? -d : d;
+      }
+      if (exponent < 0 && exponent >= -22) {
+        d /= POW10[-exponent];
+        return negative ? -d : d;
+      }
+      if (exponent > 0 && exponent <= 22) {
+        d *= POW10[exponent];
+        return negative ? -d : d;
+      }
+    }
+    try {
+      return Double.parseDouble(new String(b, start, end - start, UTF_8));
+    } catch (NumberFormatException e) {
+      throw error("Invalid value " + new String(b, start, end - start, UTF_8));
+    }
+  }
+
+  private long parseLong(byte[] b, int start, int end) throws IOException {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (b[i] == '-' || b[i] == '+')) {
+      negative = b[i] == '-';
+      i++;
+    }
+    if (i == end || end - i > 18) {
+      try {
+        return Long.parseLong(new String(b, start, end - start, UTF_8));
+      } catch (NumberFormatException e) {
+        throw error("Invalid timestamp " + new String(b, start, end - start, UTF_8));
+      }
+    }
+    long l = 0;
+    for (; i < end; i++) {
+      if (b[i] < '0' || b[i] > '9') {
+        throw error("Invalid timestamp " + new String(b, start, end - start, UTF_8));
+      }
+      l = l * 10 + (b[i] - '0');
+    }
+    return negative ? -l : l;
+  }
+
+  private static int skipSpace(byte[] b, int i, int end) {
+    while (i < end && (b[i] == ' ' || b[i] == '\t')) {
+      i++;
+    }
+    return i;
+  }
+
+  private static int token(byte[] b, int i, int end) {
+    while (i < end && b[i] != ' ' && b[i] != '\t') {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isKeyword(byte[] b, int start, int end, String keyword) {
+    if (end - start != keyword.length()) {
+      return false;
+    }
+    for (int i = 0; i < keyword.length(); i++) {
+      if (b[start + i] != keyword.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private IOException error(String message) {
+    return new IOException(message + " on line " + lineNumber);
+  }
+
+  /**
+   * A direct-mapped cache of strings by their UTF-8 bytes.
+   */
+  private static final class StringCache {
+    private final byte[][] keys;
+    private final String[] values;
+    private final int mask;
+
+    StringCache(int size) {
+      keys = new byte[size][];
+      values = new String[size];
+      mask = size - 1;
+    }
+
+    String get(byte[] b, int start, int end) {
+      int h = 1;
+      for (int i = start; i < end; i++) {
+        h = 31 * h + b[i];
+      }
+      int slot = (h ^ (h >>> 16)) & mask;
+      byte[] key = keys[slot];
+      if (key != null && key.length == end - start) {
+        int i = 0;
+        while (i < key.length && key[i] == b[start + i]) {
+          i++;
+        }
+        if (i == key.length) {
+          return values[slot];
+        }
+      }
+      String s = new String(b, start, end - start, UTF_8);
+      keys[slot] = Arrays.copyOfRange(b, start, end);
+      values[slot] = s;
+      return s;
+    }
+  }
+
+  private static final class MaterializingVisitor extends Collector.SampleVisitor {
+    final List<Collector.MetricFamilySamples> result = new ArrayList<Collector.MetricFamilySamples>();
+    private List<Collector.MetricFamilySamples.Sample> samples;
+
+    @Override
+    public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+      samples = new ArrayList<Collector.MetricFamilySamples.Sample>();
+      result.add(new Collector.MetricFamilySamples(name, type, help, samples));
+      return true;
+    }
+
+    @Override
+    public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      samples.add(new Collector.MetricFamilySamples.Sample(name, new ArrayList<String>(labelNames),
+          new ArrayList<String>(labelValues), value, timestampMs));
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package io.prometheus.client.exporter.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import io.prometheus.client.Collector;
+
+public class DoubleFormatTest {
+  private static final boolean SHORTEST_JDK = !System.getProperty("java.specification.version").startsWith("1.")
+      && Integer.parseInt(System.getProperty("java.specification.version")) >= 19;
+
+  private static String format(double d) throws UnsupportedEncodingException {
+    byte[] buf = new byte[DoubleFormat.MAX_LENGTH + 2];
+    int end = DoubleFormat.write(d, buf, 1);
+    assertTrue(end - 1 <= DoubleFormat.MAX_LENGTH);
+    return new String(buf, 1, end - 1, "US-ASCII");
+  }
+
+  private static void assertFormat(double d) throws UnsupportedEncodingException {
+    String expected = Collector.doubleToGoString(d);
+    String actual = format(d);
+    if (expected.equals(actual)) {
+      return;
+    }
+    // Before Java 19 Double.toString does not always produce the shortest, closest decimal,
+    // in which case ours must be no longer and still round trip.
+    assertTrue("Expected " + expected + " for " + Double.doubleToRawLongBits(d) + " but got " + actual,
+        !SHORTEST_JDK && actual.length() <= expected.length() && Double.parseDouble(actual) == d);
+  }
+
+  @Test
+  public void testSpecialValues() throws UnsupportedEncodingException {
+    assertEquals("NaN", format(Double.NaN));
+    assertEquals("+Inf", format(Double.POSITIVE_INFINITY));
+    assertEquals("-Inf", format(Double.NEGATIVE_INFINITY));
+    assertEquals("0.0", format(0.0));
+    assertEquals("-0.0", format(-0.0));
+  }
+
+  @Test
+  public void testLayout() throws UnsupportedEncodingException {
+    assertEquals("1.0", format(1));
+    assertEquals("-42.0", format(-42));
+    assertEquals("9999999.0", format(9999999));
+    assertEquals("1.0E7", format(1e7));
+    assertEquals("1.2345678E7", format(12345678));
+    assertEquals("0.5", format(0.5));
+    assertEquals("123.456", format(123.456));
+    assertEquals("0.001", format(0.001));
+    assertEquals("0.00123", format(0.00123));
+    assertEquals("1.0E-4", format(1e-4));
+    assertEquals("1.5E-4", format(1.5e-4));
+    assertEquals("1.7976931348623157E308", format(Double.MAX_VALUE));
+    assertEquals("4.9E-324", format(Double.MIN_VALUE));
+    assertEquals("2.2250738585072014E-308", format(-Double.MIN_NORMAL).substring(1));
+  }
+
+  @Test
+  public void testShorterThanOldJdks() throws UnsupportedEncodingException {
+    // Before Java 19, Double.toString prints the second of each pair.
+    assertEquals("1.0E23", format(1.0E23));
+    assertEquals("2.82879384806159E17", format(2.82879384806159008E17));
+    assertEquals("1.387364135037754E18", format(1.38736413503775411E18));
+    assertEquals("1.45800632428665E17", format(1.45800632428664992E17));
+    assertEquals("4.8726570057E288", format(4.8726570056999995E288));
+    assertEquals("-2.270518729521334E18", format(-2.27051872952133402E18));
+  }
+
+  @Test
+  public void testBoundaries() throws UnsupportedEncodingException {
+    for (int e = -324; e <= 308; e++) {
+      double p = Double.parseDouble("1e" + e);
+      assertFormat(p);
+      assertFormat(Math.nextUp(p));
+      assertFormat(Math.nextAfter(p, 0));
+      assertFormat(-p);
+    }
+    for (int e = -1074; e <= 1023; e++) {
+      double p = Math.scalb(1.0, e);
+      assertFormat(p);
+      assertFormat(Math.nextUp(p));
+      assertFormat(Math.nextAfter(p, 0));
+    }
+    for (long t = 1; t < 1000; t++) {
+      assertFormat(Double.longBitsToDouble(t));
+    }
+  }
+
+  @Test
+  public void testWholeNumbers() throws UnsupportedEncodingException {
+    for (long i = 0; i < 100000; i++) {
+      assertFormat(i);
+    }
+    Random random = new Random(0);
+    for (int i = 0; i < 100000; i++) {
+      assertFormat(random.nextLong() >> random.nextInt(64));
+    }
+  }
+
+  @Test
+  public void testDecimals() throws UnsupportedEncodingException {
+    Random random = new Random(1);
+    for (int i = 0; i < 100000; i++) {
+      assertFormat(random.nextInt(1000000) / Math.pow(10, random.nextInt(12)));
+      assertFormat(random.nextDouble());
+    }
+  }
+
+  @Test
+  public void testRandomBits() throws UnsupportedEncodingException {
+    Random random = new Random(2);
+    for (int i = 0; i < 1000000; i++) {
+      double d = Double.longBitsToDouble(random.nextLong());
+      if (!Double.isNaN(d)) {
+        assertFormat(d);
+      }
+    }
+  }
+
+  @Test
+  public void testLongs() {
+    byte[] buf = new byte[DoubleFormat.MAX_LONG_LENGTH];
+    long[] values = {0, 1, 9, 10, 99, 100, 1234567890123L, Long.MAX_VALUE};
+    for (long v : values) {
+      int end = DoubleFormat.writeLong(v, buf, 0);
+      assertEquals(Long.toString(v), new String(buf, 0, end));
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package io.prometheus.client.exporter.common;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class GzipCompressorTest {
+
+  private static byte[] payload(int size) {
+    byte[] bytes = new byte[size];
+    Random random = new Random(42);
+    for (int i = 0; i < size; i++) {
+      // Compressible, like the text format.
+      bytes[i] = (byte) ('a' + random.nextInt(8));
+    }
+    return bytes;
+  }
+
+  private static byte[] gunzip(byte[] gzipped) throws IOException {
+    InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    int n;
+    while ((n = in.read(buffer)) != -1) {
+      out.write(buffer, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testCompressRoundTrips() throws IOException {
+    for (int level : new int[]{Deflater.DEFAULT_COMPRESSION, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION}) {
+      GzipCompressor compressor = new GzipCompressor(level, 1);
+      // Repeatedly, to reuse the pooled Deflater.
+      for (int size : new int[]{0, 1, 100000, 10}) {
+        byte[] bytes = payload(size);
+        assertArrayEquals(bytes, gunzip(compressor.compress(bytes)));
+      }
+    }
+  }
+
+  @Test
+  public void testMatchesGzipOutputStream() throws IOException {
+    byte[] bytes = payload(10000);
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    GZIPOutputStream gzip = new GZIPOutputStream(expected);
+    gzip.write(bytes);
+    gzip.close();
+    byte[] expectedBytes = expected.toByteArray();
+    byte[] actualBytes = GzipCompressor.DEFAULT.compress(bytes);
+    assertArrayEquals(bytes, gunzip(actualBytes));
+    // The OS byte of the header changed from 0 to 255 in JDK 16, the rest must match.
+    expectedBytes[9] = 0;
+    actualBytes[9] = 0;
+    assertArrayEquals(expectedBytes, actualBytes);
+  }
+
+  @Test
+  public void testOutputStream() throws IOException {
+    byte[] bytes = payload(50000);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    OutputStream gzip = GzipCompressor.DEFAULT.outputStream(out);
+    for (int i = 0; i < bytes.length; i += 1000) {
+      gzip.write(bytes, i, 1000);
+    }
+    gzip.close();
+    assertArrayEquals(bytes, gunzip(out.toByteArray()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidLevel() {
+    new GzipCompressor(10);
+  }
+}
@@ -0,0 +1,294 @@
+package io.prometheus.client.exporter.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnknownFieldSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.Metrics;
+import io.prometheus.client.SeriesSelector;
+import io.prometheus.client.Summary;
+
+public class ProtobufFormatTest {
+  CollectorRegistry registry;
+
+  @Before
+  public void setUp() {
+    registry = new CollectorRegistry();
+  }
+
+  private List<Metrics.MetricFamily> parse() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ProtobufFormat.write(out, registry, Collections.<String>emptySet());
+    ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+    List<Metrics.MetricFamily> result = new ArrayList<Metrics.MetricFamily>();
+    Metrics.MetricFamily mf;
+    while ((mf = Metrics.MetricFamily.parseDelimitedFrom(in)) != null) {
+      result.add(mf);
+    }
+    return result;
+  }
+
+  @Test
+  public void testCounterAndGauge() throws IOException {
+    Counter.build().name("c").help("help with \\ and\nnewline").labelNames("l").register(registry)
+        .labels("é\"\\").inc(3);
+    Gauge.build().name("g").help("help").register(registry).set(-1.5);
+
+    List<Metrics.MetricFamily> mfs = parse();
+    assertEquals(2, mfs.size());
+    // Registry order isn't defined.
+    Metrics.MetricFamily c = mfs.get(0).getName().equals("c") ? mfs.get(0) : mfs.get(1);
+    Metrics.MetricFamily g = mfs.get(0).getName().equals("c") ? mfs.get(1) : mfs.get(0);
+    assertEquals("c", c.getName());
+    assertEquals("help with \\ and\nnewline", c.getHelp());
+    assertEquals(Metrics.MetricType.COUNTER, c.getType());
+    assertEquals(1, c.getMetricCount());
+    assertEquals("l", c.getMetric(0).getLabel(0).getName());
+    assertEquals("é\"\\", c.getMetric(0).getLabel(0).getValue());
+    assertEquals(3.0, c.getMetric(0).getCounter().getValue(), .001);
+    assertFalse(c.getMetric(0).getUnknownFields().hasField(6));
+
+    assertEquals("g", g.getName());
+    assertEquals(Metrics.MetricType.GAUGE, g.getType());
+    assertEquals(0, g.getMetric(0).getLabelCount());
+    assertEquals(-1.5, g.getMetric(0).getGauge().getValue(), .001);
+  }
+
+  @Test
+  public void testSummary() throws IOException {
+    Summary s = Summary.build().name("s").help("help").labelNames("l").quantile(0.5, 0.01).register(registry);
+    s.labels("a").observe(2);
+    s.labels("b").observe(4);
+    s.labels("b").observe(6);
+
+    Metrics.MetricFamily mf = parse().get(0);
+    assertEquals(Metrics.MetricType.SUMMARY, mf.getType());
+    assertEquals(2, mf.getMetricCount());
+    Metrics.Metric b = mf.getMetric(0).getLabel(0).getValue().equals("b") ? mf.getMetric(0) : mf.getMetric(1);
+    assertEquals(1, b.getLabelCount());
+    assertEquals(2, b.getSummary().getSampleCount());
+    assertEquals(10.0, b.getSummary().getSampleSum(), .001);
+    assertEquals(1, b.getSummary().getQuantileCount());
+    assertEquals(0.5, b.getSummary().getQuantile(0).getQuantile(), .001);
+    assertEquals(4.0, b.getSummary().getQuantile(0).getValue(), .001);
+  }
+
+  @Test
+  public void testHistogram() throws IOException {
+    Histogram.build().name("h").help("help").buckets(1, 2).register(registry).observe(1.5);
+
+    Metrics.MetricFamily mf = parse().get(0);
+    assertEquals("h", mf.getName());
+    assertEquals(1, mf.getMetricCount());
+    // The model predates histograms, so decode the Histogram field generically.
+    List<ByteString> histograms = mf.getMetric(0).getUnknownFields().getField(7).getLengthDelimitedList();
+    assertEquals(1, histograms.size());
+    UnknownFieldSet histogram = UnknownFieldSet.parseFrom(histograms.get(0));
+    assertEquals(Arrays.asList(1L), histogram.getField(1).getVarintList());
+    assertEquals(1.5, Double.longBitsToDouble(histogram.getField(2).getFixed64List().get(0)), .001);
+
+    // The +Inf bucket is implied by the count.
+    List<ByteString> buckets = histogram.getField(3).getLengthDelimitedList();
+    assertEquals(2, buckets.size());
+    double[] bounds = {1, 2};
+    long[] counts = {0, 1};
+    for (int i = 0; i < 2; i++) {
+      UnknownFieldSet bucket = UnknownFieldSet.parseFrom(buckets.get(i));
+      assertEquals(Arrays.asList(counts[i]), bucket.getField(1).getVarintList());
+      assertEquals(bounds[i], Double.longBitsToDouble(bucket.getField(2).getFixed64List().get(0)), .001);
+    }
+  }
+
+  @Test
+  public void testInterleavedSeriesAndTimestamps() throws IOException {
+    final List<Collector.MetricFamilySamples.Sample> samples = Arrays.asList(
+        new Collector.MetricFamilySamples.Sample("s", Arrays.asList("l", "quantile"), Arrays.asList("a", "0.9"), 1, 123L),
+        new Collector.MetricFamilySamples.Sample("s", Arrays.asList("quantile", "l"), Arrays.asList("0.9", "b"), 2, 123L),
+        new Collector.MetricFamilySamples.Sample("s_count", Arrays.asList("l"), Arrays.asList("a"), 3, 123L),
+        new Collector.MetricFamilySamples.Sample("s_count", Arrays.asList("l"), Arrays.asList("b"), 4, 123L));
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        return Collections.singletonList(new MetricFamilySamples("s", Type.SUMMARY, "help", samples));
+      }
+    }.register(registry);
+
+    Metrics.MetricFamily mf = parse().get(0);
+    assertEquals(2, mf.getMetricCount());
+    assertEquals("a", mf.getMetric(0).getLabel(0).getValue());
+    assertEquals(3, mf.getMetric(0).getSummary().getSampleCount());
+    assertFalse(mf.getMetric(0).getSummary().hasSampleSum());
+    assertEquals(1.0, mf.getMetric(0).getSummary().getQuantile(0).getValue(), .001);
+    // The model predates timestamps too.
+    assertEquals(Arrays.asList(123L), mf.getMetric(0).getUnknownFields().getField(6).getVarintList());
+    assertEquals("b", mf.getMetric(1).getLabel(0).getValue());
+    assertEquals(4, mf.getMetric(1).getSummary().getSampleCount());
+    assertEquals(2.0, mf.getMetric(1).getSummary().getQuantile(0).getValue(), .001);
+  }
+
+  @Test
+  public void testReusedLabelListsAreCopied() throws IOException {
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        return Collections.emptyList();
+      }
+
+      @Override
+      public void collect(SampleVisitor visitor) {
+        // Reusing the lists between samples, as the visitor contract allows.
+        List<String> names = new ArrayList<String>(Arrays.asList("l"));
+        List<String> values = new ArrayList<String>(Arrays.asList("a"));
+        visitor.visitFamily("g", Type.GAUGE, "help", "help");
+        visitor.visitSample("g", names, values, null, null, 1, null);
+        values.set(0, "b");
+        visitor.visitSample("g", names, values, null, null, 2, null);
+        visitor.visitFamily("s", Type.SUMMARY, "help", "help");
+        values.set(0, "a");
+        visitor.visitSample("s_count", names, values, null, null, 3, null);
+        values.set(0, "b");
+        visitor.visitSample("s_count", names, values, null, null, 4, null);
+        values.set(0, "a");
+        visitor.visitSample("s_sum", names, values, null, null, 5, null);
+      }
+    }.register(registry);
+
+    List<Metrics.MetricFamily> mfs = parse();
+    Metrics.MetricFamily g = mfs.get(0);
+    assertEquals("a", g.getMetric(0).getLabel(0).getValue());
+    assertEquals(1.0, g.getMetric(0).getGauge().getValue(), .001);
+    assertEquals("b", g.getMetric(1).getLabel(0).getValue());
+    assertEquals(2.0, g.getMetric(1).getGauge().getValue(), .001);
+    Metrics.MetricFamily s = mfs.get(1);
+    assertEquals(2, s.getMetricCount());
+    assertEquals("a", s.getMetric(0).getLabel(0).getValue());
+    assertEquals(3, s.getMetric(0).getSummary().getSampleCount());
+    assertEquals(5.0, s.getMetric(0).getSummary().getSampleSum(), .001);
+    assertEquals("b", s.getMetric(1).getLabel(0).getValue());
+    assertEquals(4, s.getMetric(1).getSummary().getSampleCount());
+  }
+
+  @Test
+  public void testNullHelpIsLeftOut() throws IOException {
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        return Collections.singletonList(new MetricFamilySamples("g", Type.GAUGE, null,
+            Collections.singletonList(new MetricFamilySamples.Sample("g", Collections.<String>emptyList(),
+                Collections.<String>emptyList(), 1))));
+      }
+    }.register(registry);
+
+    Metrics.MetricFamily mf = parse().get(0);
+    assertEquals("g", mf.getName());
+    assertFalse(mf.hasHelp());
+    assertEquals(1.0, mf.getMetric(0).getGauge().getValue(), .001);
+  }
+
+  @Test
+  public void testRegistryOutputMatchesMetricFamilySamples() throws IOException {
+    Counter.build().name("c").help("help").labelNames("l").register(registry).labels("a").inc();
+    Summary s = Summary.build().name("s").help("help").labelNames("l").quantile(0.5, 0.01).quantile(0.9, 0.01)
+        .register(registry);
+    s.labels("a").observe(1);
+    s.labels("b").observe(2);
+    Histogram h = Histogram.build().name("h").help("help").labelNames("l").buckets(1, 2).register(registry);
+    h.labels("a").observe(1.5);
+    h.labels("b").observe(3);
+
+    ByteArrayOutputStream enumerated = new ByteArrayOutputStream();
+    ProtobufFormat.write(enumerated, registry.metricFamilySamples());
+    ByteArrayOutputStream visited = new ByteArrayOutputStream();
+    ProtobufFormat.write(visited, registry, Collections.<String>emptySet());
+    assertArrayEquals(enumerated.toByteArray(), visited.toByteArray());
+
+    // Filtered samples come without their children being announced.
+    enumerated.reset();
+    ProtobufFormat.write(enumerated, registry.filteredMetricFamilySamples(new HashSet<String>(Arrays.asList("h_bucket", "h_count"))));
+    visited.reset();
+    ProtobufFormat.write(visited, registry, new HashSet<String>(Arrays.asList("h_bucket", "h_count")));
+    assertArrayEquals(enumerated.toByteArray(), visited.toByteArray());
+    Metrics.MetricFamily mf = Metrics.MetricFamily.parseDelimitedFrom(new ByteArrayInputStream(visited.toByteArray()));
+    assertEquals(2, mf.getMetricCount());
+  }
+
+  @Test
+  public void testLargeFamilySpansBuffers() throws IOException {
+    Gauge g = Gauge.build().name("g").help("help").labelNames("l").register(registry);
+    for (int i = 0; i < 5000; i++) {
+      g.labels("value" + i).set(i);
+    }
+    Metrics.MetricFamily mf = parse().get(0);
+    assertEquals(5000, mf.getMetricCount());
+    double sum = 0;
+    for (Metrics.Metric m : mf.getMetricList()) {
+      sum += m.getGauge().getValue();
+    }
+    assertEquals(4999 * 5000 / 2, sum, .001);
+  }
+
+  @Test
+  public void testSelectors() throws IOException {
+    Gauge g = Gauge.build().name("g").help("help").labelNames("l").register(registry);
+    g.labels("a").set(1);
+    g.labels("b").set(2);
+    Gauge.build().name("other").help("help").register(registry);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TextFormat.writeFormat(ProtobufFormat.CONTENT_TYPE, out, registry, Collections.<String>emptySet(),
+        Arrays.asList(SeriesSelector.parse("{l=\"b\"}")));
+    ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+    Metrics.MetricFamily mf = Metrics.MetricFamily.parseDelimitedFrom(in);
+    assertEquals("g", mf.getName());
+    assertEquals(1, mf.getMetricCount());
+    assertEquals(2.0, mf.getMetric(0).getGauge().getValue(), .001);
+    assertEquals(null, Metrics.MetricFamily.parseDelimitedFrom(in));
+  }
+
+  @Test
+  public void testChooseContentType() {
+    assertEquals(TextFormat.CONTENT_TYPE_004, TextFormat.chooseContentType(null));
+    assertEquals(TextFormat.CONTENT_TYPE_004, TextFormat.chooseContentType("text/plain"));
+    assertEquals(TextFormat.CONTENT_TYPE_004, TextFormat.chooseContentType("application/json"));
+    assertEquals(ProtobufFormat.CONTENT_TYPE, TextFormat.chooseContentType(
+        "application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=delimited;q=0.7,"
+        + "text/plain;version=0.0.4;q=0.3,*/*;q=0.1"));
+    assertEquals(TextFormat.CONTENT_TYPE_004, TextFormat.chooseContentType(
+        "application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=delimited;q=0.3,"
+        + "text/plain;version=0.0.4;q=0.7"));
+    // Only the delimited MetricFamily encoding is supported.
+    assertEquals(TextFormat.CONTENT_TYPE_004, TextFormat.chooseContentType(
+        "application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=text"));
+  }
+
+  @Test
+  public void testCoalescerKeysOnContentType() throws IOException {
+    Gauge.build().name("g").help("help").register(registry);
+    ScrapeCoalescer coalescer = new ScrapeCoalescer(registry);
+    byte[] text = coalescer.scrape(TextFormat.CONTENT_TYPE_004, Collections.<String>emptySet()).bytes();
+    byte[] proto = coalescer.scrape(ProtobufFormat.CONTENT_TYPE, Collections.<String>emptySet()).bytes();
+    assertTrue(new String(text, "UTF-8").startsWith("# HELP g help"));
+    Metrics.MetricFamily mf = Metrics.MetricFamily.parseDelimitedFrom(new ByteArrayInputStream(proto));
+    assertEquals("g", mf.getName());
+  }
+}
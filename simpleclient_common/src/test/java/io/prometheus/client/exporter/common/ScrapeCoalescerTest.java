@@ -0,0 +1,193 @@
+package io.prometheus.client.exporter.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Gauge;
+
+public class ScrapeCoalescerTest {
+  CollectorRegistry registry;
+  ScrapeCoalescer coalescer;
+
+  @Before
+  public void setUp() {
+    registry = new CollectorRegistry();
+    coalescer = new ScrapeCoalescer(registry);
+  }
+
+  @Test
+  public void testRendersRegistry() throws IOException {
+    Gauge.build().name("a").help("help").register(registry);
+    Gauge.build().name("b").help("help").register(registry);
+    String body = new String(coalescer.scrape(Collections.singleton("a")).bytes(), "UTF-8");
+    assertEquals("# HELP a help\n"
+                 + "# TYPE a gauge\n"
+                 + "a 0.0\n", body);
+  }
+
+  @Test
+  public void testConcurrentScrapesShareRendering() throws Exception {
+    final AtomicInteger renders = new AtomicInteger();
+    final CountDownLatch rendering = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ScrapeCoalescer.Renderer renderer = new ScrapeCoalescer.Renderer() {
+      @Override
+      public byte[] render() throws IOException {
+        renders.incrementAndGet();
+        rendering.countDown();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        return new byte[]{'x'};
+      }
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      Callable<ScrapeCoalescer.Payload> scrape = new Callable<ScrapeCoalescer.Payload>() {
+        @Override
+        public ScrapeCoalescer.Payload call() throws Exception {
+          return coalescer.scrape("key", renderer);
+        }
+      };
+      Future<ScrapeCoalescer.Payload> first = executor.submit(scrape);
+      assertTrue(rendering.await(10, TimeUnit.SECONDS));
+      Future<ScrapeCoalescer.Payload> second = executor.submit(scrape);
+      Future<ScrapeCoalescer.Payload> third = executor.submit(scrape);
+      // Give the waiters a chance to join the in-flight rendering.
+      Thread.sleep(100);
+      release.countDown();
+
+      assertSame(first.get(), second.get());
+      assertSame(first.get(), third.get());
+      assertEquals(1, renders.get());
+
+      // Once the rendering is complete, the next scrape renders afresh.
+      assertNotSame(first.get(), coalescer.scrape("key", renderer));
+      assertEquals(2, renders.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testDifferentKeysAreNotCoalesced() throws IOException {
+    Gauge.build().name("a").help("help").register(registry);
+    Gauge.build().name("b").help("help").register(registry);
+    String a = new String(coalescer.scrape(Collections.singleton("a")).bytes(), "UTF-8");
+    String b = new String(coalescer.scrape(Collections.singleton("b")).bytes(), "UTF-8");
+    assertTrue(a.contains("a 0.0"));
+    assertTrue(b.contains("b 0.0"));
+  }
+
+  @Test
+  public void testFailureIsPropagatedAndNotCached() throws IOException {
+    try {
+      coalescer.scrape("key", new ScrapeCoalescer.Renderer() {
+        @Override
+        public byte[] render() throws IOException {
+          throw new IOException("boom");
+        }
+      });
+      fail("Expected IOException");
+    } catch (IOException e) {
+      assertEquals("boom", e.getMessage());
+    }
+    ScrapeCoalescer.Payload payload = coalescer.scrape("key", new ScrapeCoalescer.Renderer() {
+      @Override
+      public byte[] render() {
+        return new byte[]{'y'};
+      }
+    });
+    assertArrayEquals(new byte[]{'y'}, payload.bytes());
+  }
+
+  @Test
+  public void testGzippedIsCompressedOnce() throws IOException {
+    Gauge.build().name("a").help("help").register(registry);
+    ScrapeCoalescer.Payload payload = coalescer.scrape(Collections.<String>emptySet());
+    byte[] gzipped = payload.gzipped();
+    assertSame(gzipped, payload.gzipped());
+
+    GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[256];
+    int n;
+    while ((n = in.read(buf)) != -1) {
+      out.write(buf, 0, n);
+    }
+    assertArrayEquals(payload.bytes(), out.toByteArray());
+  }
+
+  @Test
+  public void testFreshPayloadIsReused() throws IOException {
+    ScrapeCoalescer fresh = new ScrapeCoalescer(registry, GzipCompressor.DEFAULT, 1, TimeUnit.HOURS);
+    Gauge g = Gauge.build().name("a").help("help").register(registry);
+    ScrapeCoalescer.Payload first = fresh.scrape(Collections.<String>emptySet());
+    g.set(1);
+    assertSame(first, fresh.scrape(Collections.<String>emptySet()));
+    // Other scrapes have their own payload.
+    assertTrue(new String(fresh.scrape(Collections.singleton("a")).bytes(), "UTF-8").contains("a 1.0"));
+  }
+
+  @Test
+  public void testStalePayloadIsRenderedAgain() throws Exception {
+    ScrapeCoalescer fresh = new ScrapeCoalescer(registry, GzipCompressor.DEFAULT, 10, TimeUnit.MILLISECONDS);
+    ScrapeCoalescer.Payload first = fresh.scrape(Collections.<String>emptySet());
+    Thread.sleep(20);
+    assertNotSame(first, fresh.scrape(Collections.<String>emptySet()));
+  }
+
+  @Test
+  public void testFreshPayloadsAreBounded() throws IOException {
+    ScrapeCoalescer fresh = new ScrapeCoalescer(registry, GzipCompressor.DEFAULT, 1, TimeUnit.HOURS);
+    for (int i = 0; i < ScrapeCoalescer.MAX_FRESH_PAYLOADS; i++) {
+      fresh.scrape(Collections.singleton("a" + i));
+    }
+    ScrapeCoalescer.Payload extra = fresh.scrape(Collections.singleton("b"));
+    assertNotSame(extra, fresh.scrape(Collections.singleton("b")));
+    ScrapeCoalescer.Payload kept = fresh.scrape(Collections.singleton("a0"));
+    assertSame(kept, fresh.scrape(Collections.singleton("a0")));
+  }
+
+  @Test
+  public void testBuffersAreDirectViews() throws IOException {
+    Gauge.build().name("a").help("help").register(registry);
+    ScrapeCoalescer.Payload payload = coalescer.scrape(Collections.<String>emptySet());
+    ByteBuffer buffer = payload.buffer();
+    assertTrue(buffer.isDirect());
+    assertTrue(buffer.isReadOnly());
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    assertArrayEquals(payload.bytes(), bytes);
+    // Each view starts at the beginning.
+    assertEquals(payload.bytes().length, payload.buffer().remaining());
+
+    ByteBuffer gzipped = payload.gzippedBuffer();
+    assertTrue(gzipped.isDirect());
+    assertEquals(payload.gzipped().length, gzipped.remaining());
+  }
+}
@@ -0,0 +1,235 @@
+package io.prometheus.client.exporter.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.Summary;
+
+public class TextFormatParserTest {
+  CollectorRegistry registry;
+  TextFormatParser parser;
+
+  @Before
+  public void setUp() {
+    registry = new CollectorRegistry();
+    parser = new TextFormatParser();
+  }
+
+  private List<Collector.MetricFamilySamples> parse(String text) throws IOException {
+    return parser.parse(new ByteArrayInputStream(text.getBytes("UTF-8")));
+  }
+
+  private byte[] exposition() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TextFormat.write004(out, registry.metricFamilySamples());
+    return out.toByteArray();
+  }
+
+  private List<Collector.MetricFamilySamples> expected() {
+    return Collections.list(registry.metricFamilySamples());
+  }
+
+  private void registerAll() {
+    Counter.build().name("c").help("h\\elp\nwith \"escapes\"").labelNames("l", "m").register(registry)
+        .labels("a\"b\\c\nd", "é€😀").inc(3);
+    Gauge.build().name("g2").help("help").register(registry).set(-1.25e-7);
+    Summary s = Summary.build().name("s").help("help").labelNames("l").quantile(0.5, 0.01).register(registry);
+    s.labels("a").observe(2);
+    Histogram h = Histogram.build().name("h").help("help").labelNames("l").register(registry);
+    h.labels("x").observe(0.3);
+    h.labels("y").observe(Double.POSITIVE_INFINITY);
+    Gauge.build().name("nan").help("help").register(registry).set(Double.NaN);
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    registerAll();
+    List<Collector.MetricFamilySamples> parsed = parser.parse(new ByteArrayInputStream(exposition()));
+    assertEquals(expected().toString(), parsed.toString());
+  }
+
+  @Test
+  public void testRoundTripByteBuffers() throws IOException {
+    registerAll();
+    byte[] bytes = exposition();
+    Materializer heap = new Materializer();
+    parser.parse(ByteBuffer.wrap(bytes), heap);
+    assertEquals(expected().toString(), heap.result.toString());
+
+    ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+    Materializer off = new Materializer();
+    parser.parse(direct, off);
+    assertEquals(expected().toString(), off.result.toString());
+    assertEquals(0, direct.remaining());
+  }
+
+  @Test
+  public void testByteAtATimeAndLongLines() throws IOException {
+    StringBuilder longValue = new StringBuilder();
+    for (int i = 0; i < 20000; i++) {
+      longValue.append((char) ('a' + i % 26));
+    }
+    Gauge.build().name("g").help("help").labelNames("l").register(registry).labels(longValue.toString()).set(1);
+    registerAll();
+    final byte[] bytes = exposition();
+    InputStream trickle = new InputStream() {
+      int pos;
+      @Override
+      public int read() {
+        return pos < bytes.length ? bytes[pos++] & 0xff : -1;
+      }
+      @Override
+      public int read(byte[] b, int off, int len) {
+        if (pos == bytes.length) {
+          return -1;
+        }
+        b[off] = bytes[pos++];
+        return 1;
+      }
+    };
+    assertEquals(expected().toString(), parser.parse(trickle).toString());
+  }
+
+  @Test
+  public void testFamilies() throws IOException {
+    List<Collector.MetricFamilySamples> mfs = parse(
+        "# A comment\n"
+        + "untyped_metric{a=\"1\"} 1\n"
+        + "\n"
+        + "# TYPE s summary\n"
+        + "# HELP s The help\n"
+        + "s{quantile=\"0.5\"} 2\n"
+        + "s_count 1\n"
+        + "s_sum 2\n"
+        + "s_other 3\n"
+        + "# HELP empty no samples\n"
+        + "  # TYPE h histogram\n"
+        + "h_bucket{le=\"+Inf\",} 1 1500000000000\r\n"
+        + "h_count\t1");
+    assertEquals(5, mfs.size());
+    assertEquals("untyped_metric", mfs.get(0).name);
+    assertEquals(Collector.Type.UNTYPED, mfs.get(0).type);
+    assertEquals("", mfs.get(0).help);
+    assertEquals("s", mfs.get(1).name);
+    assertEquals(Collector.Type.SUMMARY, mfs.get(1).type);
+    assertEquals("The help", mfs.get(1).help);
+    assertEquals(3, mfs.get(1).samples.size());
+    assertEquals("s_other", mfs.get(2).name);
+    assertEquals("empty", mfs.get(3).name);
+    assertEquals(0, mfs.get(3).samples.size());
+    assertEquals("h", mfs.get(4).name);
+    assertEquals(new Collector.MetricFamilySamples.Sample("h_bucket", Arrays.asList("le"), Arrays.asList("+Inf"), 1, 1500000000000L),
+        mfs.get(4).samples.get(0));
+    assertEquals(new Collector.MetricFamilySamples.Sample("h_count", Collections.<String>emptyList(), Collections.<String>emptyList(), 1),
+        mfs.get(4).samples.get(1));
+  }
+
+  @Test
+  public void testValues() throws IOException {
+    String[] values = {"0", "-0.0", "1", "+1.5", "-2.5e-3", "1E7", "1.0E-4", "123456789012345678", "0.1",
+        "1.7976931348623157E308", "4.9E-324", "+Inf", "-Inf", "NaN", "3.0000000000000004", "1e23"};
+    StringBuilder text = new StringBuilder();
+    for (String value : values) {
+      text.append("v ").append(value).append('\n');
+    }
+    List<Collector.MetricFamilySamples.Sample> samples = parse(text.toString()).get(0).samples;
+    for (int i = 0; i < values.length; i++) {
+      String value = values[i].replace("Inf", "Infinity");
+      assertEquals(values[i], Double.doubleToLongBits(Double.parseDouble(value)),
+          Double.doubleToLongBits(samples.get(i).value));
+    }
+
+    Random random = new Random(0);
+    text = new StringBuilder();
+    double[] doubles = new double[10000];
+    for (int i = 0; i < doubles.length; i++) {
+      doubles[i] = i % 2 == 0 ? random.nextInt(1000000) / Math.pow(10, random.nextInt(20)) : random.nextDouble() * 1e6;
+      text.append("v ").append(Collector.doubleToGoString(doubles[i])).append('\n');
+    }
+    samples = parse(text.toString()).get(0).samples;
+    for (int i = 0; i < doubles.length; i++) {
+      assertEquals(doubles[i], samples.get(i).value, 0);
+    }
+  }
+
+  @Test
+  public void testVisitorSkipsUnwantedFamilies() throws IOException {
+    final List<String> seen = new ArrayList<String>();
+    parser.parse(new ByteArrayInputStream("a 1\nb 2\nb 3\nc 4\n".getBytes("UTF-8")), new Collector.SampleVisitor() {
+      @Override
+      public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+        return !name.equals("b");
+      }
+
+      @Override
+      public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+          String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+        seen.add(name);
+      }
+    });
+    assertEquals(Arrays.asList("a", "c"), seen);
+  }
+
+  @Test
+  public void testErrors() {
+    String[] invalid = {
+        "a{b=\"c\"\n",
+        "a{b=\"c} 1\n",
+        "a{b} 1\n",
+        "a{b=c} 1\n",
+        "a{=\"c\"} 1\n",
+        "a\n",
+        "a x\n",
+        "a 1 x\n",
+        "a 1 2 3\n",
+        "{b=\"c\"} 1\n",
+        "# TYPE a foo\n",
+    };
+    for (String text : invalid) {
+      try {
+        parse("ok 1\n" + text);
+        fail("Expected IOException for " + text);
+      } catch (IOException e) {
+        assertTrue(e.getMessage(), e.getMessage().endsWith("on line 2"));
+      }
+    }
+  }
+
+  private static class Materializer extends Collector.SampleVisitor {
+    final List<Collector.MetricFamilySamples> result = new ArrayList<Collector.MetricFamilySamples>();
+
+    @Override
+    public boolean visitFamily(String name, Collector.Type type, String help, String escapedHelp) {
+      result.add(new Collector.MetricFamilySamples(name, type, help, new ArrayList<Collector.MetricFamilySamples.Sample>()));
+      return true;
+    }
+
+    @Override
+    public void visitSample(String name, List<String> labelNames, List<String> labelValues,
+        String extraLabelName, String extraLabelValue, double value, Long timestampMs) {
+      result.get(result.size() - 1).samples.add(new Collector.MetricFamilySamples.Sample(name,
+          new ArrayList<String>(labelNames), new ArrayList<String>(labelValues), value, timestampMs));
+    }
+  }
+}
@@ -1,13 +1,21 @@
 package io.prometheus.client.exporter.common;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -16,6 +24,8 @@ import io.prometheus.client.Collector;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Counter;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import io.prometheus.client.SnapshotRegistry;
 import io.prometheus.client.Summary;
 
 
@@ -147,4 +157,167 @@ public class TextFormatTest {
                  + "# TYPE nolabels gauge\n"
                  + "nolabels 1.0\n", writer.toString());
   }
+
+  @Test
+  public void testRegistryOutputMatchesMetricFamilySamples() throws IOException {
+    Gauge.build().name("g").help("help").labelNames("l").register(registry).labels("a\nb\\c\"d").inc();
+    Counter.build().name("c").help("h\\elp").register(registry).inc();
+    Summary.build().name("s").help("help").quantile(0.5, 0.05).register(registry).observe(2);
+    Histogram.build().name("h").help("help").labelNames("l").buckets(1).register(registry).labels("a").observe(2);
+
+    TextFormat.write004(writer, registry.metricFamilySamples());
+    StringWriter visited = new StringWriter();
+    TextFormat.write004(visited, registry, Collections.<String>emptySet());
+    assertEquals(writer.toString(), visited.toString());
+  }
+
+  @Test
+  public void testRegistryOutputFiltersNames() throws IOException {
+    Gauge.build().name("g").help("help").register(registry);
+    Histogram.build().name("h").help("help").buckets(1).register(registry).observe(2);
+    TextFormat.write004(writer, registry, new HashSet<String>(Arrays.asList("h_count", "h_sum")));
+    assertEquals("# HELP h help\n"
+                 + "# TYPE h histogram\n"
+                 + "h_count 1.0\n"
+                 + "h_sum 2.0\n", writer.toString());
+  }
+
+  @Test
+  public void testOutputStreamMatchesWriter() throws IOException {
+    Gauge.build().name("g").help("h\u00e9lp \ud83d\ude00").labelNames("l", "m").register(registry)
+        .labels("a\nb\\c\"d", "\u00fc\u20ac\ud83d\ude00").inc();
+    Gauge.build().name("unpaired").help("help").labelNames("l").register(registry).labels("\ud83d").inc();
+    Counter.build().name("c").help("help").register(registry).inc();
+    Summary.build().name("s").help("help").labelNames("l").quantile(0.5, 0.05).register(registry).labels("x").observe(2);
+    Histogram.build().name("h").help("help").buckets(1).register(registry).observe(Double.POSITIVE_INFINITY);
+
+    TextFormat.write004(writer, registry.metricFamilySamples());
+    byte[] expected = writer.toString().getBytes("UTF-8");
+
+    ByteArrayOutputStream enumerated = new ByteArrayOutputStream();
+    TextFormat.write004(enumerated, registry.metricFamilySamples());
+    assertArrayEquals(expected, enumerated.toByteArray());
+
+    ByteArrayOutputStream visited = new ByteArrayOutputStream();
+    TextFormat.write004(visited, registry, Collections.<String>emptySet());
+    assertArrayEquals(expected, visited.toByteArray());
+
+    ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+    TextFormat.write004(snapshot, new SnapshotRegistry(registry, 1, TimeUnit.MINUTES), Collections.<String>emptySet());
+    assertArrayEquals(expected, snapshot.toByteArray());
+  }
+
+  @Test
+  public void testValuesDoNotDependOnJdk() throws IOException {
+    // Double.toString prints 9.999999999999999E22 and 2.82879384806159008E17 before Java 19.
+    Gauge g = Gauge.build().name("g").help("help").labelNames("l").register(registry);
+    g.labels("a").set(1e23);
+    g.labels("b").set(2.82879384806159E17);
+    String expected = "# HELP g help\n"
+        + "# TYPE g gauge\n"
+        + "g{l=\"a\",} 1.0E23\n"
+        + "g{l=\"b\",} 2.82879384806159E17\n";
+
+    TextFormat.write004(writer, registry.metricFamilySamples());
+    assertEquals(expected, writer.toString());
+    StringWriter visitedWriter = new StringWriter();
+    TextFormat.write004(visitedWriter, registry, Collections.<String>emptySet());
+    assertEquals(expected, visitedWriter.toString());
+    ByteArrayOutputStream visited = new ByteArrayOutputStream();
+    TextFormat.write004(visited, registry, Collections.<String>emptySet());
+    assertEquals(expected, visited.toString("UTF-8"));
+  }
+
+  @Test
+  public void testOutputStreamLargerThanBuffer() throws IOException {
+    Gauge g = Gauge.build().name("g").help("help").labelNames("l").register(registry);
+    StringBuilder longValue = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      longValue.append(i % 10 == 0 ? '\u00e9' : 'x');
+    }
+    g.labels(longValue.toString()).set(1);
+    for (int i = 0; i < 1000; i++) {
+      g.labels("v" + i).set(i);
+    }
+
+    TextFormat.write004(writer, registry.metricFamilySamples());
+    ByteArrayOutputStream visited = new ByteArrayOutputStream();
+    TextFormat.write004(visited, registry, Collections.<String>emptySet());
+    assertEquals(writer.toString(), visited.toString("UTF-8"));
+  }
+
+  private String openMetrics() throws IOException {
+    ByteArrayOutputStream enumerated = new ByteArrayOutputStream();
+    TextFormat.writeOpenMetrics100(enumerated, registry.metricFamilySamples());
+    ByteArrayOutputStream visited = new ByteArrayOutputStream();
+    TextFormat.writeOpenMetrics100(visited, registry, Collections.<String>emptySet());
+    assertEquals(enumerated.toString("UTF-8"), visited.toString("UTF-8"));
+    return visited.toString("UTF-8");
+  }
+
+  @Test
+  public void testOpenMetricsOutput() throws IOException {
+    Counter.build().name("requests").help("h\\e\"l\np").labelNames("l").register(registry).labels("a\"b").inc();
+    Counter.build().name("errors_total").help("help").register(registry).inc(2);
+    Gauge.build().name("g").help("help").register(registry).set(1.5);
+    Histogram.build().name("h").help("help").buckets(1).register(registry).observe(2);
+    Gauge.build().name("m").help("help").labelNames("a", "b").register(registry).labels("1", "2").set(3);
+    Histogram.build().name("hl").help("help").labelNames("a").buckets(1).register(registry).labels("1").observe(2);
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        return Collections.singletonList(new MetricFamilySamples("u", Type.UNTYPED, "help",
+            Collections.singletonList(new MetricFamilySamples.Sample("u", Collections.<String>emptyList(),
+                Collections.<String>emptyList(), 1, -1500L))));
+      }
+    }.register(registry);
+
+    String output = openMetrics();
+    // The registry does not keep families in registration order.
+    assertTrue(output.contains("# TYPE requests counter\n"
+                 + "# HELP requests h\\\\e\\\"l\\np\n"
+                 + "requests_total{l=\"a\\\"b\"} 1.0\n"));
+    assertTrue(output.contains("# TYPE errors counter\n"
+                 + "# HELP errors help\n"
+                 + "errors_total 2.0\n"));
+    assertTrue(output.contains("# TYPE g gauge\n"
+                 + "# HELP g help\n"
+                 + "g 1.5\n"));
+    assertTrue(output.contains("# TYPE h histogram\n"
+                 + "# HELP h help\n"
+                 + "h_bucket{le=\"1.0\"} 0.0\n"
+                 + "h_bucket{le=\"+Inf\"} 1.0\n"
+                 + "h_count 1.0\n"
+                 + "h_sum 2.0\n"));
+    // Commas only separate labels.
+    assertTrue(output.contains("m{a=\"1\",b=\"2\"} 3.0\n"));
+    assertTrue(output.contains("hl_bucket{a=\"1\",le=\"1.0\"} 0.0\n"
+                 + "hl_bucket{a=\"1\",le=\"+Inf\"} 1.0\n"
+                 + "hl_count{a=\"1\"} 1.0\n"));
+    assertFalse(output.contains(",}"));
+    assertTrue(output.contains("# TYPE u unknown\n"
+                 + "# HELP u help\n"
+                 + "u 1.0 -2.500\n"));
+    assertTrue(output.endsWith("\n# EOF\n"));
+    assertEquals(output.indexOf("# EOF"), output.lastIndexOf("# EOF"));
+  }
+
+  @Test
+  public void testOpenMetricsHeaderFollowsHelpChanges() throws IOException {
+    Gauge g = Gauge.build().name("g").help("first").create();
+    registry.register(g);
+    assertTrue(openMetrics().contains("# HELP g first\n"));
+    registry.unregister(g);
+    Gauge.build().name("g").help("second").register(registry);
+    assertTrue(openMetrics().contains("# HELP g second\n"));
+  }
+
+  @Test
+  public void testChooseOpenMetrics() {
+    assertEquals(TextFormat.CONTENT_TYPE_OPENMETRICS_100, TextFormat.chooseContentType(
+        "application/openmetrics-text;version=1.0.0,application/openmetrics-text;version=0.0.1;q=0.75,"
+        + "text/plain;version=0.0.4;q=0.5,*/*;q=0.1"));
+    assertEquals(TextFormat.CONTENT_TYPE_004, TextFormat.chooseContentType(
+        "application/openmetrics-text;q=0.1,text/plain"));
+  }
 }
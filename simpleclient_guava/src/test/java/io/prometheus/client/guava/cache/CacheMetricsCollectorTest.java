@@ -13,6 +13,8 @@ import java.util.Arrays;
 import static org.assertj.core.api.Java6Assertions.assertThat;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class CacheMetricsCollectorTest {
@@ -41,6 +43,17 @@ public class CacheMetricsCollectorTest {
         assertMetric(registry, "guava_cache_eviction_total", "users", 2.0);
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void registerDoesNotReadCacheStats() throws Exception {
+        Cache<String, String> cache = mock(Cache.class);
+        CacheMetricsCollector collector = new CacheMetricsCollector();
+        collector.addCache("users", cache);
+        collector.register(new CollectorRegistry(true));
+
+        verify(cache, never()).stats();
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void loadingCacheExposesMetricsForLoadsAndExceptions() throws Exception {
@@ -40,7 +40,7 @@ import org.hibernate.stat.Statistics;
  *
  * @author Christian Kaltepoth
  */
-public class HibernateStatisticsCollector extends Collector {
+public class HibernateStatisticsCollector extends Collector implements Collector.Describable {
 
   private static final List<String> LABEL_NAMES = Collections.singletonList("unit");
 
@@ -98,14 +98,26 @@ public class HibernateStatisticsCollector extends Collector {
 
   @Override
   public List<MetricFamilySamples> collect() {
+    return getMetrics(sessionFactories);
+  }
+
+  /**
+   * Describes the metrics without reading the statistics of the session factories.
+   */
+  @Override
+  public List<MetricFamilySamples> describe() {
+    return getMetrics(Collections.<String, SessionFactory>emptyMap());
+  }
+
+  private List<MetricFamilySamples> getMetrics(Map<String, SessionFactory> factories) {
     List<MetricFamilySamples> metrics = new ArrayList<MetricFamilySamples>();
-    metrics.addAll(getSessionMetrics());
-    metrics.addAll(getConnectionMetrics());
-    metrics.addAll(getCacheMetrics());
-    metrics.addAll(getEntityMetrics());
-    metrics.addAll(getQueryExecutionMetrics());
+    metrics.addAll(getSessionMetrics(factories));
+    metrics.addAll(getConnectionMetrics(factories));
+    metrics.addAll(getCacheMetrics(factories));
+    metrics.addAll(getEntityMetrics(factories));
+    metrics.addAll(getQueryExecutionMetrics(factories));
     if (perQueryMetricsEnabled) {
-      metrics.addAll(getPerQueryMetrics());
+      metrics.addAll(getPerQueryMetrics(factories));
     }
     return metrics;
   }
@@ -118,9 +130,9 @@ public class HibernateStatisticsCollector extends Collector {
     return super.register(registry);
   }
 
-  private List<MetricFamilySamples> getSessionMetrics() {
+  private List<MetricFamilySamples> getSessionMetrics(Map<String, SessionFactory> factories) {
     return Arrays.<MetricFamilySamples>asList(
-        createCounter(
+        createCounter(factories,
             "hibernate_session_opened_total",
             "Global number of sessions opened (getSessionOpenCount)",
             new ValueProvider() {
@@ -130,7 +142,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_session_closed_total",
             "Global number of sessions closed (getSessionCloseCount)",
             new ValueProvider() {
@@ -140,7 +152,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_flushed_total",
             "The global number of flushes executed by sessions (getFlushCount)",
             new ValueProvider() {
@@ -150,7 +162,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_connect_total",
             "The global number of connections requested by the sessions (getConnectCount)",
             new ValueProvider() {
@@ -160,7 +172,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_optimistic_failure_total",
             "The number of StaleObjectStateExceptions that occurred (getOptimisticFailureCount)",
             new ValueProvider() {
@@ -173,9 +185,9 @@ public class HibernateStatisticsCollector extends Collector {
     );
   }
 
-  private List<MetricFamilySamples> getConnectionMetrics() {
+  private List<MetricFamilySamples> getConnectionMetrics(Map<String, SessionFactory> factories) {
     return Arrays.<MetricFamilySamples>asList(
-        createCounter(
+        createCounter(factories,
             "hibernate_statement_prepared_total",
             "The number of prepared statements that were acquired (getPrepareStatementCount)",
             new ValueProvider() {
@@ -185,7 +197,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_statement_closed_total",
             "The number of prepared statements that were released (getCloseStatementCount)",
             new ValueProvider() {
@@ -195,7 +207,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_transaction_total",
             "The number of transactions we know to have completed (getTransactionCount)",
             new ValueProvider() {
@@ -205,7 +217,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_transaction_success_total",
             "The number of transactions we know to have been successful (getSuccessfulTransactionCount)",
             new ValueProvider() {
@@ -218,9 +230,9 @@ public class HibernateStatisticsCollector extends Collector {
     );
   }
 
-  private List<MetricFamilySamples> getCacheMetrics() {
+  private List<MetricFamilySamples> getCacheMetrics(Map<String, SessionFactory> factories) {
     return Arrays.<MetricFamilySamples>asList(
-        createCounter(
+        createCounter(factories,
             "hibernate_second_level_cache_hit_total",
             "Global number of cacheable entities/collections successfully retrieved from the cache (getSecondLevelCacheHitCount)",
             new ValueProvider() {
@@ -230,7 +242,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_second_level_cache_miss_total",
             "Global number of cacheable entities/collections not found in the cache and loaded from the database (getSecondLevelCacheMissCount)",
             new ValueProvider() {
@@ -240,7 +252,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_second_level_cache_put_total",
             "Global number of cacheable entities/collections put in the cache (getSecondLevelCachePutCount)",
             new ValueProvider() {
@@ -250,7 +262,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_query_cache_hit_total",
             "The global number of cached queries successfully retrieved from cache (getQueryCacheHitCount)",
             new ValueProvider() {
@@ -260,7 +272,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_query_cache_miss_total",
             "The global number of cached queries not found in cache (getQueryCacheMissCount)",
             new ValueProvider() {
@@ -270,7 +282,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_query_cache_put_total",
             "The global number of cacheable queries put in cache (getQueryCachePutCount)",
             new ValueProvider() {
@@ -280,7 +292,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_natural_id_cache_hit_total",
             "The global number of cached naturalId lookups successfully retrieved from cache (getNaturalIdCacheHitCount)",
             new ValueProvider() {
@@ -290,7 +302,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_natural_id_cache_miss_total",
             "The global number of cached naturalId lookups not found in cache (getNaturalIdCacheMissCount)",
             new ValueProvider() {
@@ -300,7 +312,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_natural_id_cache_put_total",
             "The global number of cacheable naturalId lookups put in cache (getNaturalIdCachePutCount)",
             new ValueProvider() {
@@ -310,7 +322,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_update_timestamps_cache_hit_total",
             "The global number of timestamps successfully retrieved from cache (getUpdateTimestampsCacheHitCount)",
             new ValueProvider() {
@@ -320,7 +332,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_update_timestamps_cache_miss_total",
             "The global number of tables for which no update timestamps was not found in cache (getUpdateTimestampsCacheMissCount)",
             new ValueProvider() {
@@ -330,7 +342,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_update_timestamps_cache_put_total",
             "The global number of timestamps put in cache (getUpdateTimestampsCachePutCount)",
             new ValueProvider() {
@@ -343,9 +355,9 @@ public class HibernateStatisticsCollector extends Collector {
     );
   }
 
-  private List<MetricFamilySamples> getEntityMetrics() {
+  private List<MetricFamilySamples> getEntityMetrics(Map<String, SessionFactory> factories) {
     return Arrays.<MetricFamilySamples>asList(
-        createCounter(
+        createCounter(factories,
             "hibernate_entity_delete_total",
             "Global number of entity deletes (getEntityDeleteCount)",
             new ValueProvider() {
@@ -355,7 +367,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_entity_insert_total",
             "Global number of entity inserts (getEntityInsertCount)",
             new ValueProvider() {
@@ -365,7 +377,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_entity_load_total",
             "Global number of entity loads (getEntityLoadCount)",
             new ValueProvider() {
@@ -375,7 +387,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_entity_fetch_total",
             "Global number of entity fetches (getEntityFetchCount)",
             new ValueProvider() {
@@ -385,7 +397,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_entity_update_total",
             "Global number of entity updates (getEntityUpdateCount)",
             new ValueProvider() {
@@ -395,7 +407,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_collection_load_total",
             "Global number of collections loaded (getCollectionLoadCount)",
             new ValueProvider() {
@@ -405,7 +417,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_collection_fetch_total",
             "Global number of collections fetched (getCollectionFetchCount)",
             new ValueProvider() {
@@ -415,7 +427,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_collection_update_total",
             "Global number of collections updated (getCollectionUpdateCount)",
             new ValueProvider() {
@@ -425,7 +437,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_collection_remove_total",
             "Global number of collections removed (getCollectionRemoveCount)",
             new ValueProvider() {
@@ -435,7 +447,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_collection_recreate_total",
             "Global number of collections recreated (getCollectionRecreateCount)",
             new ValueProvider() {
@@ -448,9 +460,9 @@ public class HibernateStatisticsCollector extends Collector {
     );
   }
 
-  private List<MetricFamilySamples> getQueryExecutionMetrics() {
+  private List<MetricFamilySamples> getQueryExecutionMetrics(Map<String, SessionFactory> factories) {
     return Arrays.<MetricFamilySamples>asList(
-        createCounter(
+        createCounter(factories,
             "hibernate_query_execution_total",
             "Global number of executed queries (getQueryExecutionCount)",
             new ValueProvider() {
@@ -460,7 +472,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounter(
+        createCounter(factories,
             "hibernate_natural_id_query_execution_total",
             "The global number of naturalId queries executed against the database (getNaturalIdQueryExecutionCount)",
             new ValueProvider() {
@@ -473,12 +485,12 @@ public class HibernateStatisticsCollector extends Collector {
     );
   }
 
-  private List<MetricFamilySamples> getPerQueryMetrics() {
+  private List<MetricFamilySamples> getPerQueryMetrics(Map<String, SessionFactory> factories) {
     List<MetricFamilySamples> metrics = new ArrayList<MetricFamilySamples>();
 
     metrics.addAll(Arrays.asList(
 
-        createCounterForQuery("hibernate_per_query_cache_hit_total",
+        createCounterForQuery(factories,"hibernate_per_query_cache_hit_total",
                 "Global number of cache hits for query (getCacheHitCount)",
             new ValueProviderPerQuery() {
               @Override
@@ -488,7 +500,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounterForQuery("hibernate_per_query_cache_miss_total",
+        createCounterForQuery(factories,"hibernate_per_query_cache_miss_total",
                 "Global number of cache misses for query (getCacheMissCount)",
             new ValueProviderPerQuery() {
               @Override
@@ -498,7 +510,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounterForQuery("hibernate_per_query_cache_put_total",
+        createCounterForQuery(factories,"hibernate_per_query_cache_put_total",
                 "Global number of cache puts for query (getCachePutCount)",
             new ValueProviderPerQuery() {
               @Override
@@ -508,7 +520,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounterForQuery("hibernate_per_query_execution_total",
+        createCounterForQuery(factories,"hibernate_per_query_execution_total",
                 "Global number of executions for query (getExecutionCount)",
             new ValueProviderPerQuery() {
               @Override
@@ -518,7 +530,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounterForQuery("hibernate_per_query_execution_rows_total",
+        createCounterForQuery(factories,"hibernate_per_query_execution_rows_total",
                 "Global number of rows for all executions of query (getExecutionRowCount)",
             new ValueProviderPerQuery() {
               @Override
@@ -528,7 +540,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createGaugeForQuery("hibernate_per_query_execution_min_seconds",
+        createGaugeForQuery(factories,"hibernate_per_query_execution_min_seconds",
                 "Minimum execution time of query in seconds (based on getExecutionMinTime)",
             new ValueProviderPerQuery() {
               @Override
@@ -538,7 +550,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createGaugeForQuery("hibernate_per_query_execution_max_seconds",
+        createGaugeForQuery(factories,"hibernate_per_query_execution_max_seconds",
                 "Maximum execution time of query in seconds (based on getExecutionMaxTime)",
             new ValueProviderPerQuery() {
               @Override
@@ -548,7 +560,7 @@ public class HibernateStatisticsCollector extends Collector {
               }
             }
         ),
-        createCounterForQuery("hibernate_per_query_execution_seconds_total",
+        createCounterForQuery(factories,"hibernate_per_query_execution_seconds_total",
             "Accumulated execution time of query in seconds (based on getExecutionTotalTime)",
             new ValueProviderPerQuery() {
               @Override
@@ -563,11 +575,11 @@ public class HibernateStatisticsCollector extends Collector {
     return metrics;
   }
 
-  private CounterMetricFamily createCounter(String metric, String help, ValueProvider provider) {
+  private CounterMetricFamily createCounter(Map<String, SessionFactory> factories, String metric, String help, ValueProvider provider) {
 
     CounterMetricFamily metricFamily = new CounterMetricFamily(metric, help, LABEL_NAMES);
 
-    for (Entry<String, SessionFactory> entry : sessionFactories.entrySet()) {
+    for (Entry<String, SessionFactory> entry : factories.entrySet()) {
       metricFamily.addMetric(
               Collections.singletonList(entry.getKey()),
               provider.getValue(entry.getValue().getStatistics())
@@ -578,11 +590,11 @@ public class HibernateStatisticsCollector extends Collector {
 
   }
 
-  private CounterMetricFamily createCounterForQuery(String metric, String help, ValueProviderPerQuery provider) {
+  private CounterMetricFamily createCounterForQuery(Map<String, SessionFactory> factories, String metric, String help, ValueProviderPerQuery provider) {
 
     final CounterMetricFamily counters = new CounterMetricFamily(metric, help, LABEL_NAMES_PER_QUERY);
 
-    addMetricsForQuery(new PerQuerySamples() {
+    addMetricsForQuery(factories, new PerQuerySamples() {
       @Override
       public void addMetric(List<String> labelValues, double value) {
         counters.addMetric(labelValues, value);
@@ -593,11 +605,11 @@ public class HibernateStatisticsCollector extends Collector {
 
   }
 
-  private GaugeMetricFamily createGaugeForQuery(String metric, String help, ValueProviderPerQuery provider) {
+  private GaugeMetricFamily createGaugeForQuery(Map<String, SessionFactory> factories, String metric, String help, ValueProviderPerQuery provider) {
 
     final GaugeMetricFamily gauges = new GaugeMetricFamily(metric, help, LABEL_NAMES_PER_QUERY);
 
-    addMetricsForQuery(new PerQuerySamples() {
+    addMetricsForQuery(factories, new PerQuerySamples() {
       @Override
       public void addMetric(List<String> labelValues, double value) {
         gauges.addMetric(labelValues, value);
@@ -608,9 +620,9 @@ public class HibernateStatisticsCollector extends Collector {
 
   }
 
-  private void addMetricsForQuery(PerQuerySamples samples, ValueProviderPerQuery provider) {
+  private void addMetricsForQuery(Map<String, SessionFactory> factories, PerQuerySamples samples, ValueProviderPerQuery provider) {
 
-    for (Entry<String, SessionFactory> entry : sessionFactories.entrySet()) {
+    for (Entry<String, SessionFactory> entry : factories.entrySet()) {
       SessionFactory sessionFactory = entry.getValue();
       Statistics stats = sessionFactory.getStatistics();
       String unitName = entry.getKey();
@@ -5,6 +5,8 @@ import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import io.prometheus.client.CollectorRegistry;
@@ -218,6 +220,17 @@ public class HibernateStatisticsCollectorTest {
     when(queryStatistics.getExecutionTotalTime()).thenReturn(102540L);
   }
 
+  @Test
+  public void shouldNotReadStatisticsWhenRegistering() {
+
+    new HibernateStatisticsCollector(sessionFactory, "factory")
+        .enablePerQueryMetrics()
+        .register(new CollectorRegistry(true));
+
+    verify(sessionFactory, never()).getStatistics();
+
+  }
+
   @Test
   public void shouldFailIfNoSessionFactoriesAreRegistered() {
 
@@ -17,7 +17,7 @@ import java.util.logging.Logger;
  * Can be replaced with a simple access once JDK 1.7 compatibility is baseline.
  *
  */
-public class BufferPoolsExports extends Collector {
+public class BufferPoolsExports extends Collector implements Collector.Describable {
 
     private static final Logger LOGGER = Logger.getLogger(BufferPoolsExports.class.getName());
 
@@ -65,22 +65,10 @@ public class BufferPoolsExports extends Collector {
 
     @Override
     public List<MetricFamilySamples> collect() {
-        List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
-        GaugeMetricFamily used = new GaugeMetricFamily(
-                "jvm_buffer_pool_used_bytes",
-                "Used bytes of a given JVM buffer pool.",
-                Collections.singletonList("pool"));
-        mfs.add(used);
-        GaugeMetricFamily capacity = new GaugeMetricFamily(
-                "jvm_buffer_pool_capacity_bytes",
-                "Bytes capacity of a given JVM buffer pool.",
-                Collections.singletonList("pool"));
-        mfs.add(capacity);
-        GaugeMetricFamily buffers = new GaugeMetricFamily(
-                "jvm_buffer_pool_used_buffers",
-                "Used buffers of a given JVM buffer pool.",
-                Collections.singletonList("pool"));
-        mfs.add(buffers);
+        List<MetricFamilySamples> mfs = describe();
+        GaugeMetricFamily used = (GaugeMetricFamily) mfs.get(0);
+        GaugeMetricFamily capacity = (GaugeMetricFamily) mfs.get(1);
+        GaugeMetricFamily buffers = (GaugeMetricFamily) mfs.get(2);
         for (final Object pool : bufferPoolMXBeans) {
             used.addMetric(
                     Collections.singletonList(getName(pool)),
@@ -95,6 +83,24 @@ public class BufferPoolsExports extends Collector {
         return mfs;
     }
 
+    @Override
+    public List<MetricFamilySamples> describe() {
+        List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
+        mfs.add(new GaugeMetricFamily(
+                "jvm_buffer_pool_used_bytes",
+                "Used bytes of a given JVM buffer pool.",
+                Collections.singletonList("pool")));
+        mfs.add(new GaugeMetricFamily(
+                "jvm_buffer_pool_capacity_bytes",
+                "Bytes capacity of a given JVM buffer pool.",
+                Collections.singletonList("pool")));
+        mfs.add(new GaugeMetricFamily(
+                "jvm_buffer_pool_used_buffers",
+                "Used buffers of a given JVM buffer pool.",
+                Collections.singletonList("pool")));
+        return mfs;
+    }
+
     private long callLongMethond(final Method method, final Object pool) {
         try {
             return (Long)method.invoke(pool);
@@ -7,6 +7,7 @@ import io.prometheus.client.GaugeMetricFamily;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ClassLoadingMXBean;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -25,7 +26,9 @@ import java.util.List;
  *   jvm_classes_unloaded_total{} 500
  * </pre>
  */
-public class ClassLoadingExports extends Collector {
+public class ClassLoadingExports extends Collector implements Collector.Describable {
+  private static final List<String> NO_LABELS = Collections.emptyList();
+
   private final ClassLoadingMXBean clBean;
 
   public ClassLoadingExports() {
@@ -37,24 +40,27 @@ public class ClassLoadingExports extends Collector {
   }
 
   void addClassLoadingMetrics(List<MetricFamilySamples> sampleFamilies) {
-    sampleFamilies.add(new GaugeMetricFamily(
-          "jvm_classes_loaded",
-          "The number of classes that are currently loaded in the JVM",
-          clBean.getLoadedClassCount()));
-    sampleFamilies.add(new CounterMetricFamily(
-          "jvm_classes_loaded_total",
-          "The total number of classes that have been loaded since the JVM has started execution",
-          clBean.getTotalLoadedClassCount()));
-    sampleFamilies.add(new CounterMetricFamily(
-          "jvm_classes_unloaded_total",
-          "The total number of classes that have been unloaded since the JVM has started execution",
-          clBean.getUnloadedClassCount()));
+    List<MetricFamilySamples> mfs = describe();
+    ((GaugeMetricFamily) mfs.get(0)).addMetric(NO_LABELS, clBean.getLoadedClassCount());
+    ((CounterMetricFamily) mfs.get(1)).addMetric(NO_LABELS, clBean.getTotalLoadedClassCount());
+    ((CounterMetricFamily) mfs.get(2)).addMetric(NO_LABELS, clBean.getUnloadedClassCount());
+    sampleFamilies.addAll(mfs);
   }
 
-
   public List<MetricFamilySamples> collect() {
     List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
     addClassLoadingMetrics(mfs);
     return mfs;
   }
+
+  public List<MetricFamilySamples> describe() {
+    List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
+    mfs.add(new GaugeMetricFamily("jvm_classes_loaded",
+          "The number of classes that are currently loaded in the JVM", NO_LABELS));
+    mfs.add(new CounterMetricFamily("jvm_classes_loaded_total",
+          "The total number of classes that have been loaded since the JVM has started execution", NO_LABELS));
+    mfs.add(new CounterMetricFamily("jvm_classes_unloaded_total",
+          "The total number of classes that have been unloaded since the JVM has started execution", NO_LABELS));
+    return mfs;
+  }
 }
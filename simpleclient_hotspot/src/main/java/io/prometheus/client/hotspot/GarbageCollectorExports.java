@@ -24,7 +24,7 @@ import java.util.List;
  *   jvm_gc_collection_seconds_sum{gc="PS1"} 6.7
  * </pre>
  */
-public class GarbageCollectorExports extends Collector {
+public class GarbageCollectorExports extends Collector implements Collector.Describable {
   private final List<GarbageCollectorMXBean> garbageCollectors;
 
   public GarbageCollectorExports() {
@@ -36,10 +36,7 @@ public class GarbageCollectorExports extends Collector {
   }
 
   public List<MetricFamilySamples> collect() {
-    SummaryMetricFamily gcCollection = new SummaryMetricFamily(
-        "jvm_gc_collection_seconds",
-        "Time spent in a given JVM garbage collector in seconds.",
-        Collections.singletonList("gc"));
+    SummaryMetricFamily gcCollection = newFamily();
     for (final GarbageCollectorMXBean gc : garbageCollectors) {
         gcCollection.addMetric(
             Collections.singletonList(gc.getName()),
@@ -50,4 +47,15 @@ public class GarbageCollectorExports extends Collector {
     mfs.add(gcCollection);
     return mfs;
   }
+
+  public List<MetricFamilySamples> describe() {
+    return Collections.<MetricFamilySamples>singletonList(newFamily());
+  }
+
+  private static SummaryMetricFamily newFamily() {
+    return new SummaryMetricFamily(
+        "jvm_gc_collection_seconds",
+        "Time spent in a given JVM garbage collector in seconds.",
+        Collections.singletonList("gc"));
+  }
 }
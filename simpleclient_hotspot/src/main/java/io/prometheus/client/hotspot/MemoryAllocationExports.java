@@ -16,7 +16,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class MemoryAllocationExports extends Collector {
+public class MemoryAllocationExports extends Collector implements Collector.Describable {
   private final Counter allocatedCounter = Counter.build()
           .name("jvm_memory_pool_allocated_bytes_total")
           .help("Total bytes allocated in a given JVM memory pool. Only updated after GC, not continuously.")
@@ -37,6 +37,11 @@ public class MemoryAllocationExports extends Collector {
     return allocatedCounter.collect();
   }
 
+  @Override
+  public List<MetricFamilySamples> describe() {
+    return allocatedCounter.describe();
+  }
+
   static class AllocationCountingNotificationListener implements NotificationListener {
     private final Map<String, Long> lastMemoryUsage = new HashMap<String, Long>();
     private final Counter counter;
@@ -18,7 +18,7 @@ import java.util.List;
 import java.util.Map;
 
 @SuppressWarnings("restriction")
-public class MemoryHeapAfterGC extends Collector {
+public class MemoryHeapAfterGC extends Collector implements Collector.Describable {
   private final Gauge heapAfterGC = Gauge.build()
           .name("jvm_memory_pool_gcbytes_bytes_total")
           .help("Total bytes in pool right after a GC. Only updated after GC, not continuously.")
@@ -38,6 +38,11 @@ public class MemoryHeapAfterGC extends Collector {
     return heapAfterGC.collect();
   }
 
+  @Override
+  public List<MetricFamilySamples> describe() {
+    return heapAfterGC.describe();
+  }
+
   static class AllocationGuageNotificationListener implements NotificationListener {
   
     private final Gauge gauge;
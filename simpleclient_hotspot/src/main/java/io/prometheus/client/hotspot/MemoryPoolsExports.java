@@ -9,6 +9,7 @@ import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryPoolMXBean;
 import java.lang.management.MemoryUsage;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -29,7 +30,7 @@ import java.util.List;
  *   jvm_memory_pool_bytes_used{pool="PS Eden Space"} 2000
  * </pre>
  */
-public class MemoryPoolsExports extends Collector {
+public class MemoryPoolsExports extends Collector implements Collector.Describable {
   private final MemoryMXBean memoryBean;
   private final List<MemoryPoolMXBean> poolBeans;
 
@@ -156,4 +157,18 @@ public class MemoryPoolsExports extends Collector {
     addMemoryPoolMetrics(mfs);
     return mfs;
   }
+
+  /**
+   * Describes the metrics without reading the memory beans.
+   */
+  public List<MetricFamilySamples> describe() {
+    List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
+    for (GaugeMetricFamily family : Arrays.asList(committed, max, init)) {
+      mfs.add(new GaugeMetricFamily(family.name, family.help, Collections.singletonList("area")));
+    }
+    for (GaugeMetricFamily family : Arrays.asList(poolUsed, poolCommitted, poolMax, poolInit)) {
+      mfs.add(new GaugeMetricFamily(family.name, family.help, Collections.singletonList("pool")));
+    }
+    return mfs;
+  }
 }
@@ -0,0 +1,108 @@
+package io.prometheus.client.hotspot;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Histogram;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Exports the pauses of the JVM and of the host it runs on, such as garbage collections,
+ * safepoints and descheduling, in the style of jHiccup.
+ * <p>
+ * A daemon thread repeatedly sleeps for a fixed resolution, 1 millisecond by default, and records
+ * by how much it overslept. A pause stalls this thread as well as the application, so it shows up
+ * here even when it never shows up as the latency of a single request.
+ * The thread does nothing else, so the overhead is a wakeup per resolution.
+ * <p>
+ * Example usage:
+ * <pre>
+ * {@code
+ *   new PauseExports().register();
+ * }
+ * </pre>
+ * Example metrics being exported:
+ * <pre>
+ *   jvm_pause_seconds_bucket{le="0.001",} 59870.0
+ *   jvm_pause_seconds_bucket{le="0.002",} 59987.0
+ *   ...
+ *   jvm_pause_seconds_count 60000.0
+ *   jvm_pause_seconds_sum 4.2
+ * </pre>
+ */
+public class PauseExports extends Collector implements Collector.Describable {
+  private final Histogram pauses = Histogram.build()
+      .name("jvm_pause_seconds")
+      .help("Time a thread sleeping at a fixed resolution overslept, in seconds.")
+      .buckets(.001, .002, .005, .01, .02, .05, .1, .2, .5, 1, 2, 5, 10)
+      .create();
+  private final long resolutionNanos;
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  /**
+   * Start detecting pauses at a resolution of 1 millisecond.
+   */
+  public PauseExports() {
+    this(1, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Start detecting pauses, sleeping for the given resolution between measurements.
+   */
+  public PauseExports(long resolution, TimeUnit unit) {
+    if (resolution <= 0) {
+      throw new IllegalArgumentException("Resolution must be positive");
+    }
+    resolutionNanos = unit.toNanos(resolution);
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        detect();
+      }
+    }, "prometheus-pause-detector");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void detect() {
+    long last = System.nanoTime();
+    while (running) {
+      LockSupport.parkNanos(resolutionNanos);
+      long now = System.nanoTime();
+      record(now - last);
+      last = now;
+    }
+  }
+
+  // Visible for testing
+  void record(long sleptNanos) {
+    // Parking may return early, which is no pause.
+    long overshoot = sleptNanos - resolutionNanos;
+    pauses.observe(overshoot > 0 ? overshoot / NANOSECONDS_PER_SECOND : 0);
+  }
+
+  /**
+   * Stop detecting pauses. The pauses already recorded are still exported.
+   */
+  public void stop() {
+    running = false;
+    LockSupport.unpark(thread);
+  }
+
+  // Visible for testing
+  Thread getThread() {
+    return thread;
+  }
+
+  @Override
+  public List<MetricFamilySamples> collect() {
+    return pauses.collect();
+  }
+
+  @Override
+  public List<MetricFamilySamples> describe() {
+    return pauses.describe();
+  }
+}
@@ -14,6 +14,8 @@ import java.lang.management.RuntimeMXBean;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -30,8 +32,9 @@ import java.util.logging.Logger;
  * }
  * </pre>
  */
-public class StandardExports extends Collector {
+public class StandardExports extends Collector implements Collector.Describable {
   private static final Logger LOGGER = Logger.getLogger(StandardExports.class.getName());
+  private static final List<String> NO_LABELS = Collections.emptyList();
 
   private final StatusReader statusReader;
   private final OperatingSystemMXBean osBean;
@@ -55,33 +58,29 @@ public class StandardExports extends Collector {
 
   @Override
   public List<MetricFamilySamples> collect() {
-    List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
+    List<MetricFamilySamples> mfs = describe();
 
     try {
       // There exist at least 2 similar but unrelated UnixOperatingSystemMXBean interfaces, in
       // com.sun.management and com.ibm.lang.management. Hence use reflection and recursively go
       // through implemented interfaces until the method can be made accessible and invoked.
       Long processCpuTime = callLongGetter("getProcessCpuTime", osBean);
-      mfs.add(new CounterMetricFamily("process_cpu_seconds_total", "Total user and system CPU time spent in seconds.",
-          processCpuTime / NANOSECONDS_PER_SECOND));
+      ((CounterMetricFamily) mfs.get(0)).addMetric(NO_LABELS, processCpuTime / NANOSECONDS_PER_SECOND);
     }
     catch (Exception e) {
       LOGGER.log(Level.FINE,"Could not access process cpu time", e);
     }
 
-    mfs.add(new GaugeMetricFamily("process_start_time_seconds", "Start time of the process since unix epoch in seconds.",
-        runtimeBean.getStartTime() / MILLISECONDS_PER_SECOND));
+    ((GaugeMetricFamily) mfs.get(1)).addMetric(NO_LABELS, runtimeBean.getStartTime() / MILLISECONDS_PER_SECOND);
 
     // There exist at least 2 similar but unrelated UnixOperatingSystemMXBean interfaces, in
     // com.sun.management and com.ibm.lang.management. Hence use reflection and recursively go
     // through implemented interfaces until the method can be made accessible and invoked.
     try {
       Long openFdCount = callLongGetter("getOpenFileDescriptorCount", osBean);
-      mfs.add(new GaugeMetricFamily(
-          "process_open_fds", "Number of open file descriptors.", openFdCount));
+      ((GaugeMetricFamily) mfs.get(2)).addMetric(NO_LABELS, openFdCount);
       Long maxFdCount = callLongGetter("getMaxFileDescriptorCount", osBean);
-      mfs.add(new GaugeMetricFamily(
-          "process_max_fds", "Maximum number of open file descriptors.", maxFdCount));
+      ((GaugeMetricFamily) mfs.get(3)).addMetric(NO_LABELS, maxFdCount);
     } catch (Exception e) {
       // Ignore, expected on non-Unix OSs.
     }
@@ -90,12 +89,41 @@ public class StandardExports extends Collector {
     // so add support for just Linux for now.
     if (linux) {
       try {
-        collectMemoryMetricsLinux(mfs);
+        collectMemoryMetricsLinux((GaugeMetricFamily) mfs.get(4), (GaugeMetricFamily) mfs.get(5));
       } catch (Exception e) {
         // If the format changes, log a warning and return what we can.
         LOGGER.warning(e.toString());
       }
     }
+
+    // Leave out the metrics not available on this platform.
+    Iterator<MetricFamilySamples> it = mfs.iterator();
+    while (it.hasNext()) {
+      if (it.next().samples.isEmpty()) {
+        it.remove();
+      }
+    }
+    return mfs;
+  }
+
+  /**
+   * Describes the metrics without reading the process statistics.
+   * <p>
+   * Metrics which may not be available on this platform are included. {@link #collect()} fills these in.
+   */
+  @Override
+  public List<MetricFamilySamples> describe() {
+    List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
+    mfs.add(new CounterMetricFamily("process_cpu_seconds_total", "Total user and system CPU time spent in seconds.",
+        NO_LABELS));
+    mfs.add(new GaugeMetricFamily("process_start_time_seconds", "Start time of the process since unix epoch in seconds.",
+        NO_LABELS));
+    mfs.add(new GaugeMetricFamily("process_open_fds", "Number of open file descriptors.", NO_LABELS));
+    mfs.add(new GaugeMetricFamily("process_max_fds", "Maximum number of open file descriptors.", NO_LABELS));
+    if (linux) {
+      mfs.add(new GaugeMetricFamily("process_virtual_memory_bytes", "Virtual memory size in bytes.", NO_LABELS));
+      mfs.add(new GaugeMetricFamily("process_resident_memory_bytes", "Resident memory size in bytes.", NO_LABELS));
+    }
     return mfs;
   }
 
@@ -142,7 +170,7 @@ public class StandardExports extends Collector {
     return null;
   }
 
-  void collectMemoryMetricsLinux(List<MetricFamilySamples> mfs) {
+  void collectMemoryMetricsLinux(GaugeMetricFamily virtualMemory, GaugeMetricFamily residentMemory) {
     // statm/stat report in pages, and it's non-trivial to get pagesize from Java
     // so we parse status instead.
     BufferedReader br = null;
@@ -151,13 +179,9 @@ public class StandardExports extends Collector {
       String line;
       while ((line = br.readLine()) != null) {
         if (line.startsWith("VmSize:")) {
-          mfs.add(new GaugeMetricFamily("process_virtual_memory_bytes",
-              "Virtual memory size in bytes.",
-              Float.parseFloat(line.split("\\s+")[1]) * KB));
+          virtualMemory.addMetric(NO_LABELS, Float.parseFloat(line.split("\\s+")[1]) * KB);
         } else if (line.startsWith("VmRSS:")) {
-          mfs.add(new GaugeMetricFamily("process_resident_memory_bytes",
-              "Resident memory size in bytes.",
-              Float.parseFloat(line.split("\\s+")[1]) * KB));
+          residentMemory.addMetric(NO_LABELS, Float.parseFloat(line.split("\\s+")[1]) * KB);
         }
       }
     } catch (IOException e) {
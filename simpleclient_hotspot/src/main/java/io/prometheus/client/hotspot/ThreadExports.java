@@ -30,7 +30,9 @@ import java.util.Map;
  *   jvm_threads_started_total{} 1200
  * </pre>
  */
-public class ThreadExports extends Collector {
+public class ThreadExports extends Collector implements Collector.Describable {
+  private static final List<String> NO_LABELS = Collections.emptyList();
+
   private final ThreadMXBean threadBean;
 
   public ThreadExports() {
@@ -42,47 +44,15 @@ public class ThreadExports extends Collector {
   }
 
   void addThreadMetrics(List<MetricFamilySamples> sampleFamilies) {
-    sampleFamilies.add(
-        new GaugeMetricFamily(
-          "jvm_threads_current",
-          "Current thread count of a JVM",
-          threadBean.getThreadCount()));
-
-    sampleFamilies.add(
-        new GaugeMetricFamily(
-          "jvm_threads_daemon",
-          "Daemon thread count of a JVM",
-          threadBean.getDaemonThreadCount()));
-
-    sampleFamilies.add(
-        new GaugeMetricFamily(
-          "jvm_threads_peak",
-          "Peak thread count of a JVM",
-          threadBean.getPeakThreadCount()));
-
-    sampleFamilies.add(
-        new CounterMetricFamily(
-          "jvm_threads_started_total",
-          "Started thread count of a JVM",
-          threadBean.getTotalStartedThreadCount()));
-
-    sampleFamilies.add(
-        new GaugeMetricFamily(
-        "jvm_threads_deadlocked",
-        "Cycles of JVM-threads that are in deadlock waiting to acquire object monitors or ownable synchronizers",
-        nullSafeArrayLength(threadBean.findDeadlockedThreads())));
-
-    sampleFamilies.add(
-        new GaugeMetricFamily(
-        "jvm_threads_deadlocked_monitor",
-        "Cycles of JVM-threads that are in deadlock waiting to acquire object monitors",
-        nullSafeArrayLength(threadBean.findMonitorDeadlockedThreads())));
-
-    GaugeMetricFamily threadStateFamily = new GaugeMetricFamily(
-      "jvm_threads_state",
-      "Current count of threads by state",
-      Collections.singletonList("state"));
-
+    List<MetricFamilySamples> mfs = describe();
+    ((GaugeMetricFamily) mfs.get(0)).addMetric(NO_LABELS, threadBean.getThreadCount());
+    ((GaugeMetricFamily) mfs.get(1)).addMetric(NO_LABELS, threadBean.getDaemonThreadCount());
+    ((GaugeMetricFamily) mfs.get(2)).addMetric(NO_LABELS, threadBean.getPeakThreadCount());
+    ((CounterMetricFamily) mfs.get(3)).addMetric(NO_LABELS, threadBean.getTotalStartedThreadCount());
+    ((GaugeMetricFamily) mfs.get(4)).addMetric(NO_LABELS, nullSafeArrayLength(threadBean.findDeadlockedThreads()));
+    ((GaugeMetricFamily) mfs.get(5)).addMetric(NO_LABELS, nullSafeArrayLength(threadBean.findMonitorDeadlockedThreads()));
+
+    GaugeMetricFamily threadStateFamily = (GaugeMetricFamily) mfs.get(6);
     Map<Thread.State, Integer> threadStateCounts = getThreadStateCountMap();
     for (Map.Entry<Thread.State, Integer> entry : threadStateCounts.entrySet()) {
       threadStateFamily.addMetric(
@@ -90,7 +60,7 @@ public class ThreadExports extends Collector {
         entry.getValue()
       );
     }
-    sampleFamilies.add(threadStateFamily);
+    sampleFamilies.addAll(mfs);
   }
 
   private Map<Thread.State, Integer> getThreadStateCountMap() {
@@ -123,4 +93,22 @@ public class ThreadExports extends Collector {
     addThreadMetrics(mfs);
     return mfs;
   }
+
+  /**
+   * Describes the metrics without taking a thread dump. {@link #collect()} fills these in.
+   */
+  public List<MetricFamilySamples> describe() {
+    List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
+    mfs.add(new GaugeMetricFamily("jvm_threads_current", "Current thread count of a JVM", NO_LABELS));
+    mfs.add(new GaugeMetricFamily("jvm_threads_daemon", "Daemon thread count of a JVM", NO_LABELS));
+    mfs.add(new GaugeMetricFamily("jvm_threads_peak", "Peak thread count of a JVM", NO_LABELS));
+    mfs.add(new CounterMetricFamily("jvm_threads_started_total", "Started thread count of a JVM", NO_LABELS));
+    mfs.add(new GaugeMetricFamily("jvm_threads_deadlocked",
+        "Cycles of JVM-threads that are in deadlock waiting to acquire object monitors or ownable synchronizers", NO_LABELS));
+    mfs.add(new GaugeMetricFamily("jvm_threads_deadlocked_monitor",
+        "Cycles of JVM-threads that are in deadlock waiting to acquire object monitors", NO_LABELS));
+    mfs.add(new GaugeMetricFamily("jvm_threads_state", "Current count of threads by state",
+        Collections.singletonList("state")));
+    return mfs;
+  }
 }
@@ -22,24 +22,29 @@ import java.util.List;
  * </pre>
  */
 
-public class VersionInfoExports extends Collector {
+public class VersionInfoExports extends Collector implements Collector.Describable {
 
 
     public List<MetricFamilySamples> collect() {
-        List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
+        List<MetricFamilySamples> mfs = describe();
 
-        GaugeMetricFamily jvmInfo = new GaugeMetricFamily(
-                "jvm_info",
-                "JVM version info",
-                Arrays.asList("version", "vendor", "runtime"));
+        GaugeMetricFamily jvmInfo = (GaugeMetricFamily) mfs.get(0);
         jvmInfo.addMetric(
                 Arrays.asList(
                     System.getProperty("java.runtime.version", "unknown"),
                     System.getProperty("java.vm.vendor", "unknown"),
                     System.getProperty("java.runtime.name", "unknown")),
                     1L);
-        mfs.add(jvmInfo);
 
         return mfs;
     }
+
+    public List<MetricFamilySamples> describe() {
+        List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
+        mfs.add(new GaugeMetricFamily(
+                "jvm_info",
+                "JVM version info",
+                Arrays.asList("version", "vendor", "runtime")));
+        return mfs;
+    }
 }
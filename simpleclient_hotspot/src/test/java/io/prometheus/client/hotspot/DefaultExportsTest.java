@@ -0,0 +1,54 @@
+package io.prometheus.client.hotspot;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DefaultExportsTest {
+
+  @Test
+  public void testDescribeCoversCollect() {
+    List<Collector> collectors = Arrays.<Collector>asList(
+        new StandardExports(),
+        new MemoryPoolsExports(),
+        new MemoryAllocationExports(),
+        new MemoryHeapAfterGC(),
+        new BufferPoolsExports(),
+        new GarbageCollectorExports(),
+        new ThreadExports(),
+        new ClassLoadingExports(),
+        new VersionInfoExports());
+    for (Collector collector : collectors) {
+      assertTrue(collector instanceof Collector.Describable);
+      Map<String, Collector.MetricFamilySamples> described = new HashMap<String, Collector.MetricFamilySamples>();
+      for (Collector.MetricFamilySamples family : ((Collector.Describable) collector).describe()) {
+        assertTrue(family.samples.isEmpty());
+        described.put(family.name, family);
+      }
+      for (Collector.MetricFamilySamples family : collector.collect()) {
+        Collector.MetricFamilySamples description = described.get(family.name);
+        assertNotNull(family.name, description);
+        assertEquals(family.name, family.type, description.type);
+        assertEquals(family.name, family.help, description.help);
+      }
+    }
+  }
+
+  @Test
+  public void testRegisterAllowsLookupsByName() {
+    CollectorRegistry registry = new CollectorRegistry();
+    DefaultExports.register(registry);
+    assertNotNull(registry.getSampleValue("jvm_threads_current"));
+    assertNotNull(registry.getSampleValue("jvm_classes_loaded"));
+    assertNotNull(registry.getSampleValue("process_start_time_seconds"));
+  }
+}
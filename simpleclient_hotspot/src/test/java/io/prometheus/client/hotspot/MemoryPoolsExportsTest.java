@@ -4,6 +4,7 @@ import io.prometheus.client.Collector.MetricFamilySamples;
 import io.prometheus.client.Collector.MetricFamilySamples.Sample;
 import io.prometheus.client.Collector;
 import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.GaugeMetricFamily;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -171,6 +172,16 @@ public class MemoryPoolsExportsTest {
   
   
 
+  @Test
+  public void testDescribeHasLabelNames() {
+    for (MetricFamilySamples family : collectorUnderTest.describe()) {
+      // The described families take the samples of their label names.
+      ((GaugeMetricFamily) family).addMetric(Arrays.asList("x"), 1);
+      String labelName = family.name.startsWith("jvm_memory_pool_") ? "pool" : "area";
+      assertEquals(family.name, Arrays.asList(labelName), family.samples.get(0).labelNames);
+    }
+  }
+
   @Test
   public void testMemoryPoolsCollect1() {
 	  List<MetricFamilySamples>sl = (List<MetricFamilySamples>) collectorUnderTest.collect();
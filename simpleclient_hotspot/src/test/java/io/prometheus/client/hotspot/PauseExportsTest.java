@@ -0,0 +1,60 @@
+package io.prometheus.client.hotspot;
+
+import io.prometheus.client.CollectorRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PauseExportsTest {
+
+  @Test
+  public void testOvershootIsRecorded() {
+    CollectorRegistry registry = new CollectorRegistry();
+    // Sleeps for so long that the detector itself records nothing during the test.
+    PauseExports pauses = new PauseExports(1, TimeUnit.HOURS).register(registry);
+    long hour = TimeUnit.HOURS.toNanos(1);
+    try {
+      pauses.record(hour - 1000);
+      pauses.record(hour + TimeUnit.MICROSECONDS.toNanos(500));
+      pauses.record(hour + TimeUnit.MILLISECONDS.toNanos(3));
+      pauses.record(hour + TimeUnit.SECONDS.toNanos(7));
+      pauses.record(hour + TimeUnit.SECONDS.toNanos(30));
+
+      assertEquals(2.0, bucket(registry, "0.001"), .001);
+      assertEquals(2.0, bucket(registry, "0.002"), .001);
+      assertEquals(3.0, bucket(registry, "0.005"), .001);
+      assertEquals(3.0, bucket(registry, "5.0"), .001);
+      assertEquals(4.0, bucket(registry, "10.0"), .001);
+      assertEquals(5.0, bucket(registry, "+Inf"), .001);
+      assertEquals(37.0035, registry.getSampleValue("jvm_pause_seconds_sum"), .000001);
+    } finally {
+      pauses.stop();
+    }
+  }
+
+  @Test
+  public void testDetectorRecordsUntilStopped() throws Exception {
+    CollectorRegistry registry = new CollectorRegistry();
+    PauseExports pauses = new PauseExports().register(registry);
+    assertTrue(pauses.getThread().isDaemon());
+    Thread.sleep(100);
+    assertTrue(registry.getSampleValue("jvm_pause_seconds_count") > 0);
+
+    pauses.stop();
+    pauses.getThread().join(1000);
+    assertFalse(pauses.getThread().isAlive());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testResolutionMustBePositive() {
+    new PauseExports(0, TimeUnit.MILLISECONDS);
+  }
+
+  private static double bucket(CollectorRegistry registry, String le) {
+    return registry.getSampleValue("jvm_pause_seconds_bucket", new String[]{"le"}, new String[]{le});
+  }
+}
@@ -46,6 +46,13 @@ public class ThreadExportsTest {
     collectorUnderTest = new ThreadExports(mockThreadsBean).register(registry);
   }
 
+  @Test
+  public void testRegisterDoesNotCollect() {
+    ThreadMXBean threadsBean = Mockito.mock(ThreadMXBean.class);
+    new ThreadExports(threadsBean).register(new CollectorRegistry(true));
+    Mockito.verifyZeroInteractions(threadsBean);
+  }
+
   @Test
   public void testThreadPools() {
     assertEquals(
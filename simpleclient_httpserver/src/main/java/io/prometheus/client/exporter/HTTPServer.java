@@ -1,24 +1,32 @@
 package io.prometheus.client.exporter;
 
 import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.SeriesSelector;
+import io.prometheus.client.exporter.common.GzipCompressor;
+import io.prometheus.client.exporter.common.ScrapeCoalescer;
 import io.prometheus.client.exporter.common.TextFormat;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.URLDecoder;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.DeflaterOutputStream;
 
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
@@ -27,60 +35,177 @@ import com.sun.net.httpserver.HttpExchange;
 /**
  * Expose Prometheus metrics using a plain Java HttpServer.
  * <p>
+ * Scrapers may select time series with <code>name[]</code> and <code>match[]</code> query parameters.
+ * Regular expression matchers in <code>match[]</code> cost CPU time the scraper controls, see
+ * {@link SeriesSelector}, so the server should only be reachable by trusted scrapers.
+ * <p>
  * Example Usage:
  * <pre>
  * {@code
  * HTTPServer server = new HTTPServer(1234);
  * }
  * </pre>
+ * Use {@link #build()} to choose the executor handling requests, or the backlog of the socket:
+ * <pre>
+ * {@code
+ * HTTPServer server = HTTPServer.build()
+ *     .port(1234)
+ *     .backlog(64)
+ *     .virtualThreads(true)
+ *     .start();
+ * }
+ * </pre>
  * */
 public class HTTPServer {
-    private static class LocalByteArray extends ThreadLocal<ByteArrayOutputStream> {
-        protected ByteArrayOutputStream initialValue()
-        {
-            return new ByteArrayOutputStream(1 << 20);
+    /**
+     * A bounded pool of buffers to render responses into.
+     * <p>
+     * At most {@code maxBuffers} buffers are kept, and buffers which grew beyond
+     * {@code maxBufferSize} are dropped rather than returned to the pool, so the memory held
+     * doesn't depend on the number of threads or on the largest response ever rendered.
+     */
+    static class BufferPool {
+        private final BlockingQueue<Buffer> buffers;
+        private final int initialBufferSize;
+        private final int maxBufferSize;
+
+        BufferPool(int maxBuffers, int initialBufferSize, int maxBufferSize) {
+            this.buffers = new ArrayBlockingQueue<Buffer>(maxBuffers);
+            this.initialBufferSize = initialBufferSize;
+            this.maxBufferSize = maxBufferSize;
+        }
+
+        /**
+         * Take an empty buffer from the pool, or allocate one if the pool is empty.
+         */
+        Buffer acquire() {
+            Buffer buffer = buffers.poll();
+            return buffer != null ? buffer : new Buffer(initialBufferSize);
+        }
+
+        /**
+         * Return a buffer to the pool, unless it is oversized or the pool is full.
+         */
+        void release(Buffer buffer) {
+            if (buffer.capacity() <= maxBufferSize) {
+                buffer.reset();
+                buffers.offer(buffer);
+            }
+        }
+
+        int size() {
+            return buffers.size();
+        }
+    }
+
+    static class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        int capacity() {
+            return buf.length;
         }
     }
 
     static class HTTPMetricHandler implements HttpHandler {
-        private CollectorRegistry registry;
-        private final LocalByteArray response = new LocalByteArray();
+        private final CollectorRegistry registry;
+        private final ScrapeCoalescer coalescer;
+        private final boolean streaming;
+        private final GzipCompressor compressor;
+        // One buffer per thread of the default pool, starting at 64KiB and kept up to 4MiB.
+        private final BufferPool buffers = new BufferPool(DEFAULT_THREADS, 1 << 16, 1 << 22);
 
         HTTPMetricHandler(CollectorRegistry registry) {
+          this(registry, false, GzipCompressor.DEFAULT, 0);
+        }
+
+        HTTPMetricHandler(CollectorRegistry registry, boolean streaming, GzipCompressor compressor,
+                          long freshnessNanos) {
           this.registry = registry;
+          this.coalescer = new ScrapeCoalescer(registry, compressor, freshnessNanos, TimeUnit.NANOSECONDS);
+          this.streaming = streaming;
+          this.compressor = compressor;
         }
 
 
         public void handle(HttpExchange t) throws IOException {
             String query = t.getRequestURI().getRawQuery();
 
-            ByteArrayOutputStream response = this.response.get();
-            response.reset();
-            OutputStreamWriter osw = new OutputStreamWriter(response);
-            TextFormat.write004(osw,
-                    registry.filteredMetricFamilySamples(parseQuery(query)));
-            osw.flush();
-            osw.close();
-            response.flush();
-            response.close();
-
-            t.getResponseHeaders().set("Content-Type",
-                    TextFormat.CONTENT_TYPE_004);
+            final Set<String> names = parseQuery(query);
+            final List<SeriesSelector> selectors;
+            try {
+                selectors = parseSelectors(query);
+            } catch (IllegalArgumentException e) {
+                byte[] message = (e.getMessage() + "\n").getBytes("UTF-8");
+                t.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                t.sendResponseHeaders(HttpURLConnection.HTTP_BAD_REQUEST, message.length);
+                t.getResponseBody().write(message);
+                t.close();
+                return;
+            }
+            final String contentType = TextFormat.chooseContentType(t.getRequestHeaders().getFirst("Accept"));
+            if (streaming) {
+                stream(t, contentType, names, selectors);
+                return;
+            }
+            ScrapeCoalescer.Payload payload = coalescer.scrape(ScrapeCoalescer.key(contentType, names, selectors), new ScrapeCoalescer.Renderer() {
+                @Override
+                public byte[] render() throws IOException {
+                    Buffer response = buffers.acquire();
+                    try {
+                        TextFormat.writeFormat(contentType, response, registry, names, selectors);
+                        return response.toByteArray();
+                    } finally {
+                        buffers.release(response);
+                    }
+                }
+            });
+
+            t.getResponseHeaders().set("Content-Type", contentType);
+            byte[] body;
             if (shouldUseCompression(t)) {
                 t.getResponseHeaders().set("Content-Encoding", "gzip");
-                t.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
-                final GZIPOutputStream os = new GZIPOutputStream(t.getResponseBody());
-                response.writeTo(os);
-                os.close();
+                body = payload.gzipped();
             } else {
-                t.getResponseHeaders().set("Content-Length",
-                        String.valueOf(response.size()));
-                t.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.size());
-                response.writeTo(t.getResponseBody());
+                body = payload.bytes();
             }
+            t.getResponseHeaders().set("Content-Length",
+                    String.valueOf(body.length));
+            t.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+            t.getResponseBody().write(body);
             t.close();
         }
 
+        /**
+         * Write the response as it is rendered, with chunked transfer encoding.
+         * <p>
+         * The status is sent before rendering, so a failure to render can't change it. Instead the
+         * exchange is left unclosed and the exception rethrown, so that the server drops the connection
+         * without the final chunk, and the scraper sees a truncated response rather than a complete one.
+         */
+        private void stream(HttpExchange t, String contentType, Set<String> names,
+                            List<SeriesSelector> selectors) throws IOException {
+            t.getResponseHeaders().set("Content-Type", contentType);
+            boolean gzip = shouldUseCompression(t);
+            if (gzip) {
+                t.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            // A length of 0 selects chunked transfer encoding.
+            t.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+            if (gzip) {
+                DeflaterOutputStream out = compressor.outputStream(t.getResponseBody());
+                try {
+                    TextFormat.writeFormat(contentType, out, registry, names, selectors);
+                } finally {
+                    // Returns the Deflater to the pool.
+                    out.finish();
+                }
+            } else {
+                TextFormat.writeFormat(contentType, t.getResponseBody(), registry, names, selectors);
+            }
+            t.close();
+        }
     }
 
     protected static boolean shouldUseCompression(HttpExchange exchange) {
@@ -112,6 +237,25 @@ public class HTTPServer {
         return names;
     }
 
+    /**
+     * Parse the <code>match[]</code> series selectors of a query.
+     *
+     * @throws IllegalArgumentException if a selector is invalid
+     */
+    protected static List<SeriesSelector> parseSelectors(String query) throws IOException {
+        List<SeriesSelector> selectors = new ArrayList<SeriesSelector>();
+        if (query != null) {
+            String[] pairs = query.split("&");
+            for (String pair : pairs) {
+                int idx = pair.indexOf("=");
+                if (idx != -1 && URLDecoder.decode(pair.substring(0, idx), "UTF-8").equals("match[]")) {
+                    selectors.add(SeriesSelector.parse(URLDecoder.decode(pair.substring(idx + 1), "UTF-8")));
+                }
+            }
+        }
+        return selectors;
+    }
+
 
     static class NamedDaemonThreadFactory implements ThreadFactory {
         private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
@@ -139,6 +283,9 @@ public class HTTPServer {
         }
     }
 
+    static final int DEFAULT_BACKLOG = 3;
+    static final int DEFAULT_THREADS = 5;
+
     protected final HttpServer server;
     protected final ExecutorService executorService;
 
@@ -147,14 +294,20 @@ public class HTTPServer {
      * The {@code httpServer} is expected to already be bound to an address
      */
     public HTTPServer(HttpServer httpServer, CollectorRegistry registry, boolean daemon) throws IOException {
+        this(httpServer, registry, daemon, defaultExecutorService(daemon), false, GzipCompressor.DEFAULT, 0);
+    }
+
+    private HTTPServer(HttpServer httpServer, CollectorRegistry registry, boolean daemon,
+                       ExecutorService executorService, boolean streaming,
+                       GzipCompressor compressor, long freshnessNanos) throws IOException {
         if (httpServer.getAddress() == null)
             throw new IllegalArgumentException("HttpServer hasn't been bound to an address");
 
         server = httpServer;
-        HttpHandler mHandler = new HTTPMetricHandler(registry);
+        HttpHandler mHandler = new HTTPMetricHandler(registry, streaming, compressor, freshnessNanos);
         server.createContext("/", mHandler);
         server.createContext("/metrics", mHandler);
-        executorService = Executors.newFixedThreadPool(5, NamedDaemonThreadFactory.defaultThreadFactory(daemon));
+        this.executorService = executorService;
         server.setExecutor(executorService);
         start(daemon);
     }
@@ -163,7 +316,7 @@ public class HTTPServer {
      * Start a HTTP server serving Prometheus metrics from the given registry.
      */
     public HTTPServer(InetSocketAddress addr, CollectorRegistry registry, boolean daemon) throws IOException {
-        this(HttpServer.create(addr, 3), registry, daemon);
+        this(HttpServer.create(addr, DEFAULT_BACKLOG), registry, daemon);
     }
 
     /**
@@ -201,6 +354,192 @@ public class HTTPServer {
         this(new InetSocketAddress(host, port), CollectorRegistry.defaultRegistry, false);
     }
 
+    /**
+     * Return a new builder, to configure the server before starting it.
+     */
+    public static Builder build() {
+        return new Builder();
+    }
+
+    /**
+     * Builds a {@link HTTPServer}.
+     * <p>
+     * By default the server listens on all interfaces, serves the default registry, and handles
+     * requests on a pool of 5 non-daemon threads.
+     */
+    public static class Builder {
+        private InetSocketAddress address;
+        private HttpServer httpServer;
+        private CollectorRegistry registry = CollectorRegistry.defaultRegistry;
+        private boolean daemon = false;
+        private int backlog = DEFAULT_BACKLOG;
+        private ExecutorService executorService;
+        private boolean virtualThreads = false;
+        private boolean streaming = false;
+        private GzipCompressor compressor = GzipCompressor.DEFAULT;
+        private long freshnessNanos = 0;
+        private int port = 0;
+        private String hostname;
+
+        /**
+         * The port to listen on, 0 by default which picks a free port.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * The host to listen on, all interfaces by default.
+         */
+        public Builder hostname(String hostname) {
+            this.hostname = hostname;
+            return this;
+        }
+
+        /**
+         * The address to listen on, instead of a port and host.
+         */
+        public Builder address(InetSocketAddress address) {
+            this.address = address;
+            return this;
+        }
+
+        /**
+         * Use the given {@link HttpServer}, which must already be bound to an address.
+         * The address and backlog are ignored.
+         */
+        public Builder httpServer(HttpServer httpServer) {
+            this.httpServer = httpServer;
+            return this;
+        }
+
+        /**
+         * The registry to serve, the default registry by default.
+         */
+        public Builder registry(CollectorRegistry registry) {
+            this.registry = registry;
+            return this;
+        }
+
+        /**
+         * Whether the threads of the server are daemon threads, false by default.
+         */
+        public Builder daemon(boolean daemon) {
+            this.daemon = daemon;
+            return this;
+        }
+
+        /**
+         * The maximum number of pending connections, 3 by default.
+         * 0 uses the system default.
+         */
+        public Builder backlog(int backlog) {
+            if (backlog < 0) {
+                throw new IllegalArgumentException("backlog cannot be " + backlog);
+            }
+            this.backlog = backlog;
+            return this;
+        }
+
+        /**
+         * Handle requests with the given executor, which is shut down when the server is stopped.
+         */
+        public Builder executorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * Handle each request on its own virtual thread, if the runtime supports them.
+         * Otherwise requests are handled by the default pool. Ignored if an executor is given.
+         */
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Write responses as they are rendered, with chunked transfer encoding, false by default.
+         * <p>
+         * This bounds the memory used by large responses, and sends the first bytes sooner.
+         * Responses then have no Content-Length, and concurrent scrapes are not coalesced.
+         */
+        public Builder streaming(boolean streaming) {
+            this.streaming = streaming;
+            return this;
+        }
+
+        /**
+         * Gzip responses with the given compressor, to choose the compression level.
+         * By default responses are compressed at the default level.
+         */
+        public Builder compressor(GzipCompressor compressor) {
+            this.compressor = compressor;
+            return this;
+        }
+
+        /**
+         * Serve each rendered response, raw and gzipped, to the scrapes arriving within the given time
+         * after it was rendered, without collecting the registry again. 0 by default, so every scrape
+         * sees current values.
+         * <p>
+         * This bounds the cost of processes scraped at high frequency by many scrapers.
+         * Ignored when streaming.
+         */
+        public Builder freshness(long freshness, TimeUnit unit) {
+            if (freshness < 0) {
+                throw new IllegalArgumentException("freshness cannot be " + freshness);
+            }
+            this.freshnessNanos = unit.toNanos(freshness);
+            return this;
+        }
+
+        /**
+         * Build the server, and start it.
+         */
+        public HTTPServer start() throws IOException {
+            HttpServer server = httpServer;
+            if (server == null) {
+                InetSocketAddress addr = address;
+                if (addr == null) {
+                    addr = hostname == null ? new InetSocketAddress(port) : new InetSocketAddress(hostname, port);
+                }
+                server = HttpServer.create(addr, backlog);
+            }
+            ExecutorService executor = executorService;
+            if (executor == null && virtualThreads) {
+                executor = virtualThreadExecutorService();
+            }
+            if (executor == null) {
+                executor = defaultExecutorService(daemon);
+            }
+            return new HTTPServer(server, registry, daemon, executor, streaming, compressor, freshnessNanos);
+        }
+    }
+
+    private static ExecutorService defaultExecutorService(boolean daemon) {
+        return Executors.newFixedThreadPool(DEFAULT_THREADS, NamedDaemonThreadFactory.defaultThreadFactory(daemon));
+    }
+
+    /**
+     * Return an executor starting a virtual thread per task, or null if the runtime doesn't support them.
+     */
+    static ExecutorService virtualThreadExecutorService() {
+        try {
+            // Java 21 and later, looked up by reflection as this is built for older versions.
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // Preview versions throw UnsupportedOperationException unless previews are enabled.
+            return null;
+        }
+    }
+
     /**
      * Start a HTTP server by making sure that its background thread inherit proper daemon flag.
      */
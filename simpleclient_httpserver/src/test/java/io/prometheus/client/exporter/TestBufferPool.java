@@ -0,0 +1,43 @@
+package io.prometheus.client.exporter;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestBufferPool {
+
+  @Test
+  public void testBuffersAreReused() {
+    HTTPServer.BufferPool pool = new HTTPServer.BufferPool(2, 16, 64);
+    HTTPServer.Buffer buffer = pool.acquire();
+    buffer.write(1);
+    pool.release(buffer);
+    assertThat(pool.size()).isEqualTo(1);
+    HTTPServer.Buffer reused = pool.acquire();
+    assertThat(reused).isSameAs(buffer);
+    assertThat(reused.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testPoolIsBounded() {
+    HTTPServer.BufferPool pool = new HTTPServer.BufferPool(2, 16, 64);
+    HTTPServer.Buffer a = pool.acquire();
+    HTTPServer.Buffer b = pool.acquire();
+    HTTPServer.Buffer c = pool.acquire();
+    pool.release(a);
+    pool.release(b);
+    pool.release(c);
+    assertThat(pool.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void testOversizedBuffersAreDropped() {
+    HTTPServer.BufferPool pool = new HTTPServer.BufferPool(2, 16, 64);
+    HTTPServer.Buffer buffer = pool.acquire();
+    buffer.write(new byte[100], 0, 100);
+    assertThat(buffer.capacity()).isGreaterThan(64);
+    pool.release(buffer);
+    assertThat(pool.size()).isEqualTo(0);
+    assertThat(pool.acquire()).isNotSameAs(buffer);
+  }
+}
@@ -1,13 +1,25 @@
 package io.prometheus.client.exporter;
 
 import com.sun.net.httpserver.HttpServer;
+import io.prometheus.client.Collector;
 import io.prometheus.client.Gauge;
 import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exporter.common.ProtobufFormat;
+import io.prometheus.client.exporter.common.TextFormat;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.URL;
 import java.net.URLConnection;
+import java.net.URLEncoder;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
 import org.junit.After;
@@ -67,6 +79,113 @@ public class TestHTTPServer {
     catch (IllegalArgumentException expected) {}
   }
 
+  @Test
+  public void testBuilderExecutorService() throws IOException {
+    final AtomicInteger tasks = new AtomicInteger();
+    ExecutorService executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>()) {
+      @Override
+      protected void beforeExecute(Thread t, Runnable r) {
+        tasks.incrementAndGet();
+      }
+    };
+    s.stop();
+    CollectorRegistry registry = new CollectorRegistry();
+    Gauge.build("a", "a help").register(registry);
+    s = HTTPServer.build()
+        .address(new InetSocketAddress("localhost", 0))
+        .registry(registry)
+        .backlog(64)
+        .executorService(executor)
+        .start();
+    assertThat(request("")).contains("a 0.0");
+    assertThat(tasks.get()).isEqualTo(1);
+    s.stop();
+    assertThat(executor.isShutdown()).isTrue();
+  }
+
+  @Test
+  public void testBuilderFreshness() throws IOException {
+    s.stop();
+    CollectorRegistry registry = new CollectorRegistry();
+    Gauge g = Gauge.build("a", "a help").register(registry);
+    s = HTTPServer.build()
+        .address(new InetSocketAddress("localhost", 0))
+        .registry(registry)
+        .freshness(1, TimeUnit.HOURS)
+        .start();
+    assertThat(request("")).contains("a 0.0");
+    assertThat(requestWithCompression("")).contains("a 0.0");
+    g.set(1);
+    // Served from the fresh rendering, raw and gzipped.
+    assertThat(request("")).contains("a 0.0");
+    assertThat(requestWithCompression("")).contains("a 0.0");
+    assertThat(request("?name[]=a")).contains("a 1.0");
+  }
+
+  @Test
+  public void testBuilderVirtualThreads() throws IOException {
+    s.stop();
+    s = HTTPServer.build().virtualThreads(true).daemon(true).start();
+    // Falls back to the default pool on runtimes without virtual threads.
+    assertThat(request("")).isNotNull();
+  }
+
+  @Test
+  public void testStreaming() throws IOException {
+    s.stop();
+    CollectorRegistry registry = new CollectorRegistry();
+    Gauge.build("a", "a help").register(registry);
+    Gauge.build("b", "a help").register(registry);
+    s = HTTPServer.build().registry(registry).streaming(true).start();
+
+    String url = "http://localhost:" + s.server.getAddress().getPort() + "/metrics?name[]=a";
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    assertThat(connection.getHeaderField("Transfer-Encoding")).isEqualTo("chunked");
+    assertThat(connection.getHeaderField("Content-Length")).isNull();
+    Scanner scanner = new Scanner(connection.getInputStream(), "UTF-8").useDelimiter("\\A");
+    String response = scanner.hasNext() ? scanner.next() : "";
+    assertThat(response).contains("a 0.0");
+    assertThat(response).doesNotContain("b 0.0");
+
+    response = requestWithCompression("");
+    assertThat(response).contains("a 0.0");
+    assertThat(response).contains("b 0.0");
+  }
+
+  @Test
+  public void testStreamingFailureTruncatesResponse() throws IOException {
+    s.stop();
+    CollectorRegistry registry = new CollectorRegistry();
+    Gauge.build("a", "a help").register(registry);
+    Collector failing = new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        throw new IllegalStateException("collection failed");
+      }
+    }.register(registry);
+    s = HTTPServer.build().registry(registry).streaming(true).start();
+
+    for (boolean gzip : new boolean[]{false, true}) {
+      String url = "http://localhost:" + s.server.getAddress().getPort() + "/metrics";
+      HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+      if (gzip) {
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+      }
+      try {
+        InputStream in = connection.getInputStream();
+        while (in.read() != -1) {
+        }
+        fail("Should not complete a response whose rendering failed");
+      } catch (IOException expected) {
+      }
+    }
+
+    // The server and its compressor are still usable.
+    registry.unregister(failing);
+    assertThat(requestWithCompression("")).contains("a 0.0");
+    assertThat(request("")).contains("a 0.0");
+  }
+
   @Test
   public void testSimpleRequest() throws IOException {
     String response = request("");
@@ -99,6 +218,25 @@ public class TestHTTPServer {
     assertThat(response).doesNotContain("c 0.0");
   }
 
+  @Test
+  public void testMatchers() throws IOException {
+    String response = request("?match[]=" + URLEncoder.encode("{__name__=~\"a|b\"}", "UTF-8") + "&name[]=c");
+    assertThat(response).contains("a 0.0");
+    assertThat(response).contains("b 0.0");
+    assertThat(response).contains("c 0.0");
+    response = request("?match[]=" + URLEncoder.encode("b{__name__!=\"a\"}", "UTF-8"));
+    assertThat(response).doesNotContain("a 0.0");
+    assertThat(response).contains("b 0.0");
+    assertThat(response).doesNotContain("c 0.0");
+  }
+
+  @Test
+  public void testInvalidMatcher() throws IOException {
+    String url = "http://localhost:" + s.server.getAddress().getPort() + "/metrics?match[]=" + URLEncoder.encode("a{", "UTF-8");
+    HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+    assertThat(connection.getResponseCode()).isEqualTo(400);
+  }
+
   @Test
   public void testDecoding() throws IOException {
     String response = request("?n%61me[]=%61");
@@ -114,4 +252,32 @@ public class TestHTTPServer {
     assertThat(response).contains("b 0.0");
     assertThat(response).contains("c 0.0");
   }
+
+  @Test
+  public void testProtobufNegotiation() throws IOException {
+    String url = "http://localhost:" + s.server.getAddress().getPort() + "/metrics?name[]=a";
+    URLConnection connection = new URL(url).openConnection();
+    connection.setRequestProperty("Accept", "application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=delimited;q=0.7,text/plain;version=0.0.4;q=0.3");
+    connection.connect();
+    assertThat(connection.getContentType()).isEqualTo(ProtobufFormat.CONTENT_TYPE);
+    InputStream in = connection.getInputStream();
+    // Length, then the name field of the MetricFamily.
+    assertThat(in.read()).isGreaterThan(0);
+    assertThat(in.read()).isEqualTo(0x0a);
+    assertThat(in.read()).isEqualTo(1);
+    assertThat(in.read()).isEqualTo('a');
+    in.close();
+  }
+
+  @Test
+  public void testOpenMetricsNegotiation() throws IOException {
+    String url = "http://localhost:" + s.server.getAddress().getPort() + "/metrics?name[]=a";
+    URLConnection connection = new URL(url).openConnection();
+    connection.setRequestProperty("Accept", "application/openmetrics-text; version=1.0.0; charset=utf-8");
+    connection.connect();
+    assertThat(connection.getContentType()).isEqualTo(TextFormat.CONTENT_TYPE_OPENMETRICS_100);
+    Scanner scanner = new Scanner(connection.getInputStream(), "UTF-8").useDelimiter("\\A");
+    assertThat(scanner.next()).isEqualTo("# TYPE a gauge\n# HELP a a help\na 0.0\n# EOF\n");
+    scanner.close();
+  }
 }
@@ -0,0 +1,684 @@
+package io.prometheus.client.exporter;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.SeriesSelector;
+import io.prometheus.client.exporter.common.GzipCompressor;
+import io.prometheus.client.exporter.common.ScrapeCoalescer;
+import io.prometheus.client.exporter.common.TextFormat;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Expose Prometheus metrics using a small non-blocking HTTP/1.1 server.
+ * <p>
+ * A single thread accepts connections and does all the network I/O through a {@link Selector},
+ * so thousands of concurrent scrape connections cost a few kilobytes each rather than a thread.
+ * Connections are kept alive between requests. Responses are rendered on a separate executor.
+ * Scrapes arriving while a render of the same request is in flight wait for it on the I/O thread,
+ * without occupying a render thread, and are all answered from the one rendered payload.
+ * The payload is written from the shared array without copying, gzipped if the client accepts it.
+ * <p>
+ * With a freshness window, each rendered payload is kept in direct buffers and written straight
+ * to the connections of the scrapes arriving within the window, without collecting again.
+ * <p>
+ * Connections that take longer than the idle timeout to send a request, after connecting or after
+ * their previous response, are closed. This covers idle keep-alive connections as well as clients
+ * sending their requests too slowly.
+ * <p>
+ * Metrics are served on <code>/</code> and <code>/metrics</code> for GET and HEAD requests,
+ * with the same <code>name[]</code> and <code>match[]</code> parameters as {@link HTTPServer}.
+ * As there, regular expression selectors are only safe to accept from trusted scrapers.
+ * <p>
+ * Example Usage:
+ * <pre>
+ * {@code
+ * NioHTTPServer server = NioHTTPServer.build().port(1234).start();
+ * }
+ * </pre>
+ */
+public class NioHTTPServer {
+  private static final Logger LOGGER = Logger.getLogger(NioHTTPServer.class.getName());
+  static final int DEFAULT_BACKLOG = 1024;
+  static final long DEFAULT_IDLE_TIMEOUT_SECONDS = 60;
+  // Requests are GETs with short heads, larger ones are rejected.
+  static final int MAX_REQUEST_HEAD = 1 << 13;
+
+  private static final byte[] HEAD_END = {'\r', '\n', '\r', '\n'};
+  private static final ByteBuffer NO_BODY = ByteBuffer.allocate(0);
+
+  private final ServerSocketChannel serverChannel;
+  private final Selector selector;
+  private final ExecutorService executorService;
+  private final ScrapeCoalescer coalescer;
+  // Direct buffers are only worth allocating for payloads served more than once.
+  private final boolean directBuffers;
+  private final long idleTimeoutNanos;
+  private final Queue<Render> rendered = new ConcurrentLinkedQueue<Render>();
+  // The connections waiting for each render in flight. Only accessed by the I/O thread.
+  private final Map<Object, List<Connection>> waiting = new HashMap<Object, List<Connection>>();
+  private final Thread ioThread;
+  private volatile boolean running = true;
+
+  /**
+   * Start a server serving Prometheus metrics from the given registry, on non-daemon threads.
+   */
+  public NioHTTPServer(InetSocketAddress addr, CollectorRegistry registry) throws IOException {
+    this(addr, registry, false, DEFAULT_BACKLOG, null, GzipCompressor.DEFAULT, 0,
+        TimeUnit.SECONDS.toNanos(DEFAULT_IDLE_TIMEOUT_SECONDS));
+  }
+
+  private NioHTTPServer(InetSocketAddress addr, CollectorRegistry registry, boolean daemon, int backlog,
+                        ExecutorService executorService, GzipCompressor compressor, long freshnessNanos,
+                        long idleTimeoutNanos)
+      throws IOException {
+    this.idleTimeoutNanos = idleTimeoutNanos;
+    this.coalescer = new ScrapeCoalescer(registry, compressor, freshnessNanos, TimeUnit.NANOSECONDS);
+    this.directBuffers = freshnessNanos > 0;
+    this.executorService = executorService != null ? executorService
+        : Executors.newSingleThreadExecutor(threadFactory("prometheus-nio-http-render", daemon));
+    this.selector = Selector.open();
+    this.serverChannel = ServerSocketChannel.open();
+    try {
+      serverChannel.socket().setReuseAddress(true);
+      serverChannel.socket().bind(addr, backlog);
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      serverChannel.close();
+      selector.close();
+      this.executorService.shutdown();
+      throw e;
+    }
+    ioThread = threadFactory("prometheus-nio-http-io", daemon).newThread(new Runnable() {
+      @Override
+      public void run() {
+        loop();
+      }
+    });
+    ioThread.start();
+  }
+
+  private static ThreadFactory threadFactory(final String name, final boolean daemon) {
+    return new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(daemon);
+        return t;
+      }
+    };
+  }
+
+  /**
+   * Return a new builder, to configure the server before starting it.
+   */
+  public static Builder build() {
+    return new Builder();
+  }
+
+  /**
+   * Builds a {@link NioHTTPServer}.
+   * <p>
+   * By default the server listens on all interfaces, serves the default registry,
+   * and uses non-daemon threads.
+   */
+  public static class Builder {
+    private InetSocketAddress address;
+    private int port = 0;
+    private String hostname;
+    private CollectorRegistry registry = CollectorRegistry.defaultRegistry;
+    private boolean daemon = false;
+    private int backlog = DEFAULT_BACKLOG;
+    private ExecutorService executorService;
+    private GzipCompressor compressor = GzipCompressor.DEFAULT;
+    private long freshnessNanos = 0;
+    private long idleTimeoutNanos = TimeUnit.SECONDS.toNanos(DEFAULT_IDLE_TIMEOUT_SECONDS);
+
+    /**
+     * The port to listen on, 0 by default which picks a free port.
+     */
+    public Builder port(int port) {
+      this.port = port;
+      return this;
+    }
+
+    /**
+     * The host to listen on, all interfaces by default.
+     */
+    public Builder hostname(String hostname) {
+      this.hostname = hostname;
+      return this;
+    }
+
+    /**
+     * The address to listen on, instead of a port and host.
+     */
+    public Builder address(InetSocketAddress address) {
+      this.address = address;
+      return this;
+    }
+
+    /**
+     * The registry to serve, the default registry by default.
+     */
+    public Builder registry(CollectorRegistry registry) {
+      this.registry = registry;
+      return this;
+    }
+
+    /**
+     * Whether the threads of the server are daemon threads, false by default.
+     */
+    public Builder daemon(boolean daemon) {
+      this.daemon = daemon;
+      return this;
+    }
+
+    /**
+     * The maximum number of pending connections, 1024 by default.
+     */
+    public Builder backlog(int backlog) {
+      if (backlog < 0) {
+        throw new IllegalArgumentException("backlog cannot be " + backlog);
+      }
+      this.backlog = backlog;
+      return this;
+    }
+
+    /**
+     * Render responses with the given executor, which is shut down when the server is stopped.
+     * By default responses are rendered by a single thread, which concurrent scrapes of the same
+     * request share.
+     */
+    public Builder executorService(ExecutorService executorService) {
+      this.executorService = executorService;
+      return this;
+    }
+
+    /**
+     * Gzip responses with the given compressor, to choose the compression level.
+     */
+    public Builder compressor(GzipCompressor compressor) {
+      this.compressor = compressor;
+      return this;
+    }
+
+    /**
+     * Serve each rendered payload to the scrapes arriving within the given time after it was rendered,
+     * from direct buffers and without collecting the registry again. 0 by default, so every scrape
+     * sees current values.
+     */
+    public Builder freshness(long freshness, TimeUnit unit) {
+      if (freshness < 0) {
+        throw new IllegalArgumentException("freshness cannot be " + freshness);
+      }
+      this.freshnessNanos = unit.toNanos(freshness);
+      return this;
+    }
+
+    /**
+     * Close connections that do not send a full request within the given time, after connecting
+     * or after their previous response. 60 seconds by default, 0 keeps connections open until the
+     * client closes them.
+     */
+    public Builder idleTimeout(long idleTimeout, TimeUnit unit) {
+      if (idleTimeout < 0) {
+        throw new IllegalArgumentException("idleTimeout cannot be " + idleTimeout);
+      }
+      this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+      return this;
+    }
+
+    /**
+     * Build the server, and start it.
+     */
+    public NioHTTPServer start() throws IOException {
+      InetSocketAddress addr = address;
+      if (addr == null) {
+        addr = hostname == null ? new InetSocketAddress(port) : new InetSocketAddress(hostname, port);
+      }
+      return new NioHTTPServer(addr, registry, daemon, backlog, executorService, compressor, freshnessNanos,
+          idleTimeoutNanos);
+    }
+  }
+
+  /**
+   * The state of a connection, only accessed by the I/O thread except while rendering.
+   */
+  private static class Connection {
+    final SocketChannel channel;
+    final SelectionKey key;
+    // In write mode, holding the bytes read and not yet handled.
+    final ByteBuffer in = ByteBuffer.allocate(MAX_REQUEST_HEAD);
+    ByteBuffer[] out;
+    boolean keepAlive;
+    boolean head;
+    boolean gzip;
+    String contentType;
+    // When the connection was accepted or last made progress writing, reading does not count
+    // so that a request sent a byte at a time still times out.
+    long lastActivity;
+
+    Connection(SocketChannel channel, SelectionKey key) {
+      this.channel = channel;
+      this.key = key;
+      this.lastActivity = System.nanoTime();
+    }
+  }
+
+  /**
+   * A render in flight, answering all the connections waiting for it once done.
+   */
+  private static class Render {
+    // Keyed as in the coalescer, and by whether the payload is gzipped.
+    final List<Object> key;
+    final boolean gzip;
+    // Set while rendering, and read by the I/O thread once queued.
+    ScrapeCoalescer.Payload payload;
+    Throwable error;
+
+    Render(List<Object> key, boolean gzip) {
+      this.key = key;
+      this.gzip = gzip;
+    }
+  }
+
+  private void loop() {
+    // Idle connections are looked for a few times per timeout, rather than on every wakeup.
+    long sweepMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos) / 2);
+    long lastSweep = System.nanoTime();
+    try {
+      while (running) {
+        if (idleTimeoutNanos > 0) {
+          selector.select(sweepMillis);
+        } else {
+          selector.select();
+        }
+        Render render;
+        while ((render = rendered.poll()) != null) {
+          respondRendered(render);
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          try {
+            if (!key.isValid()) {
+              continue;
+            }
+            if (key.isAcceptable()) {
+              accept();
+            } else if (key.isReadable()) {
+              read((Connection) key.attachment());
+            } else if (key.isWritable()) {
+              write((Connection) key.attachment());
+            }
+          } catch (IOException e) {
+            // The client went away, or misbehaved.
+            close(key);
+          }
+        }
+        if (idleTimeoutNanos > 0 && System.nanoTime() - lastSweep >= TimeUnit.MILLISECONDS.toNanos(sweepMillis)) {
+          lastSweep = System.nanoTime();
+          closeIdle(lastSweep);
+        }
+      }
+    } catch (IOException e) {
+      // The selector failed, nothing to do but stop.
+    } catch (ClosedSelectorException e) {
+      // Stopped.
+    } finally {
+      shutdown();
+    }
+  }
+
+  private void closeIdle(long now) {
+    for (SelectionKey key : selector.keys()) {
+      // Connections waiting for a render have no interest ops, and are not idle.
+      if (key.isValid() && key.attachment() instanceof Connection && key.interestOps() != 0
+          && now - ((Connection) key.attachment()).lastActivity > idleTimeoutNanos) {
+        close(key);
+      }
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = serverChannel.accept()) != null) {
+      try {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+      } catch (IOException e) {
+        channel.close();
+      }
+    }
+  }
+
+  private void read(Connection conn) throws IOException {
+    if (conn.channel.read(conn.in) == -1) {
+      close(conn.key);
+      return;
+    }
+    handleRequest(conn);
+  }
+
+  /**
+   * Handle the next request buffered for the connection, if it has been fully read.
+   */
+  private void handleRequest(Connection conn) throws IOException {
+    int end = indexOf(conn.in, HEAD_END);
+    if (end == -1) {
+      if (!conn.in.hasRemaining()) {
+        conn.keepAlive = false;
+        respond(conn, "431 Request Header Fields Too Large", "text/plain; charset=utf-8",
+            ByteBuffer.wrap("Request header too large\n".getBytes("UTF-8")), false);
+      }
+      return;
+    }
+    String head = new String(conn.in.array(), 0, end, "ISO-8859-1");
+    // Keep what follows the head, the start of a pipelined request.
+    conn.in.flip();
+    conn.in.position(end + HEAD_END.length);
+    conn.in.compact();
+
+    String[] lines = head.split("\r\n");
+    String[] requestLine = lines[0].split(" ");
+    if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+      conn.keepAlive = false;
+      respondText(conn, "400 Bad Request", "Malformed request line");
+      return;
+    }
+    String accept = null;
+    String acceptEncoding = "";
+    String connection = "";
+    long contentLength = 0;
+    for (int i = 1; i < lines.length; i++) {
+      int colon = lines[i].indexOf(':');
+      if (colon == -1) {
+        continue;
+      }
+      String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+      String value = lines[i].substring(colon + 1).trim();
+      if (name.equals("accept")) {
+        accept = accept == null ? value : accept + "," + value;
+      } else if (name.equals("accept-encoding")) {
+        acceptEncoding += "," + value;
+      } else if (name.equals("connection")) {
+        connection += "," + value.toLowerCase(Locale.ROOT);
+      } else if (name.equals("content-length") || name.equals("transfer-encoding")) {
+        contentLength = 1;
+      }
+    }
+    conn.keepAlive = requestLine[2].equals("HTTP/1.1")
+        ? !containsToken(connection, "close") : containsToken(connection, "keep-alive");
+
+    String method = requestLine[0];
+    conn.head = method.equals("HEAD");
+    if (!method.equals("GET") && !conn.head || contentLength != 0) {
+      // Request bodies are not read, so the connection can't be reused.
+      conn.keepAlive = false;
+      respondText(conn, "405 Method Not Allowed", "Only GET and HEAD are supported");
+      return;
+    }
+    String target = requestLine[1];
+    int q = target.indexOf('?');
+    String path = q == -1 ? target : target.substring(0, q);
+    String query = q == -1 ? null : target.substring(q + 1);
+    if (!path.equals("/") && !path.equals("/metrics")) {
+      respondText(conn, "404 Not Found", "Not found");
+      return;
+    }
+    final Set<String> names = new HashSet<String>();
+    final List<SeriesSelector> selectors = new ArrayList<SeriesSelector>();
+    try {
+      parseQuery(query, names, selectors);
+    } catch (IllegalArgumentException e) {
+      respondText(conn, "400 Bad Request", e.getMessage());
+      return;
+    }
+    conn.contentType = TextFormat.chooseContentType(accept);
+    conn.gzip = containsToken(acceptEncoding.toLowerCase(Locale.ROOT), "gzip");
+    render(conn, names, selectors);
+  }
+
+  private void render(Connection conn, final Set<String> names, final List<SeriesSelector> selectors) {
+    conn.key.interestOps(0);
+    final String contentType = conn.contentType;
+    List<Object> key = Arrays.asList(ScrapeCoalescer.key(contentType, names, selectors), conn.gzip);
+    List<Connection> conns = waiting.get(key);
+    if (conns != null) {
+      conns.add(conn);
+      return;
+    }
+    conns = new ArrayList<Connection>();
+    conns.add(conn);
+    waiting.put(key, conns);
+    final Render render = new Render(key, conn.gzip);
+    try {
+      executorService.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            ScrapeCoalescer.Payload payload = coalescer.scrape(contentType, names, selectors);
+            // Compress and copy into direct buffers here rather than on the I/O thread,
+            // payloads keep what they built.
+            if (render.gzip) {
+              if (directBuffers) {
+                payload.gzippedBuffer();
+              } else {
+                payload.gzipped();
+              }
+            } else if (directBuffers) {
+              payload.buffer();
+            }
+            render.payload = payload;
+          } catch (Throwable t) {
+            render.error = t;
+          }
+          rendered.add(render);
+          selector.wakeup();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // Stopping.
+      waiting.remove(key);
+      close(conn.key);
+    }
+  }
+
+  private void respondRendered(Render render) {
+    if (render.error != null) {
+      // Logged rather than sent, the details are not for the scraper.
+      LOGGER.log(Level.WARNING, "Error rendering metrics", render.error);
+    }
+    for (Connection conn : waiting.remove(render.key)) {
+      if (!conn.key.isValid()) {
+        // Closed by the client while rendering.
+        continue;
+      }
+      try {
+        if (render.error != null) {
+          conn.keepAlive = false;
+          respondText(conn, "500 Internal Server Error", "Error rendering metrics");
+        } else {
+          respond(conn, "200 OK", conn.contentType, body(render), conn.gzip);
+        }
+      } catch (IOException e) {
+        close(conn.key);
+      }
+    }
+  }
+
+  // A view of the payload for a single connection, as writing moves its position.
+  private ByteBuffer body(Render render) throws IOException {
+    if (directBuffers) {
+      return render.gzip ? render.payload.gzippedBuffer() : render.payload.buffer();
+    }
+    return ByteBuffer.wrap(render.gzip ? render.payload.gzipped() : render.payload.bytes());
+  }
+
+  private void respondText(Connection conn, String status, String message) throws IOException {
+    respond(conn, status, "text/plain; charset=utf-8", ByteBuffer.wrap((message + "\n").getBytes("UTF-8")), false);
+  }
+
+  private void respond(Connection conn, String status, String contentType, ByteBuffer body, boolean gzip)
+      throws IOException {
+    StringBuilder head = new StringBuilder(160);
+    head.append("HTTP/1.1 ").append(status).append("\r\n");
+    head.append("Content-Type: ").append(contentType).append("\r\n");
+    head.append("Content-Length: ").append(body.remaining()).append("\r\n");
+    if (gzip) {
+      head.append("Content-Encoding: gzip\r\n");
+    }
+    if (!conn.keepAlive) {
+      head.append("Connection: close\r\n");
+    }
+    head.append("\r\n");
+    ByteBuffer headBuffer = ByteBuffer.wrap(head.toString().getBytes("ISO-8859-1"));
+    // The body is a view of a payload shared with other responses, and never modified.
+    conn.out = new ByteBuffer[]{headBuffer, conn.head ? NO_BODY : body};
+    write(conn);
+  }
+
+  private void write(Connection conn) throws IOException {
+    if (conn.channel.write(conn.out) > 0) {
+      conn.lastActivity = System.nanoTime();
+    }
+    if (conn.out[conn.out.length - 1].hasRemaining()) {
+      conn.key.interestOps(SelectionKey.OP_WRITE);
+      return;
+    }
+    conn.out = null;
+    if (!conn.keepAlive) {
+      close(conn.key);
+      return;
+    }
+    conn.key.interestOps(SelectionKey.OP_READ);
+    handleRequest(conn);
+  }
+
+  private static void close(SelectionKey key) {
+    key.cancel();
+    try {
+      key.channel().close();
+    } catch (IOException e) {
+      // Nothing to do.
+    }
+  }
+
+  private void shutdown() {
+    try {
+      for (SelectionKey key : selector.keys()) {
+        close(key);
+      }
+      selector.close();
+    } catch (IOException e) {
+      // Nothing to do.
+    } catch (ClosedSelectorException e) {
+      // Already closed.
+    }
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+      // Nothing to do.
+    }
+    executorService.shutdown();
+  }
+
+  private static int indexOf(ByteBuffer buffer, byte[] needle) {
+    byte[] array = buffer.array();
+    int limit = buffer.position() - needle.length;
+    outer:
+    for (int i = 0; i <= limit; i++) {
+      for (int j = 0; j < needle.length; j++) {
+        if (array[i + j] != needle[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  private static boolean containsToken(String list, String token) {
+    for (String element : list.split(",")) {
+      if (element.trim().equals(token)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Parse the <code>name[]</code> and <code>match[]</code> parameters of a query.
+   *
+   * @throws IllegalArgumentException if a selector is invalid
+   */
+  static void parseQuery(String query, Set<String> names, List<SeriesSelector> selectors)
+      throws UnsupportedEncodingException {
+    if (query == null) {
+      return;
+    }
+    for (String pair : query.split("&")) {
+      int idx = pair.indexOf("=");
+      if (idx == -1) {
+        continue;
+      }
+      String key = URLDecoder.decode(pair.substring(0, idx), "UTF-8");
+      if (key.equals("name[]")) {
+        names.add(URLDecoder.decode(pair.substring(idx + 1), "UTF-8"));
+      } else if (key.equals("match[]")) {
+        selectors.add(SeriesSelector.parse(URLDecoder.decode(pair.substring(idx + 1), "UTF-8")));
+      }
+    }
+  }
+
+  /**
+   * Stop the server, closing all connections.
+   */
+  public void stop() {
+    running = false;
+    selector.wakeup();
+    try {
+      ioThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Gets the port number.
+   */
+  public int getPort() {
+    return serverChannel.socket().getLocalPort();
+  }
+}
@@ -0,0 +1,425 @@
+package io.prometheus.client.exporter;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.GaugeMetricFamily;
+import io.prometheus.client.exporter.common.TextFormat;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestNioHTTPServer {
+
+  NioHTTPServer s;
+
+  @Before
+  public void init() throws IOException {
+    CollectorRegistry registry = new CollectorRegistry();
+    Gauge.build("a", "a help").register(registry);
+    Gauge.build("b", "a help").register(registry);
+    Gauge.build("c", "a help").register(registry);
+    s = NioHTTPServer.build().registry(registry).address(new InetSocketAddress("localhost", 0)).start();
+  }
+
+  @After
+  public void cleanup() {
+    s.stop();
+  }
+
+  static class Response {
+    int status;
+    Map<String, String> headers = new HashMap<String, String>();
+    byte[] body;
+
+    String text() throws IOException {
+      InputStream in = new ByteArrayInputStream(body);
+      if ("gzip".equals(headers.get("content-encoding"))) {
+        in = new GZIPInputStream(in);
+      }
+      Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A");
+      return scanner.hasNext() ? scanner.next() : "";
+    }
+  }
+
+  Socket connect() throws IOException {
+    Socket socket = new Socket("localhost", s.getPort());
+    socket.setSoTimeout(30000);
+    return socket;
+  }
+
+  static void send(Socket socket, String method, String target, String... headers) throws IOException {
+    StringBuilder request = new StringBuilder();
+    request.append(method).append(' ').append(target).append(" HTTP/1.1\r\nHost: localhost\r\n");
+    for (String header : headers) {
+      request.append(header).append("\r\n");
+    }
+    request.append("\r\n");
+    OutputStream out = socket.getOutputStream();
+    out.write(request.toString().getBytes("ISO-8859-1"));
+    out.flush();
+  }
+
+  static Response read(Socket socket, boolean head) throws IOException {
+    InputStream in = socket.getInputStream();
+    Response response = new Response();
+    String statusLine = readLine(in);
+    response.status = Integer.parseInt(statusLine.split(" ")[1]);
+    String line;
+    while (!(line = readLine(in)).isEmpty()) {
+      int colon = line.indexOf(':');
+      response.headers.put(line.substring(0, colon).toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+    }
+    int length = head ? 0 : Integer.parseInt(response.headers.get("content-length"));
+    response.body = new byte[length];
+    int read = 0;
+    while (read < length) {
+      int n = in.read(response.body, read, length - read);
+      if (n == -1) {
+        throw new IOException("Unexpected end of response");
+      }
+      read += n;
+    }
+    return response;
+  }
+
+  static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b == -1) {
+        throw new IOException("Unexpected end of response");
+      }
+      if (b != '\r') {
+        line.write(b);
+      }
+    }
+    return line.toString("ISO-8859-1");
+  }
+
+  Response request(String target, String... headers) throws IOException {
+    Socket socket = connect();
+    try {
+      send(socket, "GET", target, headers);
+      return read(socket, false);
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testSimpleRequest() throws IOException {
+    Response response = request("/metrics");
+    assertThat(response.status).isEqualTo(200);
+    assertThat(response.headers.get("content-type")).isEqualTo(TextFormat.CONTENT_TYPE_004);
+    assertThat(response.text()).contains("a 0.0").contains("b 0.0").contains("c 0.0");
+  }
+
+  @Test
+  public void testRootPath() throws IOException {
+    assertThat(request("/").text()).contains("a 0.0");
+  }
+
+  @Test
+  public void testUnknownPath() throws IOException {
+    assertThat(request("/other").status).isEqualTo(404);
+  }
+
+  @Test
+  public void testBadParams() throws IOException {
+    Response response = request("/metrics?x");
+    assertThat(response.text()).contains("a 0.0").contains("b 0.0").contains("c 0.0");
+  }
+
+  @Test
+  public void testSingleName() throws IOException {
+    String response = request("/metrics?name[]=a").text();
+    assertThat(response).contains("a 0.0").doesNotContain("b 0.0").doesNotContain("c 0.0");
+  }
+
+  @Test
+  public void testMultiName() throws IOException {
+    String response = request("/metrics?name[]=a&name[]=b").text();
+    assertThat(response).contains("a 0.0").contains("b 0.0").doesNotContain("c 0.0");
+  }
+
+  @Test
+  public void testMatcher() throws IOException {
+    String response = request("/metrics?match%5B%5D=%7B__name__%3D%22b%22%7D").text();
+    assertThat(response).doesNotContain("a 0.0").contains("b 0.0").doesNotContain("c 0.0");
+  }
+
+  @Test
+  public void testInvalidMatcher() throws IOException {
+    assertThat(request("/metrics?match[]=%7B").status).isEqualTo(400);
+  }
+
+  @Test
+  public void testGzipCompression() throws IOException {
+    Response response = request("/metrics", "Accept-Encoding: gzip, deflate");
+    assertThat(response.headers.get("content-encoding")).isEqualTo("gzip");
+    assertThat(response.text()).contains("a 0.0").contains("b 0.0").contains("c 0.0");
+  }
+
+  @Test
+  public void testOpenMetrics() throws IOException {
+    Response response = request("/metrics", "Accept: application/openmetrics-text; version=1.0.0");
+    assertThat(response.headers.get("content-type")).isEqualTo(TextFormat.CONTENT_TYPE_OPENMETRICS_100);
+    assertThat(response.text()).endsWith("# EOF\n");
+  }
+
+  @Test
+  public void testHead() throws IOException {
+    Socket socket = connect();
+    try {
+      send(socket, "HEAD", "/metrics");
+      Response head = read(socket, true);
+      assertThat(head.status).isEqualTo(200);
+      assertThat(Integer.parseInt(head.headers.get("content-length"))).isGreaterThan(0);
+      // The connection is still usable, so no body was sent.
+      send(socket, "GET", "/metrics");
+      assertThat(read(socket, false).text()).contains("a 0.0");
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testPostNotAllowed() throws IOException {
+    Socket socket = connect();
+    try {
+      send(socket, "POST", "/metrics", "Content-Length: 0");
+      Response response = read(socket, false);
+      assertThat(response.status).isEqualTo(405);
+      assertThat(response.headers.get("connection")).isEqualTo("close");
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testKeepAlive() throws IOException {
+    Socket socket = connect();
+    try {
+      for (int i = 0; i < 10; i++) {
+        send(socket, "GET", "/metrics?name[]=a");
+        Response response = read(socket, false);
+        assertThat(response.status).isEqualTo(200);
+        assertThat(response.headers.get("connection")).isNull();
+        assertThat(response.text()).contains("a 0.0").doesNotContain("b 0.0");
+      }
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testPipelining() throws IOException {
+    Socket socket = connect();
+    try {
+      send(socket, "GET", "/metrics?name[]=a");
+      send(socket, "GET", "/metrics?name[]=b");
+      assertThat(read(socket, false).text()).contains("a 0.0").doesNotContain("b 0.0");
+      assertThat(read(socket, false).text()).contains("b 0.0").doesNotContain("a 0.0");
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testConnectionClose() throws IOException {
+    Socket socket = connect();
+    try {
+      send(socket, "GET", "/metrics", "Connection: close");
+      Response response = read(socket, false);
+      assertThat(response.headers.get("connection")).isEqualTo("close");
+      assertThat(socket.getInputStream().read()).isEqualTo(-1);
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testFreshness() throws IOException {
+    s.stop();
+    CollectorRegistry registry = new CollectorRegistry();
+    Gauge g = Gauge.build("a", "a help").register(registry);
+    s = NioHTTPServer.build()
+        .registry(registry)
+        .address(new InetSocketAddress("localhost", 0))
+        .freshness(1, TimeUnit.HOURS)
+        .start();
+    assertThat(request("/metrics").text()).contains("a 0.0");
+    assertThat(request("/metrics", "Accept-Encoding: gzip").text()).contains("a 0.0");
+    g.set(1);
+    // Served from the fresh payload, raw and gzipped, on new and reused connections.
+    Socket socket = connect();
+    try {
+      for (int i = 0; i < 3; i++) {
+        send(socket, "GET", "/metrics");
+        assertThat(read(socket, false).text()).contains("a 0.0");
+        send(socket, "GET", "/metrics", "Accept-Encoding: gzip");
+        assertThat(read(socket, false).text()).contains("a 0.0");
+      }
+    } finally {
+      socket.close();
+    }
+    assertThat(request("/metrics?name[]=a").text()).contains("a 1.0");
+  }
+
+  @Test
+  public void testManyConcurrentConnections() throws IOException {
+    // A load generator: open many connections, each with a request in flight, before reading any response.
+    List<Socket> sockets = new ArrayList<Socket>();
+    try {
+      for (int i = 0; i < 1000; i++) {
+        Socket socket = connect();
+        sockets.add(socket);
+        send(socket, "GET", "/metrics", i % 2 == 0 ? "Accept-Encoding: gzip" : "Accept-Encoding: identity");
+      }
+      for (int round = 0; round < 3; round++) {
+        for (Socket socket : sockets) {
+          Response response = read(socket, false);
+          assertThat(response.status).isEqualTo(200);
+          assertThat(response.text()).contains("a 0.0").contains("b 0.0").contains("c 0.0");
+          if (round < 2) {
+            // Reuse each connection for the next round.
+            send(socket, "GET", "/metrics");
+          }
+        }
+      }
+    } finally {
+      for (Socket socket : sockets) {
+        socket.close();
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentScrapesAreCoalesced() throws IOException {
+    s.stop();
+    final AtomicInteger collections = new AtomicInteger();
+    CollectorRegistry registry = new CollectorRegistry();
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        collections.incrementAndGet();
+        try {
+          // A slow collector, so that scrapes pile up while rendering.
+          Thread.sleep(20);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return Collections.<MetricFamilySamples>singletonList(new GaugeMetricFamily("slow", "help", 1));
+      }
+    }.register(registry);
+    s = NioHTTPServer.build().registry(registry).address(new InetSocketAddress("localhost", 0)).start();
+
+    List<Socket> sockets = new ArrayList<Socket>();
+    try {
+      for (int i = 0; i < 1000; i++) {
+        Socket socket = connect();
+        sockets.add(socket);
+        send(socket, "GET", "/metrics", i % 2 == 0 ? "Accept-Encoding: gzip" : "Accept-Encoding: identity");
+      }
+      for (int round = 0; round < 3; round++) {
+        for (Socket socket : sockets) {
+          Response response = read(socket, false);
+          assertThat(response.status).isEqualTo(200);
+          assertThat(response.text()).contains("slow 1.0");
+          if (round < 2) {
+            send(socket, "GET", "/metrics");
+          }
+        }
+      }
+    } finally {
+      for (Socket socket : sockets) {
+        socket.close();
+      }
+    }
+    // 3000 scrapes, served by far fewer collections.
+    assertThat(collections.get()).isLessThan(300);
+  }
+
+  @Test
+  public void testRenderErrorIsNotSent() throws IOException {
+    s.stop();
+    CollectorRegistry registry = new CollectorRegistry();
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        throw new IllegalStateException("secret details");
+      }
+    }.register(registry);
+    s = NioHTTPServer.build().registry(registry).address(new InetSocketAddress("localhost", 0)).start();
+    Response response = request("/metrics");
+    assertThat(response.status).isEqualTo(500);
+    assertThat(response.text()).isEqualTo("Error rendering metrics\n");
+  }
+
+  @Test
+  public void testIdleConnectionsAreClosed() throws IOException {
+    s.stop();
+    s = NioHTTPServer.build()
+        .registry(new CollectorRegistry())
+        .address(new InetSocketAddress("localhost", 0))
+        .idleTimeout(200, TimeUnit.MILLISECONDS)
+        .start();
+    Socket socket = connect();
+    try {
+      // Nothing sent, closed by the server well before the socket timeout.
+      long start = System.nanoTime();
+      assertThat(socket.getInputStream().read()).isEqualTo(-1);
+      assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(10));
+    } finally {
+      socket.close();
+    }
+    socket = connect();
+    try {
+      // Kept alive after a response, then closed once idle.
+      send(socket, "GET", "/metrics");
+      assertThat(read(socket, false).status).isEqualTo(200);
+      assertThat(socket.getInputStream().read()).isEqualTo(-1);
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeIdleTimeout() {
+    NioHTTPServer.build().idleTimeout(-1, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testStopClosesConnections() throws IOException {
+    Socket socket = connect();
+    try {
+      send(socket, "GET", "/metrics");
+      read(socket, false);
+      s.stop();
+      assertThat(socket.getInputStream().read()).isEqualTo(-1);
+    } finally {
+      socket.close();
+    }
+  }
+}
@@ -31,7 +31,7 @@ import org.eclipse.jetty.server.handler.StatisticsHandler;
  * server.start();
  * }</pre>
  */
-public class JettyStatisticsCollector extends Collector {
+public class JettyStatisticsCollector extends Collector implements Collector.Describable {
   private final StatisticsHandler statisticsHandler;
   private static final List<String> EMPTY_LIST = new ArrayList<String>();
 
@@ -63,6 +63,19 @@ public class JettyStatisticsCollector extends Collector {
     );
   }
 
+  /**
+   * The statistics are plain counters which are cheap to read, so this drops the samples of a collect.
+   */
+  @Override
+  public List<MetricFamilySamples> describe() {
+    List<MetricFamilySamples> mfs = new ArrayList<MetricFamilySamples>();
+    for (MetricFamilySamples family : collect()) {
+      mfs.add(new MetricFamilySamples(family.name, family.type, family.help,
+          Collections.<MetricFamilySamples.Sample>emptyList()));
+    }
+    return mfs;
+  }
+
   private static MetricFamilySamples buildGauge(String name, String help, double value) {
     return new MetricFamilySamples(
             name,
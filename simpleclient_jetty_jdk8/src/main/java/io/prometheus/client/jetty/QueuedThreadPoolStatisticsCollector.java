@@ -11,7 +11,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
-public class QueuedThreadPoolStatisticsCollector extends Collector {
+public class QueuedThreadPoolStatisticsCollector extends Collector implements Collector.Describable {
 
   private static final List<String> LABEL_NAMES = Collections.singletonList("unit");
 
@@ -31,14 +31,23 @@ public class QueuedThreadPoolStatisticsCollector extends Collector {
 
   @Override
   public List<MetricFamilySamples> collect() {
+    return buildGauges(queuedThreadPoolMap);
+  }
+
+  @Override
+  public List<MetricFamilySamples> describe() {
+    return buildGauges(Collections.emptyMap());
+  }
+
+  private List<MetricFamilySamples> buildGauges(Map<String, QueuedThreadPool> pools) {
     return Arrays.asList(
-        buildGauge("jetty_queued_thread_pool_threads", "Number of total threads",
+        buildGauge(pools, "jetty_queued_thread_pool_threads", "Number of total threads",
             QueuedThreadPool::getThreads),
-        buildGauge("jetty_queued_thread_pool_threads_idle", "Number of idle threads",
+        buildGauge(pools, "jetty_queued_thread_pool_threads_idle", "Number of idle threads",
             QueuedThreadPool::getIdleThreads),
-        buildGauge("jetty_queued_thread_pool_threads_max", "Max size of thread pool",
+        buildGauge(pools, "jetty_queued_thread_pool_threads_max", "Max size of thread pool",
             QueuedThreadPool::getMaxThreads),
-        buildGauge("jetty_queued_thread_pool_jobs", "Number of total jobs",
+        buildGauge(pools, "jetty_queued_thread_pool_jobs", "Number of total jobs",
             QueuedThreadPool::getQueueSize));
   }
 
@@ -50,10 +59,10 @@ public class QueuedThreadPoolStatisticsCollector extends Collector {
     return super.register(registry);
   }
 
-  private GaugeMetricFamily buildGauge(String metric, String help,
+  private static GaugeMetricFamily buildGauge(Map<String, QueuedThreadPool> pools, String metric, String help,
       Function<QueuedThreadPool, Integer> metricValueProvider) {
     final GaugeMetricFamily metricFamily = new GaugeMetricFamily(metric, help, LABEL_NAMES);
-    queuedThreadPoolMap.forEach((key, value) -> metricFamily.addMetric(
+    pools.forEach((key, value) -> metricFamily.addMetric(
         Collections.singletonList(key),
         metricValueProvider.apply(value)
     ));
@@ -1,10 +1,9 @@
 package io.prometheus.client.exporter;
 
-import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.InetAddress;
@@ -16,10 +15,12 @@ import java.net.UnknownHostException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
 import javax.xml.bind.DatatypeConverter;
 
 import io.prometheus.client.Collector;
 import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exporter.common.GzipCompressor;
 import io.prometheus.client.exporter.common.TextFormat;
 
 /**
@@ -65,6 +66,7 @@ public class PushGateway {
   protected final String gatewayBaseURL;
 
   private HttpConnectionFactory connectionFactory = new DefaultHttpConnectionFactory();
+  private GzipCompressor compressor;
 
   /**
    * Construct a Pushgateway, with the given address.
@@ -90,6 +92,15 @@ public class PushGateway {
     this.connectionFactory = connectionFactory;
   }
 
+  /**
+   * Gzip pushed metrics with the given compressor, or send them uncompressed if null, the default.
+   * <p>
+   * Requires a Pushgateway accepting gzip-encoded requests.
+   */
+  public void setCompressor(GzipCompressor compressor) {
+    this.compressor = compressor;
+  }
+
   /**
    * Creates a URL instance from a String representation of a URL without throwing a checked exception.
    * Required because you can't wrap a call to another constructor in a try statement.
@@ -295,6 +306,10 @@ public class PushGateway {
     }
     HttpURLConnection connection = connectionFactory.create(url);
     connection.setRequestProperty("Content-Type", TextFormat.CONTENT_TYPE_004);
+    GzipCompressor compressor = this.compressor;
+    if (compressor != null && !method.equals("DELETE")) {
+      connection.setRequestProperty("Content-Encoding", "gzip");
+    }
     if (!method.equals("DELETE")) {
       connection.setDoOutput(true);
     }
@@ -306,10 +321,20 @@ public class PushGateway {
 
     try {
       if (!method.equals("DELETE")) {
-        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), "UTF-8"));
-        TextFormat.write004(writer, registry.metricFamilySamples());
-        writer.flush();
-        writer.close();
+        OutputStream out = connection.getOutputStream();
+        if (compressor != null) {
+          DeflaterOutputStream gzip = compressor.outputStream(out);
+          try {
+            TextFormat.write004(gzip, registry, Collections.<String>emptySet());
+          } finally {
+            // Returns the Deflater to the pool.
+            gzip.finish();
+          }
+        } else {
+          TextFormat.write004(out, registry, Collections.<String>emptySet());
+        }
+        out.flush();
+        out.close();
       }
 
       int response = connection.getResponseCode();
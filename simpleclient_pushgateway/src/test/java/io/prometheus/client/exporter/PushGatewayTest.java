@@ -6,7 +6,18 @@ import static org.mockserver.model.HttpResponse.response;
 
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.exporter.common.GzipCompressor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 import java.util.TreeMap;
 import java.util.Map;
 import org.junit.Assert;
@@ -60,6 +71,40 @@ public class PushGatewayTest {
     pg.push(registry, "j");
   }
 
+  @Test
+  public void testPushGzipped() throws IOException {
+    // A plain server, as the mock server decompresses requests.
+    final List<String> encodings = new ArrayList<String>();
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        encodings.add(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+        InputStream in = new GZIPInputStream(exchange.getRequestBody());
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+          body.write(buffer, 0, n);
+        }
+        exchange.sendResponseHeaders(202, -1);
+        exchange.close();
+      }
+    });
+    server.start();
+    try {
+      gauge.register(registry);
+      gauge.set(42);
+      PushGateway gateway = new PushGateway("localhost:" + server.getAddress().getPort());
+      gateway.setCompressor(GzipCompressor.DEFAULT);
+      gateway.push(registry, "j");
+    } finally {
+      server.stop(0);
+    }
+    Assert.assertEquals(Collections.singletonList("gzip"), encodings);
+    Assert.assertTrue(body.toString("UTF-8").contains("g 42.0"));
+  }
+
   @Test
   public void testPush200Response() throws IOException {
     mockServerClient.when(
@@ -0,0 +1,297 @@
+package io.prometheus.client.exporter;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.SeriesSelector;
+import io.prometheus.client.exporter.common.GzipCompressor;
+import io.prometheus.client.exporter.common.TextFormat;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A variant of {@link MetricsServlet} which releases the container thread as soon as a scrape
+ * arrives, and renders the response on a dedicated executor.
+ * <p>
+ * The response is streamed as it is rendered, gzipped for clients accepting it, so slow scrapes
+ * and slow scrapers occupy a thread of the executor rather than a request thread of the container.
+ * The servlet must be registered as supporting asynchronous requests:
+ * <pre>
+ * {@code
+ *   ServletHolder holder = new ServletHolder(new AsyncMetricsServlet());
+ *   holder.setAsyncSupported(true);
+ *   context.addServlet(holder, "/metrics");
+ * }
+ * </pre>
+ * A scrape still rendering after {@link #TIMEOUT_MILLIS} is completed, and stops writing.
+ * A collector failing during the render is rethrown from a dispatch to the container. The container
+ * answers 500 if the response is still buffered. Otherwise the 200 status was already sent, and
+ * containers such as Jetty 9 and Tomcat then abort the connection rather than complete the response.
+ */
+public class AsyncMetricsServlet extends HttpServlet {
+  static final int DEFAULT_THREADS = 2;
+  /**
+   * The asynchronous timeout of scrapes, in milliseconds.
+   */
+  public static final long TIMEOUT_MILLIS = 60000;
+  // Carries a render failure to the dispatch rethrowing it on a container thread.
+  private static final String FAILURE_ATTRIBUTE = AsyncMetricsServlet.class.getName() + ".failure";
+
+  private final CollectorRegistry registry;
+  private final Executor executor;
+  private final GzipCompressor compressor;
+  // Only set when the executor was created by this servlet, and is shut down with it.
+  private final ExecutorService ownedExecutor;
+
+  /**
+   * Construct an AsyncMetricsServlet for the default registry.
+   */
+  public AsyncMetricsServlet() {
+    this(CollectorRegistry.defaultRegistry);
+  }
+
+  /**
+   * Construct an AsyncMetricsServlet for the given registry, rendering responses on two daemon threads.
+   * @param registry collector registry
+   */
+  public AsyncMetricsServlet(CollectorRegistry registry) {
+    this(registry, Executors.newFixedThreadPool(DEFAULT_THREADS, new DaemonThreadFactory()), GzipCompressor.DEFAULT, true);
+  }
+
+  /**
+   * Construct an AsyncMetricsServlet for the given registry, rendering responses on the given executor.
+   * @param registry collector registry
+   * @param executor executor rendering responses, which is left running when the servlet is destroyed
+   * @param compressor compressor, choosing the compression level, or null not to compress responses
+   */
+  public AsyncMetricsServlet(CollectorRegistry registry, Executor executor, GzipCompressor compressor) {
+    this(registry, executor, compressor, false);
+  }
+
+  private AsyncMetricsServlet(CollectorRegistry registry, Executor executor, GzipCompressor compressor, boolean owned) {
+    this.registry = registry;
+    this.executor = executor;
+    this.compressor = compressor;
+    this.ownedExecutor = owned ? (ExecutorService) executor : null;
+  }
+
+  @Override
+  protected void doGet(final HttpServletRequest req, final HttpServletResponse resp)
+          throws ServletException, IOException {
+    Throwable failure = (Throwable) req.getAttribute(FAILURE_ATTRIBUTE);
+    if (failure != null) {
+      req.removeAttribute(FAILURE_ATTRIBUTE);
+      throw new ServletException("Failed to render metrics", failure);
+    }
+    final List<SeriesSelector> selectors;
+    try {
+      selectors = MetricsServlet.parseSelectors(req);
+    } catch (IllegalArgumentException e) {
+      resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+    final Set<String> names = MetricsServlet.parse(req);
+    final String contentType = TextFormat.chooseContentType(req.getHeader("Accept"));
+    final boolean gzip = compressor != null && MetricsServlet.acceptsGzip(req);
+
+    AsyncContext async = req.startAsync();
+    async.setTimeout(TIMEOUT_MILLIS);
+    Render render = new Render(async, req, resp, contentType, names, selectors, gzip);
+    async.addListener(render);
+    try {
+      executor.execute(render);
+    } catch (RejectedExecutionException e) {
+      resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Metrics servlet is shutting down");
+      render.complete();
+    }
+  }
+
+  /**
+   * Renders a scrape, and stops writing once the container timed it out or failed it.
+   * <p>
+   * Writes and the completion by either side are synchronized on the render, so that nothing
+   * is written after the container recycled the response.
+   */
+  private class Render implements Runnable, AsyncListener {
+    private final AsyncContext async;
+    private final HttpServletRequest req;
+    private final HttpServletResponse resp;
+    private final String contentType;
+    private final Set<String> names;
+    private final List<SeriesSelector> selectors;
+    private final boolean gzip;
+    private boolean done;
+
+    Render(AsyncContext async, HttpServletRequest req, HttpServletResponse resp, String contentType,
+           Set<String> names, List<SeriesSelector> selectors, boolean gzip) {
+      this.async = async;
+      this.req = req;
+      this.resp = resp;
+      this.contentType = contentType;
+      this.names = names;
+      this.selectors = selectors;
+      this.gzip = gzip;
+    }
+
+    @Override
+    public void run() {
+      try {
+        write();
+        complete();
+      } catch (IOException e) {
+        // The scraper went away, or the container completed the scrape.
+        complete();
+      } catch (RuntimeException e) {
+        fail(e);
+      }
+    }
+
+    private void write() throws IOException {
+      OutputStream out;
+      synchronized (this) {
+        if (done) {
+          return;
+        }
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(contentType);
+        if (gzip) {
+          resp.setHeader("Content-Encoding", "gzip");
+        }
+        out = new GuardedOutputStream(resp.getOutputStream());
+      }
+      if (gzip) {
+        DeflaterOutputStream gzipped = compressor.outputStream(out);
+        try {
+          TextFormat.writeFormat(contentType, gzipped, registry, names, selectors);
+        } finally {
+          // Returns the Deflater to the pool.
+          gzipped.finish();
+        }
+      } else {
+        TextFormat.writeFormat(contentType, out, registry, names, selectors);
+      }
+      // Not closed on failure, which would end the response as if it were complete.
+      out.close();
+    }
+
+    synchronized void complete() {
+      if (!done) {
+        done = true;
+        async.complete();
+      }
+    }
+
+    private synchronized void fail(RuntimeException e) {
+      if (!done) {
+        done = true;
+        req.setAttribute(FAILURE_ATTRIBUTE, e);
+        async.dispatch();
+      }
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      complete();
+    }
+
+    @Override
+    public synchronized void onError(AsyncEvent event) {
+      // The container completes the scrape.
+      done = true;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+
+    private class GuardedOutputStream extends OutputStream {
+      private final OutputStream out;
+
+      GuardedOutputStream(OutputStream out) {
+        this.out = out;
+      }
+
+      @Override
+      public void write(int b) throws IOException {
+        synchronized (Render.this) {
+          checkNotDone();
+          out.write(b);
+        }
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        synchronized (Render.this) {
+          checkNotDone();
+          out.write(b, off, len);
+        }
+      }
+
+      @Override
+      public void flush() throws IOException {
+        synchronized (Render.this) {
+          checkNotDone();
+          out.flush();
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        synchronized (Render.this) {
+          checkNotDone();
+          out.close();
+        }
+      }
+
+      private void checkNotDone() throws IOException {
+        if (done) {
+          throw new IOException("Scrape already completed");
+        }
+      }
+    }
+  }
+
+  @Override
+  protected void doPost(final HttpServletRequest req, final HttpServletResponse resp)
+          throws ServletException, IOException {
+    doGet(req, resp);
+  }
+
+  @Override
+  public void destroy() {
+    if (ownedExecutor != null) {
+      ownedExecutor.shutdown();
+    }
+    super.destroy();
+  }
+
+  private static class DaemonThreadFactory implements ThreadFactory {
+    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "prometheus-metrics-servlet-" + threadNumber.getAndIncrement());
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
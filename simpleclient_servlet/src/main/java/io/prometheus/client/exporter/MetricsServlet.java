@@ -1,6 +1,9 @@
 package io.prometheus.client.exporter;
 
 import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.SeriesSelector;
+import io.prometheus.client.exporter.common.GzipCompressor;
+import io.prometheus.client.exporter.common.ScrapeCoalescer;
 import io.prometheus.client.exporter.common.TextFormat;
 
 import javax.servlet.ServletException;
@@ -8,19 +11,30 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
  * The MetricsServlet class exists to provide a simple way of exposing the metrics values.
- *
+ * <p>
+ * Concurrent scrapes share a single rendering, see {@link ScrapeCoalescer}.
+ * Responses are not compressed, unless constructed with a {@link GzipCompressor}, in which case
+ * they are gzipped for clients accepting it.
+ * <p>
+ * The <code>match[]</code> parameter takes {@link SeriesSelector}s, whose regular expressions
+ * are evaluated on the container thread. Only map the servlet where trusted scrapers reach it.
  */
 public class MetricsServlet extends HttpServlet {
 
   private CollectorRegistry registry;
+  private ScrapeCoalescer coalescer;
+  private GzipCompressor compressor;
 
   /**
    * Construct a MetricsServlet for the default registry.
@@ -34,25 +48,66 @@ public class MetricsServlet extends HttpServlet {
    * @param registry collector registry
    */
   public MetricsServlet(CollectorRegistry registry) {
+    this(registry, null);
+  }
+
+  /**
+   * Construct a MetricsServlet for the given registry, gzipping responses with the given compressor
+   * for clients accepting it.
+   * @param registry collector registry
+   * @param compressor compressor, choosing the compression level, or null not to compress responses
+   */
+  public MetricsServlet(CollectorRegistry registry, GzipCompressor compressor) {
     this.registry = registry;
+    this.coalescer = compressor == null ? new ScrapeCoalescer(registry) : new ScrapeCoalescer(registry, compressor);
+    this.compressor = compressor;
   }
 
   @Override
   protected void doGet(final HttpServletRequest req, final HttpServletResponse resp)
           throws ServletException, IOException {
+    List<SeriesSelector> selectors;
+    try {
+      selectors = parseSelectors(req);
+    } catch (IllegalArgumentException e) {
+      resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+    String contentType = TextFormat.chooseContentType(req.getHeader("Accept"));
     resp.setStatus(HttpServletResponse.SC_OK);
-    resp.setContentType(TextFormat.CONTENT_TYPE_004);
+    resp.setContentType(contentType);
 
-    Writer writer = resp.getWriter();
+    OutputStream out = resp.getOutputStream();
     try {
-      TextFormat.write004(writer, registry.filteredMetricFamilySamples(parse(req)));
-      writer.flush();
+      ScrapeCoalescer.Payload payload = coalescer.scrape(contentType, parse(req), selectors);
+      byte[] body;
+      if (compressor != null && acceptsGzip(req)) {
+        resp.setHeader("Content-Encoding", "gzip");
+        body = payload.gzipped();
+      } else {
+        body = payload.bytes();
+      }
+      resp.setContentLength(body.length);
+      out.write(body);
+      out.flush();
     } finally {
-      writer.close();
+      out.close();
     }
   }
 
-  private Set<String> parse(HttpServletRequest req) {
+  static boolean acceptsGzip(HttpServletRequest req) {
+    Enumeration<String> headers = req.getHeaders("Accept-Encoding");
+    while (headers != null && headers.hasMoreElements()) {
+      for (String encoding : headers.nextElement().split(",")) {
+        if (encoding.trim().equalsIgnoreCase("gzip")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  static Set<String> parse(HttpServletRequest req) {
     String[] includedParam = req.getParameterValues("name[]");
     if (includedParam == null) {
       return Collections.emptySet();
@@ -61,6 +116,18 @@ public class MetricsServlet extends HttpServlet {
     }
   }
 
+  static List<SeriesSelector> parseSelectors(HttpServletRequest req) {
+    String[] matchParam = req.getParameterValues("match[]");
+    if (matchParam == null) {
+      return Collections.emptyList();
+    }
+    List<SeriesSelector> selectors = new ArrayList<SeriesSelector>(matchParam.length);
+    for (String match : matchParam) {
+      selectors.add(SeriesSelector.parse(match));
+    }
+    return selectors;
+  }
+
   @Override
   protected void doPost(final HttpServletRequest req, final HttpServletResponse resp)
           throws ServletException, IOException {
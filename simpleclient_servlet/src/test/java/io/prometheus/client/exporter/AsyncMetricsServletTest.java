@@ -0,0 +1,251 @@
+package io.prometheus.client.exporter;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.exporter.common.GzipCompressor;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class AsyncMetricsServletTest {
+
+  CollectorRegistry registry;
+  List<Runnable> tasks;
+  Executor executor;
+  HttpServletRequest req;
+  HttpServletResponse resp;
+  AsyncContext async;
+  ByteArrayOutputStream body;
+
+  @Before
+  public void setUp() throws IOException {
+    registry = new CollectorRegistry();
+    Gauge.build("a", "a help").register(registry);
+    Gauge.build("b", "a help").register(registry);
+    tasks = new ArrayList<Runnable>();
+    executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        tasks.add(command);
+      }
+    };
+    req = mock(HttpServletRequest.class);
+    async = mock(AsyncContext.class);
+    when(req.startAsync()).thenReturn(async);
+    resp = mock(HttpServletResponse.class);
+    body = new ByteArrayOutputStream();
+    when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+    });
+  }
+
+  @Test
+  public void testRendersOnExecutor() throws IOException, ServletException {
+    when(req.getParameterValues("name[]")).thenReturn(new String[]{"a"});
+
+    new AsyncMetricsServlet(registry, executor, GzipCompressor.DEFAULT).doGet(req, resp);
+
+    // The container thread returns without having written anything.
+    verify(req).startAsync();
+    verifyZeroInteractions(resp);
+    assertThat(tasks).hasSize(1);
+
+    tasks.get(0).run();
+    verify(async).complete();
+    assertThat(body.toString("UTF-8")).contains("a 0.0");
+    assertThat(body.toString("UTF-8")).doesNotContain("b 0.0");
+  }
+
+  @Test
+  public void testGzipCompression() throws IOException, ServletException {
+    when(req.getHeaders("Accept-Encoding")).thenReturn(Collections.enumeration(Arrays.asList("deflate, gzip")));
+
+    new AsyncMetricsServlet(registry, executor, GzipCompressor.DEFAULT).doGet(req, resp);
+    tasks.get(0).run();
+
+    verify(resp).setHeader("Content-Encoding", "gzip");
+    Scanner s = new Scanner(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray())), "UTF-8").useDelimiter("\\A");
+    assertThat(s.next()).contains("a 0.0").contains("b 0.0");
+  }
+
+  @Test
+  public void testInvalidMatcherIsRejected() throws IOException, ServletException {
+    when(req.getParameterValues("match[]")).thenReturn(new String[]{"g{"});
+
+    new AsyncMetricsServlet(registry, executor, GzipCompressor.DEFAULT).doGet(req, resp);
+
+    verify(resp).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+    verify(req, never()).startAsync();
+    assertThat(tasks).isEmpty();
+  }
+
+  @Test
+  public void testRejectedScrapeIsCompleted() throws IOException, ServletException {
+    Executor rejecting = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    };
+
+    new AsyncMetricsServlet(registry, rejecting, GzipCompressor.DEFAULT).doGet(req, resp);
+
+    verify(resp).sendError(eq(HttpServletResponse.SC_SERVICE_UNAVAILABLE), anyString());
+    verify(async).complete();
+  }
+
+  @Test
+  public void testCompletesWhenScraperWentAway() throws IOException, ServletException {
+    when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("Broken pipe");
+      }
+    });
+
+    new AsyncMetricsServlet(registry, executor, GzipCompressor.DEFAULT).doGet(req, resp);
+    tasks.get(0).run();
+
+    verify(async).complete();
+  }
+
+  @Test
+  public void testFailureIsRethrownOnContainerThread() throws IOException, ServletException {
+    registry.register(new FailingCollector());
+    when(req.getHeaders("Accept-Encoding")).thenReturn(Collections.enumeration(Arrays.asList("gzip")));
+    AsyncMetricsServlet servlet = new AsyncMetricsServlet(registry, executor, GzipCompressor.DEFAULT);
+
+    servlet.doGet(req, resp);
+    tasks.get(0).run();
+
+    ArgumentCaptor<Object> failure = ArgumentCaptor.forClass(Object.class);
+    verify(req).setAttribute(anyString(), failure.capture());
+    verify(async).dispatch();
+    verify(async, never()).complete();
+
+    // The dispatch rethrows the failure.
+    when(req.getAttribute(anyString())).thenReturn(failure.getValue());
+    try {
+      servlet.doGet(req, resp);
+      fail("Should rethrow the failure");
+    } catch (ServletException e) {
+      assertThat(e.getCause()).isSameAs(failure.getValue());
+    }
+  }
+
+  @Test
+  public void testStopsWritingAfterTimeout() throws IOException, ServletException {
+    new AsyncMetricsServlet(registry, executor, GzipCompressor.DEFAULT).doGet(req, resp);
+    verify(async).setTimeout(AsyncMetricsServlet.TIMEOUT_MILLIS);
+    ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+    verify(async).addListener(listener.capture());
+
+    listener.getValue().onTimeout(null);
+    verify(async).complete();
+    tasks.get(0).run();
+
+    verifyZeroInteractions(resp);
+    assertThat(body.size()).isEqualTo(0);
+    verify(async).complete();
+  }
+
+  @Test
+  public void testContainerAnswersFailedRender() throws Exception {
+    registry.register(new FailingCollector());
+    Server server = new Server();
+    SelectChannelConnector connector = new SelectChannelConnector();
+    connector.setHost("localhost");
+    connector.setPort(0);
+    server.addConnector(connector);
+    ServletContextHandler context = new ServletContextHandler();
+    context.setContextPath("/");
+    server.setHandler(context);
+    ServletHolder holder = new ServletHolder(new AsyncMetricsServlet(registry));
+    holder.setAsyncSupported(true);
+    context.addServlet(holder, "/metrics");
+    server.start();
+    try {
+      URL url = new URL("http://localhost:" + connector.getLocalPort() + "/metrics");
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      connection.setRequestProperty("Accept-Encoding", "gzip");
+      // The partial response is still buffered, so the container replaces it.
+      assertThat(connection.getResponseCode()).isEqualTo(500);
+    } finally {
+      server.stop();
+    }
+  }
+
+  private static class FailingCollector extends Collector {
+    @Override
+    public List<MetricFamilySamples> collect() {
+      throw new IllegalStateException("collection failed");
+    }
+  }
+
+  @Test
+  public void testServesFromContainer() throws Exception {
+    Server server = new Server();
+    SelectChannelConnector connector = new SelectChannelConnector();
+    connector.setHost("localhost");
+    connector.setPort(0);
+    server.addConnector(connector);
+    ServletContextHandler context = new ServletContextHandler();
+    context.setContextPath("/");
+    server.setHandler(context);
+    ServletHolder holder = new ServletHolder(new AsyncMetricsServlet(registry));
+    holder.setAsyncSupported(true);
+    context.addServlet(holder, "/metrics");
+    server.start();
+    try {
+      URL url = new URL("http://localhost:" + connector.getLocalPort() + "/metrics?name[]=b");
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      connection.setRequestProperty("Accept-Encoding", "gzip");
+      assertThat(connection.getResponseCode()).isEqualTo(200);
+      assertThat(connection.getHeaderField("Content-Encoding")).isEqualTo("gzip");
+      Scanner s = new Scanner(new GZIPInputStream(connection.getInputStream()), "UTF-8").useDelimiter("\\A");
+      String response = s.next();
+      assertThat(response).contains("b 0.0");
+      assertThat(response).doesNotContain("a 0.0");
+    } finally {
+      server.stop();
+    }
+  }
+}
@@ -2,21 +2,32 @@ package io.prometheus.client.exporter;
 
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.exporter.common.GzipCompressor;
+import io.prometheus.client.exporter.common.ProtobufFormat;
 import org.junit.Test;
 
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Scanner;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.Assertions.fail;
-import static org.mockito.Matchers.anyChar;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -32,37 +43,149 @@ public class MetricsServletTest {
     HttpServletRequest req = mock(HttpServletRequest.class);
     when(req.getParameterValues("name[]")).thenReturn(new String[]{"a", "b", "oneTheDoesntExist", ""});
     HttpServletResponse resp = mock(HttpServletResponse.class);
-    StringWriter stringWriter = new StringWriter();
-    PrintWriter writer = new PrintWriter(stringWriter);
-    when(resp.getWriter()).thenReturn(writer);
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+    });
 
     new MetricsServlet(registry).doGet(req, resp);
 
-    assertThat(stringWriter.toString()).contains("a 0.0");
-    assertThat(stringWriter.toString()).contains("b 0.0");
-    assertThat(stringWriter.toString()).doesNotContain("c 0.0");
+    assertThat(body.toString("UTF-8")).contains("a 0.0");
+    assertThat(body.toString("UTF-8")).contains("b 0.0");
+    assertThat(body.toString("UTF-8")).doesNotContain("c 0.0");
   }
 
   @Test
-  public void testWriterIsClosedNormally() throws IOException, ServletException {
+  public void testGzipCompression() throws IOException, ServletException {
+    CollectorRegistry registry = new CollectorRegistry();
+    Gauge.build("a", "a help").register(registry);
+
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getHeaders("Accept-Encoding")).thenReturn(Collections.enumeration(Arrays.asList("deflate, gzip")));
+    HttpServletResponse resp = mock(HttpServletResponse.class);
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+    });
+
+    new MetricsServlet(registry, new GzipCompressor(Deflater.BEST_SPEED)).doGet(req, resp);
+
+    verify(resp).setHeader("Content-Encoding", "gzip");
+    verify(resp).setContentLength(body.size());
+    Scanner s = new Scanner(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray())), "UTF-8").useDelimiter("\\A");
+    assertThat(s.next()).contains("a 0.0");
+  }
+
+  @Test
+  public void testNotCompressedByDefault() throws IOException, ServletException {
+    CollectorRegistry registry = new CollectorRegistry();
+    Gauge.build("a", "a help").register(registry);
+
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getHeaders("Accept-Encoding")).thenReturn(Collections.enumeration(Arrays.asList("gzip")));
+    HttpServletResponse resp = mock(HttpServletResponse.class);
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+    });
+
+    new MetricsServlet(registry).doGet(req, resp);
+    new MetricsServlet(registry, null).doGet(req, resp);
+
+    verify(resp, never()).setHeader(eq("Content-Encoding"), anyString());
+    assertThat(body.toString("UTF-8")).contains("a 0.0");
+  }
+
+  @Test
+  public void testMatchersSelectChildren() throws IOException, ServletException {
+    CollectorRegistry registry = new CollectorRegistry();
+    Gauge g = Gauge.build("g", "a help").labelNames("tenant").register(registry);
+    g.labels("a").set(1);
+    g.labels("b").set(2);
+
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getParameterValues("match[]")).thenReturn(new String[]{"g{tenant=\"b\"}"});
+    HttpServletResponse resp = mock(HttpServletResponse.class);
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+    });
+
+    new MetricsServlet(registry).doGet(req, resp);
+
+    assertThat(body.toString("UTF-8")).contains("g{tenant=\"b\",} 2.0");
+    assertThat(body.toString("UTF-8")).doesNotContain("tenant=\"a\"");
+  }
+
+  @Test
+  public void testInvalidMatcherIsRejected() throws IOException, ServletException {
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getParameterValues("match[]")).thenReturn(new String[]{"g{"});
+    HttpServletResponse resp = mock(HttpServletResponse.class);
+
+    new MetricsServlet(new CollectorRegistry()).doGet(req, resp);
+
+    verify(resp).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), anyString());
+  }
+
+  @Test
+  public void testContentTypeIsNegotiated() throws IOException, ServletException {
+    CollectorRegistry registry = new CollectorRegistry();
+    Gauge.build("a", "a help").register(registry);
+
+    HttpServletRequest req = mock(HttpServletRequest.class);
+    when(req.getHeader("Accept")).thenReturn("application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=delimited");
+    HttpServletResponse resp = mock(HttpServletResponse.class);
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    when(resp.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+    });
+
+    new MetricsServlet(registry).doGet(req, resp);
+
+    verify(resp).setContentType(ProtobufFormat.CONTENT_TYPE);
+    byte[] bytes = body.toByteArray();
+    verify(resp).setContentLength(bytes.length);
+    // Length, then the name field of the MetricFamily.
+    assertThat(bytes[0] & 0xff).isEqualTo(bytes.length - 1);
+    assertThat(bytes[1]).isEqualTo((byte) 0x0a);
+  }
+
+  @Test
+  public void testOutputStreamIsClosedNormally() throws IOException, ServletException {
     HttpServletRequest req = mock(HttpServletRequest.class);
     HttpServletResponse resp = mock(HttpServletResponse.class);
-    PrintWriter writer = mock(PrintWriter.class);
-    when(resp.getWriter()).thenReturn(writer);
+    ServletOutputStream out = mock(ServletOutputStream.class);
+    when(resp.getOutputStream()).thenReturn(out);
     CollectorRegistry registry = new CollectorRegistry();
     Gauge a = Gauge.build("a", "a help").register(registry);
 
     new MetricsServlet(registry).doGet(req, resp);
-    verify(writer).close();
+    verify(out).close();
   }
 
   @Test
-  public void testWriterIsClosedOnException() throws IOException, ServletException {
+  public void testOutputStreamIsClosedOnException() throws IOException, ServletException {
     HttpServletRequest req = mock(HttpServletRequest.class);
     HttpServletResponse resp = mock(HttpServletResponse.class);
-    PrintWriter writer = mock(PrintWriter.class);
-    when(resp.getWriter()).thenReturn(writer);
-    doThrow(new RuntimeException()).when(writer).write(anyChar());
+    ServletOutputStream out = mock(ServletOutputStream.class);
+    when(resp.getOutputStream()).thenReturn(out);
+    doThrow(new RuntimeException()).when(out).write(any(byte[].class));
     CollectorRegistry registry = new CollectorRegistry();
     Gauge a = Gauge.build("a", "a help").register(registry);
 
@@ -72,6 +195,6 @@ public class MetricsServletTest {
     } catch (Exception e) {
     }
 
-    verify(writer).close();
+    verify(out).close();
   }
 }
@@ -29,7 +29,7 @@ class PrometheusEndpoint extends AbstractEndpoint<String> {
   public String writeRegistry(Set<String> metricsToInclude) {
     try {
       Writer writer = new StringWriter();
-      TextFormat.write004(writer, collectorRegistry.filteredMetricFamilySamples(metricsToInclude));
+      TextFormat.write004(writer, collectorRegistry, metricsToInclude);
       return writer.toString();
     } catch (IOException e) {
       // This actually never happens since StringWriter::write() doesn't throw any IOException
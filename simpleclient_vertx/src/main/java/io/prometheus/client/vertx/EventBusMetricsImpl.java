@@ -0,0 +1,111 @@
+package io.prometheus.client.vertx;
+
+import io.prometheus.client.Counter;
+import io.vertx.core.eventbus.ReplyFailure;
+import io.vertx.core.spi.metrics.EventBusMetrics;
+
+/**
+ * Metrics of a Vert.x event bus.
+ * <p>
+ * Addresses are not used as labels, as reply handlers are registered at generated addresses,
+ * so handlers need no state of their own.
+ * A handler processes a message on a single thread, so the start of the processing is kept in
+ * a thread local rather than in a per-handler object.
+ */
+final class EventBusMetricsImpl implements EventBusMetrics<Object> {
+  // Vert.x skips the hooks of a handler whose metric is null, so all handlers share this one.
+  private static final Object HANDLER = new Object();
+  private static final ThreadLocal<long[]> processingStart = new ThreadLocal<long[]>() {
+    @Override
+    protected long[] initialValue() {
+      return new long[1];
+    }
+  };
+
+  private final VertxCollectors collectors;
+  // Indexed by publish, then local.
+  private final Counter.Child[][] sent;
+  private final Counter.Child[][] received;
+  private final Counter.Child[] replyFailures;
+
+  EventBusMetricsImpl(VertxCollectors collectors) {
+    this.collectors = collectors;
+    sent = bindMessages(collectors.eventBusSent);
+    received = bindMessages(collectors.eventBusReceived);
+    ReplyFailure[] failures = ReplyFailure.values();
+    replyFailures = new Counter.Child[failures.length];
+    for (int i = 0; i < failures.length; i++) {
+      replyFailures[i] = collectors.eventBusReplyFailures.labels(failures[i].name());
+    }
+  }
+
+  private static Counter.Child[][] bindMessages(Counter counter) {
+    return new Counter.Child[][]{
+        {counter.labels("send", "false"), counter.labels("send", "true")},
+        {counter.labels("publish", "false"), counter.labels("publish", "true")}};
+  }
+
+  @Override
+  public Object handlerRegistered(String address, String repliedAddress) {
+    collectors.eventBusHandlers.inc();
+    return HANDLER;
+  }
+
+  @Override
+  public void handlerUnregistered(Object handler) {
+    collectors.eventBusHandlers.dec();
+  }
+
+  @Override
+  public void scheduleMessage(Object handler, boolean local) {
+    collectors.eventBusPending.inc();
+  }
+
+  @Override
+  public void beginHandleMessage(Object handler, boolean local) {
+    collectors.eventBusPending.dec();
+    processingStart.get()[0] = System.nanoTime();
+  }
+
+  @Override
+  public void endHandleMessage(Object handler, Throwable failure) {
+    collectors.eventBusProcessing.observe((System.nanoTime() - processingStart.get()[0]) / 1E9);
+    if (failure != null) {
+      collectors.eventBusHandlerFailures.inc();
+    }
+  }
+
+  @Override
+  public void messageSent(String address, boolean publish, boolean local, boolean remote) {
+    sent[publish ? 1 : 0][local ? 1 : 0].inc();
+  }
+
+  @Override
+  public void messageReceived(String address, boolean publish, boolean local, int handlers) {
+    received[publish ? 1 : 0][local ? 1 : 0].inc();
+  }
+
+  @Override
+  public void messageWritten(String address, int numberOfBytes) {
+    collectors.eventBusBytesWritten.inc(numberOfBytes);
+  }
+
+  @Override
+  public void messageRead(String address, int numberOfBytes) {
+    collectors.eventBusBytesRead.inc(numberOfBytes);
+  }
+
+  @Override
+  public void replyFailure(String address, ReplyFailure failure) {
+    replyFailures[failure.ordinal()].inc();
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return true;
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,101 @@
+package io.prometheus.client.vertx;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Histogram;
+import io.vertx.core.Vertx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports the lag of the event loops of a Vert.x instance, in the style of jHiccup.
+ * <p>
+ * A task is scheduled on each event loop at a fixed interval, 1 millisecond by default, and records
+ * by how much it ran late. A blocked event loop delays all the handlers on it, so it shows up here
+ * even when it never shows up as the latency of a single request, as do pauses of the whole JVM.
+ * The task does nothing else, and runs directly on the Netty event loop, without a Vert.x context.
+ * <p>
+ * Usage:
+ * <pre>
+ * {@code
+ * new EventLoopLagCollector(vertx).register();
+ * }
+ * </pre>
+ */
+public class EventLoopLagCollector extends Collector implements Collector.Describable {
+  private final Histogram lag = Histogram.build()
+      .name("vertx_eventloop_lag_seconds")
+      .help("Time a task scheduled on a Vert.x event loop at a fixed interval ran late, in seconds.")
+      .labelNames("loop")
+      .buckets(.001, .002, .005, .01, .02, .05, .1, .2, .5, 1, 2, 5, 10)
+      .create();
+  private final List<ScheduledFuture<?>> tasks = new ArrayList<ScheduledFuture<?>>();
+
+  /**
+   * Start measuring the lag of the event loops of the given Vert.x instance every millisecond.
+   */
+  public EventLoopLagCollector(Vertx vertx) {
+    this(vertx, 1, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Start measuring the lag of the event loops of the given Vert.x instance at the given interval.
+   */
+  public EventLoopLagCollector(Vertx vertx, long interval, TimeUnit unit) {
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Interval must be positive");
+    }
+    long intervalNanos = unit.toNanos(interval);
+    for (EventExecutor loop : vertx.nettyEventLoopGroup()) {
+      // A fixed delay rather than a fixed rate, so that a stall is recorded once rather than
+      // followed by a burst of late runs catching up.
+      tasks.add(loop.scheduleWithFixedDelay(new Probe(intervalNanos), intervalNanos, intervalNanos, TimeUnit.NANOSECONDS));
+    }
+  }
+
+  /**
+   * Runs on a single event loop, so needs no synchronization.
+   */
+  private final class Probe implements Runnable {
+    private final long intervalNanos;
+    private Histogram.Child child;
+    private long last = System.nanoTime();
+
+    Probe(long intervalNanos) {
+      this.intervalNanos = intervalNanos;
+    }
+
+    @Override
+    public void run() {
+      long now = System.nanoTime();
+      if (child == null) {
+        child = lag.labels(Thread.currentThread().getName());
+      }
+      long overshoot = now - last - intervalNanos;
+      child.observe(overshoot > 0 ? overshoot / NANOSECONDS_PER_SECOND : 0);
+      last = now;
+    }
+  }
+
+  /**
+   * Stop measuring. The lag already recorded is still exported.
+   */
+  public void close() {
+    for (ScheduledFuture<?> task : tasks) {
+      task.cancel(false);
+    }
+  }
+
+  @Override
+  public List<MetricFamilySamples> collect() {
+    return lag.collect();
+  }
+
+  @Override
+  public List<MetricFamilySamples> describe() {
+    return lag.describe();
+  }
+}
@@ -0,0 +1,159 @@
+package io.prometheus.client.vertx;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpClientResponse;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.core.spi.metrics.HttpClientMetrics;
+
+/**
+ * Metrics of a Vert.x HTTP client, with the children of each family bound per endpoint,
+ * when the client first connects to it.
+ */
+final class HttpClientMetricsImpl
+    implements HttpClientMetrics<TimingPool.Timing, Object, Object, HttpClientMetricsImpl.Endpoint, TimingPool.Timing> {
+  // Vert.x may skip the hooks of a connection or websocket whose metric is null, so they all share this one.
+  private static final Object METRIC = new Object();
+
+  /**
+   * The children of a remote host and port.
+   */
+  static final class Endpoint {
+    final Gauge.Child connections;
+    final Gauge.Child queuePending;
+    final Histogram.Child queueDelay;
+    final Counter.Child resets;
+    final Histogram.Child[] durations;
+    final Counter.Child[][] responses;
+
+    Endpoint(VertxCollectors collectors, String remote) {
+      connections = collectors.httpClientConnections.labels(remote);
+      queuePending = collectors.httpClientQueuePending.labels(remote);
+      queueDelay = collectors.httpClientQueueDelay.labels(remote);
+      resets = collectors.httpClientResets.labels(remote);
+      durations = VertxCollectors.bindDurations(collectors.httpClientRequestDuration, remote);
+      responses = VertxCollectors.bindResponses(collectors.httpClientResponses, remote);
+    }
+  }
+
+  private final VertxCollectors collectors;
+  private final TimingPool timings;
+
+  HttpClientMetricsImpl(VertxCollectors collectors, TimingPool timings) {
+    this.collectors = collectors;
+    this.timings = timings;
+  }
+
+  @Override
+  public Endpoint createEndpoint(String host, int port, int maxPoolSize) {
+    return new Endpoint(collectors, host + ":" + port);
+  }
+
+  @Override
+  public void closeEndpoint(String host, int port, Endpoint endpoint) {
+  }
+
+  @Override
+  public TimingPool.Timing enqueueRequest(Endpoint endpoint) {
+    endpoint.queuePending.inc();
+    return timings.start();
+  }
+
+  @Override
+  public void dequeueRequest(Endpoint endpoint, TimingPool.Timing timing) {
+    endpoint.queuePending.dec();
+    endpoint.queueDelay.observe(TimingPool.elapsedSeconds(timing));
+    timings.release(timing);
+  }
+
+  @Override
+  public void endpointConnected(Endpoint endpoint, Object socket) {
+    endpoint.connections.inc();
+  }
+
+  @Override
+  public void endpointDisconnected(Endpoint endpoint, Object socket) {
+    endpoint.connections.dec();
+  }
+
+  @Override
+  public TimingPool.Timing requestBegin(Endpoint endpoint, Object socket, SocketAddress localAddress,
+                                        SocketAddress remoteAddress, HttpClientRequest request) {
+    TimingPool.Timing timing = timings.start();
+    timing.method = request.method().ordinal();
+    timing.owner = endpoint;
+    return timing;
+  }
+
+  @Override
+  public void requestEnd(TimingPool.Timing timing) {
+  }
+
+  @Override
+  public void responseBegin(TimingPool.Timing timing, HttpClientResponse response) {
+  }
+
+  @Override
+  public TimingPool.Timing responsePushed(Endpoint endpoint, Object socket, SocketAddress localAddress,
+                                          SocketAddress remoteAddress, HttpClientRequest request) {
+    return requestBegin(endpoint, socket, localAddress, remoteAddress, request);
+  }
+
+  @Override
+  public void requestReset(TimingPool.Timing timing) {
+    ((Endpoint) timing.owner).resets.inc();
+    timings.release(timing);
+  }
+
+  @Override
+  public void responseEnd(TimingPool.Timing timing, HttpClientResponse response) {
+    Endpoint endpoint = (Endpoint) timing.owner;
+    endpoint.durations[timing.method].observe(TimingPool.elapsedSeconds(timing));
+    endpoint.responses[timing.method][VertxCollectors.codeClass(response.statusCode())].inc();
+    timings.release(timing);
+  }
+
+  @Override
+  public Object connected(Endpoint endpoint, Object socket, WebSocket webSocket) {
+    return METRIC;
+  }
+
+  @Override
+  public void disconnected(Object webSocket) {
+  }
+
+  @Override
+  public Object connected(SocketAddress remoteAddress, String remoteName) {
+    return METRIC;
+  }
+
+  @Override
+  public void disconnected(Object socket, SocketAddress remoteAddress) {
+  }
+
+  @Override
+  public void bytesRead(Object socket, SocketAddress remoteAddress, long numberOfBytes) {
+    collectors.httpClientBytesRead.inc(numberOfBytes);
+  }
+
+  @Override
+  public void bytesWritten(Object socket, SocketAddress remoteAddress, long numberOfBytes) {
+    collectors.httpClientBytesWritten.inc(numberOfBytes);
+  }
+
+  @Override
+  public void exceptionOccurred(Object socket, SocketAddress remoteAddress, Throwable t) {
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return true;
+  }
+
+  @Override
+  public void close() {
+  }
+}
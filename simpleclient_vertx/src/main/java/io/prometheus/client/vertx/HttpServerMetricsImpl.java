@@ -0,0 +1,120 @@
+package io.prometheus.client.vertx;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.core.spi.metrics.HttpServerMetrics;
+
+/**
+ * Metrics of a Vert.x HTTP server, with the children of each family bound when the server is created.
+ */
+final class HttpServerMetricsImpl implements HttpServerMetrics<TimingPool.Timing, Object, Object> {
+  // Vert.x may skip the hooks of a connection or websocket whose metric is null, so they all share this one.
+  private static final Object METRIC = new Object();
+
+  private final TimingPool timings;
+  private final Gauge.Child connections;
+  private final Gauge.Child webSockets;
+  private final Counter.Child bytesRead;
+  private final Counter.Child bytesWritten;
+  private final Counter.Child resets;
+  private final Histogram.Child[] durations;
+  private final Counter.Child[][] responses;
+
+  HttpServerMetricsImpl(VertxCollectors collectors, TimingPool timings, String local) {
+    this.timings = timings;
+    connections = collectors.httpServerConnections.labels(local);
+    webSockets = collectors.httpServerWebSockets.labels(local);
+    bytesRead = collectors.httpServerBytesRead.labels(local);
+    bytesWritten = collectors.httpServerBytesWritten.labels(local);
+    resets = collectors.httpServerResets.labels(local);
+    durations = VertxCollectors.bindDurations(collectors.httpServerRequestDuration, local);
+    responses = VertxCollectors.bindResponses(collectors.httpServerResponses, local);
+  }
+
+  @Override
+  public TimingPool.Timing requestBegin(Object socket, HttpServerRequest request) {
+    return begin(request.method());
+  }
+
+  @Override
+  public TimingPool.Timing responsePushed(Object socket, HttpMethod method, String uri, HttpServerResponse response) {
+    return begin(method);
+  }
+
+  private TimingPool.Timing begin(HttpMethod method) {
+    TimingPool.Timing timing = timings.start();
+    timing.method = method.ordinal();
+    return timing;
+  }
+
+  @Override
+  public void requestReset(TimingPool.Timing timing) {
+    resets.inc();
+    timings.release(timing);
+  }
+
+  @Override
+  public void responseEnd(TimingPool.Timing timing, HttpServerResponse response) {
+    durations[timing.method].observe(TimingPool.elapsedSeconds(timing));
+    responses[timing.method][VertxCollectors.codeClass(response.getStatusCode())].inc();
+    timings.release(timing);
+  }
+
+  @Override
+  public Object upgrade(TimingPool.Timing timing, ServerWebSocket serverWebSocket) {
+    timings.release(timing);
+    webSockets.inc();
+    return METRIC;
+  }
+
+  @Override
+  public Object connected(Object socket, ServerWebSocket serverWebSocket) {
+    webSockets.inc();
+    return METRIC;
+  }
+
+  @Override
+  public void disconnected(Object webSocket) {
+    webSockets.dec();
+  }
+
+  @Override
+  public Object connected(SocketAddress remoteAddress, String remoteName) {
+    connections.inc();
+    return METRIC;
+  }
+
+  @Override
+  public void disconnected(Object socket, SocketAddress remoteAddress) {
+    connections.dec();
+  }
+
+  @Override
+  public void bytesRead(Object socket, SocketAddress remoteAddress, long numberOfBytes) {
+    bytesRead.inc(numberOfBytes);
+  }
+
+  @Override
+  public void bytesWritten(Object socket, SocketAddress remoteAddress, long numberOfBytes) {
+    bytesWritten.inc(numberOfBytes);
+  }
+
+  @Override
+  public void exceptionOccurred(Object socket, SocketAddress remoteAddress, Throwable t) {
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return true;
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -1,16 +1,23 @@
 package io.prometheus.client.vertx;
 
+import io.netty.buffer.Unpooled;
 import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.SeriesSelector;
+import io.prometheus.client.exporter.common.GzipCompressor;
+import io.prometheus.client.exporter.common.ScrapeCoalescer;
 import io.prometheus.client.exporter.common.TextFormat;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.WorkerExecutor;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.ext.web.RoutingContext;
 
 import java.io.IOException;
-import java.io.Writer;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -18,6 +25,13 @@ import java.util.Set;
  * <p>
  * This handler will allow the usage of Prometheus Client Java API with
  * Vert.x applications and expose a API compatible handler for the collector.
+ * Concurrent scrapes share a single rendering, see {@link ScrapeCoalescer}.
+ * <p>
+ * Metrics are collected and rendered on a worker thread, never on the event loop, and the rendered
+ * payload is handed to Netty without being copied. Responses are gzipped for clients accepting it.
+ * <p>
+ * Regular expressions in <code>match[]</code> {@link SeriesSelector}s tie up a worker thread for as
+ * long as they take to evaluate, so route the handler only where trusted scrapers reach it.
  * <p>
  * Usage:
  * <p>
@@ -25,35 +39,9 @@ import java.util.Set;
  */
 public class MetricsHandler implements Handler<RoutingContext> {
 
-  /**
-   * Wrap a Vert.x Buffer as a Writer so it can be used with
-   * TextFormat writer
-   */
-  private static class BufferWriter extends Writer {
-
-    private final Buffer buffer = Buffer.buffer();
-
-    @Override
-    public void write(char[] cbuf, int off, int len) throws IOException {
-      buffer.appendString(new String(cbuf, off, len));
-    }
-
-    @Override
-    public void flush() throws IOException {
-      // NO-OP
-    }
-
-    @Override
-    public void close() throws IOException {
-      // NO-OP
-    }
-
-    Buffer getBuffer() {
-      return buffer;
-    }
-  }
-
   private CollectorRegistry registry;
+  private ScrapeCoalescer coalescer;
+  private WorkerExecutor workerExecutor;
 
   /**
    * Construct a MetricsHandler for the default registry.
@@ -66,24 +54,83 @@ public class MetricsHandler implements Handler<RoutingContext> {
    * Construct a MetricsHandler for the given registry.
    */
   public MetricsHandler(CollectorRegistry registry) {
+    this(registry, null, GzipCompressor.DEFAULT);
+  }
+
+  /**
+   * Construct a MetricsHandler for the given registry, rendering on the given worker executor
+   * rather than the worker pool of the Vert.x instance, and gzipping with the given compressor.
+   */
+  public MetricsHandler(CollectorRegistry registry, WorkerExecutor workerExecutor, GzipCompressor compressor) {
     this.registry = registry;
+    this.coalescer = new ScrapeCoalescer(registry, compressor);
+    this.workerExecutor = workerExecutor;
   }
 
   @Override
   public void handle(RoutingContext ctx) {
+    List<SeriesSelector> selectors;
     try {
-      final BufferWriter writer = new BufferWriter();
-      TextFormat.write004(writer, registry.filteredMetricFamilySamples(parse(ctx.request())));
+      selectors = parseSelectors(ctx.request());
+    } catch (IllegalArgumentException e) {
+      ctx.response()
+              .setStatusCode(400)
+              .end(e.getMessage());
+      return;
+    }
+    String contentType = TextFormat.chooseContentType(ctx.request().getHeader("Accept"));
+    Set<String> names = parse(ctx.request());
+    boolean gzip = acceptsGzip(ctx.request());
+    Handler<Future<byte[]>> render = future -> {
+      try {
+        ScrapeCoalescer.Payload payload = coalescer.scrape(contentType, names, selectors);
+        future.complete(gzip ? payload.gzipped() : payload.bytes());
+      } catch (IOException e) {
+        future.fail(e);
+      }
+    };
+    Handler<AsyncResult<byte[]>> respond = result -> {
+      if (result.failed()) {
+        ctx.fail(result.cause());
+        return;
+      }
+      if (gzip) {
+        ctx.response().putHeader("Content-Encoding", "gzip");
+      }
+      // The payload is shared with concurrent scrapes and never modified, so it is wrapped rather than copied.
       ctx.response()
               .setStatusCode(200)
-              .putHeader("Content-Type", TextFormat.CONTENT_TYPE_004)
-              .end(writer.getBuffer());
-    } catch (IOException e) {
-      ctx.fail(e);
+              .putHeader("Content-Type", contentType)
+              .end(Buffer.buffer(Unpooled.wrappedBuffer(result.result())));
+    };
+    // Scrapes don't depend on each other, so they needn't run in order.
+    if (workerExecutor != null) {
+      workerExecutor.executeBlocking(render, false, respond);
+    } else {
+      ctx.vertx().executeBlocking(render, false, respond);
     }
   }
 
+  private static boolean acceptsGzip(HttpServerRequest request) {
+    for (String header : request.headers().getAll("Accept-Encoding")) {
+      for (String encoding : header.split(",")) {
+        if (encoding.trim().equalsIgnoreCase("gzip")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   private Set<String> parse(HttpServerRequest request) {
     return new HashSet(request.params().getAll("name[]"));
   }
+
+  private List<SeriesSelector> parseSelectors(HttpServerRequest request) {
+    List<SeriesSelector> selectors = new ArrayList<SeriesSelector>();
+    for (String match : request.params().getAll("match[]")) {
+      selectors.add(SeriesSelector.parse(match));
+    }
+    return selectors;
+  }
 }
@@ -0,0 +1,72 @@
+package io.prometheus.client.vertx;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import io.vertx.core.spi.metrics.PoolMetrics;
+
+/**
+ * Metrics of a Vert.x pool, such as a worker pool, with the children of each family bound when the pool is created.
+ */
+final class PoolMetricsImpl implements PoolMetrics<TimingPool.Timing> {
+  private final TimingPool timings;
+  private final Gauge.Child queuePending;
+  private final Histogram.Child queueDelay;
+  private final Gauge.Child inUse;
+  private final Histogram.Child usage;
+  private final Counter.Child succeeded;
+  private final Counter.Child failed;
+  private final Counter.Child rejected;
+
+  PoolMetricsImpl(VertxCollectors collectors, TimingPool timings, String type, String name, int maxSize) {
+    this.timings = timings;
+    collectors.poolMaxSize.labels(type, name).set(maxSize);
+    queuePending = collectors.poolQueuePending.labels(type, name);
+    queueDelay = collectors.poolQueueDelay.labels(type, name);
+    inUse = collectors.poolInUse.labels(type, name);
+    usage = collectors.poolUsage.labels(type, name);
+    succeeded = collectors.poolCompleted.labels(type, name, "success");
+    failed = collectors.poolCompleted.labels(type, name, "failure");
+    rejected = collectors.poolRejected.labels(type, name);
+  }
+
+  @Override
+  public TimingPool.Timing submitted() {
+    queuePending.inc();
+    return timings.start();
+  }
+
+  @Override
+  public TimingPool.Timing begin(TimingPool.Timing timing) {
+    queuePending.dec();
+    inUse.inc();
+    long now = System.nanoTime();
+    queueDelay.observe((now - timing.startNanos) / 1E9);
+    timing.startNanos = now;
+    return timing;
+  }
+
+  @Override
+  public void rejected(TimingPool.Timing timing) {
+    queuePending.dec();
+    rejected.inc();
+    timings.release(timing);
+  }
+
+  @Override
+  public void end(TimingPool.Timing timing, boolean succeeded) {
+    inUse.dec();
+    usage.observe(TimingPool.elapsedSeconds(timing));
+    (succeeded ? this.succeeded : failed).inc();
+    timings.release(timing);
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return true;
+  }
+
+  @Override
+  public void close() {
+  }
+}
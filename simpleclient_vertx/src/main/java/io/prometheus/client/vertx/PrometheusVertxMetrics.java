@@ -0,0 +1,107 @@
+package io.prometheus.client.vertx;
+
+import io.vertx.core.Verticle;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.datagram.DatagramSocketOptions;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.metrics.impl.DummyVertxMetrics;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetServerOptions;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.core.spi.metrics.DatagramSocketMetrics;
+import io.vertx.core.spi.metrics.EventBusMetrics;
+import io.vertx.core.spi.metrics.HttpClientMetrics;
+import io.vertx.core.spi.metrics.HttpServerMetrics;
+import io.vertx.core.spi.metrics.PoolMetrics;
+import io.vertx.core.spi.metrics.TCPMetrics;
+import io.vertx.core.spi.metrics.VertxMetrics;
+
+/**
+ * The metrics of a Vert.x instance, created by {@link PrometheusVertxMetricsFactory}.
+ * <p>
+ * HTTP servers, HTTP clients, pools and the event bus are measured. Plain TCP and datagram
+ * sockets are not.
+ */
+final class PrometheusVertxMetrics implements VertxMetrics {
+  private final VertxCollectors collectors;
+  private final TimingPool timings = new TimingPool();
+
+  PrometheusVertxMetrics(VertxCollectors collectors) {
+    this.collectors = collectors;
+  }
+
+  @Override
+  public void verticleDeployed(Verticle verticle) {
+    collectors.verticles.inc();
+  }
+
+  @Override
+  public void verticleUndeployed(Verticle verticle) {
+    collectors.verticles.dec();
+  }
+
+  @Override
+  public void timerCreated(long id) {
+    collectors.timers.inc();
+  }
+
+  @Override
+  public void timerEnded(long id, boolean cancelled) {
+    collectors.timers.dec();
+  }
+
+  @Override
+  public EventBusMetrics createMetrics(EventBus eventBus) {
+    return new EventBusMetricsImpl(collectors);
+  }
+
+  @Override
+  public HttpServerMetrics<?, ?, ?> createMetrics(HttpServer server, SocketAddress localAddress, HttpServerOptions options) {
+    return new HttpServerMetricsImpl(collectors, timings, localAddress.host() + ":" + localAddress.port());
+  }
+
+  @Override
+  public HttpClientMetrics<?, ?, ?, ?, ?> createMetrics(HttpClient client, HttpClientOptions options) {
+    return new HttpClientMetricsImpl(collectors, timings);
+  }
+
+  @Override
+  public TCPMetrics<?> createMetrics(NetServer server, SocketAddress localAddress, NetServerOptions options) {
+    return DummyVertxMetrics.DummyTCPMetrics.INSTANCE;
+  }
+
+  @Override
+  public TCPMetrics<?> createMetrics(NetClient client, NetClientOptions options) {
+    return DummyVertxMetrics.DummyTCPMetrics.INSTANCE;
+  }
+
+  @Override
+  public DatagramSocketMetrics createMetrics(DatagramSocket socket, DatagramSocketOptions options) {
+    return DummyVertxMetrics.DummyDatagramMetrics.INSTANCE;
+  }
+
+  @Override
+  public <P> PoolMetrics<?> createMetrics(P pool, String poolType, String poolName, int maxPoolSize) {
+    return new PoolMetricsImpl(collectors, timings, poolType, poolName, maxPoolSize);
+  }
+
+  @Override
+  public boolean isMetricsEnabled() {
+    return true;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return true;
+  }
+
+  @Override
+  public void close() {
+  }
+}
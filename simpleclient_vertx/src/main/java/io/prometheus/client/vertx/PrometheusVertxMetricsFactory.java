@@ -0,0 +1,59 @@
+package io.prometheus.client.vertx;
+
+import io.prometheus.client.CollectorRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.spi.VertxMetricsFactory;
+import io.vertx.core.spi.metrics.VertxMetrics;
+
+/**
+ * Vert.x metrics SPI implementation, recording the internals of Vert.x into simpleclient metrics.
+ * <p>
+ * HTTP server and client request durations and responses, HTTP client queueing for connections,
+ * worker pool queueing and usage, and event bus traffic are recorded. The hooks run on event loops,
+ * so all children are bound when a server, client endpoint or pool is created, and recording
+ * neither blocks nor allocates.
+ * <p>
+ * Usage:
+ * <pre>
+ * {@code
+ * Vertx vertx = Vertx.vertx(new VertxOptions().setMetricsOptions(
+ *     new MetricsOptions().setEnabled(true).setFactory(new PrometheusVertxMetricsFactory())));
+ * }
+ * </pre>
+ * The factory is also registered as a service, so enabling metrics is enough when it is the only
+ * implementation on the classpath. Use a single factory per registry, as it registers its metrics
+ * when constructed.
+ */
+public class PrometheusVertxMetricsFactory implements VertxMetricsFactory {
+  private static VertxCollectors defaultCollectors;
+
+  private final VertxCollectors collectors;
+
+  /**
+   * Construct a factory recording into the default registry.
+   * <p>
+   * All the factories constructed this way share the same metrics, so that each Vert.x instance
+   * can load its own factory as a service.
+   */
+  public PrometheusVertxMetricsFactory() {
+    synchronized (PrometheusVertxMetricsFactory.class) {
+      if (defaultCollectors == null) {
+        defaultCollectors = new VertxCollectors(CollectorRegistry.defaultRegistry);
+      }
+      this.collectors = defaultCollectors;
+    }
+  }
+
+  /**
+   * Construct a factory recording into the given registry.
+   */
+  public PrometheusVertxMetricsFactory(CollectorRegistry registry) {
+    this.collectors = new VertxCollectors(registry);
+  }
+
+  @Override
+  public VertxMetrics metrics(Vertx vertx, VertxOptions options) {
+    return new PrometheusVertxMetrics(collectors);
+  }
+}
@@ -0,0 +1,75 @@
+package io.prometheus.client.vertx;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock-free pool of {@link Timing}s, so that timing a request or task doesn't allocate.
+ * <p>
+ * Timings are often acquired on one thread and released on another, as when a task is submitted
+ * by an event loop and run by a worker, so the pool is shared rather than per thread. Each thread
+ * probes a few slots starting at an index derived from its id, which spreads threads over the slots,
+ * and Timings are released to the slots of the thread which acquired them so they don't drift
+ * between threads. A new Timing is only allocated when those slots are empty, and a released one
+ * is dropped when they are full.
+ */
+final class TimingPool {
+  private static final int SLOTS = 256;
+  private static final int PROBES = 8;
+
+  /**
+   * The start of something being timed, and what it is recorded into.
+   */
+  static final class Timing {
+    long startNanos;
+    int method;
+    Object owner;
+    // The first slot probed by the thread which acquired it.
+    int home;
+  }
+
+  private final AtomicReferenceArray<Timing> slots = new AtomicReferenceArray<Timing>(SLOTS);
+
+  /**
+   * Return a Timing started now.
+   */
+  Timing start() {
+    Timing timing = acquire();
+    timing.startNanos = System.nanoTime();
+    return timing;
+  }
+
+  private Timing acquire() {
+    int start = (int) Thread.currentThread().getId() * PROBES;
+    for (int i = 0; i < PROBES; i++) {
+      int slot = (start + i) & (SLOTS - 1);
+      Timing timing = slots.get(slot);
+      if (timing != null && slots.compareAndSet(slot, timing, null)) {
+        timing.home = start;
+        return timing;
+      }
+    }
+    Timing timing = new Timing();
+    timing.home = start;
+    return timing;
+  }
+
+  /**
+   * Return the given Timing to the pool. It must not be used afterwards.
+   */
+  void release(Timing timing) {
+    timing.owner = null;
+    for (int i = 0; i < PROBES; i++) {
+      int slot = (timing.home + i) & (SLOTS - 1);
+      if (slots.get(slot) == null && slots.compareAndSet(slot, null, timing)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * The number of seconds since the given Timing started.
+   */
+  static double elapsedSeconds(Timing timing) {
+    return (System.nanoTime() - timing.startNanos) / 1E9;
+  }
+}
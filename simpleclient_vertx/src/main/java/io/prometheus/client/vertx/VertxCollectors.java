@@ -0,0 +1,180 @@
+package io.prometheus.client.vertx;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import io.vertx.core.http.HttpMethod;
+
+/**
+ * The metric families recorded by {@link PrometheusVertxMetricsFactory}, shared by all the Vert.x
+ * instances using the same registry.
+ */
+final class VertxCollectors {
+  final Gauge verticles = Gauge.build()
+      .name("vertx_verticles").help("Number of deployed verticles.").create();
+  final Gauge timers = Gauge.build()
+      .name("vertx_timers").help("Number of active timers and periodic timers.").create();
+
+  final Gauge httpServerConnections = Gauge.build()
+      .name("vertx_http_server_connections").help("Number of open HTTP server connections.")
+      .labelNames("local").create();
+  final Gauge httpServerWebSockets = Gauge.build()
+      .name("vertx_http_server_websockets").help("Number of open HTTP server websockets.")
+      .labelNames("local").create();
+  final Counter httpServerBytesRead = Counter.build()
+      .name("vertx_http_server_bytes_read_total").help("Bytes read by HTTP servers.")
+      .labelNames("local").create();
+  final Counter httpServerBytesWritten = Counter.build()
+      .name("vertx_http_server_bytes_written_total").help("Bytes written by HTTP servers.")
+      .labelNames("local").create();
+  final Histogram httpServerRequestDuration = Histogram.build()
+      .name("vertx_http_server_request_duration_seconds").help("Time from the start of a request to the end of its response.")
+      .labelNames("local", "method").create();
+  final Counter httpServerResponses = Counter.build()
+      .name("vertx_http_server_responses_total").help("HTTP server responses, by status code class.")
+      .labelNames("local", "method", "code").create();
+  final Counter httpServerResets = Counter.build()
+      .name("vertx_http_server_request_resets_total").help("HTTP server requests reset before their response ended.")
+      .labelNames("local").create();
+
+  final Gauge httpClientConnections = Gauge.build()
+      .name("vertx_http_client_connections").help("Number of open HTTP client connections.")
+      .labelNames("remote").create();
+  final Gauge httpClientQueuePending = Gauge.build()
+      .name("vertx_http_client_queue_pending").help("HTTP client requests waiting for a connection.")
+      .labelNames("remote").create();
+  final Histogram httpClientQueueDelay = Histogram.build()
+      .name("vertx_http_client_queue_delay_seconds").help("Time HTTP client requests waited for a connection.")
+      .labelNames("remote").create();
+  final Counter httpClientBytesRead = Counter.build()
+      .name("vertx_http_client_bytes_read_total").help("Bytes read by HTTP clients.").create();
+  final Counter httpClientBytesWritten = Counter.build()
+      .name("vertx_http_client_bytes_written_total").help("Bytes written by HTTP clients.").create();
+  final Histogram httpClientRequestDuration = Histogram.build()
+      .name("vertx_http_client_request_duration_seconds").help("Time from the start of a request to the end of its response.")
+      .labelNames("remote", "method").create();
+  final Counter httpClientResponses = Counter.build()
+      .name("vertx_http_client_responses_total").help("HTTP client responses, by status code class.")
+      .labelNames("remote", "method", "code").create();
+  final Counter httpClientResets = Counter.build()
+      .name("vertx_http_client_request_resets_total").help("HTTP client requests reset before their response ended.")
+      .labelNames("remote").create();
+
+  final Gauge poolMaxSize = Gauge.build()
+      .name("vertx_pool_max_size").help("Maximum number of resources of a pool.")
+      .labelNames("type", "name").create();
+  final Gauge poolQueuePending = Gauge.build()
+      .name("vertx_pool_queue_pending").help("Tasks waiting for a resource of a pool.")
+      .labelNames("type", "name").create();
+  final Histogram poolQueueDelay = Histogram.build()
+      .name("vertx_pool_queue_delay_seconds").help("Time tasks waited for a resource of a pool.")
+      .labelNames("type", "name").create();
+  final Gauge poolInUse = Gauge.build()
+      .name("vertx_pool_in_use").help("Resources of a pool in use.")
+      .labelNames("type", "name").create();
+  final Histogram poolUsage = Histogram.build()
+      .name("vertx_pool_usage_seconds").help("Time tasks held a resource of a pool.")
+      .labelNames("type", "name").create();
+  final Counter poolCompleted = Counter.build()
+      .name("vertx_pool_completed_total").help("Tasks of a pool completed, by outcome.")
+      .labelNames("type", "name", "outcome").create();
+  final Counter poolRejected = Counter.build()
+      .name("vertx_pool_rejected_total").help("Tasks rejected by a pool.")
+      .labelNames("type", "name").create();
+
+  final Gauge eventBusHandlers = Gauge.build()
+      .name("vertx_eventbus_handlers").help("Number of event bus handlers registered.").create();
+  final Gauge eventBusPending = Gauge.build()
+      .name("vertx_eventbus_pending").help("Event bus messages delivered to a handler and not yet processed.").create();
+  final Histogram eventBusProcessing = Histogram.build()
+      .name("vertx_eventbus_processing_seconds").help("Time event bus handlers took to process a message.").create();
+  final Counter eventBusHandlerFailures = Counter.build()
+      .name("vertx_eventbus_handler_failures_total").help("Event bus messages whose handler failed.").create();
+  final Counter eventBusSent = Counter.build()
+      .name("vertx_eventbus_messages_sent_total").help("Event bus messages sent or published.")
+      .labelNames("kind", "local").create();
+  final Counter eventBusReceived = Counter.build()
+      .name("vertx_eventbus_messages_received_total").help("Event bus messages received.")
+      .labelNames("kind", "local").create();
+  final Counter eventBusBytesRead = Counter.build()
+      .name("vertx_eventbus_bytes_read_total").help("Bytes of clustered event bus messages read.").create();
+  final Counter eventBusBytesWritten = Counter.build()
+      .name("vertx_eventbus_bytes_written_total").help("Bytes of clustered event bus messages written.").create();
+  final Counter eventBusReplyFailures = Counter.build()
+      .name("vertx_eventbus_reply_failures_total").help("Event bus replies which failed, by failure.")
+      .labelNames("failure").create();
+
+  VertxCollectors(CollectorRegistry registry) {
+    registry.register(verticles);
+    registry.register(timers);
+    registry.register(httpServerConnections);
+    registry.register(httpServerWebSockets);
+    registry.register(httpServerBytesRead);
+    registry.register(httpServerBytesWritten);
+    registry.register(httpServerRequestDuration);
+    registry.register(httpServerResponses);
+    registry.register(httpServerResets);
+    registry.register(httpClientConnections);
+    registry.register(httpClientQueuePending);
+    registry.register(httpClientQueueDelay);
+    registry.register(httpClientBytesRead);
+    registry.register(httpClientBytesWritten);
+    registry.register(httpClientRequestDuration);
+    registry.register(httpClientResponses);
+    registry.register(httpClientResets);
+    registry.register(poolMaxSize);
+    registry.register(poolQueuePending);
+    registry.register(poolQueueDelay);
+    registry.register(poolInUse);
+    registry.register(poolUsage);
+    registry.register(poolCompleted);
+    registry.register(poolRejected);
+    registry.register(eventBusHandlers);
+    registry.register(eventBusPending);
+    registry.register(eventBusProcessing);
+    registry.register(eventBusHandlerFailures);
+    registry.register(eventBusSent);
+    registry.register(eventBusReceived);
+    registry.register(eventBusBytesRead);
+    registry.register(eventBusBytesWritten);
+    registry.register(eventBusReplyFailures);
+  }
+
+  private static final String[] CODE_CLASSES = {"other", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+  /**
+   * The index of the status code class of the given status code, in the arrays returned by {@link #bindResponses}.
+   */
+  static int codeClass(int statusCode) {
+    int codeClass = statusCode / 100;
+    return codeClass >= 1 && codeClass <= 5 ? codeClass : 0;
+  }
+
+  /**
+   * Bind a child of the given histogram for each HTTP method, indexed by ordinal.
+   */
+  static Histogram.Child[] bindDurations(Histogram histogram, String address) {
+    HttpMethod[] methods = HttpMethod.values();
+    Histogram.Child[] children = new Histogram.Child[methods.length];
+    for (int i = 0; i < methods.length; i++) {
+      children[i] = histogram.labels(address, methods[i].name());
+    }
+    return children;
+  }
+
+  /**
+   * Bind a child of the given counter for each HTTP method and status code class,
+   * indexed by ordinal and {@link #codeClass}.
+   */
+  static Counter.Child[][] bindResponses(Counter counter, String address) {
+    HttpMethod[] methods = HttpMethod.values();
+    Counter.Child[][] children = new Counter.Child[methods.length][CODE_CLASSES.length];
+    for (int i = 0; i < methods.length; i++) {
+      for (int j = 0; j < CODE_CLASSES.length; j++) {
+        children[i][j] = counter.labels(address, methods[i].name(), CODE_CLASSES[j]);
+      }
+    }
+    return children;
+  }
+}
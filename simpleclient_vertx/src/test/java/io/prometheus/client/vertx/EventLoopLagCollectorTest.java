@@ -0,0 +1,65 @@
+package io.prometheus.client.vertx;
+
+import io.prometheus.client.CollectorRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EventLoopLagCollectorTest {
+
+  private CollectorRegistry registry;
+  private Vertx vertx;
+
+  @Before
+  public void setUp() {
+    registry = new CollectorRegistry();
+    vertx = Vertx.vertx(new VertxOptions().setEventLoopPoolSize(2));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(ar -> closed.complete(null));
+    closed.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testBlockedEventLoopIsRecorded() throws Exception {
+    EventLoopLagCollector collector = new EventLoopLagCollector(vertx).register(registry);
+    CompletableFuture<String> blocked = new CompletableFuture<>();
+    vertx.runOnContext(v -> {
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      blocked.complete(Thread.currentThread().getName());
+    });
+    String loop = blocked.get(10, TimeUnit.SECONDS);
+    Thread.sleep(50);
+    collector.close();
+
+    String[] labelNames = {"loop", "le"};
+    double count = registry.getSampleValue("vertx_eventloop_lag_seconds_count", new String[]{"loop"}, new String[]{loop});
+    assertThat(count).isGreaterThan(1.0);
+    assertThat(registry.getSampleValue("vertx_eventloop_lag_seconds_bucket", labelNames, new String[]{loop, "0.05"}))
+        .isLessThan(count);
+    assertThat(registry.getSampleValue("vertx_eventloop_lag_seconds_sum", new String[]{"loop"}, new String[]{loop}))
+        .isGreaterThanOrEqualTo(.05);
+    // Each event loop is measured.
+    assertThat(collector.collect().get(0).samples.stream().filter(sample -> sample.name.endsWith("_count")).count())
+        .isEqualTo(2);
+
+    // No more runs once closed.
+    Thread.sleep(20);
+    assertThat(registry.getSampleValue("vertx_eventloop_lag_seconds_count", new String[]{"loop"}, new String[]{loop}))
+        .isEqualTo(count);
+  }
+}
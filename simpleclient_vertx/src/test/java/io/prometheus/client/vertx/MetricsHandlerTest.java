@@ -1,7 +1,11 @@
 package io.prometheus.client.vertx;
 
+import io.prometheus.client.Collector;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Gauge;
+import io.prometheus.client.exporter.common.GzipCompressor;
+import io.prometheus.client.exporter.common.ProtobufFormat;
+import io.vertx.core.Context;
 import io.vertx.core.Vertx;
 import io.vertx.ext.web.Router;
 import org.junit.AfterClass;
@@ -9,11 +13,18 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.ServerSocket;
 import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.List;
 import java.util.Scanner;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -22,6 +33,8 @@ public class MetricsHandlerTest {
   private static Vertx vertx;
   private static Integer port;
   private static CollectorRegistry registry;
+  private static final AtomicInteger collectionsOnEventLoop = new AtomicInteger();
+  private static final AtomicInteger collections = new AtomicInteger();
 
   @BeforeClass
   public static void setUp() throws Throwable {
@@ -35,6 +48,22 @@ public class MetricsHandlerTest {
     registry = new CollectorRegistry();
     router.route("/metrics").handler(new MetricsHandler(registry));
 
+    CollectorRegistry threadRegistry = new CollectorRegistry();
+    new Collector() {
+      @Override
+      public List<MetricFamilySamples> collect() {
+        collections.incrementAndGet();
+        if (Context.isOnEventLoopThread()) {
+          collectionsOnEventLoop.incrementAndGet();
+        }
+        return Collections.emptyList();
+      }
+    }.register(threadRegistry);
+    Gauge.build("d", "d help").register(threadRegistry);
+    router.route("/metrics-worker").handler(new MetricsHandler(threadRegistry,
+            vertx.createSharedWorkerExecutor("prometheus-test", 1), GzipCompressor.DEFAULT));
+    router.route("/metrics-thread").handler(new MetricsHandler(threadRegistry));
+
     router.route("/test").handler(routingContext -> {
       routingContext.response().putHeader("content-type", "text").end("Hello World!");
     });
@@ -78,6 +107,52 @@ public class MetricsHandlerTest {
     assertThat(out).contains("c 0.0");
   }
 
+  @Test
+  public void metricsRequest_shouldAllowMatchers() throws IOException {
+    String out = makeRequest("/metrics?match[]=" + URLEncoder.encode("{__name__=~\"a|c\"}", "UTF-8"));
+
+    assertThat(out).contains("a 0.0");
+    assertThat(out).doesNotContain("b 0.0");
+    assertThat(out).contains("c 0.0");
+  }
+
+  @Test
+  public void metricsRequest_shouldNegotiateProtobuf() throws IOException {
+    URLConnection connection = new URL("http://localhost:" + port + "/metrics?name[]=a").openConnection();
+    connection.setRequestProperty("Accept", "application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=delimited");
+    connection.connect();
+
+    assertThat(connection.getContentType()).isEqualTo(ProtobufFormat.CONTENT_TYPE);
+    InputStream in = connection.getInputStream();
+    // Length, then the name field of the MetricFamily.
+    assertThat(in.read()).isGreaterThan(0);
+    assertThat(in.read()).isEqualTo(0x0a);
+    in.close();
+  }
+
+  @Test
+  public void metricsRequest_shouldGzipWhenAccepted() throws IOException {
+    URLConnection connection = new URL("http://localhost:" + port + "/metrics?name[]=a").openConnection();
+    connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+    connection.connect();
+
+    assertThat(connection.getHeaderField("Content-Encoding")).isEqualTo("gzip");
+    Scanner scanner = new Scanner(new GZIPInputStream(connection.getInputStream()), "UTF-8").useDelimiter("\\A");
+    String out = scanner.next();
+    scanner.close();
+    assertThat(out).contains("a 0.0");
+    assertThat(out).doesNotContain("b 0.0");
+  }
+
+  @Test
+  public void metricsRequest_shouldNotCollectOnEventLoop() throws IOException {
+    int before = collections.get();
+    assertThat(makeRequest("/metrics-thread")).contains("d 0.0");
+    assertThat(makeRequest("/metrics-worker")).contains("d 0.0");
+
+    assertThat(collections.get()).isEqualTo(before + 2);
+    assertThat(collectionsOnEventLoop.get()).isEqualTo(0);
+  }
 
   private String makeRequest(String url) throws IOException {
     Scanner scanner = new Scanner(new URL("http://localhost:" + port + url).openStream(), "UTF-8")
@@ -0,0 +1,159 @@
+package io.prometheus.client.vertx;
+
+import io.prometheus.client.CollectorRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.metrics.MetricsOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrometheusVertxMetricsTest {
+
+  private CollectorRegistry registry;
+  private Vertx vertx;
+
+  @Before
+  public void setUp() {
+    registry = new CollectorRegistry();
+    vertx = Vertx.vertx(new VertxOptions().setMetricsOptions(
+        new MetricsOptions().setEnabled(true).setFactory(new PrometheusVertxMetricsFactory(registry))));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(ar -> closed.complete(null));
+    closed.get(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testHttpServerAndClient() throws Exception {
+    // Servers are labelled with the port they were asked to listen on, so don't ask for any free port.
+    ServerSocket socket = new ServerSocket(0);
+    int port = socket.getLocalPort();
+    socket.close();
+    CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+    vertx.createHttpServer()
+        .requestHandler(request -> request.response().setStatusCode(request.path().equals("/missing") ? 404 : 200).end("ok"))
+        .listen(port, "localhost", ar -> listening.complete(ar.result()));
+    listening.get(10, TimeUnit.SECONDS);
+
+    HttpClient client = vertx.createHttpClient();
+    for (String path : new String[]{"/", "/", "/missing"}) {
+      CompletableFuture<Integer> status = new CompletableFuture<>();
+      client.getNow(port, "localhost", path, response -> response.endHandler(v -> status.complete(response.statusCode())));
+      status.get(10, TimeUnit.SECONDS);
+    }
+
+    String local = "localhost:" + port;
+    // The server may record its last response after the client saw it.
+    waitFor("vertx_http_server_request_duration_seconds_count", new String[]{"local", "method"}, new String[]{local, "GET"}, 3);
+    assertThat(registry.getSampleValue("vertx_http_server_request_duration_seconds_count",
+        new String[]{"local", "method"}, new String[]{local, "GET"})).isEqualTo(3.0);
+    assertThat(registry.getSampleValue("vertx_http_server_responses_total",
+        new String[]{"local", "method", "code"}, new String[]{local, "GET", "2xx"})).isEqualTo(2.0);
+    assertThat(registry.getSampleValue("vertx_http_server_responses_total",
+        new String[]{"local", "method", "code"}, new String[]{local, "GET", "4xx"})).isEqualTo(1.0);
+    // The client keeps its connections open.
+    assertThat(registry.getSampleValue("vertx_http_server_connections",
+        new String[]{"local"}, new String[]{local})).isGreaterThanOrEqualTo(1.0);
+
+    assertThat(registry.getSampleValue("vertx_http_client_request_duration_seconds_count",
+        new String[]{"remote", "method"}, new String[]{local, "GET"})).isEqualTo(3.0);
+    assertThat(registry.getSampleValue("vertx_http_client_responses_total",
+        new String[]{"remote", "method", "code"}, new String[]{local, "GET", "4xx"})).isEqualTo(1.0);
+    assertThat(registry.getSampleValue("vertx_http_client_queue_pending",
+        new String[]{"remote"}, new String[]{local})).isEqualTo(0.0);
+  }
+
+  @Test
+  public void testEventBus() throws Exception {
+    CompletableFuture<Void> registered = new CompletableFuture<>();
+    vertx.eventBus().<String>consumer("address", message -> message.reply("pong"))
+        .completionHandler(ar -> registered.complete(null));
+    registered.get(10, TimeUnit.SECONDS);
+
+    CompletableFuture<Object> reply = new CompletableFuture<>();
+    vertx.eventBus().send("address", "ping", ar -> reply.complete(ar.result().body()));
+    assertThat(reply.get(10, TimeUnit.SECONDS)).isEqualTo("pong");
+
+    CompletableFuture<Throwable> failure = new CompletableFuture<>();
+    vertx.eventBus().send("nowhere", "ping", ar -> failure.complete(ar.cause()));
+    failure.get(10, TimeUnit.SECONDS);
+
+    assertThat(registry.getSampleValue("vertx_eventbus_messages_sent_total",
+        new String[]{"kind", "local"}, new String[]{"send", "true"})).isGreaterThanOrEqualTo(2.0);
+    // The handler may finish processing after its reply was received.
+    waitFor("vertx_eventbus_processing_seconds_count", new String[]{}, new String[]{}, 1);
+    assertThat(registry.getSampleValue("vertx_eventbus_reply_failures_total",
+        new String[]{"failure"}, new String[]{"NO_HANDLERS"})).isEqualTo(1.0);
+    assertThat(registry.getSampleValue("vertx_eventbus_handlers")).isGreaterThanOrEqualTo(1.0);
+  }
+
+  @Test
+  public void testWorkerPool() throws Exception {
+    CompletableFuture<Void> done = new CompletableFuture<>();
+    vertx.executeBlocking(future -> future.complete(), ar -> done.complete(null));
+    done.get(10, TimeUnit.SECONDS);
+
+    String[] labelNames = {"type", "name"};
+    String[] labelValues = {"worker", "vert.x-worker-thread"};
+    assertThat(registry.getSampleValue("vertx_pool_queue_delay_seconds_count", labelNames, labelValues)).isEqualTo(1.0);
+    assertThat(registry.getSampleValue("vertx_pool_usage_seconds_count", labelNames, labelValues)).isEqualTo(1.0);
+    assertThat(registry.getSampleValue("vertx_pool_completed_total",
+        new String[]{"type", "name", "outcome"}, new String[]{"worker", "vert.x-worker-thread", "success"})).isEqualTo(1.0);
+    assertThat(registry.getSampleValue("vertx_pool_in_use", labelNames, labelValues)).isEqualTo(0.0);
+    assertThat(registry.getSampleValue("vertx_pool_max_size", labelNames, labelValues))
+        .isEqualTo((double) VertxOptions.DEFAULT_WORKER_POOL_SIZE);
+  }
+
+  @Test
+  public void testRecordingDoesNotAllocate() {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    VertxCollectors collectors = new VertxCollectors(new CollectorRegistry());
+    TimingPool timings = new TimingPool();
+    PoolMetricsImpl pool = new PoolMetricsImpl(collectors, timings, "worker", "test", 1);
+    EventBusMetricsImpl eventBus = new EventBusMetricsImpl(collectors);
+    Object handler = eventBus.handlerRegistered("address", null);
+    Runnable record = () -> {
+      for (int i = 0; i < 10000; i++) {
+        pool.end(pool.begin(pool.submitted()), true);
+        eventBus.messageSent("address", false, true, false);
+        eventBus.scheduleMessage(handler, true);
+        eventBus.beginHandleMessage(handler, true);
+        eventBus.endHandleMessage(handler, null);
+      }
+    };
+    record.run();
+
+    long overhead = -threads.getThreadAllocatedBytes(thread) + threads.getThreadAllocatedBytes(thread);
+    long before = threads.getThreadAllocatedBytes(thread);
+    record.run();
+    long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+    assertThat(allocated).isLessThan(1024);
+    double[] buckets = collectors.poolUsage.labels("worker", "test").get().buckets;
+    assertThat(buckets[buckets.length - 1]).isEqualTo(20000.0);
+  }
+
+  private void waitFor(String name, String[] labelNames, String[] labelValues, double value) throws InterruptedException {
+    for (int i = 0; i < 100; i++) {
+      Double current = registry.getSampleValue(name, labelNames, labelValues);
+      if (current != null && current >= value) {
+        return;
+      }
+      Thread.sleep(50);
+    }
+    assertThat(registry.getSampleValue(name, labelNames, labelValues)).isGreaterThanOrEqualTo(value);
+  }
+}